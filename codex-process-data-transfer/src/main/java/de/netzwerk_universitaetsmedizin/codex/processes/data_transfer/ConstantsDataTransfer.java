@@ -26,6 +26,7 @@ public interface ConstantsDataTransfer
 	String BPMN_EXECUTION_VARIABLE_RETURN_TARGET = "returnTarget";
 	String BPMN_EXECUTION_VARIABLE_SOURCE_IDS_BY_BUNDLE_UUID = "sourceIdsByBundleUuid";
 	String BPMN_EXECUTION_VARIABLE_DRY_RUN = "dryRun";
+	String BPMN_EXECUTION_VARIABLE_PAYLOAD_COMPRESSION = "payloadCompression";
 
 	String NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM = "http://www.netzwerk-universitaetsmedizin.de/sid/dic-pseudonym";
 	String NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM = "http://www.netzwerk-universitaetsmedizin.de/sid/crr-pseudonym";
@@ -93,6 +94,7 @@ public interface ConstantsDataTransfer
 	String CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NO_DIC_PSEUDONYM_FOR_BLOOMFILTER = "no-dic-pseudonym-for-bloomfilter";
 	String CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NO_DIC_PSEUDONYM_FOR_LOCAL_PSEUDONYM = "no-dic-pseudonym-for-local-pseudonym";
 	String CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_VALIDATION_FAILED = "validation-failed";
+	String CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED = "not-validated";
 	String CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_ECRYPTION_OF_DATA_FOR_CRR_FAILED = "ecryption-of-data-for-crr-failed";
 	String CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA = "unable-to-store-ecrypted-data";
 	String CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DTS_NOT_REACHABLE = "dts-not-reachable";
@@ -120,5 +122,11 @@ public interface ConstantsDataTransfer
 	String EXTENSION_ERROR_METADATA_SOURCE = "source";
 	String EXTENSION_ERROR_METADATA_REFERENCE = "reference";
 
+	/**
+	 * Maximum of the FHIR unsignedInt type used for the encrypted-bundle-size Task output, larger payloads are rejected
+	 * before the upload completes
+	 */
+	long ENCRYPTED_BUNDLE_SIZE_MAX = Integer.MAX_VALUE;
+
 	byte[] RETURN_AAD = "aLCdSbI55VAv2BaKs4ypnDw3AaRfSBWXa8Bxl78BJw".getBytes(StandardCharsets.UTF_8);
 }
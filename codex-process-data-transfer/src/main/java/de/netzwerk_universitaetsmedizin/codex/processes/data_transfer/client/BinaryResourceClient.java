@@ -0,0 +1,223 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingInputStream;
+import dev.dsf.bpe.v1.ProcessPluginApi;
+import dev.dsf.fhir.client.FhirWebserviceClient;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Creates and reads DSF Binary resources with raw <code>application/octet-stream</code> request and response bodies.
+ * Binary resources encoded as FHIR JSON or XML contain the data base64 encoded, increasing the size by a third and
+ * requiring encoding and decoding on both ends.
+ * <p>
+ * If a DSF FHIR server rejects raw bodies with status 405, 406 or 415, the Binary resource is created or read as FHIR
+ * resource instead; raw bodies are not used for this server again by the same instance. Instances are created per
+ * process activity, a DSF FHIR server updated to support raw bodies is used with raw bodies by the next activity.
+ * Binary resources read as FHIR JSON are limited by the maximum string length of the JSON parser to about 14 MiB of
+ * data.
+ */
+public class BinaryResourceClient
+{
+	private static final Logger logger = LoggerFactory.getLogger(BinaryResourceClient.class);
+
+	private static final Set<Integer> UNSUPPORTED_STATUS = Set.of(Status.METHOD_NOT_ALLOWED.getStatusCode(),
+			Status.NOT_ACCEPTABLE.getStatusCode(), Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode());
+
+	// base urls of DSF FHIR servers without raw body support
+	private final Set<String> rawCreateUnsupported = ConcurrentHashMap.newKeySet();
+	private final Set<String> rawReadUnsupported = ConcurrentHashMap.newKeySet();
+
+	private final ProcessPluginApi api;
+
+	/**
+	 * @param api
+	 *            not <code>null</code>
+	 */
+	public BinaryResourceClient(ProcessPluginApi api)
+	{
+		this.api = Objects.requireNonNull(api, "api");
+	}
+
+	/**
+	 * Creates the given Binary resource in the local DSF FHIR server. The data is uploaded as raw
+	 * <code>application/octet-stream</code> body if the security context references an organization known to the local
+	 * DSF FHIR server.
+	 *
+	 * @param binary
+	 *            not <code>null</code>, with data and security context
+	 * @return id of the created Binary resource
+	 * @throws WebApplicationException
+	 *             if the Binary resource could not be created
+	 */
+	public IdType create(Binary binary)
+	{
+		Objects.requireNonNull(binary, "binary");
+
+		FhirWebserviceClient client = api.getFhirWebserviceClientProvider().getLocalWebserviceClient();
+		Optional<String> securityContext = getSecurityContextReference(binary.getSecurityContext());
+
+		if (securityContext.isPresent() && !rawCreateUnsupported.contains(client.getBaseUrl()))
+		{
+			try
+			{
+				return client.withMinimalReturn().createBinary(new ByteArrayInputStream(binary.getData()),
+						MediaType.valueOf(binary.getContentType()), securityContext.get());
+			}
+			catch (WebApplicationException e)
+			{
+				if (!isUnsupported(e))
+					throw e;
+
+				rawCreateUnsupported.add(client.getBaseUrl());
+				logger.warn(
+						"Raw Binary upload not supported by {}, status {}, creating Binary resource with base64 data",
+						client.getBaseUrl(), e.getResponse().getStatus());
+			}
+		}
+
+		return client.withMinimalReturn().create(binary);
+	}
+
+	/**
+	 * Creates a Binary resource in the local DSF FHIR server with the given data as raw
+	 * <code>application/octet-stream</code> body, without buffering the data. Size and SHA-256 digest are computed
+	 * while uploading. There is no fallback to Binary resources with base64 data, the local DSF FHIR server needs to
+	 * support raw bodies.
+	 *
+	 * @param data
+	 *            not <code>null</code>, read to the end
+	 * @param securityContextReference
+	 *            not <code>null</code>, relative reference to the organization allowed to read the Binary resource
+	 * @return id, size and digest of the created Binary resource
+	 * @throws WebApplicationException
+	 *             if the Binary resource could not be created
+	 */
+	public StreamedBinary createStreaming(InputStream data, String securityContextReference)
+	{
+		return createStreaming(data, securityContextReference, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param data
+	 *            not <code>null</code>, read to the end
+	 * @param securityContextReference
+	 *            not <code>null</code>, relative reference to the organization allowed to read the Binary resource
+	 * @param maxSize
+	 *            &gt;= 0, the upload is aborted before it completes if <b>data</b> contains more bytes
+	 * @return id, size and digest of the created Binary resource
+	 * @throws WebApplicationException
+	 *             if the Binary resource could not be created
+	 * @throws ProcessingException
+	 *             if reading <b>data</b> failed or <b>data</b> contains more than <b>maxSize</b> bytes
+	 * @see #createStreaming(InputStream, String)
+	 */
+	public StreamedBinary createStreaming(InputStream data, String securityContextReference, long maxSize)
+	{
+		Objects.requireNonNull(data, "data");
+		Objects.requireNonNull(securityContextReference, "securityContextReference");
+
+		FhirWebserviceClient client = api.getFhirWebserviceClientProvider().getLocalWebserviceClient();
+
+		MessageDigest digest = sha256();
+		CountingInputStream counting = new CountingInputStream(new DigestInputStream(data, digest), maxSize);
+
+		IdType created = client.withMinimalReturn().createBinary(counting, MediaType.APPLICATION_OCTET_STREAM_TYPE,
+				securityContextReference);
+
+		return new StreamedBinary(created, counting.getCount(), HexFormat.of().formatHex(digest.digest()));
+	}
+
+	private static MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param binaryId
+	 *            not <code>null</code>, absolute id with optional version
+	 * @return data of the Binary resource, read from the raw <code>application/octet-stream</code> response body if
+	 *         supported by the DSF FHIR server
+	 * @throws WebApplicationException
+	 *             if the Binary resource could not be read
+	 */
+	public InputStream read(IdType binaryId)
+	{
+		Objects.requireNonNull(binaryId, "binaryId");
+
+		final String id = binaryId.getIdPart();
+		final String version = binaryId.getVersionIdPart();
+		final boolean versioned = version != null && !version.isEmpty();
+
+		FhirWebserviceClient client = api.getFhirWebserviceClientProvider().getWebserviceClient(binaryId.getBaseUrl());
+
+		logger.info("Reading binary from {} with id {}/{}", client.getBaseUrl(), id, version);
+
+		if (!rawReadUnsupported.contains(client.getBaseUrl()))
+		{
+			try
+			{
+				if (versioned)
+					return client.readBinary(id, version, MediaType.APPLICATION_OCTET_STREAM_TYPE);
+				else
+					return client.readBinary(id, MediaType.APPLICATION_OCTET_STREAM_TYPE);
+			}
+			catch (WebApplicationException e)
+			{
+				if (!isUnsupported(e))
+					throw e;
+
+				rawReadUnsupported.add(client.getBaseUrl());
+				logger.warn(
+						"Raw Binary download not supported by {}, status {}, reading Binary resource with base64 data",
+						client.getBaseUrl(), e.getResponse().getStatus());
+			}
+		}
+
+		Binary binary = versioned ? client.read(Binary.class, id, version) : client.read(Binary.class, id);
+		return new ByteArrayInputStream(binary.getData());
+	}
+
+	private Optional<String> getSecurityContextReference(Reference securityContext)
+	{
+		if (securityContext.hasReference())
+			return Optional.of(securityContext.getReference());
+		else if (securityContext.hasIdentifier())
+			return api.getOrganizationProvider().getOrganization(securityContext.getIdentifier())
+					.map(o -> ResourceType.Organization.name() + "/" + o.getIdElement().getIdPart());
+		else
+			return Optional.empty();
+	}
+
+	private static boolean isUnsupported(WebApplicationException e)
+	{
+		return e.getResponse() != null && UNSUPPORTED_STATUS.contains(e.getResponse().getStatus());
+	}
+}
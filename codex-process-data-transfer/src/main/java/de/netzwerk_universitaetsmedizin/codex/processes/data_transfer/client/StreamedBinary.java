@@ -0,0 +1,45 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client;
+
+import java.util.Objects;
+
+import org.hl7.fhir.r4.model.IdType;
+
+/**
+ * Binary resource created from a stream, with size and digest of the streamed data.
+ */
+public class StreamedBinary
+{
+	private final IdType id;
+	private final long size;
+	private final String sha256;
+
+	/**
+	 * @param id
+	 *            not <code>null</code>
+	 * @param size
+	 *            data size in bytes
+	 * @param sha256
+	 *            not <code>null</code>, hex encoded SHA-256 digest of the data
+	 */
+	public StreamedBinary(IdType id, long size, String sha256)
+	{
+		this.id = Objects.requireNonNull(id, "id");
+		this.size = size;
+		this.sha256 = Objects.requireNonNull(sha256, "sha256");
+	}
+
+	public IdType getId()
+	{
+		return id;
+	}
+
+	public long getSize()
+	{
+		return size;
+	}
+
+	public String getSha256()
+	{
+		return sha256;
+	}
+}
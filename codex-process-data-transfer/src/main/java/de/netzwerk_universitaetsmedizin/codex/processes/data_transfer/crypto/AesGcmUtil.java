@@ -1,12 +1,18 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Optional;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
@@ -59,6 +65,37 @@ public class AesGcmUtil
 		return output;
 	}
 
+	/**
+	 * Streaming variant of {@link #encrypt(byte[], byte[], SecretKey)}, writes the IV to the given stream and returns a
+	 * stream encrypting all data written to it. Closing the returned stream writes the authentication tag and closes
+	 * the given stream, the output is identical to {@link #encrypt(byte[], byte[], SecretKey)} for the same IV.
+	 *
+	 * @param out
+	 *            not <code>null</code>
+	 * @param aadTag
+	 *            not <code>null</code>
+	 * @param key
+	 *            not <code>null</code>
+	 * @return encrypting stream, has to be closed
+	 * @throws IOException
+	 *             if the IV could not be written
+	 */
+	public static OutputStream encrypt(OutputStream out, byte[] aadTag, SecretKey key) throws NoSuchAlgorithmException,
+			NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException
+	{
+		byte[] iv = generateIv(GCM_IV_LENGTH);
+
+		Cipher cipher = Cipher.getInstance(AES_MODE_PADDING);
+		SecretKeySpec keySpec = new SecretKeySpec(key.getEncoded(), AES);
+		GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
+		cipher.init(Cipher.ENCRYPT_MODE, keySpec, gcmParameterSpec);
+
+		cipher.updateAAD(aadTag);
+
+		out.write(iv);
+		return new CipherOutputStream(out, cipher);
+	}
+
 	public static byte[] decrypt(byte[] encrypted, byte[] aadTag, SecretKey key)
 			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
 			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException
@@ -72,6 +109,86 @@ public class AesGcmUtil
 		return cipher.doFinal(encrypted, GCM_IV_LENGTH, encrypted.length - GCM_IV_LENGTH);
 	}
 
+	/**
+	 * Encrypts the given message with a {@link PayloadEnvelope} header, payloads with header can not be decrypted by
+	 * versions before the envelope was introduced.
+	 *
+	 * @param message
+	 *            not <code>null</code>
+	 * @param aadTag
+	 *            not <code>null</code>
+	 * @param key
+	 *            not <code>null</code>
+	 * @param compression
+	 *            not <code>null</code>
+	 * @return header, IV and AES-GCM encrypted compressed message
+	 */
+	public static byte[] encryptPayload(byte[] message, byte[] aadTag, SecretKey key, PayloadCompression compression)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
+			InvalidAlgorithmParameterException, IOException
+	{
+		PayloadEnvelope envelope = PayloadEnvelope.v1(compression);
+
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		encrypted.write(envelope.toHeader());
+
+		try (OutputStream out = compression.compress(encrypt(encrypted, envelope.authenticatedData(aadTag), key)))
+		{
+			out.write(message);
+		}
+
+		return encrypted.toByteArray();
+	}
+
+	/**
+	 * Decrypts payloads with {@link PayloadEnvelope} header and payloads created by
+	 * {@link #encrypt(byte[], byte[], SecretKey)}.
+	 *
+	 * @param encrypted
+	 *            not <code>null</code>
+	 * @param aadTag
+	 *            not <code>null</code>
+	 * @param key
+	 *            not <code>null</code>
+	 * @return decrypted and decompressed message
+	 * @throws IOException
+	 *             if decompression failed or the decompressed data exceeds
+	 *             {@link PayloadCompression#DECOMPRESSED_SIZE_MAX} bytes
+	 */
+	public static byte[] decryptPayload(byte[] encrypted, byte[] aadTag, SecretKey key)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, IOException
+	{
+		// encryptPayload creates version 1 envelopes only
+		Optional<PayloadEnvelope> envelope = PayloadEnvelope.read(encrypted)
+				.filter(e -> e.getVersion() == PayloadEnvelope.VERSION_1);
+
+		if (envelope.isPresent())
+		{
+			byte[] compressed;
+			try
+			{
+				compressed = decrypt(Arrays.copyOfRange(encrypted, envelope.get().getHeaderLength(), encrypted.length),
+						envelope.get().authenticatedData(aadTag), key);
+			}
+			catch (BadPaddingException e)
+			{
+				try
+				{
+					return decrypt(encrypted, aadTag, key);
+				}
+				catch (BadPaddingException l)
+				{
+					throw e;
+				}
+			}
+
+			return envelope.get().getCompression().decompress(compressed);
+		}
+		else
+			return decrypt(encrypted, aadTag, key);
+	}
+
 	public static byte[] encryptWithStaticIv(byte[] message, byte[] addTag, SecretKey key, byte[] iv) throws Exception
 	{
 		Cipher cipher = Cipher.getInstance(AES_MODE_PADDING);
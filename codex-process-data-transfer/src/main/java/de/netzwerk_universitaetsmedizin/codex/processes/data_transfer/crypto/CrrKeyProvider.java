@@ -8,4 +8,30 @@ public interface CrrKeyProvider
 	PrivateKey getPrivateKey();
 
 	PublicKey getPublicKey();
+
+	/**
+	 * @return X25519 private-key of the CRR to decrypt payloads with {@link PayloadKeyEncapsulation#X25519_HKDF_SHA256}
+	 *         key encapsulation, <code>null</code> if not configured
+	 */
+	default PrivateKey getX25519PrivateKey()
+	{
+		return null;
+	}
+
+	/**
+	 * @return X25519 public-key of the CRR to encrypt payloads with {@link PayloadKeyEncapsulation#X25519_HKDF_SHA256}
+	 *         key encapsulation, <code>null</code> if not configured
+	 */
+	default PublicKey getX25519PublicKey()
+	{
+		return null;
+	}
+
+	/**
+	 * @return {@link #getX25519PublicKey()} if configured, {@link #getPublicKey()} otherwise
+	 */
+	default PublicKey getEncryptionPublicKey()
+	{
+		return getX25519PublicKey() != null ? getX25519PublicKey() : getPublicKey();
+	}
 }
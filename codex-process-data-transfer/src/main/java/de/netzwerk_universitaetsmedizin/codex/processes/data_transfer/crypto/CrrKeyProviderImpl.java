@@ -4,11 +4,16 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.stream.Collectors;
 
 import org.bouncycastle.pkcs.PKCSException;
 import org.slf4j.Logger;
@@ -24,6 +29,9 @@ public class CrrKeyProviderImpl implements CrrKeyProvider
 	// openssl rsa -in keypair.pem -pubout -out publickey.crt
 	// openssl pkcs8 -topk8 -inform PEM -outform PEM -nocrypt -in keypair.pem -out pkcs8.key
 
+	// openssl genpkey -algorithm X25519 -out x25519-private-key.pem
+	// openssl pkey -in x25519-private-key.pem -pubout -out x25519-public-key.pem
+
 	/**
 	 * One or both parameters should be <code>null</code>
 	 *
@@ -33,8 +41,28 @@ public class CrrKeyProviderImpl implements CrrKeyProvider
 	 */
 	public static CrrKeyProviderImpl fromFiles(String crrPrivateKeyFile, String crrPublicKeyFile)
 	{
-		logger.info("Configuring CrrKeyProvider with private-key from {} and public-key from {}", crrPrivateKeyFile,
-				crrPublicKeyFile);
+		return fromFiles(crrPrivateKeyFile, crrPublicKeyFile, null, null);
+	}
+
+	/**
+	 * One or both parameters of each key pair should be <code>null</code>
+	 *
+	 * @param crrPrivateKeyFile
+	 *            RSA private-key, PKCS#8 PEM
+	 * @param crrPublicKeyFile
+	 *            RSA public-key, PEM
+	 * @param crrX25519PrivateKeyFile
+	 *            X25519 private-key, PKCS#8 PEM
+	 * @param crrX25519PublicKeyFile
+	 *            X25519 public-key, PEM
+	 * @return
+	 */
+	public static CrrKeyProviderImpl fromFiles(String crrPrivateKeyFile, String crrPublicKeyFile,
+			String crrX25519PrivateKeyFile, String crrX25519PublicKeyFile)
+	{
+		logger.info(
+				"Configuring CrrKeyProvider with private-key from {}, public-key from {}, X25519 private-key from {} and X25519 public-key from {}",
+				crrPrivateKeyFile, crrPublicKeyFile, crrX25519PrivateKeyFile, crrX25519PublicKeyFile);
 
 		if (crrPrivateKeyFile != null && crrPublicKeyFile != null)
 		{
@@ -42,6 +70,12 @@ public class CrrKeyProviderImpl implements CrrKeyProvider
 					+ crrPublicKeyFile + ") set");
 		}
 
+		if (crrX25519PrivateKeyFile != null && crrX25519PublicKeyFile != null)
+		{
+			throw new RuntimeException("Both CRR X25519 private-key (" + crrX25519PrivateKeyFile
+					+ ") and CRR X25519 public-key (" + crrX25519PublicKeyFile + ") set");
+		}
+
 		PrivateKey crrPrivateKey = null;
 		RSAPublicKey crrPublicKey = null;
 		try
@@ -77,16 +111,67 @@ public class CrrKeyProviderImpl implements CrrKeyProvider
 			throw new RuntimeException("Error while reading CRR public-key from " + crrPublicKeyFile, e);
 		}
 
-		return new CrrKeyProviderImpl(crrPrivateKey, crrPublicKey);
+		PrivateKey crrX25519PrivateKey = null;
+		try
+		{
+			if (crrX25519PrivateKeyFile != null)
+				crrX25519PrivateKey = KeyFactory.getInstance(X25519AesGcmUtil.ALGORITHM).generatePrivate(
+						new PKCS8EncodedKeySpec(readPem(crrX25519PrivateKeyFile, "CRR X25519 private-key")));
+		}
+		catch (NoSuchAlgorithmException | InvalidKeySpecException | IOException e)
+		{
+			throw new RuntimeException("Error while reading CRR X25519 private-key from " + crrX25519PrivateKeyFile, e);
+		}
+
+		PublicKey crrX25519PublicKey = null;
+		try
+		{
+			if (crrX25519PublicKeyFile != null)
+				crrX25519PublicKey = KeyFactory.getInstance(X25519AesGcmUtil.ALGORITHM).generatePublic(
+						new X509EncodedKeySpec(readPem(crrX25519PublicKeyFile, "CRR X25519 public-key")));
+		}
+		catch (NoSuchAlgorithmException | InvalidKeySpecException | IOException e)
+		{
+			throw new RuntimeException("Error while reading CRR X25519 public-key from " + crrX25519PublicKeyFile, e);
+		}
+
+		return new CrrKeyProviderImpl(crrPrivateKey, crrPublicKey, crrX25519PrivateKey, crrX25519PublicKey);
+	}
+
+	private static byte[] readPem(String file, String name) throws IOException
+	{
+		Path path = Paths.get(file);
+		if (!Files.isReadable(path))
+			throw new RuntimeException(name + " at " + file + " not readable");
+
+		try
+		{
+			return Base64.getMimeDecoder().decode(Files.readAllLines(path).stream()
+					.filter(line -> !line.startsWith("-----")).collect(Collectors.joining()));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Invalid PEM encoding", e);
+		}
 	}
 
 	private final PrivateKey crrPrivateKey;
 	private final PublicKey crrPublicKey;
+	private final PrivateKey crrX25519PrivateKey;
+	private final PublicKey crrX25519PublicKey;
 
 	public CrrKeyProviderImpl(PrivateKey crrPrivateKey, PublicKey crrPublicKey)
+	{
+		this(crrPrivateKey, crrPublicKey, null, null);
+	}
+
+	public CrrKeyProviderImpl(PrivateKey crrPrivateKey, PublicKey crrPublicKey, PrivateKey crrX25519PrivateKey,
+			PublicKey crrX25519PublicKey)
 	{
 		this.crrPrivateKey = crrPrivateKey;
 		this.crrPublicKey = crrPublicKey;
+		this.crrX25519PrivateKey = crrX25519PrivateKey;
+		this.crrX25519PublicKey = crrX25519PublicKey;
 	}
 
 	@Override
@@ -100,4 +185,16 @@ public class CrrKeyProviderImpl implements CrrKeyProvider
 	{
 		return crrPublicKey;
 	}
+
+	@Override
+	public PrivateKey getX25519PrivateKey()
+	{
+		return crrX25519PrivateKey;
+	}
+
+	@Override
+	public PublicKey getX25519PublicKey()
+	{
+		return crrX25519PublicKey;
+	}
 }
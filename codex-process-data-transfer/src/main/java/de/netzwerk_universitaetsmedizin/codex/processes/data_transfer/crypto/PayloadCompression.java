@@ -0,0 +1,209 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.ENCRYPTED_BUNDLE_SIZE_MAX;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingInputStream;
+
+/**
+ * Compression applied to the plaintext of a {@link PayloadEnvelope} before encryption. Identifiers are part of the
+ * envelope header and must never change, a changed dictionary needs a new identifier.
+ * <p>
+ * Both deflate variants use raw deflate streams without zlib header and checksum, integrity is ensured by AES-GCM.
+ * Decompressed data is limited to {@link #DECOMPRESSED_SIZE_MAX} bytes.
+ */
+public enum PayloadCompression
+{
+	NONE(0, "none"), DEFLATE(1, "deflate"),
+
+	/**
+	 * Deflate with a preset dictionary of frequent FHIR JSON fragments, MII / GECCO profile and terminology URLs, see
+	 * <code>crypto/deflate-dictionary-v1.txt</code>. Most effective for small Bundles.
+	 */
+	DEFLATE_DICTIONARY_V1(2, "deflate-dictionary");
+
+	/**
+	 * Maximum number of decompressed bytes, same as the maximum size of encrypted payloads
+	 */
+	public static final long DECOMPRESSED_SIZE_MAX = ENCRYPTED_BUNDLE_SIZE_MAX;
+
+	private static final String DICTIONARY_V1_RESOURCE = "crypto/deflate-dictionary-v1.txt";
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final class DictionaryV1
+	{
+		static final byte[] DICTIONARY = readDictionary(DICTIONARY_V1_RESOURCE);
+	}
+
+	private final int id;
+	private final String configValue;
+
+	private PayloadCompression(int id, String configValue)
+	{
+		this.id = id;
+		this.configValue = configValue;
+	}
+
+	/**
+	 * @return identifier used in the envelope header
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	public String getConfigValue()
+	{
+		return configValue;
+	}
+
+	/**
+	 * @param id
+	 *            envelope header identifier
+	 * @return compression with the given identifier
+	 * @throws IllegalArgumentException
+	 *             if the identifier is not supported
+	 */
+	public static PayloadCompression fromId(int id)
+	{
+		return Stream.of(values()).filter(c -> c.id == id).findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Payload compression " + id + " not supported"));
+	}
+
+	/**
+	 * @param configValue
+	 *            <code>none</code>, <code>deflate</code> or <code>deflate-dictionary</code>, case insensitive
+	 * @return compression for the given config value
+	 * @throws IllegalArgumentException
+	 *             if the value is not supported
+	 */
+	public static PayloadCompression fromConfigValue(String configValue)
+	{
+		return Stream.of(values()).filter(c -> c.configValue.equalsIgnoreCase(String.valueOf(configValue).trim()))
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException(
+						"Payload compression '" + configValue + "' not supported, expected one of "
+								+ Stream.of(values()).map(c -> c.configValue).collect(Collectors.joining(", "))));
+	}
+
+	static byte[] readDictionary(String resource)
+	{
+		try (InputStream in = PayloadCompression.class.getClassLoader().getResourceAsStream(resource))
+		{
+			if (in == null)
+				throw new IllegalStateException("Resource " + resource + " not found");
+
+			// dictionary is the concatenation of all lines without line terminators
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
+			{
+				return reader.lines().collect(Collectors.joining()).getBytes(StandardCharsets.UTF_8);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	byte[] getDictionary()
+	{
+		return this == DEFLATE_DICTIONARY_V1 ? DictionaryV1.DICTIONARY : null;
+	}
+
+	/**
+	 * @param out
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @return compressing stream, has to be closed
+	 */
+	public OutputStream compress(OutputStream out)
+	{
+		if (this == NONE)
+			return out;
+
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		if (getDictionary() != null)
+			deflater.setDictionary(getDictionary());
+
+		return new DeflaterOutputStream(out, deflater, BUFFER_SIZE)
+		{
+			@Override
+			public void close() throws IOException
+			{
+				try
+				{
+					super.close();
+				}
+				finally
+				{
+					deflater.end();
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param compressed
+	 *            not <code>null</code>
+	 * @return decompressed data
+	 * @throws IOException
+	 *             if decompression failed or the decompressed data exceeds {@link #DECOMPRESSED_SIZE_MAX} bytes
+	 */
+	public byte[] decompress(byte[] compressed) throws IOException
+	{
+		try (InputStream in = decompress(new ByteArrayInputStream(compressed)))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * @param in
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @return decompressing stream, has to be closed, reading fails with an {@link IOException} if the decompressed
+	 *         data exceeds {@link #DECOMPRESSED_SIZE_MAX} bytes
+	 */
+	public InputStream decompress(InputStream in)
+	{
+		return decompress(in, DECOMPRESSED_SIZE_MAX);
+	}
+
+	InputStream decompress(InputStream in, long limit)
+	{
+		if (this == NONE)
+			return new CountingInputStream(in, limit);
+
+		Inflater inflater = new Inflater(true);
+		if (getDictionary() != null)
+			inflater.setDictionary(getDictionary());
+
+		return new CountingInputStream(new InflaterInputStream(in, inflater, BUFFER_SIZE)
+		{
+			@Override
+			public void close() throws IOException
+			{
+				try
+				{
+					super.close();
+				}
+				finally
+				{
+					inflater.end();
+				}
+			}
+		}, limit);
+	}
+}
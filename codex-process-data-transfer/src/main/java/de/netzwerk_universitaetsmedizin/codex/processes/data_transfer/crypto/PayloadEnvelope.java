@@ -0,0 +1,255 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Header of versioned transfer payloads, prepended to the formats of {@link RsaAesGcmUtil}, {@link X25519AesGcmUtil}
+ * and {@link AesGcmUtil}:
+ *
+ * <pre>
+ * magic (4 bytes: 0xFF 'N' 'U' 'M') | version (1 byte) | compression (1 byte, see PayloadCompression)
+ * version 2 only: segment size (4 bytes, unsigned big endian)
+ * version 3 only: key encapsulation (1 byte, see PayloadKeyEncapsulation) | segment size (4 bytes, unsigned big endian)
+ * </pre>
+ *
+ * The header is authenticated as part of the AES-GCM additional authenticated data, the compression is applied to the
+ * plaintext before encryption. Version 1 payloads are encrypted with a single AES-GCM invocation, version 2 payloads
+ * with {@link SegmentedAesGcm}. Version 1 and 2 payloads use {@link PayloadKeyEncapsulation#RSA_PKCS1}, version 3
+ * payloads specify the key encapsulation and are encrypted with {@link SegmentedAesGcm} if the segment size is not
+ * <code>0</code>.
+ * <p>
+ * Payloads without header, written by earlier versions, start with the RSA encrypted AES key or the random IV. A legacy
+ * payload starting with the magic bytes by chance fails authentication as envelope and is decrypted as legacy payload.
+ */
+public final class PayloadEnvelope
+{
+	public static final int VERSION_1 = 1;
+	public static final int VERSION_2 = 2;
+	public static final int VERSION_3 = 3;
+
+	public static final int MIN_SEGMENT_SIZE = 1024;
+	public static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	static final byte[] MAGIC = { (byte) 0xFF, 'N', 'U', 'M' };
+	static final int HEADER_LENGTH = MAGIC.length + 2;
+	static final int HEADER_LENGTH_V2 = HEADER_LENGTH + 4;
+	static final int HEADER_LENGTH_V3 = HEADER_LENGTH + 5;
+
+	/**
+	 * Number of bytes at the start of a payload needed to detect the envelope of all versions with
+	 * {@link #read(byte[])}
+	 */
+	public static final int MAX_HEADER_LENGTH = HEADER_LENGTH_V3;
+
+	private final int version;
+	private final PayloadCompression compression;
+	private final PayloadKeyEncapsulation keyEncapsulation;
+	private final int segmentSize;
+
+	private PayloadEnvelope(int version, PayloadCompression compression, PayloadKeyEncapsulation keyEncapsulation,
+			int segmentSize)
+	{
+		this.version = version;
+		this.compression = compression;
+		this.keyEncapsulation = keyEncapsulation;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * @param compression
+	 *            not <code>null</code>
+	 * @return version 1 envelope
+	 */
+	public static PayloadEnvelope v1(PayloadCompression compression)
+	{
+		return new PayloadEnvelope(VERSION_1, Objects.requireNonNull(compression, "compression"),
+				PayloadKeyEncapsulation.RSA_PKCS1, 0);
+	}
+
+	/**
+	 * @param compression
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            plaintext bytes per segment, {@value #MIN_SEGMENT_SIZE} to {@value #MAX_SEGMENT_SIZE}
+	 * @return version 2 envelope
+	 * @throws IllegalArgumentException
+	 *             if the segment size is not supported
+	 */
+	public static PayloadEnvelope v2(PayloadCompression compression, int segmentSize)
+	{
+		if (!isSupportedSegmentSize(segmentSize))
+			throw new IllegalArgumentException("Segment size " + segmentSize + " not supported, expected "
+					+ MIN_SEGMENT_SIZE + " to " + MAX_SEGMENT_SIZE);
+
+		return new PayloadEnvelope(VERSION_2, Objects.requireNonNull(compression, "compression"),
+				PayloadKeyEncapsulation.RSA_PKCS1, segmentSize);
+	}
+
+	/**
+	 * @param compression
+	 *            not <code>null</code>
+	 * @param keyEncapsulation
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            plaintext bytes per segment, {@value #MIN_SEGMENT_SIZE} to {@value #MAX_SEGMENT_SIZE}, or
+	 *            <code>0</code> for a single AES-GCM invocation
+	 * @return version 3 envelope
+	 * @throws IllegalArgumentException
+	 *             if the segment size is not supported
+	 */
+	public static PayloadEnvelope v3(PayloadCompression compression, PayloadKeyEncapsulation keyEncapsulation,
+			int segmentSize)
+	{
+		if (segmentSize != 0 && !isSupportedSegmentSize(segmentSize))
+			throw new IllegalArgumentException("Segment size " + segmentSize + " not supported, expected 0 or "
+					+ MIN_SEGMENT_SIZE + " to " + MAX_SEGMENT_SIZE);
+
+		return new PayloadEnvelope(VERSION_3, Objects.requireNonNull(compression, "compression"),
+				Objects.requireNonNull(keyEncapsulation, "keyEncapsulation"), segmentSize);
+	}
+
+	public static boolean isSupportedSegmentSize(int segmentSize)
+	{
+		return segmentSize >= MIN_SEGMENT_SIZE && segmentSize <= MAX_SEGMENT_SIZE;
+	}
+
+	/**
+	 * @param payload
+	 *            not <code>null</code>
+	 * @return envelope read from the header of the given payload, empty if the payload has no header with a supported
+	 *         version and compression
+	 */
+	public static Optional<PayloadEnvelope> read(byte[] payload)
+	{
+		Objects.requireNonNull(payload, "payload");
+
+		if (payload.length < HEADER_LENGTH || !Arrays.equals(MAGIC, 0, MAGIC.length, payload, 0, MAGIC.length))
+			return Optional.empty();
+
+		int version = Byte.toUnsignedInt(payload[MAGIC.length]);
+		int compression = Byte.toUnsignedInt(payload[MAGIC.length + 1]);
+		int keyEncapsulation = PayloadKeyEncapsulation.RSA_PKCS1.getId();
+		int segmentSize = 0;
+
+		if (version == VERSION_2 && payload.length >= HEADER_LENGTH_V2)
+		{
+			segmentSize = readSegmentSize(payload, HEADER_LENGTH);
+
+			if (!isSupportedSegmentSize(segmentSize))
+				return Optional.empty();
+		}
+		else if (version == VERSION_3 && payload.length >= HEADER_LENGTH_V3)
+		{
+			keyEncapsulation = Byte.toUnsignedInt(payload[HEADER_LENGTH]);
+			segmentSize = readSegmentSize(payload, HEADER_LENGTH + 1);
+
+			if (segmentSize != 0 && !isSupportedSegmentSize(segmentSize))
+				return Optional.empty();
+		}
+		else if (version != VERSION_1)
+			return Optional.empty();
+
+		try
+		{
+			return Optional.of(new PayloadEnvelope(version, PayloadCompression.fromId(compression),
+					PayloadKeyEncapsulation.fromId(keyEncapsulation), segmentSize));
+		}
+		catch (IllegalArgumentException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	private static int readSegmentSize(byte[] payload, int offset)
+	{
+		return ((payload[offset] & 0xFF) << 24) | ((payload[offset + 1] & 0xFF) << 16)
+				| ((payload[offset + 2] & 0xFF) << 8) | (payload[offset + 3] & 0xFF);
+	}
+
+	public int getVersion()
+	{
+		return version;
+	}
+
+	public PayloadCompression getCompression()
+	{
+		return compression;
+	}
+
+	/**
+	 * @return {@link PayloadKeyEncapsulation#RSA_PKCS1} for version 1 and 2
+	 */
+	public PayloadKeyEncapsulation getKeyEncapsulation()
+	{
+		return keyEncapsulation;
+	}
+
+	/**
+	 * @return plaintext bytes per {@link SegmentedAesGcm} segment, <code>0</code> for a single AES-GCM invocation
+	 */
+	public int getSegmentSize()
+	{
+		return segmentSize;
+	}
+
+	public boolean isSegmented()
+	{
+		return segmentSize != 0;
+	}
+
+	public int getHeaderLength()
+	{
+		switch (version)
+		{
+			case VERSION_2:
+				return HEADER_LENGTH_V2;
+			case VERSION_3:
+				return HEADER_LENGTH_V3;
+			default:
+				return HEADER_LENGTH;
+		}
+	}
+
+	/**
+	 * @return header bytes
+	 */
+	public byte[] toHeader()
+	{
+		byte[] header = Arrays.copyOf(MAGIC, getHeaderLength());
+		header[MAGIC.length] = (byte) version;
+		header[MAGIC.length + 1] = (byte) compression.getId();
+
+		if (version == VERSION_2)
+			writeSegmentSize(header, HEADER_LENGTH);
+		else if (version == VERSION_3)
+		{
+			header[HEADER_LENGTH] = (byte) keyEncapsulation.getId();
+			writeSegmentSize(header, HEADER_LENGTH + 1);
+		}
+
+		return header;
+	}
+
+	private void writeSegmentSize(byte[] header, int offset)
+	{
+		header[offset] = (byte) (segmentSize >>> 24);
+		header[offset + 1] = (byte) (segmentSize >>> 16);
+		header[offset + 2] = (byte) (segmentSize >>> 8);
+		header[offset + 3] = (byte) segmentSize;
+	}
+
+	/**
+	 * @param aad
+	 *            not <code>null</code>
+	 * @return the given additional authenticated data followed by the header bytes
+	 */
+	byte[] authenticatedData(byte[] aad)
+	{
+		byte[] header = toHeader();
+		byte[] authenticated = Arrays.copyOf(aad, aad.length + header.length);
+		System.arraycopy(header, 0, authenticated, aad.length, header.length);
+		return authenticated;
+	}
+}
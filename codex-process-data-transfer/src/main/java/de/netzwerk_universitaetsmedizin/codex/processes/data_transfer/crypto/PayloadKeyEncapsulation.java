@@ -0,0 +1,49 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import java.util.stream.Stream;
+
+/**
+ * Encapsulation of the per payload AES key for the CRR. Identifiers are part of the {@link PayloadEnvelope#VERSION_3}
+ * header and must never change, payloads without header or with a version 1 or 2 header use {@link #RSA_PKCS1}.
+ */
+public enum PayloadKeyEncapsulation
+{
+	/**
+	 * AES key encrypted with the CRR RSA-4096 public-key, see {@link RsaAesGcmUtil}.
+	 */
+	RSA_PKCS1(0),
+
+	/**
+	 * AES key derived with HKDF-SHA256 from an ephemeral X25519 key agreement with the CRR X25519 public-key, see
+	 * {@link X25519AesGcmUtil}.
+	 */
+	X25519_HKDF_SHA256(1);
+
+	private final int id;
+
+	private PayloadKeyEncapsulation(int id)
+	{
+		this.id = id;
+	}
+
+	/**
+	 * @return identifier used in the envelope header
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * @param id
+	 *            envelope header identifier
+	 * @return key encapsulation with the given identifier
+	 * @throws IllegalArgumentException
+	 *             if the identifier is not supported
+	 */
+	public static PayloadKeyEncapsulation fromId(int id)
+	{
+		return Stream.of(values()).filter(k -> k.id == id).findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Payload key encapsulation " + id + " not supported"));
+	}
+}
@@ -1,5 +1,10 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -8,6 +13,8 @@ import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Optional;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -46,7 +53,270 @@ public class RsaAesGcmUtil
 		return output;
 	}
 
+	/**
+	 * Streaming variant of {@link #encrypt(PublicKey, byte[])}, writes the encrypted AES key and IV to the given stream
+	 * and returns a stream encrypting all data written to it. The output can be decrypted with
+	 * {@link #decrypt(PrivateKey, byte[])}.
+	 *
+	 * @param publicKey
+	 *            not <code>null</code>
+	 * @param out
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @return encrypting stream, has to be closed to write the authentication tag
+	 * @throws IOException
+	 *             if the encrypted AES key or IV could not be written
+	 */
+	public static OutputStream encrypt(PublicKey publicKey, OutputStream out)
+			throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, IOException
+	{
+		SecretKey aesKey = AesGcmUtil.generateAES256Key();
+
+		byte[] encryptedAesKey = encryptRsa(aesKey, publicKey);
+
+		if (encryptedAesKey.length != ENCRYPTED_AES_KEY_LENGTH)
+			throw new IllegalStateException("Encrypted AES key length = " + ENCRYPTED_AES_KEY_LENGTH + " expected");
+
+		out.write(encryptedAesKey);
+		return AesGcmUtil.encrypt(out, AAD, aesKey);
+	}
+
+	/**
+	 * Encrypts the given data with a {@link PayloadEnvelope} header, payloads with header can not be decrypted by
+	 * versions before the envelope was introduced.
+	 *
+	 * @param publicKey
+	 *            not <code>null</code>
+	 * @param data
+	 *            not <code>null</code>
+	 * @param compression
+	 *            not <code>null</code>
+	 * @return header, RSA encrypted AES key, IV and AES-GCM encrypted compressed data
+	 * @see #encrypt(PublicKey, OutputStream, PayloadCompression)
+	 */
+	public static byte[] encrypt(PublicKey publicKey, byte[] data, PayloadCompression compression)
+			throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, IOException
+	{
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		try (OutputStream out = encrypt(publicKey, encrypted, compression))
+		{
+			out.write(data);
+		}
+
+		return encrypted.toByteArray();
+	}
+
+	/**
+	 * Streaming variant of {@link #encrypt(PublicKey, byte[], PayloadCompression)}.
+	 *
+	 * @param publicKey
+	 *            not <code>null</code>
+	 * @param out
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @param compression
+	 *            not <code>null</code>
+	 * @return compressing and encrypting stream, has to be closed to write the authentication tag
+	 * @throws IOException
+	 *             if the header, encrypted AES key or IV could not be written
+	 */
+	public static OutputStream encrypt(PublicKey publicKey, OutputStream out, PayloadCompression compression)
+			throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, IOException
+	{
+		return encrypt(publicKey, out, compression, 0);
+	}
+
+	/**
+	 * Encrypts the given data with a {@link PayloadEnvelope#VERSION_2} header using {@link SegmentedAesGcm}, payloads
+	 * can not be decrypted by versions before segmented encryption was introduced.
+	 *
+	 * @param publicKey
+	 *            not <code>null</code>
+	 * @param data
+	 *            not <code>null</code>
+	 * @param compression
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            {@value PayloadEnvelope#MIN_SEGMENT_SIZE} to {@value PayloadEnvelope#MAX_SEGMENT_SIZE}, or
+	 *            <code>0</code> for a {@link PayloadEnvelope#VERSION_1} payload
+	 * @return header, RSA encrypted AES key, nonce prefix and AES-GCM encrypted segments of the compressed data
+	 * @see #encrypt(PublicKey, OutputStream, PayloadCompression, int)
+	 */
+	public static byte[] encrypt(PublicKey publicKey, byte[] data, PayloadCompression compression, int segmentSize)
+			throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, IOException
+	{
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		try (OutputStream out = encrypt(publicKey, encrypted, compression, segmentSize))
+		{
+			out.write(data);
+		}
+
+		return encrypted.toByteArray();
+	}
+
+	/**
+	 * Streaming variant of {@link #encrypt(PublicKey, byte[], PayloadCompression, int)}.
+	 *
+	 * @param publicKey
+	 *            not <code>null</code>
+	 * @param out
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @param compression
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            {@value PayloadEnvelope#MIN_SEGMENT_SIZE} to {@value PayloadEnvelope#MAX_SEGMENT_SIZE}, or
+	 *            <code>0</code> for a {@link PayloadEnvelope#VERSION_1} payload
+	 * @return compressing and encrypting stream, has to be closed to write the last segment or authentication tag
+	 * @throws IOException
+	 *             if the header, encrypted AES key, IV or nonce prefix could not be written
+	 */
+	public static OutputStream encrypt(PublicKey publicKey, OutputStream out, PayloadCompression compression,
+			int segmentSize) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, IOException
+	{
+		PayloadEnvelope envelope = segmentSize == 0 ? PayloadEnvelope.v1(compression)
+				: PayloadEnvelope.v2(compression, segmentSize);
+		SecretKey aesKey = AesGcmUtil.generateAES256Key();
+
+		byte[] encryptedAesKey = encryptRsa(aesKey, publicKey);
+
+		if (encryptedAesKey.length != ENCRYPTED_AES_KEY_LENGTH)
+			throw new IllegalStateException("Encrypted AES key length = " + ENCRYPTED_AES_KEY_LENGTH + " expected");
+
+		out.write(envelope.toHeader());
+		out.write(encryptedAesKey);
+
+		byte[] aad = envelope.authenticatedData(AAD);
+		return compression.compress(envelope.isSegmented() ? SegmentedAesGcm.encrypt(out, aad, aesKey, segmentSize)
+				: AesGcmUtil.encrypt(out, aad, aesKey));
+	}
+
+	/**
+	 * Decrypts payloads with and without {@link PayloadEnvelope} header, segments of {@link PayloadEnvelope#VERSION_2}
+	 * payloads are decrypted in parallel.
+	 *
+	 * @param privateKey
+	 *            not <code>null</code>
+	 * @param encrypted
+	 *            not <code>null</code>
+	 * @return decrypted and decompressed data
+	 * @throws IOException
+	 *             if decompression failed or the decompressed data exceeds
+	 *             {@link PayloadCompression#DECOMPRESSED_SIZE_MAX} bytes
+	 */
 	public static byte[] decrypt(PrivateKey privateKey, byte[] encrypted)
+			throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, NoSuchPaddingException,
+			NoSuchAlgorithmException, InvalidAlgorithmParameterException, IOException
+	{
+		Optional<PayloadEnvelope> envelope = PayloadEnvelope.read(encrypted)
+				.filter(e -> PayloadKeyEncapsulation.RSA_PKCS1.equals(e.getKeyEncapsulation()));
+
+		if (envelope.isPresent())
+		{
+			try
+			{
+				return decrypt(privateKey, encrypted, envelope.get());
+			}
+			catch (BadPaddingException e)
+			{
+				try
+				{
+					return decryptLegacy(privateKey, encrypted);
+				}
+				catch (BadPaddingException | IllegalBlockSizeException l)
+				{
+					throw e;
+				}
+			}
+		}
+		else
+			return decryptLegacy(privateKey, encrypted);
+	}
+
+	private static byte[] decrypt(PrivateKey privateKey, byte[] encrypted, PayloadEnvelope envelope)
+			throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, NoSuchPaddingException,
+			NoSuchAlgorithmException, InvalidAlgorithmParameterException, IOException
+	{
+		int keyOffset = envelope.getHeaderLength();
+		int dataOffset = keyOffset + ENCRYPTED_AES_KEY_LENGTH;
+
+		if (encrypted.length < dataOffset)
+			throw new BadPaddingException("Encrypted data truncated");
+
+		SecretKey key = decryptRsa(Arrays.copyOfRange(encrypted, keyOffset, dataOffset), privateKey);
+		byte[] compressed = envelope.isSegmented()
+				? SegmentedAesGcm.decrypt(encrypted, dataOffset, envelope.authenticatedData(AAD), key,
+						envelope.getSegmentSize())
+				: AesGcmUtil.decrypt(Arrays.copyOfRange(encrypted, dataOffset, encrypted.length),
+						envelope.authenticatedData(AAD), key);
+
+		return envelope.getCompression().decompress(compressed);
+	}
+
+	/**
+	 * Streaming variant of {@link #decrypt(PrivateKey, byte[])}. Plaintext of {@link PayloadEnvelope#VERSION_2}
+	 * payloads is returned segment by segment after each segment was authenticated, a failed authentication is reported
+	 * as {@link IOException} with a {@link BadPaddingException} as cause. Payloads encrypted with a single AES-GCM
+	 * invocation are read completely and authenticated before the returned stream is created.
+	 *
+	 * @param privateKey
+	 *            not <code>null</code>
+	 * @param encrypted
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @return decrypting and decompressing stream, reading fails with an {@link IOException} if the decompressed data
+	 *         exceeds {@link PayloadCompression#DECOMPRESSED_SIZE_MAX} bytes
+	 * @throws IOException
+	 *             if reading the header or encrypted AES key failed
+	 */
+	public static InputStream decrypt(PrivateKey privateKey, InputStream encrypted)
+			throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, NoSuchPaddingException,
+			NoSuchAlgorithmException, InvalidAlgorithmParameterException, IOException
+	{
+		byte[] header = encrypted.readNBytes(PayloadEnvelope.HEADER_LENGTH_V2);
+		Optional<PayloadEnvelope> envelope = PayloadEnvelope.read(header).filter(PayloadEnvelope::isSegmented);
+
+		if (envelope.isPresent())
+		{
+			byte[] encryptedAesKey = encrypted.readNBytes(ENCRYPTED_AES_KEY_LENGTH);
+
+			SecretKey key;
+			try
+			{
+				key = decryptRsa(encryptedAesKey, privateKey);
+			}
+			catch (BadPaddingException | IllegalBlockSizeException e)
+			{
+				// legacy payload starting with the magic bytes by chance
+				try (encrypted)
+				{
+					return new ByteArrayInputStream(decrypt(privateKey, concat(header, encryptedAesKey, encrypted)));
+				}
+			}
+
+			return envelope.get().getCompression().decompress(SegmentedAesGcm.decrypt(encrypted,
+					envelope.get().authenticatedData(AAD), key, envelope.get().getSegmentSize()));
+		}
+		else
+		{
+			try (encrypted)
+			{
+				return new ByteArrayInputStream(decrypt(privateKey, concat(header, new byte[0], encrypted)));
+			}
+		}
+	}
+
+	private static byte[] concat(byte[] header, byte[] encryptedAesKey, InputStream remaining) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(header);
+		out.write(encryptedAesKey);
+		remaining.transferTo(out);
+		return out.toByteArray();
+	}
+
+	private static byte[] decryptLegacy(PrivateKey privateKey, byte[] encrypted)
 			throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, NoSuchPaddingException,
 			NoSuchAlgorithmException, InvalidAlgorithmParameterException
 	{
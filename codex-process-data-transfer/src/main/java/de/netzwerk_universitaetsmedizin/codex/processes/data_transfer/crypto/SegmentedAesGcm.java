@@ -0,0 +1,445 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Segmented AES-GCM used by {@link PayloadEnvelope#VERSION_2} payloads. The plaintext is split into segments of a fixed
+ * size, every segment is encrypted with its own nonce and authentication tag:
+ *
+ * <pre>
+ * nonce prefix (7 random bytes) | segment 0 | segment 1 | ... | segment n
+ * segment i: AES-GCM(key, nonce, aad, plaintext i) including the 16 byte authentication tag
+ * nonce: nonce prefix (7 bytes) | i (4 bytes, unsigned big endian) | 0x01 for segment n, 0x00 otherwise (1 byte)
+ * </pre>
+ *
+ * All segments but the last contain exactly segment size plaintext bytes, the last segment contains 1 to segment size
+ * bytes, or 0 bytes if the plaintext is empty. Segment index and last segment flag in the nonce detect reordered,
+ * removed and appended segments as well as truncation at a segment boundary.
+ * <p>
+ * Segments are authenticated independently, decrypted plaintext can be released segment by segment and modified
+ * payloads fail at the first modified segment. Segments of payloads available in memory are decrypted in parallel.
+ */
+public final class SegmentedAesGcm
+{
+	public static final int NONCE_PREFIX_LENGTH = 7;
+	public static final int TAG_LENGTH = 16;
+
+	private static final String AES = "AES";
+	private static final String AES_MODE_PADDING = "AES/GCM/NoPadding";
+	private static final int NONCE_LENGTH = NONCE_PREFIX_LENGTH + 5;
+	private static final long MAX_SEGMENTS = 1L << 32;
+
+	private SegmentedAesGcm()
+	{
+	}
+
+	/**
+	 * Writes a random nonce prefix to the given stream and returns a stream encrypting all data written to it.
+	 *
+	 * @param out
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @param aad
+	 *            not <code>null</code>, authenticated with every segment
+	 * @param key
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            <code>&gt; 0</code>
+	 * @return encrypting stream, has to be closed to write the last segment
+	 * @throws IOException
+	 *             if the nonce prefix could not be written
+	 */
+	public static OutputStream encrypt(OutputStream out, byte[] aad, SecretKey key, int segmentSize)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, IOException
+	{
+		return encrypt(out, aad, key, segmentSize, AesGcmUtil.generateIv(NONCE_PREFIX_LENGTH));
+	}
+
+	static OutputStream encrypt(OutputStream out, byte[] aad, SecretKey key, int segmentSize, byte[] noncePrefix)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, IOException
+	{
+		Objects.requireNonNull(out, "out");
+		checkParameters(aad, key, segmentSize);
+		if (noncePrefix.length != NONCE_PREFIX_LENGTH)
+			throw new IllegalArgumentException("Nonce prefix length " + NONCE_PREFIX_LENGTH + " expected");
+
+		out.write(noncePrefix);
+		return new EncryptingOutputStream(out, aad, key, segmentSize, noncePrefix);
+	}
+
+	/**
+	 * Reads the nonce prefix from the given stream and returns a stream decrypting the segments following the prefix.
+	 * Plaintext is returned after the segment containing it was authenticated, a failed authentication is reported as
+	 * {@link IOException} with an {@link AEADBadTagException} as cause.
+	 *
+	 * @param in
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @param aad
+	 *            not <code>null</code>
+	 * @param key
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            <code>&gt; 0</code>
+	 * @return decrypting stream
+	 * @throws IOException
+	 *             if the nonce prefix could not be read
+	 */
+	public static InputStream decrypt(InputStream in, byte[] aad, SecretKey key, int segmentSize)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, IOException
+	{
+		Objects.requireNonNull(in, "in");
+		checkParameters(aad, key, segmentSize);
+
+		byte[] noncePrefix = in.readNBytes(NONCE_PREFIX_LENGTH);
+		if (noncePrefix.length != NONCE_PREFIX_LENGTH)
+			throw new EOFException("Nonce prefix truncated");
+
+		return new DecryptingInputStream(in, aad, key, segmentSize, noncePrefix);
+	}
+
+	/**
+	 * Decrypts the segments in parallel.
+	 *
+	 * @param encrypted
+	 *            not <code>null</code>
+	 * @param offset
+	 *            position of the nonce prefix in <b>encrypted</b>
+	 * @param aad
+	 *            not <code>null</code>
+	 * @param key
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            <code>&gt; 0</code>
+	 * @return plaintext
+	 * @throws AEADBadTagException
+	 *             if a segment could not be authenticated or segments are missing
+	 */
+	public static byte[] decrypt(byte[] encrypted, int offset, byte[] aad, SecretKey key, int segmentSize)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException
+	{
+		Objects.requireNonNull(encrypted, "encrypted");
+		checkParameters(aad, key, segmentSize);
+		Objects.checkIndex(offset, encrypted.length + 1);
+
+		if (encrypted.length - offset < NONCE_PREFIX_LENGTH + TAG_LENGTH)
+			throw new AEADBadTagException("Encrypted data truncated");
+
+		byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+		System.arraycopy(encrypted, offset, noncePrefix, 0, NONCE_PREFIX_LENGTH);
+
+		int segmentsOffset = offset + NONCE_PREFIX_LENGTH;
+		int segmentsLength = encrypted.length - segmentsOffset;
+		int encryptedSegmentSize = segmentSize + TAG_LENGTH;
+
+		int fullSegments = segmentsLength / encryptedSegmentSize;
+		int remainder = segmentsLength % encryptedSegmentSize;
+
+		if (remainder > 0 && remainder < TAG_LENGTH)
+			throw new AEADBadTagException("Last segment truncated");
+
+		int segments = remainder == 0 ? fullSegments : fullSegments + 1;
+		byte[] plaintext = new byte[segmentsLength - segments * TAG_LENGTH];
+		SecretKeySpec keySpec = new SecretKeySpec(key.getEncoded(), AES);
+
+		// contiguous ranges of segments, decrypted with one cipher instance per range
+		int ranges = Math.min(segments, Runtime.getRuntime().availableProcessors() * 4);
+		int segmentsPerRange = (segments + ranges - 1) / ranges;
+
+		try
+		{
+			IntStream range = IntStream.range(0, ranges);
+			(ranges > 1 ? range.parallel() : range).forEach(r ->
+			{
+				int i = r * segmentsPerRange;
+				try
+				{
+					Cipher cipher = Cipher.getInstance(AES_MODE_PADDING);
+
+					for (; i < Math.min(segments, (r + 1) * segmentsPerRange); i++)
+					{
+						int segmentOffset = segmentsOffset + i * encryptedSegmentSize;
+						int segmentLength = Math.min(encryptedSegmentSize, encrypted.length - segmentOffset);
+
+						cipher.init(Cipher.DECRYPT_MODE, keySpec,
+								new GCMParameterSpec(TAG_LENGTH * 8, nonce(noncePrefix, i, i == segments - 1)));
+						cipher.updateAAD(aad);
+						cipher.doFinal(encrypted, segmentOffset, segmentLength, plaintext, i * segmentSize);
+					}
+				}
+				catch (GeneralSecurityException e)
+				{
+					throw new SegmentException(i, e);
+				}
+			});
+		}
+		catch (SegmentException e)
+		{
+			if (e.getCause() instanceof BadPaddingException b)
+				throw b;
+			else if (e.getCause() instanceof InvalidKeyException k)
+				throw k;
+			else if (e.getCause() instanceof InvalidAlgorithmParameterException p)
+				throw p;
+			else if (e.getCause() instanceof IllegalBlockSizeException s)
+				throw s;
+			else if (e.getCause() instanceof NoSuchAlgorithmException a)
+				throw a;
+			else if (e.getCause() instanceof NoSuchPaddingException p)
+				throw p;
+			else
+				throw new RuntimeException(e.getCause());
+		}
+
+		return plaintext;
+	}
+
+	private static void checkParameters(byte[] aad, SecretKey key, int segmentSize)
+	{
+		Objects.requireNonNull(aad, "aad");
+		Objects.requireNonNull(key, "key");
+		if (segmentSize <= 0)
+			throw new IllegalArgumentException("segmentSize <= 0");
+	}
+
+	static byte[] nonce(byte[] noncePrefix, long segment, boolean last)
+	{
+		byte[] nonce = new byte[NONCE_LENGTH];
+		System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+		nonce[NONCE_PREFIX_LENGTH] = (byte) (segment >>> 24);
+		nonce[NONCE_PREFIX_LENGTH + 1] = (byte) (segment >>> 16);
+		nonce[NONCE_PREFIX_LENGTH + 2] = (byte) (segment >>> 8);
+		nonce[NONCE_PREFIX_LENGTH + 3] = (byte) segment;
+		nonce[NONCE_PREFIX_LENGTH + 4] = (byte) (last ? 1 : 0);
+		return nonce;
+	}
+
+	private static final class SegmentException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		SegmentException(int segment, GeneralSecurityException cause)
+		{
+			super("Segment " + segment + ": " + cause.getMessage(), cause);
+		}
+	}
+
+	private static final class EncryptingOutputStream extends FilterOutputStream
+	{
+		private final byte[] aad;
+		private final SecretKeySpec key;
+		private final byte[] noncePrefix;
+		private final Cipher cipher;
+
+		private final byte[] segment;
+		private final byte[] encryptedSegment;
+		private int position;
+		private long index;
+		private boolean closed;
+
+		EncryptingOutputStream(OutputStream out, byte[] aad, SecretKey key, int segmentSize, byte[] noncePrefix)
+				throws NoSuchAlgorithmException, NoSuchPaddingException
+		{
+			super(out);
+
+			this.aad = aad;
+			this.key = new SecretKeySpec(key.getEncoded(), AES);
+			this.noncePrefix = noncePrefix;
+			this.cipher = Cipher.getInstance(AES_MODE_PADDING);
+
+			segment = new byte[segmentSize];
+			encryptedSegment = new byte[segmentSize + TAG_LENGTH];
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			Objects.checkFromIndexSize(off, len, b.length);
+			if (closed)
+				throw new IOException("Stream closed");
+
+			while (len > 0)
+			{
+				// a full segment is only written if more data follows, the last segment is written on close
+				if (position == segment.length)
+					writeSegment(false);
+
+				int n = Math.min(len, segment.length - position);
+				System.arraycopy(b, off, segment, position, n);
+				position += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void writeSegment(boolean last) throws IOException
+		{
+			if (index >= MAX_SEGMENTS)
+				throw new IOException("Maximum number of segments exceeded");
+
+			try
+			{
+				cipher.init(Cipher.ENCRYPT_MODE, key,
+						new GCMParameterSpec(TAG_LENGTH * 8, nonce(noncePrefix, index, last)));
+				cipher.updateAAD(aad);
+				int length = cipher.doFinal(segment, 0, position, encryptedSegment, 0);
+				out.write(encryptedSegment, 0, length);
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new IOException("Unable to encrypt segment " + index, e);
+			}
+
+			index++;
+			position = 0;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (closed)
+				return;
+
+			closed = true;
+			try
+			{
+				writeSegment(true);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+	}
+
+	private static final class DecryptingInputStream extends InputStream
+	{
+		private final PushbackInputStream in;
+		private final byte[] aad;
+		private final SecretKeySpec key;
+		private final byte[] noncePrefix;
+		private final Cipher cipher;
+
+		private final byte[] encryptedSegment;
+		private final byte[] segment;
+		private int position;
+		private int limit;
+		private long index;
+		private boolean last;
+
+		DecryptingInputStream(InputStream in, byte[] aad, SecretKey key, int segmentSize, byte[] noncePrefix)
+				throws NoSuchAlgorithmException, NoSuchPaddingException
+		{
+			this.in = new PushbackInputStream(in, 1);
+			this.aad = aad;
+			this.key = new SecretKeySpec(key.getEncoded(), AES);
+			this.noncePrefix = noncePrefix;
+			this.cipher = Cipher.getInstance(AES_MODE_PADDING);
+
+			encryptedSegment = new byte[segmentSize + TAG_LENGTH];
+			segment = new byte[segmentSize];
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : Byte.toUnsignedInt(b[0]);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			Objects.checkFromIndexSize(off, len, b.length);
+			if (len == 0)
+				return 0;
+
+			while (position == limit)
+			{
+				if (last)
+					return -1;
+
+				readSegment();
+			}
+
+			int n = Math.min(len, limit - position);
+			System.arraycopy(segment, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return limit - position;
+		}
+
+		private void readSegment() throws IOException
+		{
+			int length = in.readNBytes(encryptedSegment, 0, encryptedSegment.length);
+
+			if (length < encryptedSegment.length)
+				last = true;
+			else
+			{
+				int next = in.read();
+				if (next == -1)
+					last = true;
+				else
+					in.unread(next);
+			}
+
+			if (index >= MAX_SEGMENTS)
+				throw new IOException("Maximum number of segments exceeded");
+
+			try
+			{
+				if (length < TAG_LENGTH)
+					throw new AEADBadTagException("Segment truncated");
+
+				cipher.init(Cipher.DECRYPT_MODE, key,
+						new GCMParameterSpec(TAG_LENGTH * 8, nonce(noncePrefix, index, last)));
+				cipher.updateAAD(aad);
+				limit = cipher.doFinal(encryptedSegment, 0, length, segment, 0);
+				position = 0;
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new IOException("Unable to decrypt segment " + index + ": " + e.getMessage(), e);
+			}
+
+			index++;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.XECKey;
+import java.security.interfaces.XECPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.XECPublicKeySpec;
+import java.util.Arrays;
+import java.util.Optional;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts payloads for the CRR with an AES key derived per payload from an ephemeral X25519 key agreement (RFC 7748)
+ * with the CRR X25519 public-key and HKDF-SHA256 (RFC 5869). Decapsulating the AES key on the CRR costs one X25519
+ * scalar multiplication instead of an RSA-4096 private-key operation as with {@link RsaAesGcmUtil}.
+ * <p>
+ * Format:
+ *
+ * <pre>
+ * header (PayloadEnvelope version 3, X25519_HKDF_SHA256) | ephemeral public-key (32 bytes, RFC 7748 encoding)
+ * | IV and AES-GCM encrypted data or SegmentedAesGcm nonce prefix and segments
+ * </pre>
+ *
+ * AES key: HKDF-SHA256 with the ephemeral public-key as salt, the X25519 shared secret as input keying material and a
+ * label followed by the header as info. Payloads can only be decrypted by CRR versions supporting
+ * {@link PayloadEnvelope#VERSION_3}.
+ */
+public final class X25519AesGcmUtil
+{
+	public static final String ALGORITHM = "X25519";
+
+	static final int PUBLIC_KEY_LENGTH = 32;
+
+	private static final String HMAC = "HmacSHA256";
+	private static final int AES_KEY_LENGTH = 32;
+
+	private static final byte[] HKDF_LABEL = "num-codex data-transfer X25519-HKDF-SHA256 AES-256"
+			.getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * AAD: some random bytes
+	 */
+	private static final byte[] AAD = "q3FsT0mWc8JxYVn2hKdR6uLbE9pAzG4i".getBytes(StandardCharsets.UTF_8);
+
+	private X25519AesGcmUtil()
+	{
+	}
+
+	public static KeyPair generateX25519KeyPair() throws NoSuchAlgorithmException
+	{
+		return KeyPairGenerator.getInstance(ALGORITHM).generateKeyPair();
+	}
+
+	/**
+	 * @param key
+	 *            may be <code>null</code>
+	 * @return <code>true</code> if the given key is a X25519 public- or private-key
+	 */
+	public static boolean isX25519Key(Key key)
+	{
+		return key instanceof XECKey && ((XECKey) key).getParams() instanceof NamedParameterSpec
+				&& ALGORITHM.equalsIgnoreCase(((NamedParameterSpec) ((XECKey) key).getParams()).getName());
+	}
+
+	/**
+	 * @param encrypted
+	 *            not <code>null</code>
+	 * @return <code>true</code> if the given payload starts with a {@link PayloadEnvelope} header specifying
+	 *         {@link PayloadKeyEncapsulation#X25519_HKDF_SHA256}
+	 */
+	public static boolean isX25519Payload(byte[] encrypted)
+	{
+		return envelope(encrypted).isPresent();
+	}
+
+	private static Optional<PayloadEnvelope> envelope(byte[] encrypted)
+	{
+		return PayloadEnvelope.read(encrypted)
+				.filter(e -> PayloadKeyEncapsulation.X25519_HKDF_SHA256.equals(e.getKeyEncapsulation()));
+	}
+
+	/**
+	 * @param publicKey
+	 *            not <code>null</code>, X25519 public-key of the CRR
+	 * @param data
+	 *            not <code>null</code>
+	 * @param compression
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            {@value PayloadEnvelope#MIN_SEGMENT_SIZE} to {@value PayloadEnvelope#MAX_SEGMENT_SIZE}, or
+	 *            <code>0</code> for a single AES-GCM invocation
+	 * @return header, ephemeral public-key, IV or nonce prefix and AES-GCM encrypted compressed data
+	 * @see #encrypt(PublicKey, OutputStream, PayloadCompression, int)
+	 */
+	public static byte[] encrypt(PublicKey publicKey, byte[] data, PayloadCompression compression, int segmentSize)
+			throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IOException
+	{
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		try (OutputStream out = encrypt(publicKey, encrypted, compression, segmentSize))
+		{
+			out.write(data);
+		}
+
+		return encrypted.toByteArray();
+	}
+
+	/**
+	 * Streaming variant of {@link #encrypt(PublicKey, byte[], PayloadCompression, int)}.
+	 *
+	 * @param publicKey
+	 *            not <code>null</code>, X25519 public-key of the CRR
+	 * @param out
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @param compression
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            {@value PayloadEnvelope#MIN_SEGMENT_SIZE} to {@value PayloadEnvelope#MAX_SEGMENT_SIZE}, or
+	 *            <code>0</code> for a single AES-GCM invocation
+	 * @return compressing and encrypting stream, has to be closed to write the last segment or authentication tag
+	 * @throws IOException
+	 *             if the header, ephemeral public-key, IV or nonce prefix could not be written
+	 */
+	public static OutputStream encrypt(PublicKey publicKey, OutputStream out, PayloadCompression compression,
+			int segmentSize) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IOException
+	{
+		if (!isX25519Key(publicKey))
+			throw new InvalidKeyException("X25519 public-key expected");
+
+		PayloadEnvelope envelope = PayloadEnvelope.v3(compression, PayloadKeyEncapsulation.X25519_HKDF_SHA256,
+				segmentSize);
+		byte[] header = envelope.toHeader();
+
+		KeyPair ephemeral = generateX25519KeyPair();
+		byte[] encapsulatedKey = encode((XECPublicKey) ephemeral.getPublic());
+		SecretKey aesKey = deriveKey(agree(ephemeral.getPrivate(), publicKey), encapsulatedKey, header);
+
+		out.write(header);
+		out.write(encapsulatedKey);
+
+		byte[] aad = envelope.authenticatedData(AAD);
+		return compression.compress(envelope.isSegmented() ? SegmentedAesGcm.encrypt(out, aad, aesKey, segmentSize)
+				: AesGcmUtil.encrypt(out, aad, aesKey));
+	}
+
+	/**
+	 * Segments of segmented payloads are decrypted in parallel.
+	 *
+	 * @param privateKey
+	 *            not <code>null</code>, X25519 private-key of the CRR
+	 * @param encrypted
+	 *            not <code>null</code>
+	 * @return decrypted and decompressed data
+	 * @throws BadPaddingException
+	 *             if the payload is not a X25519 payload, truncated or authentication failed
+	 * @throws IOException
+	 *             if decompression failed or the decompressed data exceeds
+	 *             {@link PayloadCompression#DECOMPRESSED_SIZE_MAX} bytes
+	 */
+	public static byte[] decrypt(PrivateKey privateKey, byte[] encrypted)
+			throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, NoSuchPaddingException,
+			NoSuchAlgorithmException, InvalidAlgorithmParameterException, IOException
+	{
+		PayloadEnvelope envelope = envelope(encrypted)
+				.orElseThrow(() -> new BadPaddingException("X25519 payload header expected"));
+
+		int keyOffset = envelope.getHeaderLength();
+		int dataOffset = keyOffset + PUBLIC_KEY_LENGTH;
+
+		if (encrypted.length < dataOffset)
+			throw new BadPaddingException("Encrypted data truncated");
+
+		SecretKey key = decapsulate(privateKey, Arrays.copyOfRange(encrypted, keyOffset, dataOffset),
+				envelope.toHeader());
+		byte[] compressed = envelope.isSegmented()
+				? SegmentedAesGcm.decrypt(encrypted, dataOffset, envelope.authenticatedData(AAD), key,
+						envelope.getSegmentSize())
+				: AesGcmUtil.decrypt(Arrays.copyOfRange(encrypted, dataOffset, encrypted.length),
+						envelope.authenticatedData(AAD), key);
+
+		return envelope.getCompression().decompress(compressed);
+	}
+
+	/**
+	 * Streaming variant of {@link #decrypt(PrivateKey, byte[])}. Plaintext of segmented payloads is returned segment by
+	 * segment after each segment was authenticated, a failed authentication is reported as {@link IOException} with a
+	 * {@link BadPaddingException} as cause. Payloads encrypted with a single AES-GCM invocation are read completely and
+	 * authenticated before the returned stream is created.
+	 *
+	 * @param privateKey
+	 *            not <code>null</code>, X25519 private-key of the CRR
+	 * @param encrypted
+	 *            not <code>null</code>, closed when the returned stream is closed
+	 * @return decrypting and decompressing stream, reading fails with an {@link IOException} if the decompressed data
+	 *         exceeds {@link PayloadCompression#DECOMPRESSED_SIZE_MAX} bytes
+	 * @throws BadPaddingException
+	 *             if the payload is not a X25519 payload
+	 * @throws IOException
+	 *             if reading the header or ephemeral public-key failed
+	 */
+	public static InputStream decrypt(PrivateKey privateKey, InputStream encrypted)
+			throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, NoSuchPaddingException,
+			NoSuchAlgorithmException, InvalidAlgorithmParameterException, IOException
+	{
+		byte[] header = encrypted.readNBytes(PayloadEnvelope.HEADER_LENGTH_V3);
+		PayloadEnvelope envelope = envelope(header)
+				.orElseThrow(() -> new BadPaddingException("X25519 payload header expected"));
+
+		if (!envelope.isSegmented())
+		{
+			try (encrypted)
+			{
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				buffer.write(header);
+				encrypted.transferTo(buffer);
+
+				return new ByteArrayInputStream(decrypt(privateKey, buffer.toByteArray()));
+			}
+		}
+
+		byte[] encapsulatedKey = encrypted.readNBytes(PUBLIC_KEY_LENGTH);
+		if (encapsulatedKey.length != PUBLIC_KEY_LENGTH)
+			throw new BadPaddingException("Encrypted data truncated");
+
+		SecretKey key = decapsulate(privateKey, encapsulatedKey, header);
+		return envelope.getCompression().decompress(
+				SegmentedAesGcm.decrypt(encrypted, envelope.authenticatedData(AAD), key, envelope.getSegmentSize()));
+	}
+
+	/**
+	 * @param privateKey
+	 *            not <code>null</code>, X25519 private-key of the CRR
+	 * @param encapsulatedKey
+	 *            not <code>null</code>, ephemeral public-key
+	 * @param header
+	 *            not <code>null</code>
+	 * @return AES key
+	 */
+	static SecretKey decapsulate(PrivateKey privateKey, byte[] encapsulatedKey, byte[] header)
+			throws InvalidKeyException, NoSuchAlgorithmException
+	{
+		if (!isX25519Key(privateKey))
+			throw new InvalidKeyException("X25519 private-key expected");
+
+		return deriveKey(agree(privateKey, decode(encapsulatedKey)), encapsulatedKey, header);
+	}
+
+	private static byte[] agree(PrivateKey privateKey, PublicKey publicKey)
+			throws InvalidKeyException, NoSuchAlgorithmException
+	{
+		KeyAgreement keyAgreement = KeyAgreement.getInstance(ALGORITHM);
+		keyAgreement.init(privateKey);
+		keyAgreement.doPhase(publicKey, true);
+
+		// fails with InvalidKeyException for low order public-keys resulting in an all zero shared secret
+		return keyAgreement.generateSecret();
+	}
+
+	private static SecretKey deriveKey(byte[] sharedSecret, byte[] encapsulatedKey, byte[] header)
+			throws InvalidKeyException, NoSuchAlgorithmException
+	{
+		Mac mac = Mac.getInstance(HMAC);
+
+		// HKDF-Extract
+		mac.init(new SecretKeySpec(encapsulatedKey, HMAC));
+		byte[] pseudoRandomKey = mac.doFinal(sharedSecret);
+
+		// HKDF-Expand, one block of HMAC-SHA256 output is sufficient for an AES-256 key
+		mac.init(new SecretKeySpec(pseudoRandomKey, HMAC));
+		mac.update(HKDF_LABEL);
+		mac.update(header);
+		mac.update((byte) 1);
+		byte[] okm = mac.doFinal();
+
+		return new SecretKeySpec(okm, 0, AES_KEY_LENGTH, "AES");
+	}
+
+	/**
+	 * @param publicKey
+	 *            not <code>null</code>
+	 * @return u-coordinate, 32 bytes little endian
+	 */
+	static byte[] encode(XECPublicKey publicKey)
+	{
+		byte[] bigEndian = publicKey.getU().toByteArray();
+		byte[] encoded = new byte[PUBLIC_KEY_LENGTH];
+
+		for (int i = 0; i < Math.min(bigEndian.length, PUBLIC_KEY_LENGTH); i++)
+			encoded[i] = bigEndian[bigEndian.length - 1 - i];
+
+		return encoded;
+	}
+
+	/**
+	 * @param encoded
+	 *            not <code>null</code>, u-coordinate, 32 bytes little endian
+	 * @return X25519 public-key
+	 */
+	static PublicKey decode(byte[] encoded) throws InvalidKeyException, NoSuchAlgorithmException
+	{
+		if (encoded.length != PUBLIC_KEY_LENGTH)
+			throw new InvalidKeyException("X25519 public-key length " + PUBLIC_KEY_LENGTH + " expected");
+
+		byte[] bigEndian = new byte[PUBLIC_KEY_LENGTH];
+		for (int i = 0; i < PUBLIC_KEY_LENGTH; i++)
+			bigEndian[i] = encoded[PUBLIC_KEY_LENGTH - 1 - i];
+
+		// RFC 7748 section 5: the most significant bit of the final byte is ignored
+		bigEndian[0] &= 0x7F;
+
+		try
+		{
+			return KeyFactory.getInstance(ALGORITHM)
+					.generatePublic(new XECPublicKeySpec(NamedParameterSpec.X25519, new BigInteger(1, bigEndian)));
+		}
+		catch (InvalidKeySpecException e)
+		{
+			throw new InvalidKeyException(e);
+		}
+	}
+}
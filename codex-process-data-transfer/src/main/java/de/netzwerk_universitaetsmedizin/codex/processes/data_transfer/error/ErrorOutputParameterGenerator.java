@@ -4,6 +4,7 @@ import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.Con
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_SOURCE;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_SOURCE_VALUE_CRR;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_SOURCE_VALUE_DIC;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_VALIDATION_FAILED;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.EXTENSION_ERROR_METADATA;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.EXTENSION_ERROR_METADATA_REFERENCE;
@@ -34,6 +35,20 @@ public class ErrorOutputParameterGenerator
 						CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_SOURCE_VALUE_DIC));
 	}
 
+	public TaskOutputComponent createMeDicNotValidated(IdType reference, OperationOutcome outcome)
+	{
+		TaskOutputComponent output = createError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_SOURCE_VALUE_DIC,
+				CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED,
+				outcome.getIssue().stream().filter(OperationOutcomeIssueComponent::hasDiagnostics)
+						.map(OperationOutcomeIssueComponent::getDiagnostics).findFirst().orElse("Not validated"));
+
+		if (reference != null)
+			output.getExtensionByUrl(EXTENSION_ERROR_METADATA).addExtension().setUrl(EXTENSION_ERROR_METADATA_REFERENCE)
+					.setValue(new Reference().setReferenceElement(reference));
+
+		return output;
+	}
+
 	public Stream<TaskOutputComponent> createCrrValidationError(IdType reference, OperationOutcome outcome)
 	{
 		return outcome.getIssue().stream()
@@ -0,0 +1,97 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Counts the bytes read and skipped from the underlying stream, optionally failing with an {@link IOException} if the
+ * underlying stream contains more than a given number of bytes. Mark and reset are not supported.
+ */
+public class CountingInputStream extends FilterInputStream
+{
+	private final long limit;
+	private long count;
+
+	/**
+	 * @param in
+	 *            not <code>null</code>
+	 */
+	public CountingInputStream(InputStream in)
+	{
+		this(in, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param in
+	 *            not <code>null</code>
+	 * @param limit
+	 *            &gt;= 0, maximum number of bytes read and skipped
+	 */
+	public CountingInputStream(InputStream in, long limit)
+	{
+		super(Objects.requireNonNull(in, "in"));
+
+		if (limit < 0)
+			throw new IllegalArgumentException("limit < 0");
+
+		this.limit = limit;
+	}
+
+	private void checkLimit() throws IOException
+	{
+		if (count > limit)
+			throw new IOException("Size limit of " + limit + " bytes exceeded");
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		int b = in.read();
+		if (b >= 0)
+		{
+			count++;
+			checkLimit();
+		}
+
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		int read = in.read(b, off, len);
+		if (read > 0)
+		{
+			count += read;
+			checkLimit();
+		}
+
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException
+	{
+		long skipped = in.skip(n);
+		count += skipped;
+		checkLimit();
+
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * @return number of bytes read and skipped
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+}
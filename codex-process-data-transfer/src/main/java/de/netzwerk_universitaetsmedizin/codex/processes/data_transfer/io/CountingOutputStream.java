@@ -0,0 +1,71 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Counts the bytes written to the underlying stream, optionally failing with an {@link IOException} before more than a
+ * given number of bytes are written.
+ */
+public class CountingOutputStream extends FilterOutputStream
+{
+	private final long limit;
+	private long count;
+
+	/**
+	 * @param out
+	 *            not <code>null</code>
+	 */
+	public CountingOutputStream(OutputStream out)
+	{
+		this(out, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param out
+	 *            not <code>null</code>
+	 * @param limit
+	 *            &gt;= 0, maximum number of bytes written
+	 */
+	public CountingOutputStream(OutputStream out, long limit)
+	{
+		super(Objects.requireNonNull(out, "out"));
+
+		if (limit < 0)
+			throw new IllegalArgumentException("limit < 0");
+
+		this.limit = limit;
+	}
+
+	private void checkLimit(int len) throws IOException
+	{
+		if (len > limit - count)
+			throw new IOException("Size limit of " + limit + " bytes exceeded");
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		checkLimit(1);
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		checkLimit(len);
+		out.write(b, off, len);
+		count += len;
+	}
+
+	/**
+	 * @return number of bytes written
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+}
@@ -0,0 +1,197 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connects a producer writing to an {@link OutputStream} with a consumer reading from an {@link InputStream}, e.g. an
+ * encrypting serializer with a HTTP client sending the request body, without holding more than the pipe buffer in
+ * memory. The producer runs in a separate thread.
+ * <p>
+ * If the producer fails with an exception or error, the consumer receives an {@link IOException} instead of the end of
+ * the stream, a truncated transfer can not complete successfully. Producers must not finalize the written data, e.g.
+ * write an authentication tag, if they fail. If the consumer fails or returns without reading all data, the producer
+ * fails with an {@link IOException} on its next write.
+ */
+public final class PipedTransfer
+{
+	private static final Logger logger = LoggerFactory.getLogger(PipedTransfer.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	@FunctionalInterface
+	public interface Producer
+	{
+		/**
+		 * @param out
+		 *            not <code>null</code>, closed after this method returns
+		 * @throws Exception
+		 */
+		void write(OutputStream out) throws Exception;
+	}
+
+	@FunctionalInterface
+	public interface Consumer<T>
+	{
+		/**
+		 * @param in
+		 *            not <code>null</code>, closed after this method returns
+		 * @return result of the transfer
+		 * @throws Exception
+		 */
+		T read(InputStream in) throws Exception;
+	}
+
+	private static final class ProducerAwareInputStream extends PipedInputStream
+	{
+		private volatile Throwable producerException;
+
+		ProducerAwareInputStream(int bufferSize)
+		{
+			super(bufferSize);
+		}
+
+		void producerFailed(Throwable exception)
+		{
+			producerException = exception;
+		}
+
+		void rethrowProducerException() throws Exception
+		{
+			if (producerException instanceof Exception e)
+				throw e;
+			else if (producerException instanceof Error e)
+				throw e;
+			else if (producerException != null)
+				throw new IOException("Producer failed", producerException);
+		}
+
+		private void checkProducer() throws IOException
+		{
+			if (producerException != null)
+				throw new IOException("Producer failed: " + producerException.getMessage(), producerException);
+		}
+
+		@Override
+		public synchronized int read() throws IOException
+		{
+			checkProducer();
+			int read = super.read();
+			if (read < 0)
+				checkProducer();
+
+			return read;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException
+		{
+			checkProducer();
+			int read = super.read(b, off, len);
+			if (read < 0)
+				checkProducer();
+
+			return read;
+		}
+	}
+
+	private PipedTransfer()
+	{
+	}
+
+	/**
+	 * @param <T>
+	 * @param threadName
+	 *            not <code>null</code>, name of the producer thread
+	 * @param producer
+	 *            not <code>null</code>
+	 * @param consumer
+	 *            not <code>null</code>
+	 * @return result of the consumer
+	 * @throws Exception
+	 *             if the producer or consumer failed, producer exceptions take precedence
+	 */
+	public static <T> T transfer(String threadName, Producer producer, Consumer<T> consumer) throws Exception
+	{
+		return transfer(threadName, producer, consumer, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param <T>
+	 * @param threadName
+	 *            not <code>null</code>, name of the producer thread
+	 * @param producer
+	 *            not <code>null</code>
+	 * @param consumer
+	 *            not <code>null</code>
+	 * @param bufferSize
+	 *            &gt; 0
+	 * @return result of the consumer
+	 * @throws Exception
+	 *             if the producer or consumer failed, producer exceptions take precedence
+	 */
+	public static <T> T transfer(String threadName, Producer producer, Consumer<T> consumer, int bufferSize)
+			throws Exception
+	{
+		Objects.requireNonNull(threadName, "threadName");
+		Objects.requireNonNull(producer, "producer");
+		Objects.requireNonNull(consumer, "consumer");
+
+		ProducerAwareInputStream in = new ProducerAwareInputStream(bufferSize);
+		PipedOutputStream out = new PipedOutputStream(in);
+
+		Thread producerThread = new Thread(() ->
+		{
+			try
+			{
+				producer.write(out);
+				out.close();
+			}
+			catch (Throwable e)
+			{
+				// set before closing the pipe, the consumer must not see a regular end of stream
+				in.producerFailed(e);
+				closeQuietly(out);
+			}
+		}, threadName);
+		producerThread.setDaemon(true);
+		producerThread.start();
+
+		try
+		{
+			return consumer.read(in);
+		}
+		catch (Exception e)
+		{
+			in.rethrowProducerException();
+			throw e;
+		}
+		finally
+		{
+			// unblocks the producer if the consumer did not read all data
+			closeQuietly(in);
+			producerThread.join();
+
+			in.rethrowProducerException();
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable closeable)
+	{
+		try
+		{
+			closeable.close();
+		}
+		catch (Exception e)
+		{
+			logger.debug("Error while closing pipe: {}", e.getMessage());
+		}
+	}
+}
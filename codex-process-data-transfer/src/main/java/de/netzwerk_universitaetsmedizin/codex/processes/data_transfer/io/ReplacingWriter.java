@@ -0,0 +1,165 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * Replaces all occurrences of a search string with a replacement while writing, with the same result as
+ * {@link String#replace(CharSequence, CharSequence)} on the complete output. At most <code>search.length() - 1</code>
+ * characters of a partial match are held back until the match fails or the writer is closed.
+ */
+public class ReplacingWriter extends FilterWriter
+{
+	private static final int BUFFER_SIZE = 8192;
+
+	private final char[] search;
+	private final char[] replacement;
+	private final int[] failure;
+
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int buffered;
+
+	private int matched;
+
+	/**
+	 * @param out
+	 *            not <code>null</code>
+	 * @param search
+	 *            not <code>null</code>, not empty
+	 * @param replacement
+	 *            not <code>null</code>
+	 */
+	public ReplacingWriter(Writer out, String search, String replacement)
+	{
+		super(Objects.requireNonNull(out, "out"));
+
+		Objects.requireNonNull(search, "search");
+		Objects.requireNonNull(replacement, "replacement");
+
+		if (search.isEmpty())
+			throw new IllegalArgumentException("search empty");
+
+		this.search = search.toCharArray();
+		this.replacement = replacement.toCharArray();
+		this.failure = failure(this.search);
+	}
+
+	// Knuth-Morris-Pratt failure function: length of the longest proper prefix of search[0..i] that is also a suffix
+	private static int[] failure(char[] search)
+	{
+		int[] failure = new int[search.length];
+		for (int i = 1, k = 0; i < search.length; i++)
+		{
+			while (k > 0 && search[i] != search[k])
+				k = failure[k - 1];
+
+			if (search[i] == search[k])
+				k++;
+
+			failure[i] = k;
+		}
+
+		return failure;
+	}
+
+	@Override
+	public void write(int c) throws IOException
+	{
+		process((char) c);
+		flushBuffer();
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException
+	{
+		Objects.checkFromIndexSize(off, len, cbuf.length);
+
+		for (int i = off; i < off + len; i++)
+			process(cbuf[i]);
+
+		flushBuffer();
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException
+	{
+		Objects.checkFromIndexSize(off, len, str.length());
+
+		for (int i = off; i < off + len; i++)
+			process(str.charAt(i));
+
+		flushBuffer();
+	}
+
+	private void process(char c) throws IOException
+	{
+		while (matched > 0 && c != search[matched])
+		{
+			// characters before the longest remaining partial match can not be part of an occurrence
+			int fallback = failure[matched - 1];
+			bufferChars(search, 0, matched - fallback);
+			matched = fallback;
+		}
+
+		if (c == search[matched])
+		{
+			matched++;
+
+			if (matched == search.length)
+			{
+				bufferChars(replacement, 0, replacement.length);
+				matched = 0;
+			}
+		}
+		else
+			bufferChar(c);
+	}
+
+	private void bufferChar(char c) throws IOException
+	{
+		if (buffered == buffer.length)
+			flushBuffer();
+
+		buffer[buffered++] = c;
+	}
+
+	private void bufferChars(char[] chars, int off, int len) throws IOException
+	{
+		for (int i = off; i < off + len; i++)
+			bufferChar(chars[i]);
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		if (buffered > 0)
+		{
+			out.write(buffer, 0, buffered);
+			buffered = 0;
+		}
+	}
+
+	/**
+	 * Flushes the underlying writer, characters of a partial match are not written.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes characters of a partial match and closes the underlying writer.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		bufferChars(search, 0, matched);
+		matched = 0;
+		flushBuffer();
+
+		out.close();
+	}
+}
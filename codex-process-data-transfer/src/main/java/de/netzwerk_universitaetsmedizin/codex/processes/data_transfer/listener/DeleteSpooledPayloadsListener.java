@@ -0,0 +1,44 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.listener;
+
+import java.util.Objects;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
+
+public class DeleteSpooledPayloadsListener implements ExecutionListener, InitializingBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(DeleteSpooledPayloadsListener.class);
+
+	private final PayloadVariables payloadVariables;
+
+	public DeleteSpooledPayloadsListener(PayloadVariables payloadVariables)
+	{
+		this.payloadVariables = payloadVariables;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
+	}
+
+	@Override
+	public void notify(DelegateExecution execution) throws Exception
+	{
+		try
+		{
+			payloadVariables.deletePayloads(execution);
+		}
+		catch (Exception e)
+		{
+			// process instance ended, remaining files deleted after max age
+			logger.warn("Unable to delete spooled payloads of process instance {}: {}",
+					execution.getProcessInstanceId(), e.getMessage());
+		}
+	}
+}
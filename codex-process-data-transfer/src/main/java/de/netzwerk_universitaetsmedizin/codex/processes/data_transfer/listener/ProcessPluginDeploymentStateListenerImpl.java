@@ -63,7 +63,10 @@ public class ProcessPluginDeploymentStateListenerImpl implements ProcessPluginDe
 			TerminologyServerConnectionTestStatus status = terminologyServerConnectionTestStatus.get();
 
 			if (TerminologyServerConnectionTestStatus.OK.equals(status))
-				bundleValidatorFactory.init();
+			{
+				logger.info("Initializing {} in background", BundleValidatorFactory.class.getSimpleName());
+				bundleValidatorFactory.initAsync();
+			}
 			else if (TerminologyServerConnectionTestStatus.NOT_OK.equals(status))
 				logger.warn(
 						"Due to an error while testing the connection to the terminology server {} was not initialized, validation of bundles will be skipped.",
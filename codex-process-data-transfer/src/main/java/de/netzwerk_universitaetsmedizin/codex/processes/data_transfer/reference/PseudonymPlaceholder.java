@@ -0,0 +1,156 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Structure-aware substitution of the pseudonym in transfer Bundles. Only <code>Patient.identifier</code> and the
+ * identifiers of <code>subject</code> and <code>patient</code> references, including contained resources, are modified,
+ * as set by {@link de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send.ReadData}. Text
+ * elsewhere in the Bundle containing the pseudonym, placeholder or naming system is left untouched.
+ * <p>
+ * For Bundles where the pseudonym only occurs in these identifiers, the result is identical to
+ * {@link String#replace(CharSequence, CharSequence)} on the encoded Bundle without an additional copy of the encoded
+ * Bundle.
+ */
+public final class PseudonymPlaceholder
+{
+	private static final String[] PATIENT_REFERENCES = { "subject", "patient" };
+
+	/**
+	 * Restores the DIC pseudonym identifiers when closed.
+	 */
+	public static final class Substitution implements AutoCloseable
+	{
+		private final List<Identifier> identifiers = new ArrayList<>();
+		private final List<String> systems = new ArrayList<>();
+		private final List<String> values = new ArrayList<>();
+
+		private Substitution()
+		{
+		}
+
+		private void substitute(Identifier identifier, String pseudonym)
+		{
+			identifiers.add(identifier);
+			systems.add(identifier.getSystem());
+			values.add(identifier.getValue());
+
+			identifier.setSystem(NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM);
+			if (pseudonym.equals(identifier.getValue()))
+				identifier.setValue(PSEUDONYM_PLACEHOLDER);
+		}
+
+		/**
+		 * @return number of substituted identifiers
+		 */
+		public int size()
+		{
+			return identifiers.size();
+		}
+
+		@Override
+		public void close()
+		{
+			for (int i = identifiers.size() - 1; i >= 0; i--)
+				identifiers.get(i).setSystem(systems.get(i)).setValue(values.get(i));
+
+			identifiers.clear();
+		}
+	}
+
+	private PseudonymPlaceholder()
+	{
+	}
+
+	/**
+	 * Replaces the DIC pseudonym naming system with the CRR pseudonym naming system and the DIC pseudonym with
+	 * {@value de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer#PSEUDONYM_PLACEHOLDER}
+	 * in identifiers with the DIC pseudonym naming system. The given Bundle is modified until the returned
+	 * {@link Substitution} is closed.
+	 *
+	 * @param bundle
+	 *            not <code>null</code>
+	 * @param pseudonym
+	 *            not <code>null</code>, DIC pseudonym
+	 * @return substitution to restore the DIC pseudonym identifiers
+	 */
+	public static Substitution replacePseudonym(Bundle bundle, String pseudonym)
+	{
+		Objects.requireNonNull(bundle, "bundle");
+		Objects.requireNonNull(pseudonym, "pseudonym");
+
+		Substitution substitution = new Substitution();
+		identifiers(bundle).filter(i -> NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM.equals(i.getSystem()))
+				.forEach(i -> substitution.substitute(i, pseudonym));
+
+		return substitution;
+	}
+
+	/**
+	 * Replaces
+	 * {@value de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer#PSEUDONYM_PLACEHOLDER}
+	 * with the given pseudonym in identifiers with the CRR pseudonym naming system.
+	 *
+	 * @param bundle
+	 *            not <code>null</code>
+	 * @param pseudonym
+	 *            not <code>null</code>, CRR pseudonym
+	 * @return number of replaced placeholders
+	 */
+	public static int replacePlaceholder(Bundle bundle, String pseudonym)
+	{
+		Objects.requireNonNull(bundle, "bundle");
+		Objects.requireNonNull(pseudonym, "pseudonym");
+
+		List<Identifier> placeholders = identifiers(bundle)
+				.filter(i -> NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM.equals(i.getSystem()))
+				.filter(i -> PSEUDONYM_PLACEHOLDER.equals(i.getValue())).collect(Collectors.toList());
+		placeholders.forEach(i -> i.setValue(pseudonym));
+
+		return placeholders.size();
+	}
+
+	private static Stream<Identifier> identifiers(Bundle bundle)
+	{
+		return bundle.getEntry().stream().filter(BundleEntryComponent::hasResource)
+				.map(BundleEntryComponent::getResource).flatMap(PseudonymPlaceholder::identifiers);
+	}
+
+	private static Stream<Identifier> identifiers(Resource resource)
+	{
+		Stream<Identifier> identifiers = resource instanceof Patient p ? p.getIdentifier().stream()
+				: Stream.of(PATIENT_REFERENCES).flatMap(name -> referenceIdentifiers(resource, name));
+
+		if (resource instanceof DomainResource d && d.hasContained())
+			return Stream.concat(identifiers, d.getContained().stream().flatMap(PseudonymPlaceholder::identifiers));
+		else
+			return identifiers;
+	}
+
+	private static Stream<Identifier> referenceIdentifiers(Resource resource, String name)
+	{
+		// null for resource types without the property
+		Base[] values = resource.getProperty(name.hashCode(), name, false);
+
+		return values == null ? Stream.empty()
+				: Stream.of(values).filter(v -> v instanceof Reference).map(v -> (Reference) v)
+						.filter(Reference::hasIdentifier).map(Reference::getIdentifier);
+	}
+}
@@ -0,0 +1,250 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.receive;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProvider;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadEnvelope;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.X25519AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference.PseudonymPlaceholder;
+
+/**
+ * Decrypts payloads created by
+ * {@link de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send.BundleEncryptor} while reading
+ * them, extracts the return key from the head of the decrypted data and parses the Bundle JSON entry by entry,
+ * restoring the pseudonym with {@link PseudonymPlaceholder}. Only the JSON of a single entry is held in memory as text.
+ * <p>
+ * Segmented payloads, see {@link PayloadEnvelope#isSegmented()}, are decrypted and parsed segment by segment after each
+ * segment was authenticated. Payloads encrypted with a single AES-GCM invocation can only be authenticated as a whole
+ * and are buffered before parsing.
+ */
+public class BundleDecryptor
+{
+	public static final int RETURN_KEY_LENGTH = 32;
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	public static final class DecryptedBundle
+	{
+		private final byte[] returnKey;
+		private final Bundle bundle;
+		private final PayloadEnvelope envelope;
+
+		private DecryptedBundle(byte[] returnKey, Bundle bundle, PayloadEnvelope envelope)
+		{
+			this.returnKey = returnKey;
+			this.bundle = bundle;
+			this.envelope = envelope;
+		}
+
+		public byte[] getReturnKey()
+		{
+			return returnKey;
+		}
+
+		/**
+		 * @return Bundle without entries, if the entries were passed to a consumer
+		 */
+		public Bundle getBundle()
+		{
+			return bundle;
+		}
+
+		/**
+		 * @return envelope of the payload, empty for payloads without {@link PayloadEnvelope} header
+		 */
+		public Optional<PayloadEnvelope> getEnvelope()
+		{
+			return Optional.ofNullable(envelope);
+		}
+	}
+
+	private final FhirContext fhirContext;
+	private final CrrKeyProvider crrKeyProvider;
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param crrKeyProvider
+	 *            not <code>null</code>
+	 */
+	public BundleDecryptor(FhirContext fhirContext, CrrKeyProvider crrKeyProvider)
+	{
+		this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext");
+		this.crrKeyProvider = Objects.requireNonNull(crrKeyProvider, "crrKeyProvider");
+	}
+
+	/**
+	 * @param encrypted
+	 *            not <code>null</code>, closed after all data is read
+	 * @param pseudonym
+	 *            not <code>null</code>, CRR pseudonym
+	 * @return return key and Bundle with entries
+	 * @throws IOException
+	 *             if reading or parsing failed, or a segment could not be authenticated
+	 * @throws GeneralSecurityException
+	 */
+	public DecryptedBundle decrypt(InputStream encrypted, String pseudonym) throws IOException, GeneralSecurityException
+	{
+		List<BundleEntryComponent> entries = new ArrayList<>();
+		DecryptedBundle decrypted = decrypt(encrypted, pseudonym, entries::add);
+		decrypted.getBundle().setEntry(entries);
+
+		return decrypted;
+	}
+
+	/**
+	 * Entries are passed to the given consumer while reading. If a later segment can not be authenticated, the payload
+	 * is truncated or not valid JSON, an exception is thrown after some entries have already been consumed.
+	 *
+	 * @param encrypted
+	 *            not <code>null</code>, closed after all data is read
+	 * @param pseudonym
+	 *            not <code>null</code>, CRR pseudonym
+	 * @param entryConsumer
+	 *            not <code>null</code>
+	 * @return return key and Bundle without entries
+	 * @throws IOException
+	 *             if reading or parsing failed, or a segment could not be authenticated
+	 * @throws GeneralSecurityException
+	 */
+	public DecryptedBundle decrypt(InputStream encrypted, String pseudonym,
+			Consumer<BundleEntryComponent> entryConsumer) throws IOException, GeneralSecurityException
+	{
+		Objects.requireNonNull(encrypted, "encrypted");
+		Objects.requireNonNull(pseudonym, "pseudonym");
+		Objects.requireNonNull(entryConsumer, "entryConsumer");
+
+		try (BufferedInputStream buffered = new BufferedInputStream(encrypted))
+		{
+			// header read ahead to select the key encapsulation, decrypt methods read the header again
+			buffered.mark(PayloadEnvelope.MAX_HEADER_LENGTH);
+			byte[] header = buffered.readNBytes(PayloadEnvelope.MAX_HEADER_LENGTH);
+			buffered.reset();
+
+			try (InputStream decrypted = decrypt(header, buffered))
+			{
+				byte[] returnKey = decrypted.readNBytes(RETURN_KEY_LENGTH);
+				if (returnKey.length != RETURN_KEY_LENGTH)
+					throw new IOException("Decrypted data shorter than return key");
+
+				Bundle bundle = parse(decrypted, pseudonym, entryConsumer);
+
+				return new DecryptedBundle(returnKey, bundle, PayloadEnvelope.read(header).orElse(null));
+			}
+		}
+	}
+
+	private InputStream decrypt(byte[] header, InputStream encrypted) throws IOException, GeneralSecurityException
+	{
+		if (X25519AesGcmUtil.isX25519Payload(header))
+		{
+			if (crrKeyProvider.getX25519PrivateKey() == null)
+				throw new InvalidKeyException("X25519 encrypted data from DIC, CRR X25519 private-key not configured");
+
+			return X25519AesGcmUtil.decrypt(crrKeyProvider.getX25519PrivateKey(), encrypted);
+		}
+		else
+			return RsaAesGcmUtil.decrypt(crrKeyProvider.getPrivateKey(), encrypted);
+	}
+
+	private Bundle parse(InputStream json, String pseudonym, Consumer<BundleEntryComponent> entryConsumer)
+			throws IOException
+	{
+		// Bundle elements other than entry, parsed after all entries
+		StringWriter bundle = new StringWriter();
+
+		try (JsonParser parser = JSON_FACTORY.createParser(json);
+				JsonGenerator generator = JSON_FACTORY.createGenerator(bundle))
+		{
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				throw new IOException("Bundle JSON object expected");
+
+			generator.writeStartObject();
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String name = parser.currentName();
+				JsonToken value = parser.nextToken();
+
+				if ("entry".equals(name) && value == JsonToken.START_ARRAY)
+				{
+					while (parser.nextToken() != JsonToken.END_ARRAY)
+						entryConsumer.accept(parseEntry(parser, pseudonym));
+				}
+				else
+				{
+					generator.writeFieldName(name);
+					copy(parser, generator);
+				}
+			}
+			generator.writeEndObject();
+
+			// reads to the end of the decrypted stream, authenticating the last segment
+			if (parser.nextToken() != null)
+				throw new IOException("Unexpected content after Bundle JSON object");
+		}
+
+		return fhirContext.newJsonParser().parseResource(Bundle.class, bundle.toString());
+	}
+
+	private BundleEntryComponent parseEntry(JsonParser parser, String pseudonym) throws IOException
+	{
+		// single entry parsed as Bundle, fullUrl handled by HAPI the same way as for the complete Bundle
+		StringWriter entry = new StringWriter();
+
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(entry))
+		{
+			generator.writeStartObject();
+			generator.writeStringField("resourceType", "Bundle");
+			generator.writeArrayFieldStart("entry");
+			copy(parser, generator);
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+
+		Bundle bundle = fhirContext.newJsonParser().parseResource(Bundle.class, entry.toString());
+		PseudonymPlaceholder.replacePlaceholder(bundle, pseudonym);
+
+		return bundle.getEntryFirstRep();
+	}
+
+	private static void copy(JsonParser parser, JsonGenerator generator) throws IOException
+	{
+		int depth = 0;
+		do
+		{
+			JsonToken token = parser.currentToken();
+
+			// numbers copied as text, FHIR decimals keep their precision
+			if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+				generator.writeNumber(parser.getText());
+			else
+				generator.copyCurrentEvent(parser);
+
+			if (token.isStructStart())
+				depth++;
+			else if (token.isStructEnd())
+				depth--;
+		}
+		while (depth > 0 && parser.nextToken() != null);
+	}
+}
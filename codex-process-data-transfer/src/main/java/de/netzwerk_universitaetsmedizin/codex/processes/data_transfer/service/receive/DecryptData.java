@@ -2,17 +2,21 @@ package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.r
 
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_BUNDLE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_PAYLOAD_COMPRESSION;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_PSEUDONYM;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DECRYPTION_OF_DATA_FROM_DIC_FAILED;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DTS_FAILED;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_PSEUDONYM;
-import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -30,23 +34,58 @@ import org.hl7.fhir.r4.model.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProvider;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadEnvelope;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.X25519AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference.PseudonymPlaceholder;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.receive.BundleDecryptor.DecryptedBundle;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.variables.Variables;
 
+/**
+ * Decrypts the Bundle from the DIC. In streaming mode the Binary resource is downloaded, decrypted and parsed in one
+ * pass, see {@link BundleDecryptor}.
+ */
 public class DecryptData extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(DecryptData.class);
 
 	private final CrrKeyProvider crrKeyProvider;
+	private final boolean streaming;
+	private final PayloadVariables payloadVariables;
 
 	public DecryptData(ProcessPluginApi api, CrrKeyProvider crrKeyProvider)
+	{
+		this(api, crrKeyProvider, false);
+	}
+
+	public DecryptData(ProcessPluginApi api, CrrKeyProvider crrKeyProvider, boolean streaming)
+	{
+		this(api, crrKeyProvider, streaming, new PayloadVariables(null));
+	}
+
+	/**
+	 * @param api
+	 *            not <code>null</code>
+	 * @param crrKeyProvider
+	 *            not <code>null</code>
+	 * @param streaming
+	 *            <code>true</code> to download the Binary resource while decrypting, see {@link DownloadDataFromDts}
+	 * @param payloadVariables
+	 *            not <code>null</code>
+	 */
+	public DecryptData(ProcessPluginApi api, CrrKeyProvider crrKeyProvider, boolean streaming,
+			PayloadVariables payloadVariables)
 	{
 		super(api);
 
 		this.crrKeyProvider = crrKeyProvider;
+		this.streaming = streaming;
+		this.payloadVariables = payloadVariables;
 	}
 
 	@Override
@@ -55,6 +94,7 @@ public class DecryptData extends AbstractServiceDelegate
 		super.afterPropertiesSet();
 
 		Objects.requireNonNull(crrKeyProvider, "crrKeyProvider");
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
@@ -62,10 +102,12 @@ public class DecryptData extends AbstractServiceDelegate
 	{
 		try
 		{
-			decryptData(variables);
+			if (streaming)
+				downloadAndDecryptData(variables);
+			else
+				decryptData(variables);
 		}
-		catch (InvalidKeyException | BadPaddingException | IllegalBlockSizeException | NoSuchPaddingException
-				| NoSuchAlgorithmException | InvalidAlgorithmParameterException | IOException e)
+		catch (GeneralSecurityException | IOException e)
 		{
 			logger.warn("Unable to decrypt data from DIC: {}", e.getMessage(), e);
 			throw new BpmnError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DECRYPTION_OF_DATA_FROM_DIC_FAILED,
@@ -80,20 +122,65 @@ public class DecryptData extends AbstractServiceDelegate
 		Task task = variables.getStartTask();
 		Optional<String> pseudonym = getPseudonym(task);
 
-		byte[] encrypted = variables.getByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE);
-		byte[] decrypted = RsaAesGcmUtil.decrypt(crrKeyProvider.getPrivateKey(), encrypted);
+		byte[] encrypted = payloadVariables.getPayloadBytes(variables, BPMN_EXECUTION_VARIABLE_BUNDLE);
+		byte[] decrypted = decrypt(encrypted);
 
-		byte[] returnKey = new byte[32];
-		byte[] bundleData = new byte[decrypted.length - 32];
+		byte[] returnKey = Arrays.copyOf(decrypted, 32);
+		Bundle bundle = fromByteArray(pseudonym.get(), decrypted, 32);
 
-		System.arraycopy(decrypted, 0, returnKey, 0, 32);
-		System.arraycopy(decrypted, 32, bundleData, 0, decrypted.length - 32);
+		// DIC supports envelopes, validation errors are returned with the same compression
+		setVariables(variables, bundle, returnKey, pseudonym.get(), PayloadEnvelope.read(encrypted));
+	}
 
-		Bundle bundle = fromByteArray(pseudonym.get(), bundleData);
+	private void downloadAndDecryptData(Variables variables) throws GeneralSecurityException, IOException
+	{
+		Task task = variables.getStartTask();
+		Optional<String> pseudonym = getPseudonym(task);
+
+		InputStream binary;
+		try
+		{
+			binary = new BinaryResourceClient(api).read(DownloadDataFromDts.getDataReference(api, task).get());
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while reading Binary resource: {}", e.getMessage(), e);
 
+			throw new BpmnError(
+					CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DTS_FAILED,
+					"Unable to download Binary resource with encrypted data from DTS");
+		}
+
+		DecryptedBundle decrypted = new BundleDecryptor(api.getFhirContext(), crrKeyProvider).decrypt(binary,
+				pseudonym.get());
+
+		setVariables(variables, decrypted.getBundle(), decrypted.getReturnKey(), pseudonym.get(),
+				decrypted.getEnvelope());
+	}
+
+	private void setVariables(Variables variables, Bundle bundle, byte[] returnKey, String pseudonym,
+			Optional<PayloadEnvelope> envelope)
+	{
 		variables.setResource(BPMN_EXECUTION_VARIABLE_BUNDLE, bundle);
 		variables.setByteArray(BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY, returnKey);
-		variables.setString(BPMN_EXECUTION_VARIABLE_PSEUDONYM, pseudonym.get());
+		variables.setString(BPMN_EXECUTION_VARIABLE_PSEUDONYM, pseudonym);
+
+		envelope.ifPresent(
+				e -> variables.setString(BPMN_EXECUTION_VARIABLE_PAYLOAD_COMPRESSION, e.getCompression().name()));
+	}
+
+	private byte[] decrypt(byte[] encrypted) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException,
+			NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, IOException
+	{
+		if (X25519AesGcmUtil.isX25519Payload(encrypted))
+		{
+			if (crrKeyProvider.getX25519PrivateKey() == null)
+				throw new InvalidKeyException("X25519 encrypted data from DIC, CRR X25519 private-key not configured");
+
+			return X25519AesGcmUtil.decrypt(crrKeyProvider.getX25519PrivateKey(), encrypted);
+		}
+		else
+			return RsaAesGcmUtil.decrypt(crrKeyProvider.getPrivateKey(), encrypted);
 	}
 
 	private Optional<String> getPseudonym(Task task)
@@ -111,9 +198,13 @@ public class DecryptData extends AbstractServiceDelegate
 				.map(c -> type.cast(c.getValue()));
 	}
 
-	private Bundle fromByteArray(String pseudonym, byte[] bundle) throws IOException
+	private Bundle fromByteArray(String pseudonym, byte[] data, int offset) throws IOException
 	{
-		String bundleString = new String(bundle, StandardCharsets.UTF_8).replace(PSEUDONYM_PLACEHOLDER, pseudonym);
-		return api.getFhirContext().newJsonParser().parseResource(Bundle.class, bundleString);
+		// parsed from the UTF-8 bytes, placeholders replaced in the pseudonym identifiers only
+		Bundle bundle = api.getFhirContext().newJsonParser().parseResource(Bundle.class,
+				new ByteArrayInputStream(data, offset, data.length - offset));
+		PseudonymPlaceholder.replacePlaceholder(bundle, pseudonym);
+
+		return bundle;
 	}
 }
@@ -6,6 +6,7 @@ import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.Con
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_DATA_REFERENCE;
 
 import java.io.InputStream;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.camunda.bpm.engine.delegate.BpmnError;
@@ -16,31 +17,69 @@ import org.hl7.fhir.r4.model.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.variables.Variables;
-import dev.dsf.fhir.client.FhirWebserviceClient;
-import jakarta.ws.rs.core.MediaType;
 
+/**
+ * Downloads the encrypted Bundle from the DTS. In streaming mode the Binary resource is downloaded while decrypting in
+ * {@link DecryptData}, the encrypted data is not held in memory or stored as a process variable.
+ */
 public class DownloadDataFromDts extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(DownloadDataFromDts.class);
 
+	private final boolean streaming;
+	private final PayloadVariables payloadVariables;
+
 	public DownloadDataFromDts(ProcessPluginApi api)
+	{
+		this(api, false);
+	}
+
+	public DownloadDataFromDts(ProcessPluginApi api, boolean streaming)
+	{
+		this(api, streaming, new PayloadVariables(null));
+	}
+
+	/**
+	 * @param api
+	 *            not <code>null</code>
+	 * @param streaming
+	 *            <code>true</code> to download the Binary resource while decrypting, see {@link DecryptData}
+	 * @param payloadVariables
+	 *            not <code>null</code>
+	 */
+	public DownloadDataFromDts(ProcessPluginApi api, boolean streaming, PayloadVariables payloadVariables)
 	{
 		super(api);
+
+		this.streaming = streaming;
+		this.payloadVariables = payloadVariables;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		super.afterPropertiesSet();
+
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
 	protected void doExecute(DelegateExecution execution, Variables variables) throws BpmnError, Exception
 	{
+		if (streaming)
+			return;
+
 		Task task = variables.getStartTask();
-		IdType id = getDataReference(task).get();
+		IdType id = getDataReference(api, task).get();
 
-		try (InputStream binary = readBinaryResource(id))
+		try (InputStream binary = new BinaryResourceClient(api).read(id))
 		{
-			byte[] encrypted = binary.readAllBytes();
-			variables.setByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE, encrypted);
+			payloadVariables.setPayload(execution, variables, BPMN_EXECUTION_VARIABLE_BUNDLE, binary);
 		}
 		catch (Exception e)
 		{
@@ -52,25 +91,11 @@ public class DownloadDataFromDts extends AbstractServiceDelegate
 		}
 	}
 
-	private Optional<IdType> getDataReference(Task task)
+	static Optional<IdType> getDataReference(ProcessPluginApi api, Task task)
 	{
 		return api.getTaskHelper()
 				.getFirstInputParameterValue(task, CODESYSTEM_NUM_CODEX_DATA_TRANSFER,
 						CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_DATA_REFERENCE, Reference.class)
 				.map(Reference::getReference).map(IdType::new);
 	}
-
-	private InputStream readBinaryResource(IdType binaryId) throws Exception
-	{
-		final String id = binaryId.getIdPart();
-		final String version = binaryId.getVersionIdPart();
-
-		FhirWebserviceClient client = api.getFhirWebserviceClientProvider().getWebserviceClient(binaryId.getBaseUrl());
-
-		logger.info("Reading binary from {} with id {}/{}", client.getBaseUrl(), id, version);
-		if (version != null && !version.isEmpty())
-			return client.readBinary(id, version, MediaType.valueOf(MediaType.APPLICATION_OCTET_STREAM));
-		else
-			return client.readBinary(id, MediaType.valueOf(MediaType.APPLICATION_OCTET_STREAM));
-	}
 }
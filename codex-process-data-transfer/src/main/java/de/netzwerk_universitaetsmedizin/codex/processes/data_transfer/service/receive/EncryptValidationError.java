@@ -2,6 +2,7 @@ package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.r
 
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_BUNDLE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_PAYLOAD_COMPRESSION;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_PSEUDONYM;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_ECRYPTION_OF_VALIDATION_ERROR_FOR_DIC_FAILED;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
@@ -14,6 +15,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
@@ -28,6 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.variables.Variables;
@@ -36,9 +40,26 @@ public class EncryptValidationError extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(EncryptValidationError.class);
 
+	private final PayloadVariables payloadVariables;
+
 	public EncryptValidationError(ProcessPluginApi api)
+	{
+		this(api, new PayloadVariables(null));
+	}
+
+	public EncryptValidationError(ProcessPluginApi api, PayloadVariables payloadVariables)
 	{
 		super(api);
+
+		this.payloadVariables = payloadVariables;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		super.afterPropertiesSet();
+
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
@@ -47,16 +68,21 @@ public class EncryptValidationError extends AbstractServiceDelegate
 		Bundle bundle = variables.getResource(BPMN_EXECUTION_VARIABLE_BUNDLE);
 		String pseudonym = variables.getString(BPMN_EXECUTION_VARIABLE_PSEUDONYM);
 		byte[] returnKey = variables.getByteArray(BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY);
+		String compression = variables.getString(BPMN_EXECUTION_VARIABLE_PAYLOAD_COMPRESSION);
 
 		try
 		{
 			byte[] bundleData = toByteArray(pseudonym, bundle);
-			byte[] encrypted = AesGcmUtil.encrypt(bundleData, RETURN_AAD, new SecretKeySpec(returnKey, "AES"));
-			variables.setByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE, encrypted);
+			SecretKeySpec key = new SecretKeySpec(returnKey, "AES");
+
+			// compression only if the DIC sent the data with envelope header, see DecryptData
+			byte[] encrypted = compression == null ? AesGcmUtil.encrypt(bundleData, RETURN_AAD, key)
+					: AesGcmUtil.encryptPayload(bundleData, RETURN_AAD, key, PayloadCompression.valueOf(compression));
+			payloadVariables.setPayload(execution, variables, BPMN_EXECUTION_VARIABLE_BUNDLE, encrypted);
 		}
 		catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException
 				| InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException
-				| ShortBufferException e)
+				| ShortBufferException | IOException e)
 		{
 			logger.warn("Unable to encrypt validation error for DIC: {}", e.getMessage(), e);
 			throw new BpmnError(
@@ -15,7 +15,9 @@ import org.hl7.fhir.r4.model.ResourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.DataLogger;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.constants.NamingSystems;
@@ -27,13 +29,21 @@ public class StoreValidationErrorForDts extends AbstractServiceDelegate
 
 	private final String dtsIdentifierValue;
 	private final DataLogger dataLogger;
+	private final PayloadVariables payloadVariables;
 
 	public StoreValidationErrorForDts(ProcessPluginApi api, String dtsIdentifierValue, DataLogger dataLogger)
+	{
+		this(api, dtsIdentifierValue, dataLogger, new PayloadVariables(null));
+	}
+
+	public StoreValidationErrorForDts(ProcessPluginApi api, String dtsIdentifierValue, DataLogger dataLogger,
+			PayloadVariables payloadVariables)
 	{
 		super(api);
 
 		this.dtsIdentifierValue = dtsIdentifierValue;
 		this.dataLogger = dataLogger;
+		this.payloadVariables = payloadVariables;
 	}
 
 	@Override
@@ -43,13 +53,14 @@ public class StoreValidationErrorForDts extends AbstractServiceDelegate
 
 		Objects.requireNonNull(dtsIdentifierValue, "dtsIdentifierValue");
 		Objects.requireNonNull(dataLogger, "dataLogger");
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
 	protected void doExecute(DelegateExecution execution, dev.dsf.bpe.v1.variables.Variables variables)
 			throws BpmnError, Exception
 	{
-		byte[] encrypted = variables.getByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE);
+		byte[] encrypted = payloadVariables.getPayloadBytes(variables, BPMN_EXECUTION_VARIABLE_BUNDLE);
 		String downloadUrl = saveBinary(encrypted);
 		variables.setString(BPMN_EXECUTION_VARIABLE_BINARY_URL, downloadUrl);
 	}
@@ -71,7 +82,7 @@ public class StoreValidationErrorForDts extends AbstractServiceDelegate
 	{
 		try
 		{
-			return api.getFhirWebserviceClientProvider().getLocalWebserviceClient().withMinimalReturn().create(binary);
+			return new BinaryResourceClient(api).create(binary);
 		}
 		catch (Exception e)
 		{
@@ -0,0 +1,191 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadEnvelope;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.X25519AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingOutputStream;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.ReplacingWriter;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference.PseudonymPlaceholder;
+
+/**
+ * Encodes a Bundle as JSON, replaces the DIC pseudonym with a placeholder and the DIC pseudonym naming system with the
+ * CRR pseudonym naming system and encrypts the result together with the return key for the CRR. All steps are streamed
+ * to the given {@link OutputStream}, the encoded Bundle is never held in memory as a whole. For Bundle resources, only
+ * the pseudonym identifiers are replaced, see {@link PseudonymPlaceholder}; JSON written by a {@link BundleEncoder} is
+ * replaced as text.
+ * <p>
+ * Output format: RSA encrypted AES key, IV, AES-GCM encrypted return key and Bundle JSON, authentication tag; see
+ * {@link RsaAesGcmUtil#encrypt(PublicKey, byte[])}. With compression, the payload starts with an envelope header and
+ * the return key and Bundle JSON are compressed before encryption; see
+ * {@link RsaAesGcmUtil#encrypt(PublicKey, byte[], PayloadCompression)}. With a segment size, the payload is encrypted
+ * in segments that can be authenticated and decrypted independently; see
+ * {@link RsaAesGcmUtil#encrypt(PublicKey, byte[], PayloadCompression, int)}. With a X25519 CRR public-key, the AES key
+ * is derived from an ephemeral key agreement instead of RSA encrypted; see
+ * {@link X25519AesGcmUtil#encrypt(PublicKey, byte[], PayloadCompression, int)}.
+ */
+public class BundleEncryptor
+{
+	@FunctionalInterface
+	public interface BundleEncoder
+	{
+		/**
+		 * @param writer
+		 *            not <code>null</code>, must not be closed
+		 * @throws IOException
+		 */
+		void encode(Writer writer) throws IOException;
+	}
+
+	private final FhirContext fhirContext;
+	private final PublicKey crrPublicKey;
+	private final PayloadCompression compression;
+	private final int segmentSize;
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param crrPublicKey
+	 *            not <code>null</code>
+	 */
+	public BundleEncryptor(FhirContext fhirContext, PublicKey crrPublicKey)
+	{
+		this(fhirContext, crrPublicKey, PayloadCompression.NONE, 0);
+	}
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param crrPublicKey
+	 *            not <code>null</code>
+	 * @param compression
+	 *            not <code>null</code>, {@link PayloadCompression#NONE} to create payloads without
+	 *            {@link PayloadEnvelope} header readable by all CRR versions
+	 */
+	public BundleEncryptor(FhirContext fhirContext, PublicKey crrPublicKey, PayloadCompression compression)
+	{
+		this(fhirContext, crrPublicKey, compression, 0);
+	}
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param crrPublicKey
+	 *            not <code>null</code>, RSA or X25519 public-key, payloads for X25519 public-keys can only be decrypted
+	 *            by CRR versions supporting {@link PayloadEnvelope#VERSION_3}
+	 * @param compression
+	 *            not <code>null</code>
+	 * @param segmentSize
+	 *            {@value PayloadEnvelope#MIN_SEGMENT_SIZE} to {@value PayloadEnvelope#MAX_SEGMENT_SIZE} for segmented
+	 *            encryption readable by CRR versions supporting {@link PayloadEnvelope#VERSION_2}, <code>0</code> for a
+	 *            single AES-GCM invocation
+	 */
+	public BundleEncryptor(FhirContext fhirContext, PublicKey crrPublicKey, PayloadCompression compression,
+			int segmentSize)
+	{
+		if (segmentSize != 0 && !PayloadEnvelope.isSupportedSegmentSize(segmentSize))
+			throw new IllegalArgumentException("segmentSize " + segmentSize + " not supported");
+
+		this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext");
+		this.crrPublicKey = Objects.requireNonNull(crrPublicKey, "crrPublicKey");
+		this.compression = Objects.requireNonNull(compression, "compression");
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * The pseudonym identifiers of the given Bundle are replaced while encoding and restored afterwards, the Bundle
+	 * must not be accessed concurrently.
+	 *
+	 * @param bundle
+	 *            not <code>null</code>
+	 * @param pseudonym
+	 *            not <code>null</code>, not empty
+	 * @param returnKey
+	 *            not <code>null</code>
+	 * @param out
+	 *            not <code>null</code>, closed after all data is written, not closed if encoding fails
+	 * @return number of encrypted bytes written
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public long encrypt(Bundle bundle, String pseudonym, byte[] returnKey, OutputStream out)
+			throws IOException, GeneralSecurityException
+	{
+		Objects.requireNonNull(bundle, "bundle");
+		Objects.requireNonNull(pseudonym, "pseudonym");
+
+		try (PseudonymPlaceholder.Substitution substitution = PseudonymPlaceholder.replacePseudonym(bundle, pseudonym))
+		{
+			return encrypt(writer -> fhirContext.newJsonParser().encodeResourceToWriter(bundle, writer), returnKey, out,
+					Function.identity());
+		}
+	}
+
+	/**
+	 * @param encoder
+	 *            not <code>null</code>, writes the Bundle JSON
+	 * @param pseudonym
+	 *            not <code>null</code>, not empty
+	 * @param returnKey
+	 *            not <code>null</code>
+	 * @param out
+	 *            not <code>null</code>, closed after all data is written, not closed if encoding fails
+	 * @return number of encrypted bytes written
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public long encrypt(BundleEncoder encoder, String pseudonym, byte[] returnKey, OutputStream out)
+			throws IOException, GeneralSecurityException
+	{
+		Objects.requireNonNull(pseudonym, "pseudonym");
+
+		// replacements in the same order as String#replace on the encoded Bundle before
+		return encrypt(encoder, returnKey, out,
+				writer -> new ReplacingWriter(new ReplacingWriter(writer, NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM,
+						NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM), pseudonym, PSEUDONYM_PLACEHOLDER));
+	}
+
+	private long encrypt(BundleEncoder encoder, byte[] returnKey, OutputStream out, Function<Writer, Writer> filter)
+			throws IOException, GeneralSecurityException
+	{
+		Objects.requireNonNull(encoder, "encoder");
+		Objects.requireNonNull(returnKey, "returnKey");
+		Objects.requireNonNull(out, "out");
+
+		CountingOutputStream counting = new CountingOutputStream(out);
+
+		OutputStream encrypting;
+		if (X25519AesGcmUtil.isX25519Key(crrPublicKey))
+			encrypting = X25519AesGcmUtil.encrypt(crrPublicKey, counting, compression, segmentSize);
+		else if (PayloadCompression.NONE.equals(compression) && segmentSize == 0)
+			encrypting = RsaAesGcmUtil.encrypt(crrPublicKey, counting);
+		else
+			encrypting = RsaAesGcmUtil.encrypt(crrPublicKey, counting, compression, segmentSize);
+
+		encrypting.write(returnKey);
+
+		// not closed if encoding fails, closing writes the authentication tag of a truncated payload
+		Writer writer = filter.apply(new OutputStreamWriter(encrypting, StandardCharsets.UTF_8));
+		encoder.encode(writer);
+		writer.close();
+
+		return counting.getCount();
+	}
+}
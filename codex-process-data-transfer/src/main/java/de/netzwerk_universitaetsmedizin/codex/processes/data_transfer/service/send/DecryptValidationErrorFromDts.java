@@ -12,6 +12,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
@@ -25,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PatientReference;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
@@ -34,9 +36,26 @@ public class DecryptValidationErrorFromDts extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(DecryptValidationErrorFromDts.class);
 
+	private final PayloadVariables payloadVariables;
+
 	public DecryptValidationErrorFromDts(ProcessPluginApi api)
+	{
+		this(api, new PayloadVariables(null));
+	}
+
+	public DecryptValidationErrorFromDts(ProcessPluginApi api, PayloadVariables payloadVariables)
 	{
 		super(api);
+
+		this.payloadVariables = payloadVariables;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		super.afterPropertiesSet();
+
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
@@ -65,8 +84,8 @@ public class DecryptValidationErrorFromDts extends AbstractServiceDelegate
 
 		byte[] returnKey = variables.getByteArray(BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY);
 
-		byte[] encrypted = variables.getByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE);
-		byte[] decrypted = AesGcmUtil.decrypt(encrypted, RETURN_AAD, new SecretKeySpec(returnKey, "AES"));
+		byte[] encrypted = payloadVariables.getPayloadBytes(variables, BPMN_EXECUTION_VARIABLE_BUNDLE);
+		byte[] decrypted = AesGcmUtil.decryptPayload(encrypted, RETURN_AAD, new SecretKeySpec(returnKey, "AES"));
 
 		Bundle bundle = fromByteArray(pseudonym, decrypted);
 
@@ -17,23 +17,31 @@ import org.hl7.fhir.r4.model.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.variables.Variables;
-import dev.dsf.fhir.client.FhirWebserviceClient;
-import jakarta.ws.rs.core.MediaType;
 
 public class DownloadValidationErrorFromDts extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(DownloadValidationErrorFromDts.class);
 
 	private final String dtsIdentifierValue;
+	private final PayloadVariables payloadVariables;
 
 	public DownloadValidationErrorFromDts(ProcessPluginApi api, String dtsIdentifierValue)
+	{
+		this(api, dtsIdentifierValue, new PayloadVariables(null));
+	}
+
+	public DownloadValidationErrorFromDts(ProcessPluginApi api, String dtsIdentifierValue,
+			PayloadVariables payloadVariables)
 	{
 		super(api);
 
 		this.dtsIdentifierValue = dtsIdentifierValue;
+		this.payloadVariables = payloadVariables;
 	}
 
 	@Override
@@ -42,6 +50,7 @@ public class DownloadValidationErrorFromDts extends AbstractServiceDelegate
 		super.afterPropertiesSet();
 
 		Objects.requireNonNull(dtsIdentifierValue, "dtsIdentifierValue");
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
@@ -50,10 +59,9 @@ public class DownloadValidationErrorFromDts extends AbstractServiceDelegate
 		Task task = variables.getLatestTask();
 		IdType id = getDataReference(task).get();
 
-		try (InputStream binary = readBinaryResource(id))
+		try (InputStream binary = new BinaryResourceClient(api).read(id))
 		{
-			byte[] encrypted = binary.readAllBytes();
-			variables.setByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE, encrypted);
+			payloadVariables.setPayload(execution, variables, BPMN_EXECUTION_VARIABLE_BUNDLE, binary);
 		}
 		catch (Exception e)
 		{
@@ -72,18 +80,4 @@ public class DownloadValidationErrorFromDts extends AbstractServiceDelegate
 						CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_DATA_REFERENCE, Reference.class)
 				.map(Reference::getReference).map(IdType::new);
 	}
-
-	private InputStream readBinaryResource(IdType binaryId) throws Exception
-	{
-		final String id = binaryId.getIdPart();
-		final String version = binaryId.getVersionIdPart();
-
-		FhirWebserviceClient client = api.getFhirWebserviceClientProvider().getWebserviceClient(binaryId.getBaseUrl());
-
-		logger.info("Reading binary from {} with id {}/{}", client.getBaseUrl(), id, version);
-		if (version != null && !version.isEmpty())
-			return client.readBinary(id, version, MediaType.valueOf(MediaType.APPLICATION_OCTET_STREAM));
-		else
-			return client.readBinary(id, MediaType.valueOf(MediaType.APPLICATION_OCTET_STREAM));
-	}
 }
@@ -5,25 +5,19 @@ import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.Con
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_PATIENT_REFERENCE;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_ECRYPTION_OF_DATA_FOR_CRR_FAILED;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_DRY_RUN;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE;
-import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
-import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
-import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.ENCRYPTED_BUNDLE_SIZE_MAX;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.util.Objects;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.ShortBufferException;
-
 import org.camunda.bpm.engine.delegate.BpmnError;
 import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.hl7.fhir.r4.model.BooleanType;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Task;
 import org.hl7.fhir.r4.model.UnsignedIntType;
@@ -32,22 +26,50 @@ import org.slf4j.LoggerFactory;
 
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.AesGcmUtil;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProvider;
-import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingOutputStream;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PatientReference;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
+import dev.dsf.bpe.v1.variables.Variables;
 
+/**
+ * Encrypts the Bundle for the CRR. In streaming mode only the return key is generated, the Bundle is encrypted while
+ * uploading in {@link StoreDataForDts}; for dry runs the Bundle is encrypted without storing the result to check
+ * encryption and determine the encrypted size.
+ */
 public class EncryptData extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(EncryptData.class);
 
 	private final CrrKeyProvider crrKeyProvider;
+	private final boolean streaming;
+	private final PayloadCompression compression;
+	private final int segmentSize;
+	private final PayloadVariables payloadVariables;
 
 	public EncryptData(ProcessPluginApi api, CrrKeyProvider crrKeyProvider)
+	{
+		this(api, crrKeyProvider, false, PayloadCompression.NONE, 0);
+	}
+
+	public EncryptData(ProcessPluginApi api, CrrKeyProvider crrKeyProvider, boolean streaming,
+			PayloadCompression compression, int segmentSize)
+	{
+		this(api, crrKeyProvider, streaming, compression, segmentSize, new PayloadVariables(null));
+	}
+
+	public EncryptData(ProcessPluginApi api, CrrKeyProvider crrKeyProvider, boolean streaming,
+			PayloadCompression compression, int segmentSize, PayloadVariables payloadVariables)
 	{
 		super(api);
 
 		this.crrKeyProvider = crrKeyProvider;
+		this.streaming = streaming;
+		this.compression = compression;
+		this.segmentSize = segmentSize;
+		this.payloadVariables = payloadVariables;
 	}
 
 	@Override
@@ -56,11 +78,12 @@ public class EncryptData extends AbstractServiceDelegate
 		super.afterPropertiesSet();
 
 		Objects.requireNonNull(crrKeyProvider, "crrKeyProvider");
+		Objects.requireNonNull(compression, "compression");
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
-	protected void doExecute(DelegateExecution execution, dev.dsf.bpe.v1.variables.Variables variables)
-			throws BpmnError, Exception
+	protected void doExecute(DelegateExecution execution, Variables variables) throws BpmnError, Exception
 	{
 		String pseudonym = ((PatientReference) variables.getVariable(BPMN_EXECUTION_VARIABLE_PATIENT_REFERENCE))
 				.getIdentifier().getValue();
@@ -68,25 +91,33 @@ public class EncryptData extends AbstractServiceDelegate
 
 		try
 		{
-			byte[] bundleData = toByteArray(pseudonym, bundle);
 			byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
-
-			byte[] data = new byte[returnKey.length + bundleData.length];
-			System.arraycopy(returnKey, 0, data, 0, returnKey.length);
-			System.arraycopy(bundleData, 0, data, returnKey.length, bundleData.length);
-
-			byte[] encrypted = RsaAesGcmUtil.encrypt(crrKeyProvider.getPublicKey(), data);
+			BundleEncryptor encryptor = new BundleEncryptor(api.getFhirContext(),
+					crrKeyProvider.getEncryptionPublicKey(), compression, segmentSize);
+			Task task = variables.getStartTask();
 
 			variables.setByteArray(BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY, returnKey);
-			variables.setByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE, encrypted);
 
-			Task task = variables.getStartTask();
-			task = addEncryptedBundleSizeToTask(task, encrypted.length);
-			variables.updateTask(task);
+			if (streaming)
+			{
+				if (isDryRun(task))
+				{
+					long encryptedSize = encryptor.encrypt(bundle, pseudonym, returnKey,
+							new CountingOutputStream(OutputStream.nullOutputStream(), ENCRYPTED_BUNDLE_SIZE_MAX));
+					variables.updateTask(addEncryptedBundleSizeToTask(task, encryptedSize));
+				}
+			}
+			else
+			{
+				ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+				encryptor.encrypt(bundle, pseudonym, returnKey, encrypted);
+
+				payloadVariables.setPayload(execution, variables, BPMN_EXECUTION_VARIABLE_BUNDLE,
+						encrypted.toByteArray());
+				variables.updateTask(addEncryptedBundleSizeToTask(task, encrypted.size()));
+			}
 		}
-		catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException
-				| InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException
-				| ShortBufferException | IOException e)
+		catch (GeneralSecurityException | IOException e)
 		{
 			logger.warn("Unable to encrypt data for CRR: {}", e.getMessage(), e);
 			throw new BpmnError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_ECRYPTION_OF_DATA_FOR_CRR_FAILED,
@@ -94,20 +125,30 @@ public class EncryptData extends AbstractServiceDelegate
 		}
 	}
 
-	private Task addEncryptedBundleSizeToTask(Task task, int encryptedSize)
+	private boolean isDryRun(Task task)
 	{
-		task.addOutput().setValue(new UnsignedIntType(encryptedSize)).getType().getCodingFirstRep()
-				.setSystem(CODESYSTEM_NUM_CODEX_DATA_TRANSFER)
-				.setCode(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE);
-		return task;
+		return api.getTaskHelper()
+				.getFirstInputParameterValue(task, CODESYSTEM_NUM_CODEX_DATA_TRANSFER,
+						CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_DRY_RUN, BooleanType.class)
+				.map(BooleanType::getValue).orElse(Boolean.FALSE);
 	}
 
-	private byte[] toByteArray(String pseudonym, Bundle bundle) throws IOException
+	/**
+	 * @param task
+	 *            not <code>null</code>
+	 * @param encryptedSize
+	 *            &gt;= 0 and &lt;= ENCRYPTED_BUNDLE_SIZE_MAX
+	 * @return the given task
+	 */
+	static Task addEncryptedBundleSizeToTask(Task task, long encryptedSize)
 	{
-		String bundleString = api.getFhirContext().newJsonParser().encodeResourceToString(bundle);
+		if (encryptedSize < 0 || encryptedSize > ENCRYPTED_BUNDLE_SIZE_MAX)
+			throw new IllegalArgumentException(
+					"encryptedSize " + encryptedSize + " not within 0 and " + ENCRYPTED_BUNDLE_SIZE_MAX);
 
-		return bundleString.replace(pseudonym, PSEUDONYM_PLACEHOLDER)
-				.replace(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM)
-				.getBytes(StandardCharsets.UTF_8);
+		task.addOutput().setValue(new UnsignedIntType((int) encryptedSize)).getType().getCodingFirstRep()
+				.setSystem(CODESYSTEM_NUM_CODEX_DATA_TRANSFER)
+				.setCode(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE);
+		return task;
 	}
 }
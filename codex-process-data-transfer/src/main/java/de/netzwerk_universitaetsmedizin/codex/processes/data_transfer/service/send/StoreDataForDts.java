@@ -1,40 +1,102 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
 
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_BINARY_URL;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_BUNDLE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_PATIENT_REFERENCE;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.ENCRYPTED_BUNDLE_SIZE_MAX;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.camunda.bpm.engine.delegate.BpmnError;
 import org.camunda.bpm.engine.delegate.DelegateExecution;
 import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.ResourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProvider;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingOutputStream;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.PipedTransfer;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.DataLogger;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PatientReference;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.constants.NamingSystems;
 import dev.dsf.bpe.v1.variables.Variables;
 import jakarta.ws.rs.core.MediaType;
 
+/**
+ * Stores the encrypted Bundle as a Binary resource for the DTS. In streaming mode the Bundle is encoded, encrypted and
+ * uploaded in one pass, the encrypted data is not held in memory or stored as a process variable.
+ */
 public class StoreDataForDts extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(StoreDataForDts.class);
 
 	private final String dtsIdentifierValue;
 	private final DataLogger dataLogger;
+	private final CrrKeyProvider crrKeyProvider;
+	private final boolean streaming;
+	private final PayloadCompression compression;
+	private final int segmentSize;
+	private final PayloadVariables payloadVariables;
 
 	public StoreDataForDts(ProcessPluginApi api, String dtsIdentifierValue, DataLogger dataLogger)
+	{
+		this(api, dtsIdentifierValue, dataLogger, null, false, PayloadCompression.NONE, 0);
+	}
+
+	/**
+	 * @param api
+	 *            not <code>null</code>
+	 * @param dtsIdentifierValue
+	 *            not <code>null</code>
+	 * @param dataLogger
+	 *            not <code>null</code>
+	 * @param crrKeyProvider
+	 *            not <code>null</code> if <b>streaming</b> is <code>true</code>
+	 * @param streaming
+	 *            <code>true</code> to encrypt the Bundle while uploading, see {@link EncryptData}
+	 * @param compression
+	 *            not <code>null</code>, used if <b>streaming</b> is <code>true</code>
+	 * @param segmentSize
+	 *            segment size for segmented encryption, <code>0</code> for a single AES-GCM invocation, used if
+	 *            <b>streaming</b> is <code>true</code>
+	 */
+	public StoreDataForDts(ProcessPluginApi api, String dtsIdentifierValue, DataLogger dataLogger,
+			CrrKeyProvider crrKeyProvider, boolean streaming, PayloadCompression compression, int segmentSize)
+	{
+		this(api, dtsIdentifierValue, dataLogger, crrKeyProvider, streaming, compression, segmentSize,
+				new PayloadVariables(null));
+	}
+
+	/**
+	 * @param payloadVariables
+	 *            not <code>null</code>, used if <b>streaming</b> is <code>false</code>
+	 * @see #StoreDataForDts(ProcessPluginApi, String, DataLogger, CrrKeyProvider, boolean, PayloadCompression, int)
+	 */
+	public StoreDataForDts(ProcessPluginApi api, String dtsIdentifierValue, DataLogger dataLogger,
+			CrrKeyProvider crrKeyProvider, boolean streaming, PayloadCompression compression, int segmentSize,
+			PayloadVariables payloadVariables)
 	{
 		super(api);
 
 		this.dtsIdentifierValue = dtsIdentifierValue;
 		this.dataLogger = dataLogger;
+		this.crrKeyProvider = crrKeyProvider;
+		this.streaming = streaming;
+		this.compression = compression;
+		this.segmentSize = segmentSize;
+		this.payloadVariables = payloadVariables;
 	}
 
 	@Override
@@ -44,16 +106,81 @@ public class StoreDataForDts extends AbstractServiceDelegate
 
 		Objects.requireNonNull(dtsIdentifierValue, "dtsIdentifierValue");
 		Objects.requireNonNull(dataLogger, "dataLogger");
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
+
+		if (streaming)
+		{
+			Objects.requireNonNull(crrKeyProvider, "crrKeyProvider");
+			Objects.requireNonNull(compression, "compression");
+		}
 	}
 
 	@Override
 	protected void doExecute(DelegateExecution execution, Variables variables) throws BpmnError, Exception
 	{
-		byte[] encrypted = variables.getByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE);
-		String downloadUrl = saveBinaryForDts(encrypted);
+		String downloadUrl;
+		if (streaming)
+		{
+			String pseudonym = ((PatientReference) variables.getVariable(BPMN_EXECUTION_VARIABLE_PATIENT_REFERENCE))
+					.getIdentifier().getValue();
+			Bundle bundle = variables.getResource(BPMN_EXECUTION_VARIABLE_BUNDLE);
+			byte[] returnKey = variables.getByteArray(BPMN_EXECUTION_VARIABLE_AES_RETURN_KEY);
+
+			AtomicLong encryptedSize = new AtomicLong();
+			downloadUrl = saveBinaryForDts(bundle, pseudonym, returnKey, encryptedSize);
+
+			variables.updateTask(
+					EncryptData.addEncryptedBundleSizeToTask(variables.getStartTask(), encryptedSize.get()));
+		}
+		else
+		{
+			byte[] encrypted = payloadVariables.getPayloadBytes(variables, BPMN_EXECUTION_VARIABLE_BUNDLE);
+			downloadUrl = saveBinaryForDts(encrypted);
+		}
+
 		variables.setString(BPMN_EXECUTION_VARIABLE_BINARY_URL, downloadUrl);
 	}
 
+	protected String saveBinaryForDts(Bundle bundle, String pseudonym, byte[] returnKey, AtomicLong encryptedSize)
+	{
+		String securityContext = getDtsSecurityContextReference();
+		BundleEncryptor encryptor = new BundleEncryptor(api.getFhirContext(), crrKeyProvider.getEncryptionPublicKey(),
+				compression, segmentSize);
+
+		IdType created;
+		try
+		{
+			created = PipedTransfer.transfer("store-data-for-dts-encrypt",
+					// fails the upload before it completes if the size can not be reported in the Task output
+					out -> encryptedSize.set(encryptor.encrypt(bundle, pseudonym, returnKey,
+							new CountingOutputStream(out, ENCRYPTED_BUNDLE_SIZE_MAX))),
+					in -> api.getFhirWebserviceClientProvider().getLocalWebserviceClient().withMinimalReturn()
+							.createBinary(in, MediaType.APPLICATION_OCTET_STREAM_TYPE, securityContext));
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while encrypting and creating Binary resource: {}", e.getMessage(), e);
+
+			throw new BpmnError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA,
+					"Unable to create Binary resource with encrypted data for DTS in local DSF FHIR server");
+		}
+
+		return toDownloadUrl(created);
+	}
+
+	private String getDtsSecurityContextReference()
+	{
+		return api.getOrganizationProvider()
+				.getOrganization(NamingSystems.OrganizationIdentifier.withValue(dtsIdentifierValue))
+				.map(o -> ResourceType.Organization.name() + "/" + o.getIdElement().getIdPart()).orElseThrow(() ->
+				{
+					logger.warn("DTS organization with identifier '{}' not found", dtsIdentifierValue);
+
+					return new BpmnError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA,
+							"Unable to create Binary resource with encrypted data for DTS, DTS organization not found");
+				});
+	}
+
 	protected String saveBinaryForDts(byte[] encryptedContent)
 	{
 		Reference securityContext = new Reference();
@@ -63,6 +190,11 @@ public class StoreDataForDts extends AbstractServiceDelegate
 				.setSecurityContext(securityContext).setData(encryptedContent);
 
 		IdType created = createBinaryResource(binary);
+		return toDownloadUrl(created);
+	}
+
+	private String toDownloadUrl(IdType created)
+	{
 		return new IdType(api.getFhirWebserviceClientProvider().getLocalWebserviceClient().getBaseUrl(),
 				ResourceType.Binary.name(), created.getIdPart(), created.getVersionIdPart()).getValue();
 	}
@@ -71,7 +203,7 @@ public class StoreDataForDts extends AbstractServiceDelegate
 	{
 		try
 		{
-			return api.getFhirWebserviceClientProvider().getLocalWebserviceClient().withMinimalReturn().create(binary);
+			return new BinaryResourceClient(api).create(binary);
 		}
 		catch (Exception e)
 		{
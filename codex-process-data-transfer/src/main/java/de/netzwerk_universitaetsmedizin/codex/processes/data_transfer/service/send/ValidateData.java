@@ -8,6 +8,7 @@ import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.Con
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_LOCAL_VALIDATION_SUCCESSFUL;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.HAPI_USER_DATA_SOURCE_ID_ELEMENT;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -32,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.error.ErrorOutputParameterGenerator;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.ErrorLogger;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.BundleValidatorFactory;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationBudget;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.variables.Variables;
@@ -43,15 +45,38 @@ public class ValidateData extends AbstractServiceDelegate
 	private final BundleValidatorFactory bundleValidatorSupplier;
 	private final ErrorOutputParameterGenerator errorOutputParameterGenerator;
 	private final ErrorLogger errorLogger;
+	private final Duration readinessTimeout;
+	private final ValidationBudget validationBudget;
 
 	public ValidateData(ProcessPluginApi api, BundleValidatorFactory bundleValidatorSupplier,
-			ErrorOutputParameterGenerator errorOutputParameterGenerator, ErrorLogger errorLogger)
+			ErrorOutputParameterGenerator errorOutputParameterGenerator, ErrorLogger errorLogger,
+			Duration readinessTimeout)
+	{
+		this(api, bundleValidatorSupplier, errorOutputParameterGenerator, errorLogger, readinessTimeout,
+				ValidationBudget.UNLIMITED);
+	}
+
+	/**
+	 * @param api
+	 * @param bundleValidatorSupplier
+	 * @param errorOutputParameterGenerator
+	 * @param errorLogger
+	 * @param readinessTimeout
+	 * @param validationBudget
+	 *            not <code>null</code>, entries not validated because the budget was exhausted are added as
+	 *            <code>not-validated</code> errors to the Task
+	 */
+	public ValidateData(ProcessPluginApi api, BundleValidatorFactory bundleValidatorSupplier,
+			ErrorOutputParameterGenerator errorOutputParameterGenerator, ErrorLogger errorLogger,
+			Duration readinessTimeout, ValidationBudget validationBudget)
 	{
 		super(api);
 
 		this.bundleValidatorSupplier = bundleValidatorSupplier;
 		this.errorOutputParameterGenerator = errorOutputParameterGenerator;
 		this.errorLogger = errorLogger;
+		this.readinessTimeout = readinessTimeout;
+		this.validationBudget = validationBudget;
 	}
 
 	@Override
@@ -62,6 +87,8 @@ public class ValidateData extends AbstractServiceDelegate
 		Objects.requireNonNull(bundleValidatorSupplier, "bundleValidatorSupplier");
 		Objects.requireNonNull(errorOutputParameterGenerator, "errorOutputParameterGenerator");
 		Objects.requireNonNull(errorLogger, "errorLogger");
+		Objects.requireNonNull(readinessTimeout, "readinessTimeout");
+		Objects.requireNonNull(validationBudget, "validationBudget");
 	}
 
 	@Override
@@ -84,14 +111,15 @@ public class ValidateData extends AbstractServiceDelegate
 			return;
 		}
 
-		bundleValidatorSupplier.create().ifPresentOrElse(validator ->
+		bundleValidatorSupplier.create(readinessTimeout).ifPresentOrElse(validator ->
 		{
 			Bundle bundle = variables.getResource(BPMN_EXECUTION_VARIABLE_BUNDLE);
 
-			logger.info("Validating bundle with {} entr{}", bundle.getEntry().size(),
-					bundle.getEntry().size() == 1 ? "y" : "ies");
+			logger.info("Validating bundle with {} entr{}{}", bundle.getEntry().size(),
+					bundle.getEntry().size() == 1 ? "y" : "ies",
+					validationBudget.isUnlimited() ? "" : (", budget " + validationBudget.toString()));
 
-			bundle = validator.validate(bundle);
+			bundle = validator.validate(bundle, validationBudget);
 
 			if (bundle.hasEntry())
 			{
@@ -116,12 +144,22 @@ public class ValidateData extends AbstractServiceDelegate
 													|| IssueSeverity.ERROR.equals(i.getSeverity())))
 							.filter(b -> b).count();
 
-					addValidationStatusAndBundleEntryCountToTask(task, resourcesWithErrorCount <= 0, bundle);
+					long resourcesNotValidatedCount = bundle.getEntry().stream().filter(
+							e -> ValidationBudget.isNotValidated((OperationOutcome) e.getResponse().getOutcome()))
+							.count();
+
+					addValidationStatusAndBundleEntryCountToTask(task,
+							resourcesWithErrorCount <= 0 && resourcesNotValidatedCount <= 0, bundle);
 
 					if (resourcesWithErrorCount > 0)
 					{
-						logger.error("Validation of transfer bundle failed, {} resource{} with error",
-								resourcesWithErrorCount, resourcesWithErrorCount != 1 ? "s" : "");
+						String notValidated = resourcesNotValidatedCount > 0
+								? (", " + resourcesNotValidatedCount + " resource"
+										+ (resourcesNotValidatedCount != 1 ? "s" : "") + " not validated")
+								: "";
+
+						logger.error("Validation of transfer bundle failed, {} resource{} with error{}",
+								resourcesWithErrorCount, resourcesWithErrorCount != 1 ? "s" : "", notValidated);
 
 						addErrorsToTask(task, bundle);
 						errorLogger.logValidationFailedLocal(task.getIdElement().withServerBase(
@@ -130,10 +168,16 @@ public class ValidateData extends AbstractServiceDelegate
 
 						throw new BpmnError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_VALIDATION_FAILED,
 								"Validation of transfer bundle failed, " + resourcesWithErrorCount + " resource"
-										+ (resourcesWithErrorCount != 1 ? "s" : "") + " with error");
+										+ (resourcesWithErrorCount != 1 ? "s" : "") + " with error" + notValidated);
 					}
 					else
 					{
+						if (resourcesNotValidatedCount > 0)
+							logger.warn(
+									"Validation of transfer bundle stopped, time budget exceeded, no errors in validated "
+											+ "resources, {} resource{} not validated",
+									resourcesNotValidatedCount, resourcesNotValidatedCount != 1 ? "s" : "");
+
 						Map<String, String> sourceIdsByBundleUuid = removeValidationResultsCollectSourceIdsIntoMap(
 								variables, bundle);
 						execution.setVariable(BPMN_EXECUTION_VARIABLE_SOURCE_IDS_BY_BUNDLE_UUID, sourceIdsByBundleUuid);
@@ -148,8 +192,8 @@ public class ValidateData extends AbstractServiceDelegate
 		}, () ->
 		{
 			logger.warn(
-					"{} not initialized, skipping validation. This is likely due to an error during startup of the process plugin",
-					BundleValidatorFactory.class.getSimpleName());
+					"{} not initialized, skipping validation. This is likely due to an error during startup of the process plugin or a not finished initialization, progress: {}",
+					BundleValidatorFactory.class.getSimpleName(), bundleValidatorSupplier.getProgress());
 			addValidationStatusAndBundleEntryCountToTask(task, false,
 					variables.getResource(BPMN_EXECUTION_VARIABLE_BUNDLE));
 		});
@@ -157,8 +201,11 @@ public class ValidateData extends AbstractServiceDelegate
 
 	private void logValidationDetails(Bundle bundle)
 	{
-		bundle.getEntry().stream().filter(e -> e.hasResponse() && e.getResponse().hasOutcome()
-				&& (e.getResponse().getOutcome() instanceof OperationOutcome)).forEach(entry ->
+		bundle.getEntry().stream()
+				.filter(e -> e.hasResponse() && e.getResponse().hasOutcome()
+						&& (e.getResponse().getOutcome() instanceof OperationOutcome)
+						&& !ValidationBudget.isNotValidated((OperationOutcome) e.getResponse().getOutcome()))
+				.forEach(entry ->
 				{
 					IdType sourceId = (IdType) entry.getUserData(HAPI_USER_DATA_SOURCE_ID_ELEMENT);
 					OperationOutcome outcome = (OperationOutcome) entry.getResponse().getOutcome();
@@ -234,6 +281,18 @@ public class ValidateData extends AbstractServiceDelegate
 					errorOutputParameterGenerator.createMeDicValidationError(sourceId, outcome)
 							.forEach(task::addOutput);
 				});
+
+		validationBundle.getEntry().stream()
+				.filter(e -> e.hasResponse() && e.getResponse().hasOutcome()
+						&& (e.getResponse().getOutcome() instanceof OperationOutcome)
+						&& ValidationBudget.isNotValidated((OperationOutcome) e.getResponse().getOutcome()))
+				.forEach(entry ->
+				{
+					IdType sourceId = (IdType) entry.getUserData(HAPI_USER_DATA_SOURCE_ID_ELEMENT);
+					OperationOutcome outcome = (OperationOutcome) entry.getResponse().getOutcome();
+
+					task.addOutput(errorOutputParameterGenerator.createMeDicNotValidated(sourceId, outcome));
+				});
 		// TODO
 		// updateLeadingTaskInExecutionVariables(execution, task);
 	}
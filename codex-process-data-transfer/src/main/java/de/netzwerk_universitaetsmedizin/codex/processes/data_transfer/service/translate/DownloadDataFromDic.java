@@ -5,8 +5,10 @@ import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.Con
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DIC_FAILED;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_DATA_REFERENCE;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.ENCRYPTED_BUNDLE_SIZE_MAX;
 
 import java.io.InputStream;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.camunda.bpm.engine.delegate.BpmnError;
@@ -18,37 +20,70 @@ import org.hl7.fhir.r4.model.UnsignedIntType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingInputStream;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.variables.Variables;
-import dev.dsf.fhir.client.FhirWebserviceClient;
-import jakarta.ws.rs.core.MediaType;
 
 public class DownloadDataFromDic extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(DownloadDataFromDic.class);
 
+	private final boolean relay;
+	private final PayloadVariables payloadVariables;
+
 	public DownloadDataFromDic(ProcessPluginApi api)
+	{
+		this(api, false);
+	}
+
+	public DownloadDataFromDic(ProcessPluginApi api, boolean relay)
+	{
+		this(api, relay, new PayloadVariables(null));
+	}
+
+	/**
+	 * @param api
+	 *            not <code>null</code>
+	 * @param relay
+	 *            <code>true</code> to download the Binary resource while uploading it for the CRR, see
+	 *            {@link StoreDataForCrr}
+	 * @param payloadVariables
+	 *            not <code>null</code>
+	 */
+	public DownloadDataFromDic(ProcessPluginApi api, boolean relay, PayloadVariables payloadVariables)
 	{
 		super(api);
+
+		this.relay = relay;
+		this.payloadVariables = payloadVariables;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		super.afterPropertiesSet();
+
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
 	protected void doExecute(DelegateExecution execution, Variables variables) throws BpmnError, Exception
 	{
+		if (relay)
+			return;
+
 		Task task = variables.getStartTask();
-		IdType id = getDataReference(task).get();
+		IdType id = getDataReference(api, task).get();
 
-		try (InputStream binary = readBinaryResource(id))
+		try (InputStream binary = new BinaryResourceClient(api).read(id))
 		{
-			byte[] encrypted = binary.readAllBytes();
-			variables.setByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE, encrypted);
+			long size = payloadVariables.setPayload(execution, variables, BPMN_EXECUTION_VARIABLE_BUNDLE,
+					new CountingInputStream(binary, ENCRYPTED_BUNDLE_SIZE_MAX));
 
-			task.addOutput().setValue(new UnsignedIntType(encrypted.length)).getType().getCodingFirstRep()
-					.setSystem(CODESYSTEM_NUM_CODEX_DATA_TRANSFER)
-					.setCode(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE);
-
-			variables.updateTask(task);
+			variables.updateTask(addEncryptedBundleSizeToTask(task, size));
 		}
 		catch (Exception e)
 		{
@@ -60,7 +95,7 @@ public class DownloadDataFromDic extends AbstractServiceDelegate
 		}
 	}
 
-	private Optional<IdType> getDataReference(Task task)
+	static Optional<IdType> getDataReference(ProcessPluginApi api, Task task)
 	{
 		return api.getTaskHelper()
 				.getFirstInputParameterValue(task, CODESYSTEM_NUM_CODEX_DATA_TRANSFER,
@@ -68,18 +103,22 @@ public class DownloadDataFromDic extends AbstractServiceDelegate
 				.map(Reference::getReference).map(IdType::new);
 	}
 
-	private InputStream readBinaryResource(IdType binaryId) throws Exception
+	/**
+	 * @param task
+	 *            not <code>null</code>
+	 * @param encryptedSize
+	 *            &gt;= 0 and &lt;= ENCRYPTED_BUNDLE_SIZE_MAX
+	 * @return the given task
+	 */
+	static Task addEncryptedBundleSizeToTask(Task task, long encryptedSize)
 	{
-		final String id = binaryId.getIdPart();
-		final String version = binaryId.getVersionIdPart();
-
-		FhirWebserviceClient client = api.getFhirWebserviceClientProvider().getWebserviceClient(binaryId.getBaseUrl());
-
-		logger.info("Reading binary from {} with id {}/{}", client.getBaseUrl(), id, version);
-
-		if (version != null && !version.isEmpty())
-			return client.readBinary(id, version, MediaType.valueOf(MediaType.APPLICATION_OCTET_STREAM));
-		else
-			return client.readBinary(id, MediaType.valueOf(MediaType.APPLICATION_OCTET_STREAM));
+		if (encryptedSize < 0 || encryptedSize > ENCRYPTED_BUNDLE_SIZE_MAX)
+			throw new IllegalArgumentException(
+					"encryptedSize " + encryptedSize + " not within 0 and " + ENCRYPTED_BUNDLE_SIZE_MAX);
+
+		task.addOutput().setValue(new UnsignedIntType((int) encryptedSize)).getType().getCodingFirstRep()
+				.setSystem(CODESYSTEM_NUM_CODEX_DATA_TRANSFER)
+				.setCode(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE);
+		return task;
 	}
 }
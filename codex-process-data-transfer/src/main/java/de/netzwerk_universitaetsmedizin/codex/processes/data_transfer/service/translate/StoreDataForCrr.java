@@ -2,8 +2,13 @@ package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.t
 
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_BINARY_URL;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_BUNDLE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DIC_FAILED;
 import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.ENCRYPTED_BUNDLE_SIZE_MAX;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Objects;
 
 import org.camunda.bpm.engine.delegate.BpmnError;
@@ -12,10 +17,14 @@ import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.ResourceType;
+import org.hl7.fhir.r4.model.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.StreamedBinary;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.DataLogger;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.constants.NamingSystems;
@@ -26,15 +35,102 @@ public class StoreDataForCrr extends AbstractServiceDelegate
 {
 	private static final Logger logger = LoggerFactory.getLogger(StoreDataForCrr.class);
 
+	/**
+	 * Read failure of the Binary resource downloaded from the DIC while relaying it to the local DSF FHIR server.
+	 */
+	private static final class DicReadException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		DicReadException(Exception cause)
+		{
+			super(cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Wraps exceptions of the download from the DIC in {@link DicReadException}s, to distinguish them from failures of
+	 * the upload to the local DSF FHIR server.
+	 */
+	private static final class DicInputStream extends FilterInputStream
+	{
+		DicInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			try
+			{
+				return super.read();
+			}
+			catch (IOException | RuntimeException e)
+			{
+				throw new DicReadException(e);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			try
+			{
+				return super.read(b, off, len);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				throw new DicReadException(e);
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			try
+			{
+				return super.skip(n);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				throw new DicReadException(e);
+			}
+		}
+	}
+
 	private final String crrIdentifierValue;
 	private final DataLogger dataLogger;
+	private final boolean relay;
+	private final PayloadVariables payloadVariables;
 
 	public StoreDataForCrr(ProcessPluginApi api, String crrIdentifierValue, DataLogger dataLogger)
+	{
+		this(api, crrIdentifierValue, dataLogger, false, new PayloadVariables(null));
+	}
+
+	/**
+	 * @param api
+	 *            not <code>null</code>
+	 * @param crrIdentifierValue
+	 *            not <code>null</code>
+	 * @param dataLogger
+	 *            not <code>null</code>
+	 * @param relay
+	 *            <code>true</code> to upload the Binary resource from the DIC while downloading it, without storing the
+	 *            encrypted data as process variable, see {@link DownloadDataFromDic}
+	 * @param payloadVariables
+	 *            not <code>null</code>, used if <b>relay</b> is <code>false</code>
+	 */
+	public StoreDataForCrr(ProcessPluginApi api, String crrIdentifierValue, DataLogger dataLogger, boolean relay,
+			PayloadVariables payloadVariables)
 	{
 		super(api);
 
 		this.crrIdentifierValue = crrIdentifierValue;
 		this.dataLogger = dataLogger;
+		this.relay = relay;
+		this.payloadVariables = payloadVariables;
 	}
 
 	@Override
@@ -44,16 +140,101 @@ public class StoreDataForCrr extends AbstractServiceDelegate
 
 		Objects.requireNonNull(crrIdentifierValue, "crrIdentifierValue");
 		Objects.requireNonNull(dataLogger, "dataLogger");
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
 	protected void doExecute(DelegateExecution execution, Variables variables) throws BpmnError, Exception
 	{
-		byte[] encrypted = variables.getByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE);
-		String downloadUrl = saveBinary(encrypted);
+		String downloadUrl;
+		if (relay)
+		{
+			Task task = variables.getStartTask();
+			IdType dicBinaryId = DownloadDataFromDic.getDataReference(api, task).get();
+
+			StreamedBinary created = relayBinary(dicBinaryId);
+			logger.info("Encrypted data relayed from {} to local Binary resource {}, {} bytes, SHA-256 {}",
+					dicBinaryId.getValue(), created.getId().getIdPart(), created.getSize(), created.getSha256());
+
+			variables.updateTask(DownloadDataFromDic.addEncryptedBundleSizeToTask(task, created.getSize()));
+			downloadUrl = toDownloadUrl(created.getId());
+		}
+		else
+		{
+			byte[] encrypted = payloadVariables.getPayloadBytes(variables, BPMN_EXECUTION_VARIABLE_BUNDLE);
+			downloadUrl = saveBinary(encrypted);
+		}
+
 		variables.setString(BPMN_EXECUTION_VARIABLE_BINARY_URL, downloadUrl);
 	}
 
+	protected StreamedBinary relayBinary(IdType dicBinaryId)
+	{
+		String securityContext = getCrrSecurityContextReference();
+		BinaryResourceClient client = new BinaryResourceClient(api);
+
+		InputStream binary;
+		try
+		{
+			binary = client.read(dicBinaryId);
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while reading Binary resoruce: {}", e.getMessage(), e);
+
+			throw new BpmnError(
+					CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DIC_FAILED,
+					"Unable to download Binary resource with encrypted data from DIC");
+		}
+
+		try (binary)
+		{
+			// aborts the upload before it completes if the size can not be reported in the Task output
+			return client.createStreaming(new DicInputStream(binary), securityContext, ENCRYPTED_BUNDLE_SIZE_MAX);
+		}
+		catch (Exception e)
+		{
+			if (isDicReadFailure(e))
+			{
+				logger.warn("Error while reading Binary resource from DIC: {}", e.getMessage(), e);
+
+				throw new BpmnError(
+						CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DIC_FAILED,
+						"Unable to download Binary resource with encrypted data from DIC");
+			}
+
+			logger.warn("Error while relaying Binary resource: {}", e.getMessage(), e);
+
+			throw new BpmnError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA,
+					"Unable to create Binary resource with encrypted data for CRR in local DSF FHIR server");
+		}
+	}
+
+	private static boolean isDicReadFailure(Throwable e)
+	{
+		// the HTTP client of the upload wraps exceptions of the request body
+		for (Throwable t = e; t != null; t = t.getCause())
+		{
+			if (t instanceof DicReadException)
+				return true;
+		}
+
+		return false;
+	}
+
+	private String getCrrSecurityContextReference()
+	{
+		return api.getOrganizationProvider()
+				.getOrganization(NamingSystems.OrganizationIdentifier.withValue(crrIdentifierValue))
+				.map(o -> ResourceType.Organization.name() + "/" + o.getIdElement().getIdPart()).orElseThrow(() ->
+				{
+					logger.warn("CRR organization with identifier '{}' not found", crrIdentifierValue);
+
+					return new BpmnError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA,
+							"Unable to create Binary resource with encrypted data for CRR, CRR organization not found");
+				});
+	}
+
 	protected String saveBinary(byte[] encryptedContent)
 	{
 		Reference securityContext = new Reference();
@@ -63,6 +244,11 @@ public class StoreDataForCrr extends AbstractServiceDelegate
 				.setSecurityContext(securityContext).setData(encryptedContent);
 
 		IdType created = createBinaryResource(binary);
+		return toDownloadUrl(created);
+	}
+
+	private String toDownloadUrl(IdType created)
+	{
 		return new IdType(api.getFhirWebserviceClientProvider().getLocalWebserviceClient().getBaseUrl(),
 				ResourceType.Binary.name(), created.getIdPart(), created.getVersionIdPart()).getValue();
 	}
@@ -71,7 +257,7 @@ public class StoreDataForCrr extends AbstractServiceDelegate
 	{
 		try
 		{
-			return api.getFhirWebserviceClientProvider().getLocalWebserviceClient().withMinimalReturn().create(binary);
+			return new BinaryResourceClient(api).create(binary);
 		}
 		catch (Exception e)
 		{
@@ -16,7 +16,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.BinaryResourceClient;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.DataLogger;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.activity.AbstractServiceDelegate;
 import dev.dsf.bpe.v1.constants.NamingSystems;
@@ -28,12 +30,19 @@ public class StoreValidationErrorForDic extends AbstractServiceDelegate implemen
 	private static final Logger logger = LoggerFactory.getLogger(StoreValidationErrorForDic.class);
 
 	private DataLogger dataLogger;
+	private final PayloadVariables payloadVariables;
 
 	public StoreValidationErrorForDic(ProcessPluginApi api, DataLogger dataLogger)
+	{
+		this(api, dataLogger, new PayloadVariables(null));
+	}
+
+	public StoreValidationErrorForDic(ProcessPluginApi api, DataLogger dataLogger, PayloadVariables payloadVariables)
 	{
 		super(api);
 
 		this.dataLogger = dataLogger;
+		this.payloadVariables = payloadVariables;
 	}
 
 	@Override
@@ -42,6 +51,7 @@ public class StoreValidationErrorForDic extends AbstractServiceDelegate implemen
 		super.afterPropertiesSet();
 
 		Objects.requireNonNull(dataLogger, "dataLogger");
+		Objects.requireNonNull(payloadVariables, "payloadVariables");
 	}
 
 	@Override
@@ -49,7 +59,7 @@ public class StoreValidationErrorForDic extends AbstractServiceDelegate implemen
 	{
 		String dicIdentifierValue = variables.getStartTask().getRequester().getIdentifier().getValue();
 
-		byte[] encrypted = variables.getByteArray(BPMN_EXECUTION_VARIABLE_BUNDLE);
+		byte[] encrypted = payloadVariables.getPayloadBytes(variables, BPMN_EXECUTION_VARIABLE_BUNDLE);
 		String downloadUrl = saveBinary(encrypted, dicIdentifierValue);
 		variables.setString(BPMN_EXECUTION_VARIABLE_BINARY_URL, downloadUrl);
 	}
@@ -71,7 +81,7 @@ public class StoreValidationErrorForDic extends AbstractServiceDelegate implemen
 	{
 		try
 		{
-			return api.getFhirWebserviceClientProvider().getLocalWebserviceClient().withMinimalReturn().create(binary);
+			return new BinaryResourceClient(api).create(binary);
 		}
 		catch (Exception e)
 		{
@@ -0,0 +1,58 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandle;
+
+/**
+ * Local store for large payloads of running process instances, e.g. encrypted bundles. Process variables hold a
+ * {@link PayloadHandle} instead of the payload, keeping the payload out of the engine database.
+ */
+public interface PayloadSpool
+{
+	/**
+	 * @param processInstanceId
+	 *            not <code>null</code>, owner of the payload
+	 * @param payload
+	 *            not <code>null</code>, read to the end, not closed
+	 * @return handle of the stored payload
+	 * @throws IOException
+	 *             if the payload could not be read or stored
+	 */
+	PayloadHandle store(String processInstanceId, InputStream payload) throws IOException;
+
+	/**
+	 * @param handle
+	 *            not <code>null</code>
+	 * @return payload, the digest and size are verified while reading
+	 * @throws IOException
+	 *             if the payload does not exist, or while reading if it does not match the digest or size of the handle
+	 */
+	InputStream read(PayloadHandle handle) throws IOException;
+
+	/**
+	 * @param handle
+	 *            not <code>null</code>
+	 * @throws IOException
+	 */
+	void delete(PayloadHandle handle) throws IOException;
+
+	/**
+	 * Deletes all payloads of the given process instance.
+	 *
+	 * @param processInstanceId
+	 *            not <code>null</code>
+	 * @throws IOException
+	 */
+	void deleteAll(String processInstanceId) throws IOException;
+
+	/**
+	 * Deletes payloads of process instances not modified within the configured max age, e.g. of process instances
+	 * deleted while the BPE was not running, and temporary files of incomplete writes.
+	 *
+	 * @return number of deleted process instance folders
+	 * @throws IOException
+	 */
+	int deleteExpired() throws IOException;
+}
@@ -0,0 +1,329 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingOutputStream;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandle;
+
+/**
+ * Stores payloads in one folder per process instance below the spool folder, payload files are named by the hex encoded
+ * SHA-256 digest of their content. Payloads are written to a temporary file, forced to disk and moved to their final
+ * name before the handle is returned, a payload file therefore always has the content given by its name. After a crash
+ * the BPE continues process instances from their last wait state with the payloads stored before; temporary files of
+ * incomplete writes are deleted at process end or after one hour, folders of process instances not ended normally after
+ * the configured max age.
+ */
+public class PayloadSpoolImpl implements PayloadSpool
+{
+	private static final Logger logger = LoggerFactory.getLogger(PayloadSpoolImpl.class);
+
+	private static final Duration TEMP_FILE_MAX_AGE = Duration.ofHours(1);
+	private static final String TEMP_FILENAME_SUFFIX = ".tmp";
+
+	private static final Pattern PROCESS_INSTANCE_ID = Pattern.compile("[A-Za-z0-9-]+");
+	private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+	private final Path spoolFolder;
+	private final Duration maxAge;
+
+	/**
+	 * @param spoolFolder
+	 *            not <code>null</code>, existing and writable
+	 * @param maxAge
+	 *            not <code>null</code>, not negative
+	 */
+	public PayloadSpoolImpl(Path spoolFolder, Duration maxAge)
+	{
+		this.spoolFolder = Objects.requireNonNull(spoolFolder, "spoolFolder");
+		this.maxAge = Objects.requireNonNull(maxAge, "maxAge");
+
+		if (maxAge.isNegative())
+			throw new IllegalArgumentException("maxAge negative");
+	}
+
+	private static MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Path processInstanceFolder(String processInstanceId)
+	{
+		Objects.requireNonNull(processInstanceId, "processInstanceId");
+		if (!PROCESS_INSTANCE_ID.matcher(processInstanceId).matches())
+			throw new IllegalArgumentException("processInstanceId '" + processInstanceId + "' not valid");
+
+		return spoolFolder.resolve(processInstanceId);
+	}
+
+	private Path payloadFile(PayloadHandle handle)
+	{
+		Objects.requireNonNull(handle, "handle");
+
+		String[] path = handle.getPath().split("/", -1);
+		if (path.length != 2 || !SHA256.matcher(path[1]).matches() || !path[1].equals(handle.getSha256()))
+			throw new IllegalArgumentException("Payload handle path '" + handle.getPath() + "' not valid");
+
+		return processInstanceFolder(path[0]).resolve(path[1]);
+	}
+
+	@Override
+	public PayloadHandle store(String processInstanceId, InputStream payload) throws IOException
+	{
+		Objects.requireNonNull(payload, "payload");
+
+		Path folder = Files.createDirectories(processInstanceFolder(processInstanceId));
+		Path tempFile = folder.resolve(UUID.randomUUID().toString() + TEMP_FILENAME_SUFFIX);
+
+		try
+		{
+			MessageDigest digest = sha256();
+			long size;
+
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE))
+			{
+				CountingOutputStream out = new CountingOutputStream(new DigestOutputStream(
+						new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), digest));
+				payload.transferTo(out);
+				out.flush();
+
+				// payload on disk before the handle is stored in the engine database
+				channel.force(true);
+				size = out.getCount();
+			}
+
+			String sha256 = HexFormat.of().formatHex(digest.digest());
+			move(tempFile, folder.resolve(sha256));
+
+			PayloadHandle handle = new PayloadHandle(sha256, size, processInstanceId + "/" + sha256);
+			logger.debug("Payload {} stored", handle);
+
+			return handle;
+		}
+		finally
+		{
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static void move(Path source, Path target) throws IOException
+	{
+		try
+		{
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public InputStream read(PayloadHandle handle) throws IOException
+	{
+		Path file = payloadFile(handle);
+
+		long size = Files.size(file);
+		if (size != handle.getSize())
+			throw new IOException("Payload " + handle + " has size " + size + " bytes on disk");
+
+		return new VerifyingInputStream(Files.newInputStream(file), handle);
+	}
+
+	@Override
+	public void delete(PayloadHandle handle) throws IOException
+	{
+		if (Files.deleteIfExists(payloadFile(handle)))
+			logger.debug("Payload {} deleted", handle);
+	}
+
+	@Override
+	public void deleteAll(String processInstanceId) throws IOException
+	{
+		Path folder = processInstanceFolder(processInstanceId);
+
+		if (Files.isDirectory(folder))
+		{
+			deleteFolder(folder);
+			logger.debug("Payloads of process instance {} deleted", processInstanceId);
+		}
+	}
+
+	private static void deleteFolder(Path folder) throws IOException
+	{
+		List<Path> files;
+		try (Stream<Path> list = Files.list(folder))
+		{
+			files = list.collect(Collectors.toList());
+		}
+
+		for (Path file : files)
+			Files.deleteIfExists(file);
+
+		Files.deleteIfExists(folder);
+	}
+
+	@Override
+	public int deleteExpired() throws IOException
+	{
+		Instant now = Instant.now();
+		int deleted = 0;
+
+		List<Path> folders;
+		try (Stream<Path> list = Files.list(spoolFolder))
+		{
+			folders = list.filter(Files::isDirectory)
+					.filter(f -> PROCESS_INSTANCE_ID.matcher(f.getFileName().toString()).matches())
+					.collect(Collectors.toList());
+		}
+
+		for (Path folder : folders)
+		{
+			try
+			{
+				if (isOlder(folder, now, maxAge))
+				{
+					logger.warn("Deleting payloads of process instance {}, not modified for more than {}",
+							folder.getFileName(), maxAge);
+					deleteFolder(folder);
+					deleted++;
+				}
+				else
+					deleteTempFiles(folder, now);
+			}
+			catch (NoSuchFileException e)
+			{
+				// process instance ended concurrently
+			}
+		}
+
+		return deleted;
+	}
+
+	private static void deleteTempFiles(Path folder, Instant now) throws IOException
+	{
+		List<Path> tempFiles;
+		try (Stream<Path> list = Files.list(folder))
+		{
+			tempFiles = list.filter(f -> f.getFileName().toString().endsWith(TEMP_FILENAME_SUFFIX))
+					.collect(Collectors.toList());
+		}
+
+		for (Path tempFile : tempFiles)
+			if (isOlder(tempFile, now, TEMP_FILE_MAX_AGE))
+				Files.deleteIfExists(tempFile);
+	}
+
+	private static boolean isOlder(Path file, Instant now, Duration age) throws IOException
+	{
+		return Files.getLastModifiedTime(file).toInstant().plus(age).isBefore(now);
+	}
+
+	private static final class VerifyingInputStream extends FilterInputStream
+	{
+		private final PayloadHandle handle;
+		private final MessageDigest digest = sha256();
+
+		private long count;
+		private boolean verified;
+
+		VerifyingInputStream(InputStream in, PayloadHandle handle)
+		{
+			super(in);
+			this.handle = handle;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = in.read();
+			if (b < 0)
+				verify();
+			else
+			{
+				digest.update((byte) b);
+				count++;
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int read = in.read(b, off, len);
+			if (read < 0)
+				verify();
+			else
+			{
+				digest.update(b, off, read);
+				count += read;
+			}
+
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			// skipped bytes need to be part of the digest
+			byte[] buffer = new byte[(int) Math.min(n, 8192)];
+			long skipped = 0;
+			for (int read; skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) >= 0;)
+				skipped += read;
+
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+
+		private void verify() throws IOException
+		{
+			if (verified)
+				return;
+
+			if (count != handle.getSize()
+					|| !MessageDigest.isEqual(HexFormat.of().parseHex(handle.getSha256()), digest.digest()))
+				throw new IOException("Payload " + handle + " does not match digest or size");
+
+			verified = true;
+		}
+	}
+}
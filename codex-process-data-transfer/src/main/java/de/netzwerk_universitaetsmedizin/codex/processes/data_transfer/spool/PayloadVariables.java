@@ -0,0 +1,159 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandle;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandleValues;
+import dev.dsf.bpe.v1.variables.Variables;
+
+/**
+ * Sets and gets large payloads as process variables. With a {@link PayloadSpool} the payload is stored in the spool and
+ * the variable holds a {@link PayloadHandle}, without a spool the variable holds the payload as byte array. Payloads
+ * stored as byte array by process instances started before a spool was configured can still be read.
+ * <p>
+ * Payloads replaced by a later payload of the same process instance are not deleted before the process instance ends,
+ * the engine may still roll back to a wait state referencing the replaced payload.
+ */
+public class PayloadVariables
+{
+	private final PayloadSpool spool;
+
+	/**
+	 * @param spool
+	 *            may be <code>null</code>, payloads are stored as byte array variables
+	 */
+	public PayloadVariables(PayloadSpool spool)
+	{
+		this.spool = spool;
+	}
+
+	/**
+	 * @param execution
+	 *            not <code>null</code>
+	 * @param variables
+	 *            not <code>null</code>
+	 * @param name
+	 *            not <code>null</code>
+	 * @param payload
+	 *            not <code>null</code>, read to the end, not closed
+	 * @return payload size in bytes
+	 * @throws IOException
+	 *             if the payload could not be read or stored
+	 */
+	public long setPayload(DelegateExecution execution, Variables variables, String name, InputStream payload)
+			throws IOException
+	{
+		Objects.requireNonNull(execution, "execution");
+		Objects.requireNonNull(variables, "variables");
+		Objects.requireNonNull(name, "name");
+		Objects.requireNonNull(payload, "payload");
+
+		if (spool == null)
+		{
+			byte[] bytes = payload.readAllBytes();
+			variables.setByteArray(name, bytes);
+			return bytes.length;
+		}
+		else
+		{
+			PayloadHandle handle = spool.store(execution.getProcessInstanceId(), payload);
+			variables.setVariable(name, PayloadHandleValues.create(handle));
+			return handle.getSize();
+		}
+	}
+
+	/**
+	 * @param execution
+	 *            not <code>null</code>
+	 * @param variables
+	 *            not <code>null</code>
+	 * @param name
+	 *            not <code>null</code>
+	 * @param payload
+	 *            not <code>null</code>
+	 * @throws IOException
+	 *             if the payload could not be stored
+	 */
+	public void setPayload(DelegateExecution execution, Variables variables, String name, byte[] payload)
+			throws IOException
+	{
+		Objects.requireNonNull(payload, "payload");
+
+		if (spool == null)
+			variables.setByteArray(name, payload);
+		else
+			setPayload(execution, variables, name, new ByteArrayInputStream(payload));
+	}
+
+	/**
+	 * @param variables
+	 *            not <code>null</code>
+	 * @param name
+	 *            not <code>null</code>
+	 * @return payload, verified against the digest and size of the handle while reading if stored in the spool
+	 * @throws IOException
+	 *             if the variable does not hold a payload or the payload could not be read
+	 */
+	public InputStream getPayload(Variables variables, String name) throws IOException
+	{
+		Objects.requireNonNull(variables, "variables");
+		Objects.requireNonNull(name, "name");
+
+		Object value = variables.getVariable(name);
+
+		if (value instanceof PayloadHandle)
+		{
+			if (spool == null)
+				throw new IOException("Process variable " + name + " references spooled payload " + value
+						+ ", payload spool not configured");
+
+			return spool.read((PayloadHandle) value);
+		}
+		else if (value instanceof byte[])
+			return new ByteArrayInputStream((byte[]) value);
+		else
+			throw new IOException("Process variable " + name + " does not hold a payload");
+	}
+
+	/**
+	 * @param variables
+	 *            not <code>null</code>
+	 * @param name
+	 *            not <code>null</code>
+	 * @return payload
+	 * @throws IOException
+	 *             if the variable does not hold a payload or the payload could not be read
+	 * @see #getPayload(Variables, String)
+	 */
+	public byte[] getPayloadBytes(Variables variables, String name) throws IOException
+	{
+		try (InputStream payload = getPayload(variables, name))
+		{
+			return payload.readAllBytes();
+		}
+	}
+
+	/**
+	 * Deletes all spooled payloads of the given execution's process instance and expired payloads of other process
+	 * instances, does nothing without a spool.
+	 *
+	 * @param execution
+	 *            not <code>null</code>
+	 * @throws IOException
+	 */
+	public void deletePayloads(DelegateExecution execution) throws IOException
+	{
+		Objects.requireNonNull(execution, "execution");
+
+		if (spool != null)
+		{
+			spool.deleteAll(execution.getProcessInstanceId());
+			spool.deleteExpired();
+		}
+	}
+}
@@ -33,14 +33,16 @@ public class ReceiveConfig
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public DownloadDataFromDts downloadDataFromDts()
 	{
-		return new DownloadDataFromDts(api);
+		return new DownloadDataFromDts(api, transferDataConfig.crrReceiveStreaming(),
+				transferDataConfig.payloadVariables());
 	}
 
 	@Bean
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public DecryptData decryptData()
 	{
-		return new DecryptData(api, transferDataConfig.crrKeyProvider());
+		return new DecryptData(api, transferDataConfig.crrKeyProvider(), transferDataConfig.crrReceiveStreaming(),
+				transferDataConfig.payloadVariables());
 	}
 
 	@Bean
@@ -77,7 +79,7 @@ public class ReceiveConfig
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public EncryptValidationError encryptValidationError()
 	{
-		return new EncryptValidationError(api);
+		return new EncryptValidationError(api, transferDataConfig.payloadVariables());
 	}
 
 	@Bean
@@ -85,7 +87,7 @@ public class ReceiveConfig
 	public StoreValidationErrorForDts storeValidationErrorForDts()
 	{
 		return new StoreValidationErrorForDts(api, transferDataConfig.dtsIdentifierValue(),
-				transferDataConfig.dataLogger());
+				transferDataConfig.dataLogger(), transferDataConfig.payloadVariables());
 	}
 
 	@Bean
@@ -90,14 +90,17 @@ public class SendConfig
 	public ValidateData validateData()
 	{
 		return new ValidateData(api, validationConfig.bundleValidatorFactory(),
-				transferDataConfig.errorOutputParameterGenerator(), transferDataConfig.errorLogger());
+				transferDataConfig.errorOutputParameterGenerator(), transferDataConfig.errorLogger(),
+				validationConfig.bundleValidatorReadinessTimeout(), validationConfig.validationBudget());
 	}
 
 	@Bean
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public EncryptData encryptData()
 	{
-		return new EncryptData(api, transferDataConfig.crrKeyProvider());
+		return new EncryptData(api, transferDataConfig.crrKeyProvider(), transferDataConfig.crrStreaming(),
+				transferDataConfig.crrCompression(), transferDataConfig.crrSegmentSize(),
+				transferDataConfig.payloadVariables());
 	}
 
 	@Bean
@@ -125,7 +128,10 @@ public class SendConfig
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public StoreDataForDts storeDataForDts()
 	{
-		return new StoreDataForDts(api, transferDataConfig.dtsIdentifierValue(), transferDataConfig.dataLogger());
+		return new StoreDataForDts(api, transferDataConfig.dtsIdentifierValue(), transferDataConfig.dataLogger(),
+				transferDataConfig.crrKeyProvider(), transferDataConfig.crrStreaming(),
+				transferDataConfig.crrCompression(), transferDataConfig.crrSegmentSize(),
+				transferDataConfig.payloadVariables());
 	}
 
 	@Bean
@@ -160,14 +166,15 @@ public class SendConfig
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public DownloadValidationErrorFromDts downloadValidationErrorFromDts()
 	{
-		return new DownloadValidationErrorFromDts(api, transferDataConfig.dtsIdentifierValue());
+		return new DownloadValidationErrorFromDts(api, transferDataConfig.dtsIdentifierValue(),
+				transferDataConfig.payloadVariables());
 	}
 
 	@Bean
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public DecryptValidationErrorFromDts decryptValidationErrorFromDts()
 	{
-		return new DecryptValidationErrorFromDts(api);
+		return new DecryptValidationErrorFromDts(api, transferDataConfig.payloadVariables());
 	}
 
 	@Bean(name = "Send-logSuccess") // prefix to force distinct bean names
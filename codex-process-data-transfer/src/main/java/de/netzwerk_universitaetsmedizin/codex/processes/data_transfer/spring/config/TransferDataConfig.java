@@ -1,14 +1,18 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spring.config;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
 
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.ConsentClientFactory;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.DataStoreClientFactory;
@@ -16,10 +20,16 @@ import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.Ftt
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.fhir.DataStoreFhirClient;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProvider;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProviderImpl;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadEnvelope;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.error.ErrorInputParameterGenerator;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.error.ErrorOutputParameterGenerator;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.listener.DeleteSpooledPayloadsListener;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.DataLogger;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.ErrorLogger;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadSpool;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadSpoolImpl;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 import dev.dsf.bpe.v1.documentation.ProcessDocumentation;
 
@@ -122,10 +132,50 @@ public class TransferDataConfig
 	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.private.key:#{null}}")
 	private String crrPrivateKeyFile;
 
+	@ProcessDocumentation(description = "Location of the CRR X25519 public-key (PEM, e.g. `openssl pkey -pubout`) used instead of the RSA public-key to encrypt FHIR bundles for the central repository. Per bundle AES keys are derived with an ephemeral X25519 key agreement and HKDF-SHA256, which is considerably cheaper to decrypt for the central repository than RSA. Bundles can only be decrypted by central repository and data transfer process versions supporting X25519 key encapsulation", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend", recommendation = "Use after the central repository publishes a X25519 public-key, ask central repository management for the correct public key regarding the test and production environments", example = "/run/secrets/crr_x25519-public-key-pre-prod.pem")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.x25519.public.key:#{null}}")
+	private String crrX25519PublicKeyFile;
+
+	@ProcessDocumentation(description = "Location of the CRR X25519 private-key (PKCS#8 PEM, e.g. `openssl genpkey -algorithm X25519`) used in addition to the RSA private-key to decrypt FHIR bundles with X25519 key encapsulation for the central repository", processNames = "wwwnetzwerk-universitaetsmedizinde_dataReceive", example = "/run/secrets/crr_x25519-private-key-pre-prod.pem")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.x25519.private.key:#{null}}")
+	private String crrX25519PrivateKeyFile;
+
 	@ProcessDocumentation(description = "DSF organization identifier of the Data Transfer Site", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
 	@Value("${de.netzwerk.universitaetsmedizin.rdp.dts.identifier.value:hs-heilbronn.de}")
 	private String dtsIdentifierValue;
 
+	@ProcessDocumentation(description = "To encode, encrypt and upload FHIR bundles for the central repository in one streaming pass without holding the encrypted bundle in memory or storing it as a process variable, set to 'true'. Recommended for large bundles", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.streaming:false}")
+	private boolean crrStreaming;
+
+	@ProcessDocumentation(description = "To relay encrypted FHIR bundles from the DIC to the central repository in one streaming pass, uploading the Binary resource for the central repository while downloading it from the DIC, set to 'true'. The encrypted bundle is neither held in memory nor stored as a process variable, only its size and SHA-256 digest are logged. Requires raw binary uploads to be supported by the local DSF FHIR server. Recommended for large bundles", processNames = "wwwnetzwerk-universitaetsmedizinde_dataTranslate")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.dts.relay:false}")
+	private boolean dtsRelay;
+
+	@ProcessDocumentation(description = "To download, decrypt and parse FHIR bundles from the data transfer site in one streaming pass without storing the encrypted bundle as a process variable, set to 'true'. Only the JSON of a single bundle entry is held in memory as text; bundles with segmented encryption are decrypted while downloading. Recommended for large bundles", processNames = "wwwnetzwerk-universitaetsmedizinde_dataReceive")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.receive.streaming:false}")
+	private boolean crrReceiveStreaming;
+
+	@ProcessDocumentation(description = "Compression of FHIR bundles for the central repository applied before encryption, one of 'none', 'deflate' or 'deflate-dictionary' (deflate with a preset dictionary of common FHIR and MII strings). Compressed bundles can only be decrypted by central repository and data transfer process versions supporting compression, validation errors returned to the DIC are compressed the same way", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend", recommendation = "Use 'deflate-dictionary' after the central repository supports compressed bundles")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.compression:none}")
+	private String crrCompression;
+
+	@ProcessDocumentation(description = "Segment size in bytes for segmented encryption of FHIR bundles for the central repository, 1024 to 16777216. Segments are authenticated independently, allowing the central repository to decrypt large bundles in parallel or while receiving. Segmented bundles can only be decrypted by central repository and data transfer process versions supporting segmented encryption, set to '0' to encrypt bundles with a single AES-GCM invocation", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend", recommendation = "Use '65536' after the central repository supports segmented encryption")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.segment.size:0}")
+	private int crrSegmentSize;
+
+	@ProcessDocumentation(description = "Folder to store encrypted bundles and validation errors of running 'send', 'translate' and 'receive' process instances, process variables reference the stored files instead of holding the data. Files are deleted when the process instance ends. If not set, the data is stored as process variables in the BPE database", processNames = {
+			"wwwnetzwerk-universitaetsmedizinde_dataSend", "wwwnetzwerk-universitaetsmedizinde_dataTranslate",
+			"wwwnetzwerk-universitaetsmedizinde_dataReceive" }, recommendation = "Specify a folder on a persistent volume not shared with other BPE instances, required to continue process instances after a BPE restart", example = "/opt/bpe/data/payload_spool")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.payload.spool.folder:#{null}}")
+	private String payloadSpoolFolder;
+
+	@ProcessDocumentation(description = "Hours after which stored files of process instances not ended normally, e.g. deleted via the BPE database, are deleted from the payload spool folder", processNames = {
+			"wwwnetzwerk-universitaetsmedizinde_dataSend", "wwwnetzwerk-universitaetsmedizinde_dataTranslate",
+			"wwwnetzwerk-universitaetsmedizinde_dataReceive" }, recommendation = "Specify a value longer than the maximum duration of a process instance, including retries")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.payload.spool.maxAgeHours:24}")
+	private int payloadSpoolMaxAgeHours;
+
 	@ProcessDocumentation(description = "DSF organization identifier of the central research repository", processNames = "wwwnetzwerk-universitaetsmedizinde_dataTranslate")
 	@Value("${de.netzwerk.universitaetsmedizin.rdp.crr.identifier.value:num-codex.de}")
 	private String crrIdentifierValue;
@@ -256,6 +306,35 @@ public class TransferDataConfig
 		return crrIdentifierValue;
 	}
 
+	public boolean crrStreaming()
+	{
+		return crrStreaming;
+	}
+
+	public boolean dtsRelay()
+	{
+		return dtsRelay;
+	}
+
+	public boolean crrReceiveStreaming()
+	{
+		return crrReceiveStreaming;
+	}
+
+	public PayloadCompression crrCompression()
+	{
+		return PayloadCompression.fromConfigValue(crrCompression);
+	}
+
+	public int crrSegmentSize()
+	{
+		if (crrSegmentSize != 0 && !PayloadEnvelope.isSupportedSegmentSize(crrSegmentSize))
+			throw new IllegalArgumentException("Segment size " + crrSegmentSize + " not supported, expected 0 or "
+					+ PayloadEnvelope.MIN_SEGMENT_SIZE + " to " + PayloadEnvelope.MAX_SEGMENT_SIZE);
+
+		return crrSegmentSize;
+	}
+
 	public boolean getSendDryRunSuccessMail()
 	{
 		return sendDryRunSuccessMail;
@@ -264,7 +343,8 @@ public class TransferDataConfig
 	@Bean
 	public CrrKeyProvider crrKeyProvider()
 	{
-		return CrrKeyProviderImpl.fromFiles(crrPrivateKeyFile, crrPublicKeyFile);
+		return CrrKeyProviderImpl.fromFiles(crrPrivateKeyFile, crrPublicKeyFile, crrX25519PrivateKeyFile,
+				crrX25519PublicKeyFile);
 	}
 
 	@Bean
@@ -289,6 +369,44 @@ public class TransferDataConfig
 				proxyPassword, fttpHapiClientVerbose);
 	}
 
+	@Bean
+	public PayloadVariables payloadVariables()
+	{
+		return new PayloadVariables(payloadSpool());
+	}
+
+	@Bean
+	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+	public DeleteSpooledPayloadsListener deleteSpooledPayloadsListener()
+	{
+		return new DeleteSpooledPayloadsListener(payloadVariables());
+	}
+
+	private PayloadSpool payloadSpool()
+	{
+		if (payloadSpoolFolder == null || payloadSpoolFolder.isBlank())
+			return null;
+
+		Path folder = Paths.get(payloadSpoolFolder);
+
+		try
+		{
+			Files.createDirectories(folder);
+
+			if (!Files.isWritable(folder))
+				throw new IOException("Payload spool folder " + folder.toAbsolutePath().toString() + " not writable");
+
+			PayloadSpool spool = new PayloadSpoolImpl(folder, Duration.ofHours(payloadSpoolMaxAgeHours));
+			spool.deleteExpired();
+
+			return spool;
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
 	@Bean
 	public DataLogger dataLogger()
 	{
@@ -6,6 +6,7 @@ import org.springframework.context.annotation.Configuration;
 
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PatientReferenceListSerializer;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PatientReferenceSerializer;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandleSerializer;
 import dev.dsf.bpe.v1.ProcessPluginApi;
 
 @Configuration
@@ -25,4 +26,10 @@ public class TransferDataSerializerConfig
 	{
 		return new PatientReferenceListSerializer(api.getObjectMapper());
 	}
+
+	@Bean
+	public PayloadHandleSerializer payloadHandleSerializer()
+	{
+		return new PayloadHandleSerializer(api.getObjectMapper());
+	}
 }
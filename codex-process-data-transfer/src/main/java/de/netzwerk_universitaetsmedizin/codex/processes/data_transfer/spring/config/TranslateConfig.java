@@ -38,7 +38,7 @@ public class TranslateConfig
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public DownloadDataFromDic downloadDataFromDiz()
 	{
-		return new DownloadDataFromDic(api);
+		return new DownloadDataFromDic(api, transferDataConfig.dtsRelay(), transferDataConfig.payloadVariables());
 	}
 
 	@Bean
@@ -52,7 +52,8 @@ public class TranslateConfig
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public StoreDataForCrr storeDataForCodex()
 	{
-		return new StoreDataForCrr(api, transferDataConfig.crrIdentifierValue(), transferDataConfig.dataLogger());
+		return new StoreDataForCrr(api, transferDataConfig.crrIdentifierValue(), transferDataConfig.dataLogger(),
+				transferDataConfig.dtsRelay(), transferDataConfig.payloadVariables());
 	}
 
 	@Bean
@@ -101,14 +102,15 @@ public class TranslateConfig
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public DownloadValidationErrorFromCrr downloadValidationErrorFromCrr()
 	{
-		return new DownloadValidationErrorFromCrr(api);
+		return new DownloadValidationErrorFromCrr(api, transferDataConfig.payloadVariables());
 	}
 
 	@Bean
 	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 	public StoreValidationErrorForDic storeValidationErrorForDic()
 	{
-		return new StoreValidationErrorForDic(api, transferDataConfig.dataLogger());
+		return new StoreValidationErrorForDic(api, transferDataConfig.dataLogger(),
+				transferDataConfig.payloadVariables());
 	}
 
 	@Bean
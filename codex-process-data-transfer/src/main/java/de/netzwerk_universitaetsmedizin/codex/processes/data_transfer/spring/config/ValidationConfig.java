@@ -12,6 +12,7 @@ import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
@@ -35,12 +36,17 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.support.IValidationSupport;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.BundleValidatorFactory;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.BundleValidatorFactoryImpl;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.CacheCodec;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.CacheManifest;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.InMemoryCache;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.PluginSnapshotGeneratorImpl;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.PluginSnapshotGeneratorWithFileSystemCache;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.PluginSnapshotGeneratorWithModifiers;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationBudget;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationPackageClient;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationPackageClientJersey;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationPackageClientWithFileSystemCache;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationPackageFileWatcher;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationPackageIdentifier;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationPackageManager;
 import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationPackageManagerImpl;
@@ -82,6 +88,14 @@ public class ValidationConfig
 	@Value("#{'${de.netzwerk.universitaetsmedizin.rdp.validation.package:de.basisprofil.r4|1.4.0,de.medizininformatikinitiative.kerndatensatz.meta|1.0.3,de.medizininformatikinitiative.kerndatensatz.person|2024.0.0-ballot,de.medizininformatikinitiative.kerndatensatz.fall|2024.0.0-ballot,de.medizininformatikinitiative.kerndatensatz.mikrobiologie|2024.0.0}'.trim().split('(,[ ]?)|(\\n)')}")
 	private List<String> validationPackages;
 
+	@ProcessDocumentation(description = "File with FHIR implementation guide packages used to validate resources, one `name|version` per line; if the file exists, it is used instead of `de.netzwerk.universitaetsmedizin.rdp.validation.package` and checked for modifications, changed packages are loaded in the background without restart", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend", example = "/opt/bpe/conf/validation-packages.txt")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.package.file:#{null}}")
+	private String validationPackageFile;
+
+	@ProcessDocumentation(description = "Interval in milliseconds for checking the file configured via `de.netzwerk.universitaetsmedizin.rdp.validation.package.file` for modifications", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.package.file.checkInterval:60000}")
+	private long validationPackageFileCheckInterval;
+
 	@ProcessDocumentation(description = "FHIR implementation guide packages that do not need to be downloaded, list with `name|version` values", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
 	@Value("#{'${de.netzwerk.universitaetsmedizin.rdp.validation.package.noDownload:hl7.fhir.r4.core|4.0.1}'.trim().split('(,[ ]?)|(\\n)')}")
 	private List<String> noDownloadPackages;
@@ -130,6 +144,18 @@ public class ValidationConfig
 	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.package.client.verbose:false}")
 	private boolean packageClientVerbose;
 
+	@ProcessDocumentation(description = "Number of FHIR implementation guide packages downloaded concurrently from the package server", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.package.client.download.threads:4}")
+	private int packageClientDownloadThreads;
+
+	@ProcessDocumentation(description = "Number of retries for FHIR implementation guide package downloads failing with connection errors or HTTP status codes 429 and 5xx", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.package.client.download.retries:3}")
+	private int packageClientDownloadRetries;
+
+	@ProcessDocumentation(description = "Delay in milliseconds before the first retry of a failed FHIR implementation guide package download, doubled for every further retry", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.package.client.download.retryDelay:1000}")
+	private long packageClientDownloadRetryDelay;
+
 	@ProcessDocumentation(description = "ValueSets found in the StructureDefinitions with the specified binding strength will be expanded", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
 	@Value("#{'${de.netzwerk.universitaetsmedizin.rdp.validation.valueset.bindingStrength:required,extensible,preferred,example}'.trim().split('(,[ ]?)|(\\n)')}")
 	private List<String> valueSetExpansionBindingStrengths;
@@ -178,6 +204,10 @@ public class ValidationConfig
 	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.valueset.expansion.client.verbose:false}")
 	private boolean valueSetExpansionClientVerbose;
 
+	@ProcessDocumentation(description = "Maximum number of ValueSet expansions combined into one FHIR batch request to the terminology server, set to `1` for single `$expand` requests; falls back to single requests if the server rejects batch requests", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.valueset.expansion.client.batchSize:20}")
+	private int valueSetExpansionClientBatchSize;
+
 	@ProcessDocumentation(description = "List of ValueSet modifier classes, modifiers are executed before atempting to expand a ValueSet and after", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
 	@Value("#{'${de.netzwerk.universitaetsmedizin.rdp.validation.valueset.expansion.modifierClasses:"
 			+ "de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.value_set.KdsMikrobiologieBugFixer"
@@ -198,6 +228,38 @@ public class ValidationConfig
 	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.structuredefinition.cacheFolder:${java.io.tmpdir}/rdp_validation_cache/StructureDefinition}")
 	private String structureDefinitionCacheFolder;
 
+	@ProcessDocumentation(description = "Maximum size in bytes of the in-memory tier of the ValueSet and StructureDefinition validation caches, measured as uncompressed JSON, parsed resources need several times more heap; set to `0` to disable. Validation packages are never kept in memory", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.cache.memory.maxSize:8388608}")
+	private long cacheMemoryMaxSize;
+
+	@ProcessDocumentation(description = "Compression codec for writing validation cache files, one of `none`, `gzip`, `deflate`, `deflate:<level>` (level 0-9) or `lz4`; cache files written with other codecs are still read", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend", recommendation = "Use `lz4` for faster reading of cached packages, ValueSets and snapshots at the cost of more disk space")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.cache.codec:gzip}")
+	private String cacheCodec;
+
+	@ProcessDocumentation(description = "To delete files not listed in the cache manifest and cache files not used for `de.netzwerk.universitaetsmedizin.rdp.validation.cache.gc.maxUnusedDays` days from the validation cache folders at startup, set to `true`", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend", recommendation = "Enable to limit the growth of the validation cache folders, if validation packages or their versions are changed frequently")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.cache.gc:false}")
+	private boolean cacheGc;
+
+	@ProcessDocumentation(description = "Number of days after which unused validation cache files are deleted at startup, if `de.netzwerk.universitaetsmedizin.rdp.validation.cache.gc` is `true`", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.cache.gc.maxUnusedDays:90}")
+	private int cacheGcMaxUnusedDays;
+
+	@ProcessDocumentation(description = "Maximum time in milliseconds the validation of a transfer bundle waits for the validator initialization (package downloads, ValueSet expansion and snapshot generation) started in the background after plugin deployment; validation is skipped if the initialization is not finished in time. The waiting process engine job executor thread is blocked", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend", recommendation = "Keep in the seconds range, a long timeout blocks job executor threads of all concurrently started transfers")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.readiness.timeout:30000}")
+	private long validationReadinessTimeout;
+
+	@ProcessDocumentation(description = "To disable the synthetic warm-up validation after the validator initialization, set to `false`", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.warmUp:true}")
+	private boolean validationWarmUp;
+
+	@ProcessDocumentation(description = "Stops the validation of a transfer bundle after the given number of resources with error, remaining resources are reported as not validated; `1` for fail-fast, `0` to validate all resources", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.maxResourcesWithError:0}")
+	private int validationMaxResourcesWithError;
+
+	@ProcessDocumentation(description = "Stops the validation of a transfer bundle after the given time in milliseconds, remaining resources are reported as not validated; `0` for no time limit. If no errors were found before the time budget is exceeded, the bundle is sent with local validation status `false`", processNames = "wwwnetzwerk-universitaetsmedizinde_dataSend")
+	@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.timeBudget:0}")
+	private long validationTimeBudget;
+
 	@Value("${java.io.tmpdir}")
 	private String systemTempFolder;
 
@@ -220,7 +282,8 @@ public class ValidationConfig
 
 		return new ValidationPackageManagerImpl(validationPackageClient(), valueSetExpansionClient(), objectMapper,
 				fhirContext, internalSnapshotGeneratorFactory(), internalValueSetExpanderFactory(), noDownload,
-				bindingStrengths);
+				bindingStrengths, packageClientDownloadThreads, packageClientDownloadRetries,
+				packageClientDownloadRetryDelay);
 	}
 
 	private StructureDefinitionModifier createStructureDefinitionModifier(String className)
@@ -247,9 +310,10 @@ public class ValidationConfig
 		List<StructureDefinitionModifier> structureDefinitionModifiers = structureDefinitionModifierClasses.stream()
 				.map(this::createStructureDefinitionModifier).collect(Collectors.toList());
 
-		return (fc, vs) -> new PluginSnapshotGeneratorWithFileSystemCache(structureDefinitionCacheFolder(), fc,
-				new PluginSnapshotGeneratorWithModifiers(new PluginSnapshotGeneratorImpl(fc, vs),
-						structureDefinitionModifiers));
+		return (fc, vs) -> new PluginSnapshotGeneratorWithFileSystemCache(structureDefinitionCacheFolder(),
+				cacheCodec(), structureDefinitionMemoryCache(), fc, new PluginSnapshotGeneratorWithModifiers(
+						new PluginSnapshotGeneratorImpl(fc, vs), structureDefinitionModifiers),
+				vs);
 	}
 
 	@Bean
@@ -258,11 +322,23 @@ public class ValidationConfig
 		return cacheFolder("StructureDefinition", structureDefinitionCacheFolder);
 	}
 
+	@Bean
+	public CacheCodec cacheCodec()
+	{
+		return CacheCodec.fromString(cacheCodec);
+	}
+
+	@Bean
+	public InMemoryCache structureDefinitionMemoryCache()
+	{
+		return new InMemoryCache(cacheMemoryMaxSize);
+	}
+
 	@Bean
 	public BiFunction<FhirContext, IValidationSupport, ValueSetExpander> internalValueSetExpanderFactory()
 	{
-		return (fc, vs) -> new ValueSetExpanderWithFileSystemCache(valueSetCacheFolder(), fc,
-				new ValueSetExpanderImpl(fc, vs));
+		return (fc, vs) -> new ValueSetExpanderWithFileSystemCache(valueSetCacheFolder(), cacheCodec(),
+				valueSetMemoryCache(), fc, new ValueSetExpanderImpl(fc, vs), vs);
 	}
 
 	private Path cacheFolder(String cacheFolderType, String cacheFolder)
@@ -282,8 +358,12 @@ public class ValidationConfig
 			if (!Files.isWritable(cacheFolderPath))
 				throw new IOException("Cache folder for type " + cacheFolderType + " + at "
 						+ cacheFolderPath.toAbsolutePath().toString() + " not writable");
-			else
-				return cacheFolderPath;
+
+			CacheManifest manifest = CacheManifest.forFolder(cacheFolderPath);
+			if (cacheGc)
+				manifest.garbageCollect(Duration.ofDays(cacheGcMaxUnusedDays));
+
+			return cacheFolderPath;
 		}
 		catch (IOException e)
 		{
@@ -356,8 +436,8 @@ public class ValidationConfig
 	@Bean
 	public ValidationPackageClient validationPackageClient()
 	{
-		return new ValidationPackageClientWithFileSystemCache(packageCacheFolder(), objectMapper,
-				validationPackageClientJersey());
+		return new ValidationPackageClientWithFileSystemCache(packageCacheFolder(), cacheCodec(), packageMemoryCache(),
+				objectMapper, validationPackageClientJersey());
 	}
 
 	@Bean
@@ -366,6 +446,13 @@ public class ValidationConfig
 		return cacheFolder("Package", packageCacheFolder);
 	}
 
+	@Bean
+	public InMemoryCache packageMemoryCache()
+	{
+		// packages are not kept in memory, used for single-flight loading and statistics only
+		return new InMemoryCache(0);
+	}
+
 	private ValidationPackageClientJersey validationPackageClientJersey()
 	{
 		if ((packageClientBasicAuthUsername != null) != (packageClientBasicAuthPassword != null))
@@ -401,7 +488,8 @@ public class ValidationConfig
 		List<ValueSetModifier> modifiers = valueSetModifierClasses.stream().map(this::createValueSetModifier)
 				.collect(Collectors.toList());
 
-		return new ValueSetExpansionClientWithFileSystemCache(valueSetCacheFolder(), fhirContext,
+		return new ValueSetExpansionClientWithFileSystemCache(valueSetCacheFolder(), cacheCodec(),
+				valueSetMemoryCache(), fhirContext,
 				new ValueSetExpansionClientWithModifiers(valueSetExpansionClientJersey(), modifiers));
 	}
 
@@ -429,6 +517,12 @@ public class ValidationConfig
 		return cacheFolder("ValueSet", valueSetCacheFolder);
 	}
 
+	@Bean
+	public InMemoryCache valueSetMemoryCache()
+	{
+		return new InMemoryCache(cacheMemoryMaxSize);
+	}
+
 	private ValueSetExpansionClient valueSetExpansionClientJersey()
 	{
 		if ((valueSetExpansionClientBasicAuthUsername != null) != (valueSetExpansionClientBasicAuthPassword != null))
@@ -458,7 +552,7 @@ public class ValidationConfig
 				valueSetExpansionClientKeyStore == null ? null : valueSetExpansionClientKeyStorePassword,
 				valueSetExpansionClientBasicAuthUsername, valueSetExpansionClientBasicAuthPassword, proxyUrl,
 				proxyUsername, proxyPassword, valueSetExpansionClientConnectTimeout, valueSetExpansionClientReadTimeout,
-				valueSetExpansionClientVerbose, objectMapper, fhirContext);
+				valueSetExpansionClientVerbose, objectMapper, fhirContext, valueSetExpansionClientBatchSize);
 	}
 
 	public TerminologyServerConnectionTestStatus testConnectionToTerminologyServer()
@@ -510,12 +604,50 @@ public class ValidationConfig
 	public BundleValidatorFactory bundleValidatorFactory()
 	{
 		return new BundleValidatorFactoryImpl(validationEnabled, validationPackageManager(),
-				validationPackageIdentifiers());
+				validationPackageIdentifiers(), validationWarmUp);
+	}
+
+	@Bean
+	public Duration bundleValidatorReadinessTimeout()
+	{
+		return Duration.ofMillis(validationReadinessTimeout);
+	}
+
+	@Bean
+	public ValidationBudget validationBudget()
+	{
+		return ValidationBudget.of(validationMaxResourcesWithError, Duration.ofMillis(validationTimeBudget));
+	}
+
+	@Bean
+	public ValidationPackageFileWatcher validationPackageFileWatcher()
+	{
+		return new ValidationPackageFileWatcher(bundleValidatorFactory(),
+				validationPackageFile == null || validationPackageFile.isBlank() ? null
+						: Paths.get(validationPackageFile),
+				validationPackageFileCheckInterval);
 	}
 
 	@Bean
 	public List<ValidationPackageIdentifier> validationPackageIdentifiers()
 	{
+		if (validationPackageFile != null && !validationPackageFile.isBlank()
+				&& Files.isReadable(Paths.get(validationPackageFile)))
+		{
+			try
+			{
+				List<ValidationPackageIdentifier> identifiers = ValidationPackageFileWatcher
+						.read(Paths.get(validationPackageFile));
+
+				if (!identifiers.isEmpty())
+					return identifiers;
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
 		if (validationPackages == null || validationPackages.isEmpty())
 			throw new IllegalArgumentException("Validation packages not specified");
 
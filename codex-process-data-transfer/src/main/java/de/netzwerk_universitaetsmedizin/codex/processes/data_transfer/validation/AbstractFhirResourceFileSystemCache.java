@@ -3,7 +3,11 @@ package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validatio
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -35,8 +39,7 @@ public abstract class AbstractFhirResourceFileSystemCache<T, R extends Resource>
 	 */
 	public AbstractFhirResourceFileSystemCache(Path cacheFolder, Class<R> resourceType, FhirContext fhirContext)
 	{
-		super(cacheFolder, AbstractFileSystemCache.FILENAME_SUFFIX, AbstractFileSystemCache.OUT_COMPRESSOR_FACTORY,
-				AbstractFileSystemCache.IN_COMPRESSOR_FACTORY);
+		super(cacheFolder, CacheCodec.GZIP, new InMemoryCache());
 
 		this.resourceType = resourceType;
 		this.fhirContext = fhirContext;
@@ -47,7 +50,14 @@ public abstract class AbstractFhirResourceFileSystemCache<T, R extends Resource>
 			FunctionWithIoException<InputStream, InputStream> inCompressorFactory, Class<R> resourceType,
 			FhirContext fhirContext)
 	{
-		super(cacheFolder, fileNameSuffix, outCompressorFactory, inCompressorFactory);
+		this(cacheFolder, new CacheCodec("custom", fileNameSuffix, outCompressorFactory, inCompressorFactory),
+				new InMemoryCache(), resourceType, fhirContext);
+	}
+
+	public AbstractFhirResourceFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache,
+			Class<R> resourceType, FhirContext fhirContext)
+	{
+		super(cacheFolder, codec, memoryCache);
 
 		this.resourceType = resourceType;
 		this.fhirContext = fhirContext;
@@ -67,16 +77,111 @@ public abstract class AbstractFhirResourceFileSystemCache<T, R extends Resource>
 		return fhirContext.newJsonParser();
 	}
 
+	/**
+	 * @param url
+	 *            not <code>null</code>
+	 * @param version
+	 *            not <code>null</code>
+	 * @return <code>url|version</code>
+	 */
+	protected static String cacheEntryId(String url, String version)
+	{
+		return url + "|" + version;
+	}
+
+	/**
+	 * Resources with status draft may change without a new version. Cache entries for draft resources are identified by
+	 * url, version and a SHA-256 digest of the JSON encoded definition, a changed definition results in a different
+	 * cache entry id and therefore a cache miss.
+	 *
+	 * @param url
+	 *            not <code>null</code>
+	 * @param version
+	 *            not <code>null</code>
+	 * @param definition
+	 *            not <code>null</code>, resources containing only the elements the cached value depends on
+	 * @return <code>url|version|draft-sha256</code>
+	 */
+	protected String draftCacheEntryId(String url, String version, List<? extends Resource> definition)
+	{
+		IParser parser = getJsonParser().setPrettyPrint(false);
+		MessageDigest digest = sha256();
+
+		for (Resource resource : definition)
+		{
+			digest.update(parser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+		}
+
+		return cacheEntryId(url, version) + "|draft-" + HexFormat.of().formatHex(digest.digest());
+	}
+
 	protected T readResourceFromCache(String url, String version, Function<R, T> fromResource) throws IOException
 	{
-		return readFromCache(url + "|" + version, resourceType.getAnnotation(ResourceDef.class).name(),
-				reader -> getJsonParser().parseResource(resourceType, reader), fromResource);
+		return readResourceFromCache(cacheEntryId(url, version), fromResource);
+	}
+
+	protected T readResourceFromCache(String cacheEntryId, Function<R, T> fromResource) throws IOException
+	{
+		return readFromCache(cacheEntryId, resourceType.getAnnotation(ResourceDef.class).name(),
+				reader -> StringDeduplicator.deduplicate(fhirContext,
+						getJsonParser().parseResource(resourceType, reader)),
+				fromResource);
+	}
+
+	/**
+	 * @param url
+	 *            not <code>null</code>
+	 * @param version
+	 *            not <code>null</code>
+	 * @param fromResource
+	 *            not <code>null</code>
+	 * @param loader
+	 *            not <code>null</code>
+	 * @return resource read from cache or result of the loader
+	 * @throws IOException
+	 * @see AbstractFileSystemCache#readFromCacheOrLoad(String, SupplierWithIoException, SupplierWithIoException)
+	 */
+	protected T readResourceFromCacheOrLoad(String url, String version, Function<R, T> fromResource,
+			SupplierWithIoException<T> loader) throws IOException
+	{
+		return readResourceFromCacheOrLoad(cacheEntryId(url, version), fromResource, loader);
+	}
+
+	/**
+	 * @param cacheEntryId
+	 *            not <code>null</code>
+	 * @param fromResource
+	 *            not <code>null</code>
+	 * @param loader
+	 *            not <code>null</code>
+	 * @return resource read from cache or result of the loader
+	 * @throws IOException
+	 * @see #cacheEntryId(String, String)
+	 * @see #draftCacheEntryId(String, String, List)
+	 */
+	protected T readResourceFromCacheOrLoad(String cacheEntryId, Function<R, T> fromResource,
+			SupplierWithIoException<T> loader) throws IOException
+	{
+		return readFromCacheOrLoad(cacheEntryId, () -> readResourceFromCache(cacheEntryId, fromResource), loader);
 	}
 
 	protected T writeRsourceToCache(T value, Function<T, R> toResource, Function<R, String> toUrl,
 			Function<R, String> toVersion) throws IOException
 	{
-		return writeToCache(value, r -> toUrl.apply(r) + "|" + toVersion.apply(r), r -> r.getResourceType().name(),
-				(w, r) -> getJsonParser().encodeResourceToWriter(r, w), toResource);
+		return writeRsourceToCache(value, toResource, r -> cacheEntryId(toUrl.apply(r), toVersion.apply(r)));
+	}
+
+	protected T writeRsourceToCache(T value, Function<T, R> toResource, String cacheEntryId) throws IOException
+	{
+		return writeRsourceToCache(value, toResource, r -> cacheEntryId);
+	}
+
+	private T writeRsourceToCache(T value, Function<T, R> toResource, Function<R, String> toCacheEntryId)
+			throws IOException
+	{
+		return writeToCache(value, toCacheEntryId, r -> r.getResourceType().name(),
+				(w, r) -> getJsonParser().encodeResourceToWriter(r, w),
+				toResource.andThen(r -> StringDeduplicator.deduplicate(fhirContext, r)));
 	}
 }
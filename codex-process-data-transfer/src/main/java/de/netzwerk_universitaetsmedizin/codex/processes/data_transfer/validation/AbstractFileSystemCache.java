@@ -1,7 +1,7 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -10,11 +10,23 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
@@ -22,6 +34,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingInputStream;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.CountingOutputStream;
+
+/**
+ * File system cache with an {@link InMemoryCache} tier. Cache files are written to a temporary file first and renamed
+ * after the content is complete, size and SHA-256 digest of every cache file are recorded in the {@link CacheManifest}
+ * of the cache folder. Cache files with a digest mismatch or content that can not be decoded are deleted and treated as
+ * cache misses.
+ *
+ * @param <T>
+ *            cached value type
+ */
 public abstract class AbstractFileSystemCache<T> implements InitializingBean
 {
 	public static final String FILENAME_SUFFIX = ".json.gz";
@@ -40,55 +64,169 @@ public abstract class AbstractFileSystemCache<T> implements InitializingBean
 		void accept(T t, U u) throws IOException;
 	}
 
+	@FunctionalInterface
+	public interface SupplierWithIoException<T>
+	{
+		T get() throws IOException;
+	}
+
 	private static final Logger logger = LoggerFactory.getLogger(AbstractFileSystemCache.class);
 
 	private final Path cacheFolder;
-	private final String filenameSuffix;
-	private final FunctionWithIoException<OutputStream, OutputStream> outCompressorFactory;
-	private final FunctionWithIoException<InputStream, InputStream> inCompressorFactory;
+	private final CacheCodec codec;
+	private final InMemoryCache memoryCache;
 
 	/**
-	 * For JSON content with gzip compression using the <code>.json.gz</code> file name suffix.
+	 * For JSON content with gzip compression using the <code>.json.gz</code> file name suffix and a not shared
+	 * {@link InMemoryCache} with default size.
 	 *
 	 * @param cacheFolder
 	 *            not <code>null</code>
 	 * @see #FILENAME_SUFFIX
 	 * @see #OUT_COMPRESSOR_FACTORY
 	 * @see #IN_COMPRESSOR_FACTORY
+	 * @see InMemoryCache#DEFAULT_MAX_SIZE
 	 */
 	public AbstractFileSystemCache(Path cacheFolder)
 	{
-		this(cacheFolder, FILENAME_SUFFIX, OUT_COMPRESSOR_FACTORY, IN_COMPRESSOR_FACTORY);
+		this(cacheFolder, CacheCodec.GZIP, new InMemoryCache());
 	}
 
 	public AbstractFileSystemCache(Path cacheFolder, String filenameSuffix,
 			FunctionWithIoException<OutputStream, OutputStream> outCompressorFactory,
 			FunctionWithIoException<InputStream, InputStream> inCompressorFactory)
+	{
+		this(cacheFolder, new CacheCodec("custom", filenameSuffix, outCompressorFactory, inCompressorFactory),
+				new InMemoryCache());
+	}
+
+	/**
+	 * @param cacheFolder
+	 *            not <code>null</code>
+	 * @param codec
+	 *            not <code>null</code>, used to write cache files, cache files written with other detectable codecs are
+	 *            read too
+	 * @param memoryCache
+	 *            not <code>null</code>
+	 * @see CacheCodec#getDetectable()
+	 */
+	public AbstractFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache)
 	{
 		this.cacheFolder = cacheFolder;
-		this.filenameSuffix = filenameSuffix;
-		this.outCompressorFactory = outCompressorFactory;
-		this.inCompressorFactory = inCompressorFactory;
+		this.codec = codec;
+		this.memoryCache = memoryCache;
 	}
 
 	@Override
 	public void afterPropertiesSet() throws Exception
 	{
 		Objects.requireNonNull(cacheFolder, "cacheFolder");
-		Objects.requireNonNull(filenameSuffix, "filenameSuffix");
-		Objects.requireNonNull(outCompressorFactory, "outCompressorFactory");
-		Objects.requireNonNull(inCompressorFactory, "inCompressorFactory");
+		Objects.requireNonNull(codec, "codec");
+		Objects.requireNonNull(memoryCache, "memoryCache");
 
 		if (!Files.isWritable(cacheFolder))
 			throw new IOException("Folder " + cacheFolder.toAbsolutePath().toString() + "not writable");
 	}
 
-	private Path cacheFile(String cacheEntryId)
+	public CacheStatistics getStatistics()
+	{
+		return memoryCache.getStatistics();
+	}
+
+	/**
+	 * @return <code>true</code> if cached values are kept in the in-memory tier, values modified by callers after they
+	 *         were read from or written to the cache must not be kept
+	 */
+	protected boolean isMemoryTierEnabled()
+	{
+		return true;
+	}
+
+	private Path cacheFile(String cacheEntryId, CacheCodec codec)
 	{
 		cacheEntryId = cacheEntryId.replace("://", "_").replaceAll("/", "_").replace(":", "_").replace("|", "_")
 				.replace("\\", "_");
 
-		return cacheFolder.resolve(cacheEntryId + filenameSuffix);
+		return cacheFolder.resolve(cacheEntryId + codec.getFilenameSuffix());
+	}
+
+	/**
+	 * @return the configured codec followed by all other detectable codecs with different file name suffixes
+	 */
+	private Stream<CacheCodec> codecs()
+	{
+		return Stream.concat(Stream.of(codec), CacheCodec.getDetectable().stream()
+				.filter(c -> !c.getFilenameSuffix().equals(codec.getFilenameSuffix())));
+	}
+
+	private CacheManifest manifest()
+	{
+		return CacheManifest.forFolder(cacheFolder);
+	}
+
+	static MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Executes the given <b>cacheReader</b> and if it returns <code>null</code> the given <b>loader</b>. Only one
+	 * thread at a time executes the cache reader and loader for a cache entry id, other threads wait and try to read
+	 * from the cache again, after the first thread is finished.
+	 *
+	 * @param cacheEntryId
+	 *            not <code>null</code>
+	 * @param cacheReader
+	 *            not <code>null</code>
+	 * @param loader
+	 *            not <code>null</code>, should write its result to the cache
+	 * @return result of the cache reader or loader
+	 * @throws IOException
+	 *             from the cache reader or loader
+	 */
+	protected final T readFromCacheOrLoad(String cacheEntryId, SupplierWithIoException<T> cacheReader,
+			SupplierWithIoException<T> loader) throws IOException
+	{
+		while (true)
+		{
+			CompletableFuture<Void> loading = new CompletableFuture<>();
+			CompletableFuture<Void> otherLoading = memoryCache.startLoading(cacheEntryId, loading);
+
+			if (otherLoading != null)
+			{
+				logger.debug("Waiting for {} to be loaded by other thread", cacheEntryId);
+				otherLoading.join();
+				continue;
+			}
+
+			try
+			{
+				T read = cacheReader.get();
+				if (read != null)
+					return read;
+
+				long start = System.nanoTime();
+				try
+				{
+					return loader.get();
+				}
+				finally
+				{
+					memoryCache.getStatistics().miss(System.nanoTime() - start);
+				}
+			}
+			finally
+			{
+				memoryCache.finishLoading(cacheEntryId, loading);
+			}
+		}
 	}
 
 	protected final T readFromCache(String cacheEntryId, String cacheEntryType,
@@ -97,29 +235,95 @@ public abstract class AbstractFileSystemCache<T> implements InitializingBean
 		return readFromCache(cacheEntryId, cacheEntryType, decoder, Function.identity());
 	}
 
+	@SuppressWarnings("unchecked")
 	protected final <R> T readFromCache(String cacheEntryId, String cacheEntryType,
 			FunctionWithIoException<Reader, R> decoder, Function<R, T> fromResource) throws IOException
 	{
-		Path cacheFile = cacheFile(cacheEntryId);
+		Object cached = memoryCache.get(cacheEntryId);
+		if (cached != null)
+		{
+			logger.debug("Reading {} {} from memory cache", cacheEntryType, cacheEntryId);
+			memoryCache.getStatistics().memoryHit();
+			return fromResource.apply((R) cached);
+		}
 
-		if (!Files.exists(cacheFile))
+		Optional<Path> existingCacheFile = codecs().map(c -> cacheFile(cacheEntryId, c)).filter(Files::exists)
+				.findFirst();
+
+		if (existingCacheFile.isEmpty())
 		{
 			logger.debug("Cache file for {} {} does not exist", cacheEntryType, cacheEntryId);
 			return null;
 		}
-		else if (Files.exists(cacheFile) && !Files.isReadable(cacheFile))
+
+		Path cacheFile = existingCacheFile.get();
+		if (!Files.isReadable(cacheFile))
 		{
 			logger.error("Cache file for {} {} exist in cache but is not readable", cacheEntryType, cacheEntryId);
 			return null;
 		}
 
-		try (InputStream in = Files.newInputStream(cacheFile);
-				BufferedInputStream bIn = new BufferedInputStream(in);
-				InputStream cIn = inCompressorFactory.apply(bIn);
-				InputStreamReader reader = new InputStreamReader(cIn, StandardCharsets.UTF_8))
+		logger.debug("Reading {} {} from cache at {}", cacheEntryType, cacheEntryId, cacheFile.toString());
+
+		long start = System.nanoTime();
+		byte[] content = Files.readAllBytes(cacheFile);
+		String digest = HexFormat.of().formatHex(sha256().digest(content));
+		Optional<CacheManifest.Entry> manifestEntry = manifest().get(cacheFile);
+
+		if (manifestEntry.isPresent() && !digest.equalsIgnoreCase(manifestEntry.get().getSha256()))
+		{
+			logger.warn("Cache file for {} {} at {} does not match digest from manifest, deleting file", cacheEntryType,
+					cacheEntryId, cacheFile.toString());
+			deleteCorrupt(cacheFile);
+			return null;
+		}
+
+		CacheCodec fileCodec = CacheCodec.detect(content).orElse(codec);
+
+		R resource;
+		long size;
+		try (InputStream cIn = fileCodec.getInCompressorFactory().apply(new ByteArrayInputStream(content));
+				CountingInputStream countingIn = new CountingInputStream(cIn);
+				InputStreamReader reader = new InputStreamReader(countingIn, StandardCharsets.UTF_8))
+		{
+			resource = decoder.apply(reader);
+			size = countingIn.getCount();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			logger.warn("Unable to decode cache file for {} {} at {}, deleting file: {} - {}", cacheEntryType,
+					cacheEntryId, cacheFile.toString(), e.getClass().getName(), e.getMessage());
+			deleteCorrupt(cacheFile);
+			return null;
+		}
+
+		// cache files written before the manifest was introduced
+		if (manifestEntry.isEmpty())
+			manifest().put(cacheFile, new CacheManifest.Entry(cacheEntryId, fileCodec.getName(), content.length, digest,
+					new Date(Files.getLastModifiedTime(cacheFile).toMillis()), new Date()));
+		else
+			manifest().used(cacheFile);
+
+		memoryCache.getStatistics().diskHit(content.length, System.nanoTime() - start);
+		if (isMemoryTierEnabled())
+			memoryCache.put(cacheEntryId, resource, size);
+
+		return fromResource.apply(resource);
+	}
+
+	private void deleteCorrupt(Path cacheFile)
+	{
+		memoryCache.getStatistics().corruptEntry();
+		manifest().remove(cacheFile);
+
+		try
+		{
+			Files.deleteIfExists(cacheFile);
+		}
+		catch (IOException e)
 		{
-			logger.debug("Reading {} {} from cache at {}", cacheEntryType, cacheEntryId, cacheFile.toString());
-			return fromResource.apply(decoder.apply(reader));
+			logger.warn("Unable to delete cache file {}: {} - {}", cacheFile.toString(), e.getClass().getName(),
+					e.getMessage());
 		}
 	}
 
@@ -136,18 +340,81 @@ public abstract class AbstractFileSystemCache<T> implements InitializingBean
 		String cacheId = toCacheId.apply(resource);
 		String cacheEntryType = toCacheEntryType.apply(resource);
 
-		Path cacheFile = cacheFile(cacheId);
+		Path cacheFile = cacheFile(cacheId, codec);
+		Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName().toString() + "." + UUID.randomUUID() + ".tmp");
 
-		try (OutputStream out = Files.newOutputStream(cacheFile, StandardOpenOption.CREATE,
-				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
-				BufferedOutputStream bOut = new BufferedOutputStream(out);
-				OutputStream cOut = outCompressorFactory.apply(bOut);
-				OutputStreamWriter writer = new OutputStreamWriter(cOut, StandardCharsets.UTF_8))
+		try
 		{
-			logger.debug("Writing {} {} to cache at {}", cacheEntryType, cacheId, cacheFile.toString());
-			encoder.accept(writer, resource);
+			MessageDigest digest = sha256();
+			long size;
+
+			try (OutputStream out = Files.newOutputStream(tempFile, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE);
+					DigestOutputStream dOut = new DigestOutputStream(out, digest);
+					BufferedOutputStream bOut = new BufferedOutputStream(dOut);
+					OutputStream cOut = codec.getOutCompressorFactory().apply(bOut))
+			{
+				logger.debug("Writing {} {} to cache at {}", cacheEntryType, cacheId, cacheFile.toString());
+
+				CountingOutputStream countingOut = new CountingOutputStream(cOut);
+				try (OutputStreamWriter writer = new OutputStreamWriter(countingOut, StandardCharsets.UTF_8))
+				{
+					encoder.accept(writer, resource);
+				}
+
+				size = countingOut.getCount();
+			}
+
+			move(tempFile, cacheFile);
+
+			Date now = new Date();
+			long fileSize = Files.size(cacheFile);
+			manifest().put(cacheFile, new CacheManifest.Entry(cacheId, codec.getName(), fileSize,
+					HexFormat.of().formatHex(digest.digest()), now, now));
+
+			// cache files written with other codecs
+			for (Path other : codecs().skip(1).map(c -> cacheFile(cacheId, c)).collect(Collectors.toList()))
+			{
+				Files.deleteIfExists(other);
+				manifest().remove(other);
+			}
+
+			memoryCache.getStatistics().written(fileSize);
+			if (isMemoryTierEnabled())
+				memoryCache.put(cacheId, resource, size);
+		}
+		finally
+		{
+			Files.deleteIfExists(tempFile);
 		}
 
 		return value;
 	}
+
+	static void writeAtomically(Path file, byte[] content) throws IOException
+	{
+		Path tempFile = file.resolveSibling(file.getFileName().toString() + "." + UUID.randomUUID() + ".tmp");
+
+		try
+		{
+			Files.write(tempFile, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			move(tempFile, file);
+		}
+		finally
+		{
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static void move(Path source, Path target) throws IOException
+	{
+		try
+		{
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
 }
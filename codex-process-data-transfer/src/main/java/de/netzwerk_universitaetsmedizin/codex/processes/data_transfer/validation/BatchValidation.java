@@ -0,0 +1,290 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.CanonicalType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.ValidationResult;
+
+/**
+ * Validates resources from <code>.json</code>, <code>.xml</code> and <code>.ndjson</code> files on a thread pool
+ * sharing one {@link BundleValidator}. Inputs can be files, directories (searched recursively) or glob patterns like
+ * <code>export/**&#47;*.json</code>. Bundles are split into their entries, every resource is validated individually,
+ * NDJSON files are read line by line.
+ * <p>
+ * Inputs are read by the calling thread, at most {@value #QUEUED_RESOURCES_PER_THREAD} resources per thread are queued
+ * for validation to limit memory usage for large exports.
+ */
+public class BatchValidation
+{
+	private static final Logger logger = LoggerFactory.getLogger(BatchValidation.class);
+
+	private static final int QUEUED_RESOURCES_PER_THREAD = 16;
+	private static final List<String> SUPPORTED_SUFFIXES = List.of(".json", ".xml", ".ndjson");
+
+	@FunctionalInterface
+	private static interface ResourceReader
+	{
+		IBaseResource read() throws Exception;
+	}
+
+	/**
+	 * Resolves files, directories and glob patterns to a list of files. Directories and glob patterns are resolved to
+	 * files ending with <code>.json</code>, <code>.xml</code> or <code>.ndjson</code>, sorted by path.
+	 *
+	 * @param inputs
+	 *            not <code>null</code>
+	 * @return files in order of the given inputs
+	 * @throws IOException
+	 */
+	public static List<Path> resolveInputs(String... inputs) throws IOException
+	{
+		Objects.requireNonNull(inputs, "inputs");
+
+		List<Path> files = new ArrayList<>();
+		for (String input : inputs)
+		{
+			if (isGlob(input))
+				files.addAll(glob(input));
+			else if (Files.isDirectory(Paths.get(input)))
+				files.addAll(walk(Paths.get(input), p -> true));
+			else if (Files.isRegularFile(Paths.get(input)))
+				files.add(Paths.get(input));
+			else
+				logger.warn("Input {} not found", input);
+		}
+
+		return files;
+	}
+
+	private static boolean isGlob(String input)
+	{
+		return input.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+	}
+
+	private static List<Path> glob(String pattern) throws IOException
+	{
+		// base directory: path segments before the first segment with glob characters
+		List<String> segments = Arrays.asList(pattern.split("/", -1));
+		int firstGlob = 0;
+		while (!isGlob(segments.get(firstGlob)))
+			firstGlob++;
+
+		String base = String.join("/", segments.subList(0, firstGlob));
+		Path baseDirectory = Paths.get(base.isEmpty() ? (pattern.startsWith("/") ? "/" : ".") : base);
+		PathMatcher matcher = FileSystems.getDefault()
+				.getPathMatcher("glob:" + String.join("/", segments.subList(firstGlob, segments.size())));
+
+		if (!Files.isDirectory(baseDirectory))
+		{
+			logger.warn("Input {} not found", pattern);
+			return List.of();
+		}
+
+		return walk(baseDirectory, p -> matcher.matches(baseDirectory.relativize(p)));
+	}
+
+	private static List<Path> walk(Path directory, Predicate<Path> filter) throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(directory))
+		{
+			return paths.filter(Files::isRegularFile).filter(BatchValidation::isSupported).filter(filter).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static boolean isSupported(Path file)
+	{
+		String filename = file.getFileName().toString();
+		return SUPPORTED_SUFFIXES.stream().anyMatch(filename::endsWith);
+	}
+
+	private final FhirContext fhirContext;
+	private final BundleValidator validator;
+	private final int threads;
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param validator
+	 *            not <code>null</code>, thread safe
+	 * @param threads
+	 *            &gt; 0
+	 */
+	public BatchValidation(FhirContext fhirContext, BundleValidator validator, int threads)
+	{
+		this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext");
+		this.validator = Objects.requireNonNull(validator, "validator");
+
+		if (threads <= 0)
+			throw new IllegalArgumentException("threads <= 0");
+
+		this.threads = threads;
+	}
+
+	/**
+	 * @param files
+	 *            not <code>null</code>
+	 * @return summary of the validation
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the validation threads
+	 */
+	public BatchValidationSummary validate(List<Path> files) throws InterruptedException
+	{
+		Objects.requireNonNull(files, "files");
+
+		logger.info("Validating {} file{} with {} thread{}", files.size(), files.size() == 1 ? "" : "s", threads,
+				threads == 1 ? "" : "s");
+
+		BatchValidationSummary summary = new BatchValidationSummary(threads);
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(threads * QUEUED_RESOURCES_PER_THREAD), r ->
+				{
+					Thread thread = new Thread(r, "batch-validation-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+
+		long start = System.nanoTime();
+		try
+		{
+			files.forEach(file -> read(file, summary, executor));
+		}
+		finally
+		{
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		summary.finished(Duration.ofNanos(System.nanoTime() - start));
+
+		logger.info("Batch validation finished: {}", summary.toString());
+
+		return summary;
+	}
+
+	private void read(Path file, BatchValidationSummary summary, ThreadPoolExecutor executor)
+	{
+		String filename = file.toString();
+
+		if (filename.endsWith(".ndjson"))
+		{
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+			{
+				int lineNumber = 0;
+				for (String line = reader.readLine(); line != null; line = reader.readLine())
+				{
+					lineNumber++;
+					if (line.isBlank())
+						continue;
+
+					final String resourceLine = line;
+					read(filename + ":" + lineNumber, () -> fhirContext.newJsonParser().parseResource(resourceLine),
+							summary, executor);
+				}
+			}
+			catch (IOException e)
+			{
+				logger.warn("Unable to read {}, {}: {}", filename, e.getClass().getName(), e.getMessage());
+				summary.inputFailed(filename, e.getMessage());
+			}
+		}
+		else if (filename.endsWith(".json") || filename.endsWith(".xml"))
+		{
+			read(filename, () ->
+			{
+				try (InputStream in = Files.newInputStream(file))
+				{
+					return filename.endsWith(".json") ? fhirContext.newJsonParser().parseResource(in)
+							: fhirContext.newXmlParser().parseResource(in);
+				}
+			}, summary, executor);
+		}
+		else
+		{
+			logger.warn("File {} not supported, filename needs to end with .json, .xml or .ndjson", filename);
+			summary.inputFailed(filename, "Not supported, filename needs to end with .json, .xml or .ndjson");
+		}
+	}
+
+	private void read(String input, ResourceReader reader, BatchValidationSummary summary, ThreadPoolExecutor executor)
+	{
+		Resource resource;
+		try
+		{
+			resource = (Resource) reader.read();
+		}
+		catch (Exception e)
+		{
+			logger.warn("Unable to read {}, {}: {}", input, e.getClass().getName(), e.getMessage());
+			summary.inputFailed(input, e.getMessage());
+			return;
+		}
+
+		summary.inputRead();
+		logger.debug("{} read from {}", resource.getResourceType().name(), input);
+
+		if (resource instanceof Bundle)
+			((Bundle) resource).getEntry().stream().filter(BundleEntryComponent::hasResource)
+					.map(BundleEntryComponent::getResource)
+					.forEach(r -> executor.execute(() -> validate(input, r, summary)));
+		else
+			executor.execute(() -> validate(input, resource, summary));
+	}
+
+	private void validate(String input, Resource resource, BatchValidationSummary summary)
+	{
+		String profile = resource.getMeta().getProfile().stream().map(CanonicalType::getValue).findFirst().orElse(null);
+
+		try
+		{
+			long start = System.nanoTime();
+			ValidationResult result = validator.validate(resource);
+			long nanos = System.nanoTime() - start;
+
+			int errors = (int) result.getMessages().stream()
+					.filter(m -> ResultSeverityEnum.ERROR.equals(m.getSeverity())
+							|| ResultSeverityEnum.FATAL.equals(m.getSeverity()))
+					.count();
+			int warnings = (int) result.getMessages().stream()
+					.filter(m -> ResultSeverityEnum.WARNING.equals(m.getSeverity())).count();
+
+			summary.resourceValidated(input, profile, nanos, errors, warnings);
+		}
+		catch (RuntimeException e)
+		{
+			logger.warn("Unable to validate {} from {}, {}: {}", resource.getResourceType().name(), input,
+					e.getClass().getName(), e.getMessage());
+			summary.inputFailed(input, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Machine-readable result of a {@link BatchValidation}: number of inputs and resources, error and warning counts per
+ * claimed profile, inputs with errors, throughput and validation latency percentiles. Resources are recorded
+ * concurrently by the validation threads.
+ */
+@JsonPropertyOrder({ "threads", "inputs", "inputsFailed", "resources", "resourcesWithError", "errors", "warnings",
+		"durationMillis", "resourcesPerSecond", "latencyMillis", "profiles", "inputsWithError" })
+public class BatchValidationSummary
+{
+	public static final String NO_PROFILE = "(no profile)";
+
+	@JsonPropertyOrder({ "resources", "resourcesWithError", "errors", "warnings" })
+	public static final class ProfileSummary
+	{
+		private long resources;
+		private long resourcesWithError;
+		private long errors;
+		private long warnings;
+
+		@JsonProperty("resources")
+		public long getResources()
+		{
+			return resources;
+		}
+
+		@JsonProperty("resourcesWithError")
+		public long getResourcesWithError()
+		{
+			return resourcesWithError;
+		}
+
+		@JsonProperty("errors")
+		public long getErrors()
+		{
+			return errors;
+		}
+
+		@JsonProperty("warnings")
+		public long getWarnings()
+		{
+			return warnings;
+		}
+	}
+
+	@JsonPropertyOrder({ "p50", "p95", "p99", "max", "mean" })
+	public static final class Latency
+	{
+		private final double p50;
+		private final double p95;
+		private final double p99;
+		private final double max;
+		private final double mean;
+
+		private Latency(long[] sortedNanos)
+		{
+			p50 = millis(percentile(sortedNanos, 50));
+			p95 = millis(percentile(sortedNanos, 95));
+			p99 = millis(percentile(sortedNanos, 99));
+			max = millis(sortedNanos.length == 0 ? 0 : sortedNanos[sortedNanos.length - 1]);
+			mean = millis(sortedNanos.length == 0 ? 0 : Arrays.stream(sortedNanos).sum() / sortedNanos.length);
+		}
+
+		private static double millis(long nanos)
+		{
+			return Math.round(nanos / 1_000.0) / 1_000.0;
+		}
+
+		@JsonProperty("p50")
+		public double getP50()
+		{
+			return p50;
+		}
+
+		@JsonProperty("p95")
+		public double getP95()
+		{
+			return p95;
+		}
+
+		@JsonProperty("p99")
+		public double getP99()
+		{
+			return p99;
+		}
+
+		@JsonProperty("max")
+		public double getMax()
+		{
+			return max;
+		}
+
+		@JsonProperty("mean")
+		public double getMean()
+		{
+			return mean;
+		}
+	}
+
+	/**
+	 * Nearest-rank percentile.
+	 *
+	 * @param sortedValues
+	 *            not <code>null</code>, sorted ascending
+	 * @param percentile
+	 *            <code>0 &lt; percentile &lt;= 100</code>
+	 * @return <code>0</code> if the given array is empty
+	 */
+	static long percentile(long[] sortedValues, int percentile)
+	{
+		if (sortedValues.length == 0)
+			return 0;
+
+		int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.length);
+		return sortedValues[Math.max(0, rank - 1)];
+	}
+
+	private final int threads;
+	private final Map<String, ProfileSummary> profiles = new TreeMap<>();
+	private final TreeSet<String> inputsWithError = new TreeSet<>();
+	private final Map<String, String> inputsFailed = new TreeMap<>();
+
+	private long inputs;
+	private long resources;
+	private long resourcesWithError;
+	private long errors;
+	private long warnings;
+	private long[] latencies = new long[1024];
+	private Duration duration = Duration.ZERO;
+
+	public BatchValidationSummary(int threads)
+	{
+		this.threads = threads;
+	}
+
+	synchronized void inputRead()
+	{
+		inputs++;
+	}
+
+	synchronized void inputFailed(String input, String reason)
+	{
+		inputsFailed.put(input, reason);
+	}
+
+	/**
+	 * @param input
+	 *            not <code>null</code>
+	 * @param profile
+	 *            first claimed profile, <code>null</code> if no profile claimed
+	 * @param nanos
+	 *            validation time
+	 * @param errors
+	 *            number of error and fatal issues
+	 * @param warnings
+	 *            number of warning issues
+	 */
+	synchronized void resourceValidated(String input, String profile, long nanos, int errors, int warnings)
+	{
+		ProfileSummary profileSummary = profiles.computeIfAbsent(profile == null ? NO_PROFILE : profile,
+				p -> new ProfileSummary());
+
+		profileSummary.resources++;
+		profileSummary.errors += errors;
+		profileSummary.warnings += warnings;
+
+		if (latencies.length == resources)
+			latencies = Arrays.copyOf(latencies, latencies.length * 2);
+		latencies[(int) resources] = nanos;
+
+		resources++;
+		this.errors += errors;
+		this.warnings += warnings;
+
+		if (errors > 0)
+		{
+			profileSummary.resourcesWithError++;
+			resourcesWithError++;
+			inputsWithError.add(input);
+		}
+	}
+
+	synchronized void finished(Duration duration)
+	{
+		this.duration = duration;
+	}
+
+	@JsonProperty("threads")
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * @return number of files and NDJSON lines read successfully
+	 */
+	@JsonProperty("inputs")
+	public synchronized long getInputs()
+	{
+		return inputs;
+	}
+
+	/**
+	 * @return inputs that could not be read or validated with reason, sorted by input
+	 */
+	@JsonProperty("inputsFailed")
+	public synchronized Map<String, String> getInputsFailed()
+	{
+		return Collections.unmodifiableMap(new TreeMap<>(inputsFailed));
+	}
+
+	@JsonProperty("resources")
+	public synchronized long getResources()
+	{
+		return resources;
+	}
+
+	@JsonProperty("resourcesWithError")
+	public synchronized long getResourcesWithError()
+	{
+		return resourcesWithError;
+	}
+
+	@JsonProperty("errors")
+	public synchronized long getErrors()
+	{
+		return errors;
+	}
+
+	@JsonProperty("warnings")
+	public synchronized long getWarnings()
+	{
+		return warnings;
+	}
+
+	@JsonProperty("durationMillis")
+	public synchronized long getDurationMillis()
+	{
+		return duration.toMillis();
+	}
+
+	@JsonProperty("resourcesPerSecond")
+	public synchronized double getResourcesPerSecond()
+	{
+		long nanos = duration.toNanos();
+		return nanos == 0 ? 0 : Math.round(10.0 * resources * 1_000_000_000L / nanos) / 10.0;
+	}
+
+	@JsonProperty("latencyMillis")
+	public synchronized Latency getLatencyMillis()
+	{
+		long[] sorted = Arrays.copyOf(latencies, (int) resources);
+		Arrays.sort(sorted);
+		return new Latency(sorted);
+	}
+
+	/**
+	 * @return summaries by first claimed profile, sorted by profile
+	 */
+	@JsonProperty("profiles")
+	public synchronized Map<String, ProfileSummary> getProfiles()
+	{
+		return Collections.unmodifiableMap(new TreeMap<>(profiles));
+	}
+
+	/**
+	 * @return inputs with at least one resource with error, sorted
+	 */
+	@JsonProperty("inputsWithError")
+	public synchronized List<String> getInputsWithError()
+	{
+		return Collections.unmodifiableList(new ArrayList<>(inputsWithError));
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return inputs + " inputs (" + inputsFailed.size() + " failed), " + resources + " resources, "
+				+ resourcesWithError + " with error, " + getResourcesPerSecond() + " resources/s";
+	}
+}
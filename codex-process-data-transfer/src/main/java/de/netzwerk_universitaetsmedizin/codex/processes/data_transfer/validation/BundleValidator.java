@@ -16,4 +16,18 @@ public interface BundleValidator extends ResourceValidator
 	 * @return given bundle with added <code>entry.response.outcome</code> properties
 	 */
 	Bundle validate(Bundle bundle);
+
+	/**
+	 * Validates bundle entries with a <code>entry.resource</code> in order until the given budget is exhausted. The
+	 * validation result will be added as a {@link OperationOutcome} resource to the corresponding
+	 * <code>entry.response.outcome</code> property, entries not validated get an outcome created by
+	 * {@link ValidationBudget#createNotValidatedOutcome(String)}.
+	 *
+	 * @param bundle
+	 *            not <code>null</code>
+	 * @param budget
+	 *            not <code>null</code>
+	 * @return given bundle with added <code>entry.response.outcome</code> properties
+	 */
+	Bundle validate(Bundle bundle, ValidationBudget budget);
 }
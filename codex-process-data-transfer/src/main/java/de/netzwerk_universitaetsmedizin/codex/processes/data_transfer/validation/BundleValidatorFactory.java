@@ -1,6 +1,10 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface BundleValidatorFactory
 {
@@ -11,13 +15,57 @@ public interface BundleValidatorFactory
 
 	/**
 	 * Initializes the {@link BundleValidatorFactory} by downloading all necessary FHIR implementation guides, expanding
-	 * ValueSets and generating StructureDefinition snapshots.
+	 * ValueSets and generating StructureDefinition snapshots. Blocks until the initialization is finished.
+	 *
+	 * @see #initAsync()
 	 */
 	void init();
 
+	/**
+	 * Starts the initialization in a background thread, if not already started.
+	 *
+	 * @return future completed after the initialization is finished, completed exceptionally if the initialization
+	 *         failed
+	 * @see #init()
+	 */
+	CompletableFuture<Void> initAsync();
+
+	/**
+	 * Downloads the given packages and builds a new validation support in a background thread, after the initialization
+	 * and previous reloads finished. The new validation support is used by all {@link BundleValidator}s created after
+	 * the reload finished, validators created before keep using the previous validation support. If the reload fails,
+	 * the previous validation support stays in use.
+	 *
+	 * @param identifiers
+	 *            not <code>null</code>, not empty
+	 * @return future completed after the reload is finished, completed exceptionally if the reload failed
+	 */
+	CompletableFuture<Void> reload(Collection<? extends ValidationPackageIdentifier> identifiers);
+
+	/**
+	 * @return root package identifiers of the current validation support
+	 */
+	List<ValidationPackageIdentifier> getValidationPackageIdentifiers();
+
+	/**
+	 * @return progress of the initialization or the last reload
+	 */
+	ValidationProgress getProgress();
+
 	/**
 	 * @return {@link Optional#empty()} if this {@link BundleValidatorFactory} was not initialized
 	 * @see BundleValidatorFactory#init()
 	 */
 	Optional<BundleValidator> create();
+
+	/**
+	 * Waits for a started initialization to finish, before creating a {@link BundleValidator}.
+	 *
+	 * @param readinessTimeout
+	 *            not <code>null</code>, maximum time to wait for the initialization
+	 * @return {@link Optional#empty()} if the initialization was not started, failed or did not finish within the given
+	 *         timeout
+	 * @see #initAsync()
+	 */
+	Optional<BundleValidator> create(Duration readinessTimeout);
 }
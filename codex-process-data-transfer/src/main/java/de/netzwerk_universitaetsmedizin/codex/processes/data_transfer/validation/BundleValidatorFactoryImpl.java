@@ -1,36 +1,118 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceFactory;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition.StructureDefinitionKind;
+import org.hl7.fhir.r4.model.StructureDefinition.TypeDerivationRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
 import ca.uhn.fhir.context.support.IValidationSupport;
 
-public class BundleValidatorFactoryImpl implements BundleValidatorFactory, InitializingBean
+public class BundleValidatorFactoryImpl implements BundleValidatorFactory, InitializingBean, DisposableBean
 {
 	private static final Logger logger = LoggerFactory.getLogger(BundleValidatorFactoryImpl.class);
 
+	public static final boolean DEFAULT_WARM_UP = true;
+
+	private static final int WARM_UP_MAX_RESOURCES = 20;
+
+	/**
+	 * Validator and packages for a list of root package identifiers, replaced as a whole on reload
+	 */
+	private static final class Validators
+	{
+		final List<ValidationPackageIdentifier> identifiers;
+		final BundleValidator validator;
+		final List<ValidationPackageWithDepedencies> packageWithDependencies;
+
+		Validators(List<ValidationPackageIdentifier> identifiers, BundleValidator validator,
+				List<ValidationPackageWithDepedencies> packageWithDependencies)
+		{
+			this.identifiers = identifiers;
+			this.validator = validator;
+			this.packageWithDependencies = packageWithDependencies;
+		}
+
+		Set<ValidationPackageIdentifier> allPackageIdentifiers()
+		{
+			return packageWithDependencies.stream()
+					.flatMap(p -> Stream.concat(Stream.of(p), p.getDependencies().stream()))
+					.map(ValidationPackage::getIdentifier).collect(Collectors.toSet());
+		}
+	}
+
 	private final boolean validationEnabled;
 	private final ValidationPackageManager validationPackageManager;
 	private final List<ValidationPackageIdentifier> validationPackageIdentifiers = new ArrayList<>();
+	private final boolean warmUp;
 
-	private IValidationSupport validationSupport;
-	private List<ValidationPackageWithDepedencies> packageWithDependencies;
+	private final AtomicReference<ValidationProgress> progress = new AtomicReference<>(new ValidationProgress());
+	private final AtomicBoolean initStarted = new AtomicBoolean();
+	private final CompletableFuture<Void> ready = new CompletableFuture<>();
+	private final AtomicReference<Validators> validators = new AtomicReference<>();
+
+	// initialization and reloads are executed one after another
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r ->
+	{
+		Thread thread = new Thread(r, "bundle-validator-init");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	public BundleValidatorFactoryImpl(boolean validationEnabled, ValidationPackageManager validationPackageManager,
 			Collection<? extends ValidationPackageIdentifier> validationPackageIdentifiers)
+	{
+		this(validationEnabled, validationPackageManager, validationPackageIdentifiers, DEFAULT_WARM_UP);
+	}
+
+	/**
+	 * @param validationEnabled
+	 * @param validationPackageManager
+	 *            not <code>null</code>
+	 * @param validationPackageIdentifiers
+	 *            may be <code>null</code>
+	 * @param warmUp
+	 *            <code>true</code> to validate a synthetic bundle after the initialization, so that the first real
+	 *            bundle is validated with a warmed-up JVM and filled validator caches
+	 */
+	public BundleValidatorFactoryImpl(boolean validationEnabled, ValidationPackageManager validationPackageManager,
+			Collection<? extends ValidationPackageIdentifier> validationPackageIdentifiers, boolean warmUp)
 	{
 		this.validationEnabled = validationEnabled;
 		this.validationPackageManager = validationPackageManager;
 
 		if (validationPackageIdentifiers != null)
 			this.validationPackageIdentifiers.addAll(validationPackageIdentifiers);
+
+		this.warmUp = warmUp;
 	}
 
 	@Override
@@ -39,6 +121,13 @@ public class BundleValidatorFactoryImpl implements BundleValidatorFactory, Initi
 		Objects.requireNonNull(validationPackageManager, "validationPackageManager");
 	}
 
+	@Override
+	public void destroy() throws Exception
+	{
+		executor.shutdownNow();
+		CacheManifest.flushAll();
+	}
+
 	@Override
 	public boolean isEnabled()
 	{
@@ -48,26 +137,249 @@ public class BundleValidatorFactoryImpl implements BundleValidatorFactory, Initi
 	@Override
 	public void init()
 	{
-		if (validationSupport != null)
+		try
+		{
+			initAsync().join();
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw e;
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> initAsync()
+	{
+		if (initStarted.compareAndSet(false, true))
+		{
+			executor.execute(() ->
+			{
+				try
+				{
+					validators.set(build(validationPackageIdentifiers, progress.get()));
+					ready.complete(null);
+				}
+				catch (RuntimeException e)
+				{
+					ready.completeExceptionally(e);
+				}
+			});
+		}
+
+		return ready.copy();
+	}
+
+	@Override
+	public CompletableFuture<Void> reload(Collection<? extends ValidationPackageIdentifier> identifiers)
+	{
+		Objects.requireNonNull(identifiers, "identifiers");
+		if (identifiers.isEmpty())
+			throw new IllegalArgumentException("identifiers empty");
+
+		List<ValidationPackageIdentifier> newIdentifiers = List.copyOf(identifiers);
+		initAsync();
+
+		CompletableFuture<Void> reloaded = new CompletableFuture<>();
+		executor.execute(() ->
+		{
+			Validators old = validators.get();
+			if (old != null && old.identifiers.equals(newIdentifiers))
+			{
+				logger.info("Validation packages {} not changed, not reloading", newIdentifiers.toString());
+				reloaded.complete(null);
+				return;
+			}
+
+			try
+			{
+				ValidationProgress reloadProgress = new ValidationProgress();
+				progress.set(reloadProgress);
+
+				Validators reloadedValidators = build(newIdentifiers, reloadProgress);
+				validators.set(reloadedValidators);
+
+				logDelta(old, reloadedValidators);
+				ready.complete(null);
+				reloaded.complete(null);
+			}
+			catch (RuntimeException e)
+			{
+				logger.warn("Reload of validation packages {} failed, {}", newIdentifiers.toString(),
+						old == null ? "no validator available" : ("still using " + old.identifiers.toString()));
+				reloaded.completeExceptionally(e);
+			}
+		});
+
+		return reloaded;
+	}
+
+	private void logDelta(Validators old, Validators reloaded)
+	{
+		if (old == null)
 			return;
 
-		logger.info("Downloading FHIR validation packages {} and dependencies",
-				validationPackageIdentifiers.toString());
-		packageWithDependencies = validationPackageManager.downloadPackagesWithDependencies(
-				validationPackageIdentifiers.toArray(ValidationPackageIdentifier[]::new));
+		Set<ValidationPackageIdentifier> oldPackages = old.allPackageIdentifiers();
+		Set<ValidationPackageIdentifier> newPackages = reloaded.allPackageIdentifiers();
 
-		logger.info("Expanding ValueSets and generating StructureDefinition snapshots");
-		validationSupport = validationPackageManager
-				.expandValueSetsAndGenerateStructureDefinitionSnapshots(packageWithDependencies);
+		logger.info("Validation packages reloaded, now using {}, added {}, removed {}, {} unchanged",
+				reloaded.identifiers.toString(), sorted(newPackages, oldPackages), sorted(oldPackages, newPackages),
+				newPackages.stream().filter(oldPackages::contains).count());
+	}
+
+	private String sorted(Set<ValidationPackageIdentifier> packages, Set<ValidationPackageIdentifier> without)
+	{
+		return packages.stream().filter(p -> !without.contains(p)).map(ValidationPackageIdentifier::toString).sorted()
+				.collect(Collectors.joining(", ", "[", "]"));
+	}
+
+	/**
+	 * Unchanged packages, ValueSet expansions and StructureDefinition snapshots are read from the file system caches
+	 * and their in-memory tiers, only new packages are downloaded and only their ValueSets are expanded and snapshots
+	 * generated.
+	 */
+	private Validators build(List<ValidationPackageIdentifier> identifiers, ValidationProgress progress)
+	{
+		long start = System.currentTimeMillis();
+
+		try
+		{
+			logger.info("Downloading FHIR validation packages {} and dependencies", identifiers.toString());
+			List<ValidationPackageWithDepedencies> packages = validationPackageManager
+					.downloadPackagesWithDependencies(identifiers, progress);
+
+			logger.info("Expanding ValueSets and generating StructureDefinition snapshots");
+			IValidationSupport support = validationPackageManager
+					.expandValueSetsAndGenerateStructureDefinitionSnapshots(packages, progress);
+
+			// thread safe, shared by all validations until the next reload
+			BundleValidator validator = validationPackageManager.createBundleValidator(support, packages);
+
+			if (warmUp)
+			{
+				progress.startPhase(ValidationProgress.Phase.WARMING_UP);
+				warmUp(validator, packages);
+				CacheManifest.flushAll();
+			}
+
+			progress.startPhase(ValidationProgress.Phase.READY);
+			logger.info("Validator initialized in {} ms, {}", System.currentTimeMillis() - start, progress.toString());
+
+			return new Validators(identifiers, validator, packages);
+		}
+		catch (RuntimeException e)
+		{
+			progress.startPhase(ValidationProgress.Phase.FAILED);
+			logger.error("Error while initializing validator after {} ms: {} - {}", System.currentTimeMillis() - start,
+					e.getClass().getName(), e.getMessage());
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Validates a bundle with one resource for up to {@value #WARM_UP_MAX_RESOURCES} resource profiles of the root
+	 * packages. The resources only claim the profile, validation errors are expected and ignored.
+	 */
+	private void warmUp(BundleValidator validator, List<ValidationPackageWithDepedencies> packages)
+	{
+		Map<String, StructureDefinition> profilesByType = new LinkedHashMap<>();
+		packages.stream().flatMap(p -> p.getResources(StructureDefinition.class).stream())
+				.filter(sd -> StructureDefinitionKind.RESOURCE.equals(sd.getKind()))
+				.filter(sd -> TypeDerivationRule.CONSTRAINT.equals(sd.getDerivation()))
+				.filter(sd -> !sd.getAbstract() && sd.hasUrl() && sd.hasType())
+				.forEach(sd -> profilesByType.putIfAbsent(sd.getType(), sd));
+
+		Bundle bundle = new Bundle().setType(BundleType.TRANSACTION);
+		profilesByType.values().stream().limit(WARM_UP_MAX_RESOURCES).forEach(sd ->
+		{
+			try
+			{
+				Resource resource = ResourceFactory.createResource(sd.getType());
+				resource.getMeta().addProfile(sd.getUrl());
+				bundle.addEntry().setResource(resource);
+			}
+			catch (RuntimeException e)
+			{
+				logger.debug("Unable to create warm-up resource for profile {}: {} - {}", sd.getUrl(),
+						e.getClass().getName(), e.getMessage());
+			}
+		});
+
+		try
+		{
+			long start = System.currentTimeMillis();
+			validator.validate(bundle);
+			logger.debug("Warm-up validation of {} resource{} finished in {} ms", bundle.getEntry().size(),
+					bundle.getEntry().size() == 1 ? "" : "s", System.currentTimeMillis() - start);
+		}
+		catch (RuntimeException e)
+		{
+			logger.warn("Error during warm-up validation: {} - {}", e.getClass().getName(), e.getMessage());
+		}
+	}
+
+	@Override
+	public ValidationProgress getProgress()
+	{
+		return progress.get();
+	}
+
+	@Override
+	public List<ValidationPackageIdentifier> getValidationPackageIdentifiers()
+	{
+		Validators current = validators.get();
+		return current == null ? Collections.unmodifiableList(validationPackageIdentifiers) : current.identifiers;
 	}
 
 	@Override
 	public Optional<BundleValidator> create()
 	{
-		if (validationPackageManager == null || validationSupport == null)
+		// validators returned before a reload keep using the previous validation support
+		Validators current = validators.get();
+
+		if (current == null)
 			return Optional.empty();
 		else
-			return Optional
-					.of(validationPackageManager.createBundleValidator(validationSupport, packageWithDependencies));
+			return Optional.of(current.validator);
+	}
+
+	@Override
+	public Optional<BundleValidator> create(Duration readinessTimeout)
+	{
+		Objects.requireNonNull(readinessTimeout, "readinessTimeout");
+
+		if (validators.get() != null)
+			return create();
+		else if (!initStarted.get())
+			return Optional.empty();
+
+		try
+		{
+			if (!ready.isDone())
+				logger.info("Waiting up to {} ms for validator initialization, {}", readinessTimeout.toMillis(),
+						getProgress().toString());
+
+			ready.get(readinessTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e)
+		{
+			logger.warn("Validator not initialized after {} ms, {}", readinessTimeout.toMillis(),
+					getProgress().toString());
+			return Optional.empty();
+		}
+		catch (ExecutionException e)
+		{
+			return Optional.empty();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return Optional.empty();
+		}
+
+		return create();
 	}
 }
@@ -1,10 +1,12 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -13,6 +15,7 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r4.model.StructureDefinition.StructureDefinitionKind;
@@ -34,16 +37,19 @@ public class BundleValidatorImpl implements BundleValidator
 	private final Set<String> expectedStructureDefinitionUrls;
 	private final Set<String> expectedStructureDefinitionUrlsWithVersion;
 
-	public BundleValidatorImpl(ResourceValidator delegate, FhirContext fhirContext,
+	/**
+	 * @param packagesWithDependencies
+	 *            not <code>null</code>
+	 * @return non abstract resource profiles of the given packages and the profiles they depend on
+	 */
+	public static Set<StructureDefinition> resourceProfiles(
 			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies)
 	{
-		this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext");
-
 		Set<StructureDefinition> sds = new HashSet<>();
 
 		packagesWithDependencies.forEach(packageWithDependencies ->
 		{
-			sds.addAll(packageWithDependencies.getValidationSupportResources().getStructureDefinitions().stream()
+			sds.addAll(packageWithDependencies.getResources(StructureDefinition.class).stream()
 					.flatMap(sd -> Stream.concat(Stream.of(sd),
 							packageWithDependencies.getStructureDefinitionDependencies(sd).stream()))
 					.filter(sd -> StructureDefinitionKind.RESOURCE.equals(sd.getKind()))
@@ -51,6 +57,16 @@ public class BundleValidatorImpl implements BundleValidator
 					.collect(Collectors.toSet()));
 		});
 
+		return sds;
+	}
+
+	public BundleValidatorImpl(ResourceValidator delegate, FhirContext fhirContext,
+			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies)
+	{
+		this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext");
+
+		Set<StructureDefinition> sds = resourceProfiles(packagesWithDependencies);
+
 		expectedStructureDefinitionUrls = sds.stream().map(StructureDefinition::getUrl).collect(Collectors.toSet());
 		expectedStructureDefinitionUrlsWithVersion = sds.stream().filter(StructureDefinition::hasVersion)
 				.map(sd -> sd.getUrl() + "|" + sd.getVersion()).collect(Collectors.toSet());
@@ -97,18 +113,43 @@ public class BundleValidatorImpl implements BundleValidator
 	@Override
 	public Bundle validate(Bundle bundle)
 	{
-		Objects.requireNonNull(bundle, "bundle");
-
-		bundle.getEntry().stream().forEach(this::validateAndSetOutcome);
-		return bundle;
+		return validate(bundle, ValidationBudget.UNLIMITED);
 	}
 
-	private void validateAndSetOutcome(BundleEntryComponent entry)
+	@Override
+	public Bundle validate(Bundle bundle, ValidationBudget budget)
 	{
-		if (entry.hasResource())
+		Objects.requireNonNull(bundle, "bundle");
+		Objects.requireNonNull(budget, "budget");
+
+		long start = System.nanoTime();
+		int resourcesWithError = 0;
+		Optional<String> stopped = Optional.empty();
+
+		for (BundleEntryComponent entry : bundle.getEntry())
 		{
-			ValidationResult validationResult = validate(entry.getResource());
-			entry.getResponse().setOutcome((OperationOutcome) validationResult.toOperationOutcome());
+			if (!entry.hasResource())
+				continue;
+
+			if (stopped.isPresent())
+			{
+				entry.getResponse().setOutcome(ValidationBudget.createNotValidatedOutcome(stopped.get()));
+				continue;
+			}
+
+			OperationOutcome outcome = (OperationOutcome) validate(entry.getResource()).toOperationOutcome();
+			entry.getResponse().setOutcome(outcome);
+
+			if (outcome.getIssue().stream().anyMatch(
+					i -> IssueSeverity.FATAL.equals(i.getSeverity()) || IssueSeverity.ERROR.equals(i.getSeverity())))
+				resourcesWithError++;
+
+			stopped = budget.exhausted(resourcesWithError, Duration.ofNanos(System.nanoTime() - start));
 		}
+
+		stopped.ifPresent(
+				reason -> logger.debug("Bundle validation stopped early, {}, budget {}", reason, budget.toString()));
+
+		return bundle;
 	}
 }
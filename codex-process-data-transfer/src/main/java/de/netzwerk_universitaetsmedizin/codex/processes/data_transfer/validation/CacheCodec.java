@@ -0,0 +1,220 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.compressors.deflate.DeflateCompressorInputStream;
+import org.apache.commons.compress.compressors.deflate.DeflateCompressorOutputStream;
+import org.apache.commons.compress.compressors.deflate.DeflateParameters;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.AbstractFileSystemCache.FunctionWithIoException;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream.BLOCKSIZE;
+import net.jpountz.lz4.LZ4FrameOutputStream.FLG;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Compression codec used by {@link AbstractFileSystemCache}s to encode cache files. Every codec uses its own file name
+ * suffix, the codecs {@link #NONE}, {@link #GZIP}, {@link #deflate(int)} and {@link #LZ4} can also be detected from the
+ * first bytes of a cache file. This allows caches to read files written with a different codec, e.g. after the
+ * configured codec was changed.
+ */
+public final class CacheCodec
+{
+	public static final CacheCodec NONE = new CacheCodec("none", ".json", out -> out, in -> in, CacheCodec::isJson);
+
+	public static final CacheCodec GZIP = new CacheCodec("gzip", ".json.gz", GzipCompressorOutputStream::new,
+			GzipCompressorInputStream::new, header -> startsWith(header, 0x1f, 0x8b));
+
+	/**
+	 * LZ4 frame format, using the pure Java (no JNI, no <code>sun.misc.Unsafe</code>) implementations of lz4-java.
+	 * Faster than gzip and deflate, but with larger files.
+	 */
+	public static final CacheCodec LZ4 = new CacheCodec("lz4", ".json.lz4",
+			out -> new LZ4FrameOutputStream(out, BLOCKSIZE.SIZE_64KB, -1L, LZ4Factory.safeInstance().fastCompressor(),
+					XXHashFactory.safeInstance().hash32(), FLG.Bits.BLOCK_INDEPENDENCE),
+			in -> new LZ4FrameInputStream(in, LZ4Factory.safeInstance().safeDecompressor(),
+					XXHashFactory.safeInstance().hash32()),
+			header -> startsWith(header, 0x04, 0x22, 0x4d, 0x18));
+
+	public static final CacheCodec DEFLATE = deflate(Deflater.DEFAULT_COMPRESSION);
+
+	private static final List<CacheCodec> DETECTABLE = List.of(GZIP, LZ4, DEFLATE, NONE);
+
+	/**
+	 * Deflate with zlib header and trailer.
+	 *
+	 * @param level
+	 *            <code>-1</code> (default) or <code>0</code> (no compression) to <code>9</code> (best compression)
+	 * @return deflate codec with the given compression level
+	 */
+	public static CacheCodec deflate(int level)
+	{
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("Deflate level " + level + " not in [-1, 9]");
+
+		DeflateParameters parameters = new DeflateParameters();
+		parameters.setWithZlibHeader(true);
+
+		// DeflateParameters defaults to Deflater.DEFAULT_COMPRESSION, but does not accept it as a value
+		if (level != Deflater.DEFAULT_COMPRESSION)
+			parameters.setCompressionLevel(level);
+
+		return new CacheCodec(level == Deflater.DEFAULT_COMPRESSION ? "deflate" : ("deflate:" + level), ".json.zz",
+				out -> new DeflateCompressorOutputStream(out, parameters), DeflateCompressorInputStream::new,
+				CacheCodec::isZlib);
+	}
+
+	/**
+	 * @param codec
+	 *            one of <code>none</code>, <code>gzip</code>, <code>deflate</code>, <code>deflate:&lt;level&gt;</code>
+	 *            or <code>lz4</code>, not <code>null</code>
+	 * @return codec for the given name
+	 * @throws IllegalArgumentException
+	 *             if the given codec name is not supported
+	 */
+	public static CacheCodec fromString(String codec)
+	{
+		Objects.requireNonNull(codec, "codec");
+
+		String trimmed = codec.trim().toLowerCase();
+		if (trimmed.startsWith("deflate:"))
+		{
+			try
+			{
+				return deflate(Integer.parseInt(trimmed.substring("deflate:".length())));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Cache codec " + codec + " not supported", e);
+			}
+		}
+
+		return DETECTABLE.stream().filter(c -> c.getName().equals(trimmed)).findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Cache codec " + codec + " not supported"));
+	}
+
+	/**
+	 * @param content
+	 *            not <code>null</code>
+	 * @return codec detected from the first bytes of the given content, empty if the content does not start with a
+	 *         known header
+	 */
+	public static Optional<CacheCodec> detect(byte[] content)
+	{
+		Objects.requireNonNull(content, "content");
+
+		return DETECTABLE.stream().filter(c -> c.header.test(content)).findFirst();
+	}
+
+	/**
+	 * @return all codecs that can be detected via {@link #detect(byte[])}, using distinct file name suffixes
+	 */
+	public static List<CacheCodec> getDetectable()
+	{
+		return DETECTABLE;
+	}
+
+	private static boolean startsWith(byte[] content, int... header)
+	{
+		if (content.length < header.length)
+			return false;
+
+		for (int i = 0; i < header.length; i++)
+			if ((content[i] & 0xff) != header[i])
+				return false;
+
+		return true;
+	}
+
+	private static boolean isZlib(byte[] content)
+	{
+		// compression method 8 (deflate), header checksum
+		return content.length >= 2 && (content[0] & 0x0f) == 8
+				&& (((content[0] & 0xff) << 8) | (content[1] & 0xff)) % 31 == 0;
+	}
+
+	private static boolean isJson(byte[] content)
+	{
+		for (byte b : content)
+		{
+			if (b == '{' || b == '[')
+				return true;
+			else if (!Character.isWhitespace(b))
+				return false;
+		}
+
+		return false;
+	}
+
+	private final String name;
+	private final String filenameSuffix;
+	private final FunctionWithIoException<OutputStream, OutputStream> outCompressorFactory;
+	private final FunctionWithIoException<InputStream, InputStream> inCompressorFactory;
+	private final Predicate<byte[]> header;
+
+	/**
+	 * Custom codec, not detectable via {@link #detect(byte[])}.
+	 *
+	 * @param name
+	 *            not <code>null</code>
+	 * @param filenameSuffix
+	 *            not <code>null</code>
+	 * @param outCompressorFactory
+	 *            not <code>null</code>
+	 * @param inCompressorFactory
+	 *            not <code>null</code>
+	 */
+	public CacheCodec(String name, String filenameSuffix,
+			FunctionWithIoException<OutputStream, OutputStream> outCompressorFactory,
+			FunctionWithIoException<InputStream, InputStream> inCompressorFactory)
+	{
+		this(name, filenameSuffix, outCompressorFactory, inCompressorFactory, header -> false);
+	}
+
+	private CacheCodec(String name, String filenameSuffix,
+			FunctionWithIoException<OutputStream, OutputStream> outCompressorFactory,
+			FunctionWithIoException<InputStream, InputStream> inCompressorFactory, Predicate<byte[]> header)
+	{
+		this.name = Objects.requireNonNull(name, "name");
+		this.filenameSuffix = Objects.requireNonNull(filenameSuffix, "filenameSuffix");
+		this.outCompressorFactory = Objects.requireNonNull(outCompressorFactory, "outCompressorFactory");
+		this.inCompressorFactory = Objects.requireNonNull(inCompressorFactory, "inCompressorFactory");
+		this.header = header;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getFilenameSuffix()
+	{
+		return filenameSuffix;
+	}
+
+	public FunctionWithIoException<OutputStream, OutputStream> getOutCompressorFactory()
+	{
+		return outCompressorFactory;
+	}
+
+	public FunctionWithIoException<InputStream, InputStream> getInCompressorFactory()
+	{
+		return inCompressorFactory;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
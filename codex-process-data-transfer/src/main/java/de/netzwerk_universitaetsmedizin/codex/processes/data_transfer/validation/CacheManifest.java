@@ -0,0 +1,458 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Manifest of a cache folder, stored as {@value #FILENAME}. Lists all cache files written by
+ * {@link AbstractFileSystemCache}s with compressed size, SHA-256 digest, creation and last use timestamps.
+ * <p>
+ * Changes are kept in memory and the manifest file is replaced atomically at most once per {@link #WRITE_INTERVAL}, on
+ * {@link #flush()} and after verification or garbage collection, to avoid rewriting the whole manifest for every new
+ * cache file. Changes lost on a crash are repaired on the next start: missing cache files are removed from the
+ * manifest, cache files not listed are added when read.
+ * <p>
+ * The manifest is read and verified once per cache folder and JVM, entries with missing cache files (stale) or cache
+ * files of different size (partial) are removed, leftover temporary files are deleted. Cache files not listed in the
+ * manifest, e.g. written by older versions, are added when read successfully; {@link #garbageCollect(Duration)} deletes
+ * them together with entries not used for a given time. Files without a cache or temporary file name suffix are never
+ * deleted.
+ * <p>
+ * The last use timestamp is persisted at most once per {@link #LAST_USED_RESOLUTION}, to avoid rewriting the manifest
+ * on every cache hit.
+ */
+public class CacheManifest
+{
+	public static final String FILENAME = "cache-manifest.json";
+	public static final Duration LAST_USED_RESOLUTION = Duration.ofDays(1);
+	public static final Duration WRITE_INTERVAL = Duration.ofSeconds(10);
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheManifest.class);
+
+	private static final Duration TEMP_FILE_MAX_AGE = Duration.ofHours(1);
+	private static final String TEMP_FILENAME_SUFFIX = ".tmp";
+
+	private static final ObjectReader READER = new ObjectMapper().readerFor(Content.class);
+	private static final ObjectWriter WRITER = new ObjectMapper().writerFor(Content.class);
+
+	private static final ConcurrentMap<Path, CacheManifest> MANIFESTS = new ConcurrentHashMap<>();
+
+	/**
+	 * @param cacheFolder
+	 *            not <code>null</code>
+	 * @return the manifest of the given cache folder, read and verified on first access
+	 */
+	public static CacheManifest forFolder(Path cacheFolder)
+	{
+		Objects.requireNonNull(cacheFolder, "cacheFolder");
+
+		return MANIFESTS.computeIfAbsent(cacheFolder.toAbsolutePath().normalize(), CacheManifest::new);
+	}
+
+	/**
+	 * Writes pending changes of all manifests read by this JVM, e.g. after a validator is initialized or before the
+	 * application stops.
+	 */
+	public static void flushAll()
+	{
+		MANIFESTS.values().forEach(CacheManifest::flush);
+	}
+
+	public static final class Entry
+	{
+		private final String cacheEntryId;
+		private final String codec;
+		private final long size;
+		private final String sha256;
+		private final Date created;
+		private final Date lastUsed;
+
+		@JsonCreator
+		public Entry(@JsonProperty("cacheEntryId") String cacheEntryId, @JsonProperty("codec") String codec,
+				@JsonProperty("size") long size, @JsonProperty("sha256") String sha256,
+				@JsonProperty("created") Date created, @JsonProperty("lastUsed") Date lastUsed)
+		{
+			this.cacheEntryId = cacheEntryId;
+			this.codec = codec;
+			this.size = size;
+			this.sha256 = sha256;
+			this.created = created;
+			this.lastUsed = lastUsed;
+		}
+
+		@JsonProperty("cacheEntryId")
+		public String getCacheEntryId()
+		{
+			return cacheEntryId;
+		}
+
+		@JsonProperty("codec")
+		public String getCodec()
+		{
+			return codec;
+		}
+
+		/**
+		 * @return size of the cache file in bytes
+		 */
+		@JsonProperty("size")
+		public long getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * @return hex encoded SHA-256 digest of the cache file
+		 */
+		@JsonProperty("sha256")
+		public String getSha256()
+		{
+			return sha256;
+		}
+
+		@JsonProperty("created")
+		public Date getCreated()
+		{
+			return created;
+		}
+
+		@JsonProperty("lastUsed")
+		public Date getLastUsed()
+		{
+			return lastUsed;
+		}
+
+		Entry withLastUsed(Date lastUsed)
+		{
+			return new Entry(cacheEntryId, codec, size, sha256, created, lastUsed);
+		}
+	}
+
+	private static final class Content
+	{
+		static final int VERSION = 1;
+
+		private final int version;
+		private final Map<String, Entry> entries;
+
+		@JsonCreator
+		Content(@JsonProperty("version") int version, @JsonProperty("entries") Map<String, Entry> entries)
+		{
+			this.version = version;
+			this.entries = entries;
+		}
+
+		@JsonProperty("version")
+		public int getVersion()
+		{
+			return version;
+		}
+
+		@JsonProperty("entries")
+		public Map<String, Entry> getEntries()
+		{
+			return entries;
+		}
+	}
+
+	private final Path cacheFolder;
+	private final Path manifestFile;
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	private boolean dirty;
+	private long lastWritten;
+
+	private CacheManifest(Path cacheFolder)
+	{
+		this.cacheFolder = cacheFolder;
+		this.manifestFile = cacheFolder.resolve(FILENAME);
+
+		read();
+		verify();
+	}
+
+	public Path getCacheFolder()
+	{
+		return cacheFolder;
+	}
+
+	public synchronized int getEntryCount()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return sum of all cache file sizes listed in the manifest
+	 */
+	public synchronized long getSize()
+	{
+		return entries.values().stream().mapToLong(Entry::getSize).sum();
+	}
+
+	synchronized Optional<Entry> get(Path cacheFile)
+	{
+		return Optional.ofNullable(entries.get(cacheFile.getFileName().toString()));
+	}
+
+	synchronized void put(Path cacheFile, Entry entry)
+	{
+		entries.put(cacheFile.getFileName().toString(), entry);
+		changed();
+	}
+
+	synchronized void remove(Path cacheFile)
+	{
+		if (entries.remove(cacheFile.getFileName().toString()) != null)
+			changed();
+	}
+
+	synchronized void used(Path cacheFile)
+	{
+		String filename = cacheFile.getFileName().toString();
+		Entry entry = entries.get(filename);
+		Date now = new Date();
+
+		if (entry != null && (entry.getLastUsed() == null
+				|| now.getTime() - entry.getLastUsed().getTime() >= LAST_USED_RESOLUTION.toMillis()))
+		{
+			entries.put(filename, entry.withLastUsed(now));
+			changed();
+		}
+	}
+
+	/**
+	 * Writes the manifest file if there are changes not written yet.
+	 */
+	public synchronized void flush()
+	{
+		if (dirty)
+			write();
+	}
+
+	/**
+	 * Deletes all cache files not used for longer than the given <b>maxUnused</b> duration, cache files not listed in
+	 * the manifest and leftover temporary files. Only files with the file name suffix of a detectable
+	 * {@link CacheCodec} or the temporary file suffix are deleted, other files in the cache folder are kept.
+	 *
+	 * @param maxUnused
+	 *            not <code>null</code>, not negative
+	 * @return number of deleted files
+	 */
+	public synchronized int garbageCollect(Duration maxUnused)
+	{
+		Objects.requireNonNull(maxUnused, "maxUnused");
+		if (maxUnused.isNegative())
+			throw new IllegalArgumentException("maxUnused negative");
+
+		long unusedSince = System.currentTimeMillis() - maxUnused.toMillis();
+		List<String> unused = entries.entrySet().stream()
+				.filter(e -> e.getValue().getLastUsed() == null || e.getValue().getLastUsed().getTime() < unusedSince)
+				.map(Map.Entry::getKey).collect(Collectors.toList());
+
+		int deleted = 0;
+		for (String filename : unused)
+		{
+			if (delete(cacheFolder.resolve(filename)))
+				deleted++;
+
+			entries.remove(filename);
+		}
+
+		long tempFilesCreatedBefore = System.currentTimeMillis() - TEMP_FILE_MAX_AGE.toMillis();
+		for (Path file : listFiles())
+		{
+			String filename = file.getFileName().toString();
+			if (!entries.containsKey(filename) && (isCacheFile(filename) || isOldTempFile(file, tempFilesCreatedBefore))
+					&& delete(file))
+				deleted++;
+		}
+
+		if (deleted > 0 || !unused.isEmpty())
+			write();
+
+		logger.info("Cache folder {} garbage collected: {} file{} deleted, {} entr{} with {} bytes remaining",
+				cacheFolder.toString(), deleted, deleted == 1 ? "" : "s", entries.size(),
+				entries.size() == 1 ? "y" : "ies", entries.values().stream().mapToLong(Entry::getSize).sum());
+
+		return deleted;
+	}
+
+	private void read()
+	{
+		if (!Files.isReadable(manifestFile))
+		{
+			logger.debug("Cache manifest {} does not exist", manifestFile.toString());
+			return;
+		}
+
+		try
+		{
+			Content content = READER.readValue(manifestFile.toFile());
+
+			if (content.getVersion() != Content.VERSION)
+				logger.warn("Cache manifest {} has unsupported version {}, ignoring manifest", manifestFile.toString(),
+						content.getVersion());
+			else if (content.getEntries() != null)
+				entries.putAll(content.getEntries());
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to read cache manifest {}, ignoring manifest: {} - {}", manifestFile.toString(),
+					e.getClass().getName(), e.getMessage());
+		}
+	}
+
+	private void verify()
+	{
+		int stale = 0, partial = 0, tempFiles = 0;
+
+		for (String filename : new ArrayList<>(entries.keySet()))
+		{
+			Path cacheFile = cacheFolder.resolve(filename);
+
+			try
+			{
+				if (!Files.exists(cacheFile))
+				{
+					logger.debug("Cache file {} listed in manifest does not exist", cacheFile.toString());
+					entries.remove(filename);
+					stale++;
+				}
+				else if (Files.size(cacheFile) != entries.get(filename).getSize())
+				{
+					logger.warn("Cache file {} size does not match manifest, deleting file", cacheFile.toString());
+					delete(cacheFile);
+					entries.remove(filename);
+					partial++;
+				}
+			}
+			catch (IOException e)
+			{
+				logger.warn("Unable to verify cache file {}, removing from manifest: {} - {}", cacheFile.toString(),
+						e.getClass().getName(), e.getMessage());
+				entries.remove(filename);
+				partial++;
+			}
+		}
+
+		long tempFilesCreatedBefore = System.currentTimeMillis() - TEMP_FILE_MAX_AGE.toMillis();
+		for (Path file : listFiles())
+		{
+			if (isOldTempFile(file, tempFilesCreatedBefore) && delete(file))
+				tempFiles++;
+		}
+
+		if (stale > 0 || partial > 0)
+			write();
+
+		logger.debug("Cache manifest {} verified: {} entries, {} stale, {} partial, {} temporary files deleted",
+				manifestFile.toString(), entries.size(), stale, partial, tempFiles);
+	}
+
+	private List<Path> listFiles()
+	{
+		if (!Files.isDirectory(cacheFolder))
+			return List.of();
+
+		try (Stream<Path> files = Files.list(cacheFolder))
+		{
+			return files.filter(Files::isRegularFile).filter(f -> !f.getFileName().toString().equals(FILENAME))
+					.collect(Collectors.toList());
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to list cache folder {}: {} - {}", cacheFolder.toString(), e.getClass().getName(),
+					e.getMessage());
+			return List.of();
+		}
+	}
+
+	private boolean isCacheFile(String filename)
+	{
+		return CacheCodec.getDetectable().stream().anyMatch(c -> filename.endsWith(c.getFilenameSuffix()));
+	}
+
+	private boolean isOldTempFile(Path file, long createdBefore)
+	{
+		if (!file.getFileName().toString().endsWith(TEMP_FILENAME_SUFFIX))
+			return false;
+
+		try
+		{
+			return Files.getLastModifiedTime(file).toMillis() < createdBefore;
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to check temporary file {}: {} - {}", file.toString(), e.getClass().getName(),
+					e.getMessage());
+			return false;
+		}
+	}
+
+	private boolean delete(Path file)
+	{
+		try
+		{
+			return Files.deleteIfExists(file);
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to delete cache file {}: {} - {}", file.toString(), e.getClass().getName(),
+					e.getMessage());
+			return false;
+		}
+	}
+
+	private void changed()
+	{
+		dirty = true;
+
+		if (System.currentTimeMillis() - lastWritten >= WRITE_INTERVAL.toMillis())
+			write();
+	}
+
+	private void write()
+	{
+		if (!Files.isDirectory(cacheFolder))
+			return;
+
+		// also if writing fails, not retried on every change
+		lastWritten = System.currentTimeMillis();
+
+		try
+		{
+			AbstractFileSystemCache.writeAtomically(manifestFile,
+					WRITER.writeValueAsBytes(new Content(Content.VERSION, new TreeMap<>(entries))));
+
+			dirty = false;
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to write cache manifest {}: {} - {}", manifestFile.toString(), e.getClass().getName(),
+					e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for a {@link InMemoryCache} and the {@link AbstractFileSystemCache}s using it. Load time covers reading and
+ * decoding cache files as well as delegate calls on cache misses.
+ */
+public class CacheStatistics
+{
+	private final LongAdder memoryHits = new LongAdder();
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder corruptEntries = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder loadTimeNanos = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+
+	void memoryHit()
+	{
+		memoryHits.increment();
+	}
+
+	void diskHit(long bytes, long nanos)
+	{
+		diskHits.increment();
+		bytesRead.add(bytes);
+		loadTimeNanos.add(nanos);
+	}
+
+	void miss(long nanos)
+	{
+		misses.increment();
+		loadTimeNanos.add(nanos);
+	}
+
+	void corruptEntry()
+	{
+		corruptEntries.increment();
+	}
+
+	void eviction()
+	{
+		evictions.increment();
+	}
+
+	void written(long bytes)
+	{
+		bytesWritten.add(bytes);
+	}
+
+	public long getMemoryHits()
+	{
+		return memoryHits.sum();
+	}
+
+	public long getDiskHits()
+	{
+		return diskHits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	public long getCorruptEntries()
+	{
+		return corruptEntries.sum();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+
+	public long getLoadTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(loadTimeNanos.sum());
+	}
+
+	/**
+	 * @return number of compressed bytes read from cache files
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead.sum();
+	}
+
+	/**
+	 * @return number of compressed bytes written to cache files
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "memory hits: " + getMemoryHits() + ", disk hits: " + getDiskHits() + ", misses: " + getMisses()
+				+ ", corrupt entries: " + getCorruptEntries() + ", evictions: " + getEvictions() + ", load time: "
+				+ getLoadTimeMillis() + " ms, bytes read: " + getBytesRead() + ", bytes written: " + getBytesWritten();
+	}
+}
@@ -0,0 +1,145 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CanonicalType;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.support.IValidationSupport;
+
+/**
+ * Collects the content the expansion of a draft ValueSet depends on, used to identify cache entries of draft ValueSet
+ * expansions.
+ *
+ * @see AbstractFhirResourceFileSystemCache#draftCacheEntryId(String, String, List)
+ */
+final class DraftValueSetDefinition
+{
+	private static final Logger logger = LoggerFactory.getLogger(DraftValueSetDefinition.class);
+
+	private DraftValueSetDefinition()
+	{
+	}
+
+	/**
+	 * The definition contains the compose element of the given ValueSet, the definitions of included or excluded draft
+	 * ValueSets and draft CodeSystems and url and version of included or excluded non draft ValueSets and CodeSystems.
+	 * ValueSets included or excluded by draft ValueSets are resolved recursively.
+	 *
+	 * @param valueSet
+	 *            not <code>null</code>
+	 * @param validationSupport
+	 *            may be <code>null</code>, used to resolve included and excluded ValueSets and CodeSystems, if
+	 *            <code>null</code> the definition contains only the compose element
+	 * @return definition of the given ValueSet with draft dependencies
+	 */
+	static List<Resource> withDraftDependencies(ValueSet valueSet, IValidationSupport validationSupport)
+	{
+		List<Resource> definition = new ArrayList<>();
+		definition.add(new ValueSet().setCompose(valueSet.hasCompose() ? valueSet.getCompose() : null));
+
+		if (validationSupport == null)
+			return definition;
+
+		Set<String> visited = new HashSet<>();
+		visited.add(ValueSet.class.getSimpleName() + " " + valueSet.getUrl());
+
+		Deque<ValueSet> draftValueSets = new ArrayDeque<>();
+		draftValueSets.add(valueSet);
+
+		while (!draftValueSets.isEmpty())
+		{
+			ValueSet current = draftValueSets.poll();
+
+			List<ConceptSetComponent> components = new ArrayList<>(current.getCompose().getInclude());
+			components.addAll(current.getCompose().getExclude());
+
+			for (ConceptSetComponent component : components)
+			{
+				for (CanonicalType canonical : component.getValueSet())
+				{
+					if (!canonical.hasValue()
+							|| !visited.add(ValueSet.class.getSimpleName() + " " + canonical.getValue()))
+						continue;
+
+					ValueSet included = fetchValueSet(validationSupport, canonical.getValue());
+					if (included == null)
+						continue;
+
+					if (PublicationStatus.DRAFT.equals(included.getStatus()))
+					{
+						ValueSet copy = included.copy();
+						copy.setId((String) null);
+						copy.setMeta(null);
+						copy.setText(null);
+						copy.setDate(null);
+						copy.setExpansion(null);
+						definition.add(copy);
+
+						draftValueSets.add(included);
+					}
+					else
+						definition.add(new ValueSet().setUrl(included.getUrl()).setVersion(included.getVersion()));
+				}
+
+				if (!component.hasSystem()
+						|| !visited.add(CodeSystem.class.getSimpleName() + " " + component.getSystem()))
+					continue;
+
+				CodeSystem codeSystem = fetchCodeSystem(validationSupport, component.getSystem());
+				if (codeSystem == null)
+					continue;
+
+				if (PublicationStatus.DRAFT.equals(codeSystem.getStatus()))
+				{
+					CodeSystem copy = codeSystem.copy();
+					copy.setId((String) null);
+					copy.setMeta(null);
+					copy.setText(null);
+					copy.setDate(null);
+					definition.add(copy);
+				}
+				else
+					definition.add(new CodeSystem().setUrl(codeSystem.getUrl()).setVersion(codeSystem.getVersion()));
+			}
+		}
+
+		return definition;
+	}
+
+	private static ValueSet fetchValueSet(IValidationSupport validationSupport, String url)
+	{
+		IBaseResource valueSet = validationSupport.fetchValueSet(url);
+		if (valueSet instanceof ValueSet)
+			return (ValueSet) valueSet;
+		else
+		{
+			logger.debug("Included ValueSet {} not found", url);
+			return null;
+		}
+	}
+
+	private static CodeSystem fetchCodeSystem(IValidationSupport validationSupport, String url)
+	{
+		IBaseResource codeSystem = validationSupport.fetchCodeSystem(url);
+		if (codeSystem instanceof CodeSystem)
+			return (CodeSystem) codeSystem;
+		else
+		{
+			logger.debug("Included CodeSystem {} not found", url);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded in-memory LRU tier in front of {@link AbstractFileSystemCache}s. The size of an entry is the uncompressed
+ * length of its cache file, the least recently used entries are evicted if the sum exceeds the configured maximum.
+ * Parsed entries need several times more heap than their uncompressed length. Also used to coordinate single-flight
+ * loading per cache entry and to collect {@link CacheStatistics}.
+ * <p>
+ * Multiple {@link AbstractFileSystemCache}s using the same cache folder should share one instance. Cached values are
+ * handed out to all callers and must not be modified.
+ */
+public class InMemoryCache
+{
+	public static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+	private static final class Entry
+	{
+		final Object value;
+		final long size;
+
+		Entry(Object value, long size)
+		{
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	private final long maxSize;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final ConcurrentMap<String, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+	private final CacheStatistics statistics = new CacheStatistics();
+
+	private long size;
+
+	/**
+	 * @see #DEFAULT_MAX_SIZE
+	 */
+	public InMemoryCache()
+	{
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum sum of uncompressed entry sizes in bytes, <code>0</code> to disable the in-memory tier
+	 */
+	public InMemoryCache(long maxSize)
+	{
+		if (maxSize < 0)
+			throw new IllegalArgumentException("maxSize < 0");
+
+		this.maxSize = maxSize;
+	}
+
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public CacheStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	public synchronized int getEntryCount()
+	{
+		return entries.size();
+	}
+
+	public synchronized long getSize()
+	{
+		return size;
+	}
+
+	synchronized Object get(String cacheEntryId)
+	{
+		Entry entry = entries.get(cacheEntryId);
+		return entry == null ? null : entry.value;
+	}
+
+	synchronized void put(String cacheEntryId, Object value, long entrySize)
+	{
+		remove(cacheEntryId);
+
+		if (entrySize > maxSize)
+			return;
+
+		entries.put(cacheEntryId, new Entry(value, entrySize));
+		size += entrySize;
+
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (size > maxSize && eldest.hasNext())
+		{
+			size -= eldest.next().getValue().size;
+			eldest.remove();
+			statistics.eviction();
+		}
+	}
+
+	synchronized void remove(String cacheEntryId)
+	{
+		Entry removed = entries.remove(cacheEntryId);
+		if (removed != null)
+			size -= removed.size;
+	}
+
+	/**
+	 * @param cacheEntryId
+	 *            not <code>null</code>
+	 * @param loader
+	 *            not <code>null</code>, completed by the caller after loading
+	 * @return <code>null</code> if the caller may load the entry, the future of the current loader otherwise
+	 */
+	CompletableFuture<Void> startLoading(String cacheEntryId, CompletableFuture<Void> loader)
+	{
+		return loading.putIfAbsent(cacheEntryId, loader);
+	}
+
+	void finishLoading(String cacheEntryId, CompletableFuture<Void> loader)
+	{
+		loading.remove(cacheEntryId, loader);
+		loader.complete(null);
+	}
+}
@@ -0,0 +1,296 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
+import org.hl7.fhir.common.hapi.validation.validator.VersionSpecificWorkerContextWrapper;
+import org.hl7.fhir.common.hapi.validation.validator.VersionTypeConverterR4;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r5.model.ElementDefinition;
+import org.hl7.fhir.r5.model.ElementDefinition.ElementDefinitionConstraintComponent;
+import org.hl7.fhir.r5.model.Enumerations.BindingStrength;
+import org.hl7.fhir.r5.model.ValueSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.ValidationResult;
+import dev.dsf.fhir.validation.ResourceValidator;
+
+/**
+ * {@link ResourceValidator} keeping the StructureDefinitions and bound ValueSets of the supported profiles for its
+ * whole lifetime.
+ * <p>
+ * The HAPI validator converts every StructureDefinition and ValueSet it needs to FHIR R5 and compiles the FHIRPath
+ * invariants of the converted StructureDefinitions, but keeps the converted resources only for a few seconds. This
+ * validator uses worker contexts that keep converted StructureDefinitions, including the invariants compiled by the
+ * HAPI validator, and the ValueSets bound by the supported profiles. The supported profiles are resolved when this
+ * validator is created, a {@link ProfileValidationContext} per profile describes the result.
+ * <p>
+ * The HAPI validator stores compiled invariants in the not synchronized user data of the StructureDefinitions, worker
+ * contexts are therefore not shared between threads. Every thread borrows a validator with its own worker context from
+ * a pool, the pool grows to the number of concurrently validating threads. All worker contexts share the given
+ * validation support.
+ * <p>
+ * Validation results are adapted like in {@link dev.dsf.fhir.validation.ResourceValidatorImpl}. Instances are thread
+ * safe.
+ */
+public class PinnedProfilesResourceValidator implements ResourceValidator
+{
+	private static final Logger logger = LoggerFactory.getLogger(PinnedProfilesResourceValidator.class);
+
+	private static final Pattern AT_DEFAULT_SLICE_PATTERN = Pattern
+			.compile(".*(Questionnaire|QuestionnaireResponse).item:@default.*");
+
+	private static final Set<BindingStrength> PINNED_BINDING_STRENGTHS = Set.of(BindingStrength.REQUIRED,
+			BindingStrength.EXTENSIBLE);
+
+	/**
+	 * Keeps StructureDefinitions and pinned ValueSets once converted. Used by one thread at a time.
+	 */
+	private static final class PinningWorkerContext extends VersionSpecificWorkerContextWrapper
+	{
+		private final Map<String, org.hl7.fhir.r5.model.Resource> pinned = new HashMap<>();
+		private final Set<String> pinnedValueSets;
+
+		PinningWorkerContext(IValidationSupport validationSupport, Set<String> pinnedValueSets)
+		{
+			super(new ValidationSupportContext(validationSupport), new VersionTypeConverterR4());
+
+			this.pinnedValueSets = pinnedValueSets;
+		}
+
+		@Override
+		public <T extends org.hl7.fhir.r5.model.Resource> T fetchResource(Class<T> class_, String uri)
+		{
+			if (uri == null || !isPinned(class_, uri))
+				return super.fetchResource(class_, uri);
+
+			String key = class_.getSimpleName() + " " + uri;
+			org.hl7.fhir.r5.model.Resource resource = pinned.get(key);
+
+			if (resource == null)
+			{
+				resource = super.fetchResource(class_, uri);
+				if (resource == null)
+					return null;
+
+				pinned.put(key, resource);
+			}
+
+			return class_.cast(resource);
+		}
+
+		private boolean isPinned(Class<?> class_, String uri)
+		{
+			return org.hl7.fhir.r5.model.StructureDefinition.class.equals(class_)
+					|| (ValueSet.class.equals(class_) && pinnedValueSets.contains(uri));
+		}
+	}
+
+	private static final class PinningFhirInstanceValidator extends FhirInstanceValidator
+	{
+		private final VersionSpecificWorkerContextWrapper workerContext;
+
+		PinningFhirInstanceValidator(IValidationSupport validationSupport,
+				VersionSpecificWorkerContextWrapper workerContext)
+		{
+			super(validationSupport);
+
+			this.workerContext = workerContext;
+		}
+
+		@Override
+		protected VersionSpecificWorkerContextWrapper provideWorkerContext()
+		{
+			return workerContext;
+		}
+	}
+
+	private final FhirContext fhirContext;
+	private final IValidationSupport validationSupport;
+	private final Map<String, ProfileValidationContext> contextsByProfile;
+	private final Set<String> pinnedValueSets;
+
+	private final Deque<FhirValidator> idleValidators = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger validatorCount = new AtomicInteger();
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param validationSupport
+	 *            not <code>null</code>, shared by all threads
+	 * @param profiles
+	 *            not <code>null</code>, supported profiles
+	 */
+	public PinnedProfilesResourceValidator(FhirContext fhirContext, IValidationSupport validationSupport,
+			Collection<? extends StructureDefinition> profiles)
+	{
+		this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext");
+		this.validationSupport = Objects.requireNonNull(validationSupport, "validationSupport");
+		Objects.requireNonNull(profiles, "profiles");
+
+		long start = System.currentTimeMillis();
+
+		Set<String> valueSets = new LinkedHashSet<>();
+		PinningWorkerContext workerContext = new PinningWorkerContext(validationSupport,
+				Collections.unmodifiableSet(valueSets));
+
+		Map<String, ProfileValidationContext> contexts = new HashMap<>();
+		for (StructureDefinition profile : profiles)
+		{
+			ProfileValidationContext context = createContext(workerContext, valueSets, profile);
+
+			contexts.putIfAbsent(profile.getUrl(), context);
+			if (profile.hasVersion())
+				contexts.putIfAbsent(profile.getUrl() + "|" + profile.getVersion(), context);
+		}
+		contextsByProfile = Collections.unmodifiableMap(contexts);
+		pinnedValueSets = Collections.unmodifiableSet(valueSets);
+
+		idleValidators.add(createValidator(workerContext));
+
+		logger.debug("Profile validation contexts created in {} ms: {}", System.currentTimeMillis() - start,
+				toString());
+	}
+
+	private static ProfileValidationContext createContext(PinningWorkerContext workerContext,
+			Set<String> pinnedValueSets, StructureDefinition profile)
+	{
+		org.hl7.fhir.r5.model.StructureDefinition snapshot = null;
+		Set<String> boundValueSets = new LinkedHashSet<>();
+		int invariants = 0;
+
+		try
+		{
+			snapshot = workerContext.fetchResource(org.hl7.fhir.r5.model.StructureDefinition.class, profile.getUrl());
+		}
+		catch (RuntimeException e)
+		{
+			logger.debug("Unable to resolve profile {}: {} - {}", profile.getUrl(), e.getClass().getName(),
+					e.getMessage());
+		}
+
+		if (snapshot != null && snapshot.hasSnapshot())
+		{
+			for (ElementDefinition element : snapshot.getSnapshot().getElement())
+			{
+				invariants += (int) element.getConstraint().stream()
+						.filter(ElementDefinitionConstraintComponent::hasExpression).count();
+
+				if (element.hasBinding() && element.getBinding().hasValueSet()
+						&& PINNED_BINDING_STRENGTHS.contains(element.getBinding().getStrength()))
+					boundValueSets.add(element.getBinding().getValueSet());
+			}
+
+			for (String valueSet : boundValueSets)
+			{
+				pinnedValueSets.add(valueSet);
+
+				try
+				{
+					workerContext.fetchResource(ValueSet.class, valueSet);
+				}
+				catch (RuntimeException e)
+				{
+					logger.debug("Unable to resolve ValueSet {} bound in profile {}: {} - {}", valueSet,
+							profile.getUrl(), e.getClass().getName(), e.getMessage());
+				}
+			}
+		}
+		else
+			logger.debug("Profile {} not resolved, snapshot missing", profile.getUrl());
+
+		return new ProfileValidationContext(profile.getUrl(), profile.hasVersion() ? profile.getVersion() : null,
+				snapshot, boundValueSets, invariants);
+	}
+
+	private FhirValidator createValidator(PinningWorkerContext workerContext)
+	{
+		FhirValidator validator = fhirContext.newValidator();
+		validator.registerValidatorModule(new PinningFhirInstanceValidator(validationSupport, workerContext));
+
+		validatorCount.incrementAndGet();
+
+		return validator;
+	}
+
+	/**
+	 * @return supported profile URLs, with and without version
+	 */
+	public Set<String> getProfiles()
+	{
+		return contextsByProfile.keySet();
+	}
+
+	/**
+	 * @return distinct contexts of all supported profiles
+	 */
+	public Set<ProfileValidationContext> getContexts()
+	{
+		Set<ProfileValidationContext> contexts = Collections.newSetFromMap(new IdentityHashMap<>());
+		contexts.addAll(contextsByProfile.values());
+		return contexts;
+	}
+
+	/**
+	 * @return number of validators created for concurrently validating threads
+	 */
+	int getValidatorCount()
+	{
+		return validatorCount.get();
+	}
+
+	@Override
+	public ValidationResult validate(Resource resource)
+	{
+		FhirValidator validator = idleValidators.pollFirst();
+		if (validator == null)
+			validator = createValidator(new PinningWorkerContext(validationSupport, pinnedValueSets));
+
+		try
+		{
+			ValidationResult result = validator.validateWithResult(resource);
+			adaptDefaultSliceValidationErrorToWarning(result);
+
+			return result;
+		}
+		finally
+		{
+			idleValidators.offerFirst(validator);
+		}
+	}
+
+	private void adaptDefaultSliceValidationErrorToWarning(ValidationResult result)
+	{
+		result.getMessages().stream().filter(m -> AT_DEFAULT_SLICE_PATTERN.matcher(m.getMessage()).matches())
+				.forEach(m -> m.setSeverity(ResultSeverityEnum.WARNING));
+	}
+
+	@Override
+	public String toString()
+	{
+		Set<ProfileValidationContext> contexts = getContexts();
+		return contexts.size() + " profile validation contexts, "
+				+ contexts.stream().mapToInt(c -> c.getBoundValueSets().size()).sum() + " bound ValueSets, "
+				+ contexts.stream().mapToInt(ProfileValidationContext::getInvariants).sum() + " invariants, "
+				+ contexts.stream().filter(c -> !c.isResolved()).count() + " not resolved, " + getValidatorCount()
+				+ " validators";
+	}
+}
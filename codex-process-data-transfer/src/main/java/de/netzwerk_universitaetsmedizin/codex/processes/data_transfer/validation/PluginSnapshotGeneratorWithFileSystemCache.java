@@ -4,9 +4,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.slf4j.Logger;
@@ -14,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
 import dev.dsf.fhir.validation.SnapshotGenerator;
 import dev.dsf.fhir.validation.SnapshotGenerator.SnapshotWithValidationMessages;
 
@@ -24,6 +30,7 @@ public class PluginSnapshotGeneratorWithFileSystemCache
 	private static final Logger logger = LoggerFactory.getLogger(ValidationPackageClientWithFileSystemCache.class);
 
 	private final SnapshotGenerator delegate;
+	private final IValidationSupport validationSupport;
 
 	/**
 	 * For JSON content with gzip compression using the <code>.json.xz</code> file name suffix.
@@ -44,6 +51,7 @@ public class PluginSnapshotGeneratorWithFileSystemCache
 		super(cacheFolder, StructureDefinition.class, fhirContext);
 
 		this.delegate = delegate;
+		this.validationSupport = null;
 	}
 
 	public PluginSnapshotGeneratorWithFileSystemCache(Path cacheFolder, String fileNameSuffix,
@@ -51,10 +59,38 @@ public class PluginSnapshotGeneratorWithFileSystemCache
 			FunctionWithIoException<InputStream, InputStream> inCompressorFactory, FhirContext fhirContext,
 			SnapshotGenerator delegate)
 	{
-		super(cacheFolder, fileNameSuffix, outCompressorFactory, inCompressorFactory, StructureDefinition.class,
-				fhirContext);
+		this(cacheFolder, new CacheCodec("custom", fileNameSuffix, outCompressorFactory, inCompressorFactory),
+				new InMemoryCache(), fhirContext, delegate);
+	}
+
+	public PluginSnapshotGeneratorWithFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache,
+			FhirContext fhirContext, SnapshotGenerator delegate)
+	{
+		this(cacheFolder, codec, memoryCache, fhirContext, delegate, null);
+	}
+
+	/**
+	 * @param cacheFolder
+	 *            not <code>null</code>
+	 * @param codec
+	 *            not <code>null</code>
+	 * @param memoryCache
+	 *            not <code>null</code>
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param delegate
+	 *            not <code>null</code>
+	 * @param validationSupport
+	 *            may be <code>null</code>, used to resolve base definitions of draft StructureDefinitions, if
+	 *            <code>null</code> changes of draft base definitions are not detected
+	 */
+	public PluginSnapshotGeneratorWithFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache,
+			FhirContext fhirContext, SnapshotGenerator delegate, IValidationSupport validationSupport)
+	{
+		super(cacheFolder, codec, memoryCache, StructureDefinition.class, fhirContext);
 
 		this.delegate = delegate;
+		this.validationSupport = validationSupport;
 	}
 
 	@Override
@@ -80,17 +116,15 @@ public class PluginSnapshotGeneratorWithFileSystemCache
 		Objects.requireNonNull(structureDefinition.getUrl(), "structureDefinition.url");
 		Objects.requireNonNull(structureDefinition.getVersion(), "structureDefinition.version");
 
+		String cacheEntryId = cacheEntryId(structureDefinition);
+
 		try
 		{
-			SnapshotWithValidationMessages read = readResourceFromCache(structureDefinition.getUrl(),
-					structureDefinition.getVersion(),
+			return readResourceFromCacheOrLoad(cacheEntryId,
 					// needs to return original structureDefinition object with included snapshot
 					sd -> new SnapshotWithValidationMessages(structureDefinition.setSnapshot(sd.getSnapshot()),
-							Collections.emptyList()));
-			if (read != null)
-				return read;
-			else
-				return generateSnapshotAndWriteToCache(structureDefinition);
+							Collections.emptyList()),
+					() -> generateSnapshotAndWriteToCache(structureDefinition, cacheEntryId));
 		}
 		catch (IOException e)
 		{
@@ -98,27 +132,87 @@ public class PluginSnapshotGeneratorWithFileSystemCache
 		}
 	}
 
-	private SnapshotWithValidationMessages generateSnapshotAndWriteToCache(StructureDefinition structureDefinition)
-			throws IOException
+	/**
+	 * Snapshots of draft StructureDefinitions are identified by a digest of the definition without snapshot, text and
+	 * meta data in addition to url and version. The digest includes the definitions of draft base StructureDefinitions
+	 * and url and version of the first non draft base StructureDefinition.
+	 */
+	private String cacheEntryId(StructureDefinition structureDefinition)
 	{
-		SnapshotWithValidationMessages snapshot = delegate.generateSnapshot(structureDefinition);
+		if (PublicationStatus.DRAFT.equals(structureDefinition.getStatus()))
+			return draftCacheEntryId(structureDefinition.getUrl(), structureDefinition.getVersion(),
+					definitionWithDraftBases(structureDefinition));
+		else
+			return cacheEntryId(structureDefinition.getUrl(), structureDefinition.getVersion());
+	}
 
-		if (PublicationStatus.DRAFT.equals(snapshot.getSnapshot().getStatus()))
+	private List<StructureDefinition> definitionWithDraftBases(StructureDefinition structureDefinition)
+	{
+		List<StructureDefinition> definition = new ArrayList<>();
+		Set<String> visited = new HashSet<>();
+
+		StructureDefinition current = structureDefinition;
+		while (current != null && visited.add(current.getUrl()))
 		{
-			logger.warn("Not writing StructureDefinition {}|{} with snapshot and status {} to cache",
-					snapshot.getSnapshot().getUrl(), snapshot.getSnapshot().getVersion(),
-					snapshot.getSnapshot().getStatus());
-			return snapshot;
+			if (PublicationStatus.DRAFT.equals(current.getStatus()))
+			{
+				StructureDefinition copy = current.copy();
+				copy.setId((String) null);
+				copy.setMeta(null);
+				copy.setText(null);
+				copy.setDate(null);
+				copy.setSnapshot(null);
+				definition.add(copy);
+			}
+			else
+			{
+				definition.add(new StructureDefinition().setUrl(current.getUrl()).setVersion(current.getVersion()));
+				break;
+			}
+
+			current = fetchBaseDefinition(current);
+		}
+
+		return definition;
+	}
+
+	private StructureDefinition fetchBaseDefinition(StructureDefinition structureDefinition)
+	{
+		if (validationSupport == null || !structureDefinition.hasBaseDefinition())
+			return null;
+
+		IBaseResource base = validationSupport.fetchStructureDefinition(structureDefinition.getBaseDefinition());
+		if (base instanceof StructureDefinition)
+			return (StructureDefinition) base;
+		else
+		{
+			logger.debug("Base definition {} of StructureDefinition {}|{} not found",
+					structureDefinition.getBaseDefinition(), structureDefinition.getUrl(),
+					structureDefinition.getVersion());
+			return null;
 		}
-		else if (!snapshot.getSnapshot().hasSnapshot())
+	}
+
+	private SnapshotWithValidationMessages generateSnapshotAndWriteToCache(StructureDefinition structureDefinition,
+			String cacheEntryId) throws IOException
+	{
+		SnapshotWithValidationMessages snapshot = delegate.generateSnapshot(structureDefinition);
+
+		if (!snapshot.getSnapshot().hasSnapshot())
 		{
 			logger.info("Not writing StructureDefinition {}|{} without snapshot to cache",
 					snapshot.getSnapshot().getUrl(), snapshot.getSnapshot().getVersion());
 			return snapshot;
 		}
 		else
-			return writeRsourceToCache(snapshot, SnapshotWithValidationMessages::getSnapshot,
-					StructureDefinition::getUrl, StructureDefinition::getVersion);
+		{
+			if (PublicationStatus.DRAFT.equals(structureDefinition.getStatus()))
+				logger.debug("Writing StructureDefinition {}|{} with snapshot and status {} to cache as {}",
+						structureDefinition.getUrl(), structureDefinition.getVersion(), structureDefinition.getStatus(),
+						cacheEntryId);
+
+			return writeRsourceToCache(snapshot, SnapshotWithValidationMessages::getSnapshot, cacheEntryId);
+		}
 	}
 
 	@Override
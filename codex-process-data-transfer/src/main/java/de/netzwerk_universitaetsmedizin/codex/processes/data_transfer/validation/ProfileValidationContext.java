@@ -0,0 +1,82 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.hl7.fhir.r5.model.StructureDefinition;
+
+/**
+ * Pre-resolved validation state of a supported profile: the snapshot as used by the validator, the URLs of ValueSets
+ * bound with strength required or extensible and the number of invariants.
+ *
+ * @see PinnedProfilesResourceValidator
+ */
+public class ProfileValidationContext
+{
+	private final String url;
+	private final String version;
+	private final StructureDefinition snapshot;
+	private final Set<String> boundValueSets;
+	private final int invariants;
+
+	/**
+	 * @param url
+	 *            not <code>null</code>
+	 * @param version
+	 *            may be <code>null</code>
+	 * @param snapshot
+	 *            may be <code>null</code> if the profile could not be resolved
+	 * @param boundValueSets
+	 *            not <code>null</code>
+	 * @param invariants
+	 */
+	public ProfileValidationContext(String url, String version, StructureDefinition snapshot,
+			Set<String> boundValueSets, int invariants)
+	{
+		this.url = url;
+		this.version = version;
+		this.snapshot = snapshot;
+		this.boundValueSets = Collections.unmodifiableSet(boundValueSets);
+		this.invariants = invariants;
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+
+	public String getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return <code>false</code> if the profile could not be resolved via the validation support
+	 */
+	public boolean isResolved()
+	{
+		return snapshot != null;
+	}
+
+	public StructureDefinition getSnapshot()
+	{
+		return snapshot;
+	}
+
+	public Set<String> getBoundValueSets()
+	{
+		return boundValueSets;
+	}
+
+	public int getInvariants()
+	{
+		return invariants;
+	}
+
+	@Override
+	public String toString()
+	{
+		return url + (version == null ? "" : ("|" + version)) + ": " + boundValueSets.size() + " bound ValueSets, "
+				+ invariants + " invariants";
+	}
+}
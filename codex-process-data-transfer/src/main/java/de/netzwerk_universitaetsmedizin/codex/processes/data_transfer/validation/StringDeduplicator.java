@@ -0,0 +1,63 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.Objects;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CodeType;
+import org.hl7.fhir.r4.model.PrimitiveType;
+import org.hl7.fhir.r4.model.UriType;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Replaces values of <code>uri</code>, <code>url</code>, <code>canonical</code>, <code>oid</code>, <code>uuid</code>
+ * and <code>code</code> elements with canonical {@link String} instances. Validation packages, snapshots and expanded
+ * ValueSets repeat the same canonical urls, code systems and codes thousands of times, the parser creates a new
+ * {@link String} for every occurrence.
+ */
+public final class StringDeduplicator
+{
+	private StringDeduplicator()
+	{
+	}
+
+	/**
+	 * @param <R>
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param resource
+	 *            may be <code>null</code>
+	 * @return the given resource
+	 */
+	@SuppressWarnings("rawtypes")
+	public static <R extends IBaseResource> R deduplicate(FhirContext fhirContext, R resource)
+	{
+		Objects.requireNonNull(fhirContext, "fhirContext");
+
+		if (resource == null)
+			return null;
+
+		for (PrimitiveType element : fhirContext.newTerser().getAllPopulatedChildElementsOfType(resource,
+				PrimitiveType.class))
+		{
+			if (element instanceof UriType)
+				deduplicate((UriType) element);
+			else if (element instanceof CodeType)
+				deduplicate((CodeType) element);
+		}
+
+		return resource;
+	}
+
+	private static void deduplicate(UriType element)
+	{
+		if (element.getValue() != null)
+			element.setValue(element.getValue().intern());
+	}
+
+	private static void deduplicate(CodeType element)
+	{
+		if (element.getValue() != null)
+			element.setValue(element.getValue().intern());
+	}
+}
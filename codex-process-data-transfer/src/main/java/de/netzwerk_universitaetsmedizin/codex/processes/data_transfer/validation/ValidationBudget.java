@@ -0,0 +1,121 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+
+/**
+ * Limits for the validation of a bundle: validation stops after the given number of resources with error (fail-fast for
+ * <code>1</code>) or after the given duration. Bundle entries not validated get a
+ * {@link #createNotValidatedOutcome(String) not-validated} outcome.
+ */
+public class ValidationBudget
+{
+	public static final ValidationBudget UNLIMITED = new ValidationBudget(0, null);
+
+	/**
+	 * @param maxResourcesWithError
+	 *            <code>&lt;= 0</code> for no limit
+	 * @param maxDuration
+	 *            <code>null</code>, zero or negative for no limit
+	 * @return {@link #UNLIMITED} if no limit is given
+	 */
+	public static ValidationBudget of(int maxResourcesWithError, Duration maxDuration)
+	{
+		if (maxResourcesWithError <= 0 && (maxDuration == null || maxDuration.isZero() || maxDuration.isNegative()))
+			return UNLIMITED;
+		else
+			return new ValidationBudget(maxResourcesWithError, maxDuration);
+	}
+
+	private final int maxResourcesWithError;
+	private final Duration maxDuration;
+
+	private ValidationBudget(int maxResourcesWithError, Duration maxDuration)
+	{
+		this.maxResourcesWithError = Math.max(0, maxResourcesWithError);
+		this.maxDuration = maxDuration == null || maxDuration.isZero() || maxDuration.isNegative() ? null : maxDuration;
+	}
+
+	public boolean isUnlimited()
+	{
+		return maxResourcesWithError == 0 && maxDuration == null;
+	}
+
+	/**
+	 * @return <code>0</code> if not limited
+	 */
+	public int getMaxResourcesWithError()
+	{
+		return maxResourcesWithError;
+	}
+
+	/**
+	 * @return <code>null</code> if not limited
+	 */
+	public Duration getMaxDuration()
+	{
+		return maxDuration;
+	}
+
+	/**
+	 * @param resourcesWithError
+	 *            number of validated resources with error or fatal issues
+	 * @param elapsed
+	 *            not <code>null</code>, time since the validation of the bundle started
+	 * @return reason why the validation should stop, {@link Optional#empty()} if the budget is not exhausted
+	 */
+	public Optional<String> exhausted(int resourcesWithError, Duration elapsed)
+	{
+		if (maxResourcesWithError > 0 && resourcesWithError >= maxResourcesWithError)
+			return Optional.of("validation stopped after " + resourcesWithError + " resource"
+					+ (resourcesWithError == 1 ? "" : "s") + " with error");
+		else if (maxDuration != null && elapsed.compareTo(maxDuration) >= 0)
+			return Optional.of("validation stopped after time budget of " + maxDuration.toMillis() + " ms exceeded");
+		else
+			return Optional.empty();
+	}
+
+	/**
+	 * @param reason
+	 *            not <code>null</code>
+	 * @return outcome for a bundle entry that was not validated, a single issue with severity information, code
+	 *         incomplete and details <code>data-transfer-error#not-validated</code>
+	 */
+	public static OperationOutcome createNotValidatedOutcome(String reason)
+	{
+		OperationOutcome outcome = new OperationOutcome();
+		outcome.addIssue().setSeverity(IssueSeverity.INFORMATION).setCode(IssueType.INCOMPLETE)
+				.setDiagnostics("Not validated, " + reason).getDetails().addCoding()
+				.setSystem(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR)
+				.setCode(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED);
+		return outcome;
+	}
+
+	/**
+	 * @param outcome
+	 *            may be <code>null</code>
+	 * @return <code>true</code> if the given outcome was created by {@link #createNotValidatedOutcome(String)}
+	 */
+	public static boolean isNotValidated(OperationOutcome outcome)
+	{
+		return outcome != null && outcome.getIssue().stream()
+				.anyMatch(i -> IssueType.INCOMPLETE.equals(i.getCode())
+						&& i.getDetails().hasCoding(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR,
+								CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED));
+	}
+
+	@Override
+	public String toString()
+	{
+		return isUnlimited() ? "unlimited"
+				: ("max resources with error: " + (maxResourcesWithError == 0 ? "-" : maxResourcesWithError)
+						+ ", max duration: " + (maxDuration == null ? "-" : (maxDuration.toMillis() + " ms")));
+	}
+}
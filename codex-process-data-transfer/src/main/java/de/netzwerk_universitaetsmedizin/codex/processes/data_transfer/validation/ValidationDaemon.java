@@ -0,0 +1,329 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Local HTTP endpoint validating resources with an initialized {@link BundleValidator}, avoiding the startup cost of
+ * {@link ValidationMain} for every file.
+ * <p>
+ * <code>POST {@value #PATH_VALIDATE}</code> accepts a FHIR resource as JSON or XML (content type containing
+ * <code>json</code> or <code>xml</code>) and returns an OperationOutcome, or the Bundle with
+ * <code>entry.response.outcome</code> properties, in the same format. NDJSON (content type containing
+ * <code>ndjson</code>) is validated line by line and returns one line per non blank input line.
+ * <code>GET {@value #PATH_HEALTH}</code> returns <code>200 OK</code> while the daemon is running.
+ * <p>
+ * At most <b>maxConcurrentRequests</b> requests are validated concurrently, at most <b>maxQueuedRequests</b> additional
+ * requests wait for validation. Requests exceeding these limits are rejected with <code>503</code> and a
+ * <code>Retry-After</code> header.
+ */
+public class ValidationDaemon implements Closeable
+{
+	private static final Logger logger = LoggerFactory.getLogger(ValidationDaemon.class);
+
+	public static final String PATH_VALIDATE = "/validate";
+	public static final String PATH_HEALTH = "/health";
+
+	public static final String MEDIA_TYPE_FHIR_JSON = "application/fhir+json";
+	public static final String MEDIA_TYPE_FHIR_XML = "application/fhir+xml";
+	public static final String MEDIA_TYPE_FHIR_NDJSON = "application/fhir+ndjson";
+
+	private static final int RETRY_AFTER_SECONDS = 1;
+
+	// threads in addition to the admitted requests, used to reject requests while all admitted requests are in progress
+	private static final int REJECTING_THREADS = 2;
+
+	private final FhirContext fhirContext;
+	private final BundleValidator validator;
+	private final InetSocketAddress address;
+	private final int maxConcurrentRequests;
+	private final int maxQueuedRequests;
+
+	private final Semaphore admitted;
+	private final Semaphore validating;
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param validator
+	 *            not <code>null</code>, thread safe
+	 * @param address
+	 *            not <code>null</code>, port <code>0</code> for an ephemeral port
+	 * @param maxConcurrentRequests
+	 *            &gt; 0
+	 * @param maxQueuedRequests
+	 *            &gt;= 0
+	 */
+	public ValidationDaemon(FhirContext fhirContext, BundleValidator validator, InetSocketAddress address,
+			int maxConcurrentRequests, int maxQueuedRequests)
+	{
+		this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext");
+		this.validator = Objects.requireNonNull(validator, "validator");
+		this.address = Objects.requireNonNull(address, "address");
+
+		if (maxConcurrentRequests <= 0)
+			throw new IllegalArgumentException("maxConcurrentRequests <= 0");
+		if (maxQueuedRequests < 0)
+			throw new IllegalArgumentException("maxQueuedRequests < 0");
+
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.maxQueuedRequests = maxQueuedRequests;
+
+		admitted = new Semaphore(maxConcurrentRequests + maxQueuedRequests);
+		validating = new Semaphore(maxConcurrentRequests);
+	}
+
+	/**
+	 * @throws IOException
+	 *             if the address can not be bound
+	 * @throws IllegalStateException
+	 *             if already started
+	 */
+	public synchronized void start() throws IOException
+	{
+		if (server != null)
+			throw new IllegalStateException("Already started");
+
+		int threads = maxConcurrentRequests + maxQueuedRequests + REJECTING_THREADS;
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r ->
+		{
+			Thread thread = new Thread(r, "validation-daemon-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+		server.createContext(PATH_VALIDATE, this::handleValidate);
+		server.createContext(PATH_HEALTH, this::handleHealth);
+		server.start();
+
+		logger.info("Validation daemon listening on http://{}:{}, max concurrent requests {}, max queued requests {}",
+				server.getAddress().getHostString(), server.getAddress().getPort(), maxConcurrentRequests,
+				maxQueuedRequests);
+	}
+
+	/**
+	 * @return bound address, <code>null</code> if not started
+	 */
+	public synchronized InetSocketAddress getAddress()
+	{
+		return server == null ? null : server.getAddress();
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (server != null)
+		{
+			server.stop(0);
+			executor.shutdownNow();
+
+			server = null;
+			executor = null;
+
+			logger.info("Validation daemon stopped");
+		}
+	}
+
+	private void handleHealth(HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			if (!"GET".equals(exchange.getRequestMethod()))
+				send(exchange, 405, "text/plain", "Method not allowed");
+			else
+				send(exchange, 200, "text/plain", "OK");
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	private void handleValidate(HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			if (!"POST".equals(exchange.getRequestMethod()))
+			{
+				send(exchange, 405, MEDIA_TYPE_FHIR_JSON, encode(fhirContext.newJsonParser(),
+						createOutcome(IssueSeverity.ERROR, IssueType.NOTSUPPORTED, "Method not allowed, use POST")));
+				return;
+			}
+
+			if (!admitted.tryAcquire())
+			{
+				logger.debug("Rejecting request, {} requests in progress or queued",
+						maxConcurrentRequests + maxQueuedRequests);
+
+				exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+				send(exchange, 503, MEDIA_TYPE_FHIR_JSON, encode(fhirContext.newJsonParser(),
+						createOutcome(IssueSeverity.ERROR, IssueType.TRANSIENT, "Too many requests, retry later")));
+				return;
+			}
+
+			try
+			{
+				validating.acquire();
+				try
+				{
+					validate(exchange);
+				}
+				finally
+				{
+					validating.release();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				admitted.release();
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	private void validate(HttpExchange exchange) throws IOException
+	{
+		String contentType = String.valueOf(exchange.getRequestHeaders().getFirst("Content-Type")).toLowerCase();
+
+		try
+		{
+			if (contentType.contains("ndjson"))
+				validateNdjson(exchange);
+			else if (contentType.contains("xml"))
+				validateResource(exchange, fhirContext.newXmlParser(), MEDIA_TYPE_FHIR_XML);
+			else
+				validateResource(exchange, fhirContext.newJsonParser(), MEDIA_TYPE_FHIR_JSON);
+		}
+		catch (RuntimeException e)
+		{
+			logger.warn("Error while validating request, {}: {}", e.getClass().getName(), e.getMessage());
+
+			send(exchange, 500, MEDIA_TYPE_FHIR_JSON, encode(fhirContext.newJsonParser(),
+					createOutcome(IssueSeverity.FATAL, IssueType.EXCEPTION, "Validation failed: " + e.getMessage())));
+		}
+	}
+
+	private void validateResource(HttpExchange exchange, IParser parser, String mediaType) throws IOException
+	{
+		Resource resource;
+		try (InputStream in = exchange.getRequestBody())
+		{
+			resource = (Resource) parser.parseResource(in);
+		}
+		catch (RuntimeException e)
+		{
+			send(exchange, 400, mediaType, encode(parser, createOutcome(IssueSeverity.FATAL, IssueType.STRUCTURE,
+					"Unable to parse resource: " + e.getMessage())));
+			return;
+		}
+
+		send(exchange, 200, mediaType, encode(parser, validate(resource)));
+	}
+
+	private void validateNdjson(HttpExchange exchange) throws IOException
+	{
+		IParser parser = fhirContext.newJsonParser().setPrettyPrint(false);
+		StringBuilder response = new StringBuilder();
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)))
+		{
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				if (line.isBlank())
+					continue;
+
+				IBaseResource result;
+				try
+				{
+					result = validate((Resource) parser.parseResource(line));
+				}
+				catch (RuntimeException e)
+				{
+					result = createOutcome(IssueSeverity.FATAL, IssueType.STRUCTURE,
+							"Unable to parse resource: " + e.getMessage());
+				}
+
+				response.append(parser.encodeResourceToString(result)).append('\n');
+			}
+		}
+
+		send(exchange, 200, MEDIA_TYPE_FHIR_NDJSON, response.toString());
+	}
+
+	private IBaseResource validate(Resource resource)
+	{
+		logger.debug("Validating {}", resource.getResourceType().name());
+
+		if (resource instanceof Bundle)
+			return validator.validate((Bundle) resource);
+		else
+			return validator.validate(resource).toOperationOutcome();
+	}
+
+	private String encode(IParser parser, IBaseResource resource)
+	{
+		return parser.setPrettyPrint(false).encodeResourceToString(resource);
+	}
+
+	private OperationOutcome createOutcome(IssueSeverity severity, IssueType type, String diagnostics)
+	{
+		OperationOutcome outcome = new OperationOutcome();
+		outcome.addIssue().setSeverity(severity).setCode(type).setDiagnostics(diagnostics);
+		return outcome;
+	}
+
+	private void send(HttpExchange exchange, int status, String mediaType, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", mediaType + "; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards files to a running {@link ValidationDaemon}. Requests rejected by the daemon with <code>503</code> are
+ * retried after the returned <code>Retry-After</code> delay.
+ */
+public class ValidationDaemonClient
+{
+	private static final Logger logger = LoggerFactory.getLogger(ValidationDaemonClient.class);
+
+	private static final int MAX_RETRIES = 10;
+	private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+	public static final class Response
+	{
+		private final int status;
+		private final String body;
+
+		public Response(int status, String body)
+		{
+			this.status = status;
+			this.body = body;
+		}
+
+		public int getStatus()
+		{
+			return status;
+		}
+
+		public String getBody()
+		{
+			return body;
+		}
+	}
+
+	private final URI validateUri;
+	private final HttpClient client;
+
+	/**
+	 * @param daemonUrl
+	 *            not <code>null</code>, base url of the daemon, e.g. <code>http://127.0.0.1:8099</code>
+	 * @param connectTimeout
+	 *            not <code>null</code>
+	 */
+	public ValidationDaemonClient(String daemonUrl, Duration connectTimeout)
+	{
+		Objects.requireNonNull(daemonUrl, "daemonUrl");
+		Objects.requireNonNull(connectTimeout, "connectTimeout");
+
+		validateUri = URI.create((daemonUrl.endsWith("/") ? daemonUrl.substring(0, daemonUrl.length() - 1) : daemonUrl)
+				+ ValidationDaemon.PATH_VALIDATE);
+		client = HttpClient.newBuilder().connectTimeout(connectTimeout).build();
+	}
+
+	/**
+	 * @param file
+	 *            not <code>null</code>, filename ending with <code>.json</code>, <code>.xml</code> or
+	 *            <code>.ndjson</code>
+	 * @return response of the daemon, after retries if the daemon rejected the request
+	 * @throws IOException
+	 *             if the file can not be read or the daemon is not reachable
+	 * @throws InterruptedException
+	 * @throws IllegalArgumentException
+	 *             if the file type is not supported
+	 */
+	public Response validate(Path file) throws IOException, InterruptedException
+	{
+		Objects.requireNonNull(file, "file");
+
+		HttpRequest request = HttpRequest.newBuilder(validateUri).header("Content-Type", getMediaType(file))
+				.POST(HttpRequest.BodyPublishers.ofFile(file)).build();
+
+		for (int retry = 0;; retry++)
+		{
+			HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+			if (response.statusCode() != 503 || retry >= MAX_RETRIES)
+				return new Response(response.statusCode(), response.body());
+
+			Duration retryAfter = response.headers().firstValueAsLong("Retry-After").stream()
+					.mapToObj(Duration::ofSeconds).findFirst().orElse(DEFAULT_RETRY_AFTER);
+
+			logger.debug("Daemon busy, retrying {} in {} ms", file.toString(), retryAfter.toMillis());
+			Thread.sleep(retryAfter.toMillis());
+		}
+	}
+
+	private String getMediaType(Path file)
+	{
+		String filename = file.getFileName().toString();
+
+		if (filename.endsWith(".ndjson"))
+			return ValidationDaemon.MEDIA_TYPE_FHIR_NDJSON;
+		else if (filename.endsWith(".json"))
+			return ValidationDaemon.MEDIA_TYPE_FHIR_JSON;
+		else if (filename.endsWith(".xml"))
+			return ValidationDaemon.MEDIA_TYPE_FHIR_XML;
+		else
+			throw new IllegalArgumentException(
+					"File " + filename + " not supported, filename needs to end with .json, .xml or .ndjson");
+	}
+}
@@ -1,13 +1,18 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
 import java.util.stream.Stream;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -28,6 +33,7 @@ import org.springframework.core.env.EnumerablePropertySource;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -63,6 +69,38 @@ public class ValidationMain implements InitializingBean
 		}
 	}
 
+	/**
+	 * Properties needed before the validation is initialized
+	 */
+	@Configuration
+	@PropertySource(ignoreResourceNotFound = true, value = "file:application.properties")
+	public static class ModeConfig
+	{
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon:false}")
+		private boolean daemon;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon.url:#{null}}")
+		private String daemonUrl;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon.url.connectTimeout:5000}")
+		private long daemonConnectTimeout;
+
+		public boolean isDaemon()
+		{
+			return daemon;
+		}
+
+		public boolean isClient()
+		{
+			return daemonUrl != null && !daemonUrl.isBlank();
+		}
+
+		public ValidationDaemonClient createClient()
+		{
+			return new ValidationDaemonClient(daemonUrl, Duration.ofMillis(daemonConnectTimeout));
+		}
+	}
+
 	@Configuration
 	@PropertySource(ignoreResourceNotFound = true, value = "file:application.properties")
 	public static class TestConfig
@@ -73,6 +111,30 @@ public class ValidationMain implements InitializingBean
 		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.output.pretty:true}")
 		private boolean outputPretty;
 
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.batch:false}")
+		private boolean batch;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.batch.threads:0}")
+		private int batchThreads;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.batch.summary:#{null}}")
+		private String batchSummary;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon:false}")
+		private boolean daemon;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon.host:127.0.0.1}")
+		private String daemonHost;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon.port:8099}")
+		private int daemonPort;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon.maxConcurrentRequests:0}")
+		private int daemonMaxConcurrentRequests;
+
+		@Value("${de.netzwerk.universitaetsmedizin.rdp.validation.daemon.maxQueuedRequests:32}")
+		private int daemonMaxQueuedRequests;
+
 		@Autowired
 		private ValidationPackageManager packageManager;
 
@@ -113,7 +175,13 @@ public class ValidationMain implements InitializingBean
 		public ValidationMain validatorMain()
 		{
 			return new ValidationMain(environment, getFhirContext(), packageManager, validationPackageIdentifiers,
-					output, outputPretty, valueSetExpansionClient);
+					output, outputPretty, valueSetExpansionClient, getObjectMapper(), batch,
+					batchThreads > 0 ? batchThreads : Runtime.getRuntime().availableProcessors(),
+					batchSummary == null || batchSummary.isBlank() ? null : Paths.get(batchSummary), daemon,
+					new InetSocketAddress(daemonHost, daemonPort),
+					daemonMaxConcurrentRequests > 0 ? daemonMaxConcurrentRequests
+							: Runtime.getRuntime().availableProcessors(),
+					daemonMaxQueuedRequests);
 		}
 	}
 
@@ -125,9 +193,30 @@ public class ValidationMain implements InitializingBean
 
 	public static void main(String[] args)
 	{
-		if (args.length == 0)
+		try (AnnotationConfigApplicationContext modeContext = new AnnotationConfigApplicationContext(ModeConfig.class))
 		{
-			logger.warn("No files to validated specified");
+			ModeConfig mode = modeContext.getBean(ModeConfig.class);
+
+			if (mode.isClient())
+			{
+				if (args.length == 0)
+				{
+					logger.warn("No files to validated specified");
+					System.exit(1);
+				}
+
+				forwardToDaemon(mode.createClient(), args);
+				return;
+			}
+			else if (args.length == 0 && !mode.isDaemon())
+			{
+				logger.warn("No files to validated specified");
+				System.exit(1);
+			}
+		}
+		catch (Exception e)
+		{
+			logger.error("", e);
 			System.exit(1);
 		}
 
@@ -140,7 +229,14 @@ public class ValidationMain implements InitializingBean
 			if (TerminologyServerConnectionTestStatus.OK.equals(status))
 			{
 				ValidationMain main = springContext.getBean(ValidationMain.class);
-				main.validate(args);
+
+				if (main.daemon)
+					main.serve();
+				else
+					main.validate(args);
+
+				springContext.getBeansOfType(InMemoryCache.class)
+						.forEach((name, cache) -> logger.debug("Cache {}: {}", name, cache.getStatistics()));
 			}
 		}
 		catch (Exception e)
@@ -150,6 +246,30 @@ public class ValidationMain implements InitializingBean
 		}
 	}
 
+	private static void forwardToDaemon(ValidationDaemonClient client, String[] files)
+			throws IOException, InterruptedException
+	{
+		for (Path file : BatchValidation.resolveInputs(files))
+		{
+			logger.info("Forwarding {} to validation daemon", file.toString());
+
+			try
+			{
+				ValidationDaemonClient.Response response = client.validate(file);
+
+				if (response.getStatus() == 200)
+					System.out.println(response.getBody());
+				else
+					logger.warn("Unable to validate {}, daemon returned status {}: {}", file.toString(),
+							response.getStatus(), response.getBody());
+			}
+			catch (IllegalArgumentException e)
+			{
+				logger.warn(e.getMessage());
+			}
+		}
+	}
+
 	private final ConfigurableEnvironment environment;
 	private final FhirContext fhirContext;
 	private final ValidationPackageManager packageManager;
@@ -157,10 +277,61 @@ public class ValidationMain implements InitializingBean
 	private final Output output;
 	private final boolean outputPretty;
 	private final ValueSetExpansionClient valueSetExpansionClient;
+	private final ObjectMapper objectMapper;
+	private final boolean batch;
+	private final int batchThreads;
+	private final Path batchSummary;
+	private final boolean daemon;
+	private final InetSocketAddress daemonAddress;
+	private final int daemonMaxConcurrentRequests;
+	private final int daemonMaxQueuedRequests;
 
 	public ValidationMain(ConfigurableEnvironment environment, FhirContext fhirContext,
 			ValidationPackageManager packageManager, List<ValidationPackageIdentifier> validationPackageIdentifiers,
 			Output output, boolean outputPretty, ValueSetExpansionClient valueSetExpansionClient)
+	{
+		this(environment, fhirContext, packageManager, validationPackageIdentifiers, output, outputPretty,
+				valueSetExpansionClient, null, false, 1, null, false, null, 1, 0);
+	}
+
+	/**
+	 * @param environment
+	 *            not <code>null</code>
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param packageManager
+	 *            not <code>null</code>
+	 * @param validationPackageIdentifiers
+	 *            may be <code>null</code>
+	 * @param output
+	 *            not <code>null</code>
+	 * @param outputPretty
+	 * @param valueSetExpansionClient
+	 *            not <code>null</code>
+	 * @param objectMapper
+	 *            not <code>null</code> if <b>batch</b> is <code>true</code>
+	 * @param batch
+	 *            <code>true</code> to validate files, directories, glob patterns and NDJSON files in parallel and write
+	 *            a JSON summary instead of the validation results, see {@link BatchValidation}
+	 * @param batchThreads
+	 *            &gt; 0
+	 * @param batchSummary
+	 *            file for the batch summary, <code>null</code> to write the summary to stdout
+	 * @param daemon
+	 *            <code>true</code> to serve validation requests on the given address instead of validating files, see
+	 *            {@link ValidationDaemon}
+	 * @param daemonAddress
+	 *            not <code>null</code> if <b>daemon</b> is <code>true</code>
+	 * @param daemonMaxConcurrentRequests
+	 *            &gt; 0
+	 * @param daemonMaxQueuedRequests
+	 *            &gt;= 0
+	 */
+	public ValidationMain(ConfigurableEnvironment environment, FhirContext fhirContext,
+			ValidationPackageManager packageManager, List<ValidationPackageIdentifier> validationPackageIdentifiers,
+			Output output, boolean outputPretty, ValueSetExpansionClient valueSetExpansionClient,
+			ObjectMapper objectMapper, boolean batch, int batchThreads, Path batchSummary, boolean daemon,
+			InetSocketAddress daemonAddress, int daemonMaxConcurrentRequests, int daemonMaxQueuedRequests)
 	{
 		this.environment = environment;
 		this.fhirContext = fhirContext;
@@ -170,6 +341,14 @@ public class ValidationMain implements InitializingBean
 		this.output = output;
 		this.outputPretty = outputPretty;
 		this.valueSetExpansionClient = valueSetExpansionClient;
+		this.objectMapper = objectMapper;
+		this.batch = batch;
+		this.batchThreads = batchThreads;
+		this.batchSummary = batchSummary;
+		this.daemon = daemon;
+		this.daemonAddress = daemonAddress;
+		this.daemonMaxConcurrentRequests = daemonMaxConcurrentRequests;
+		this.daemonMaxQueuedRequests = daemonMaxQueuedRequests;
 	}
 
 	@Override
@@ -180,6 +359,24 @@ public class ValidationMain implements InitializingBean
 		Objects.requireNonNull(packageManager, "packageManager");
 		Objects.requireNonNull(output, "output");
 		Objects.requireNonNull(valueSetExpansionClient, "valueSetExpansionClient");
+
+		if (batch)
+		{
+			Objects.requireNonNull(objectMapper, "objectMapper");
+
+			if (batchThreads <= 0)
+				throw new IllegalArgumentException("batchThreads <= 0");
+		}
+
+		if (daemon)
+		{
+			Objects.requireNonNull(daemonAddress, "daemonAddress");
+
+			if (daemonMaxConcurrentRequests <= 0)
+				throw new IllegalArgumentException("daemonMaxConcurrentRequests <= 0");
+			if (daemonMaxQueuedRequests < 0)
+				throw new IllegalArgumentException("daemonMaxQueuedRequests < 0");
+		}
 	}
 
 	public void validate(String[] files)
@@ -189,6 +386,21 @@ public class ValidationMain implements InitializingBean
 
 		BundleValidator validator = packageManager.createBundleValidator(validationPackageIdentifiers);
 
+		try
+		{
+			if (batch)
+				validateBatch(validator, files);
+			else
+				validateFiles(validator, files);
+		}
+		finally
+		{
+			CacheManifest.flushAll();
+		}
+	}
+
+	private void validateFiles(BundleValidator validator, String[] files)
+	{
 		Arrays.stream(files).map(this::read).filter(r -> r != null).forEach(r ->
 		{
 			logger.info("Validating {} from {}", r.getResource().getResourceType().name(), r.getFilename());
@@ -206,6 +418,62 @@ public class ValidationMain implements InitializingBean
 		});
 	}
 
+	/**
+	 * Serves validation requests until the JVM is stopped.
+	 *
+	 * @throws IOException
+	 *             if the daemon address can not be bound
+	 * @throws InterruptedException
+	 */
+	public void serve() throws IOException, InterruptedException
+	{
+		logger.info("Using validation packages {}", validationPackageIdentifiers);
+		getAllNumProperties().forEach(c -> logger.debug("Config: {}", c));
+
+		BundleValidator validator = packageManager.createBundleValidator(validationPackageIdentifiers);
+
+		ValidationDaemon validationDaemon = new ValidationDaemon(fhirContext, validator, daemonAddress,
+				daemonMaxConcurrentRequests, daemonMaxQueuedRequests);
+		validationDaemon.start();
+
+		CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(() ->
+		{
+			validationDaemon.close();
+			CacheManifest.flushAll();
+			stopped.countDown();
+		}, "validation-daemon-shutdown"));
+
+		stopped.await();
+	}
+
+	private void validateBatch(BundleValidator validator, String[] files)
+	{
+		try
+		{
+			BatchValidationSummary summary = new BatchValidation(fhirContext, validator, batchThreads)
+					.validate(BatchValidation.resolveInputs(files));
+
+			ObjectWriter writer = outputPretty ? objectMapper.writerWithDefaultPrettyPrinter() : objectMapper.writer();
+			if (batchSummary == null)
+				System.out.println(writer.writeValueAsString(summary));
+			else
+			{
+				writer.writeValue(batchSummary.toFile(), summary);
+				logger.info("Batch validation summary written to {}", batchSummary.toString());
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
 	private Stream<String> getAllNumProperties()
 	{
 		return environment.getPropertySources().stream().filter(p -> p instanceof EnumerablePropertySource<?>)
@@ -7,18 +7,25 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.function.Consumer;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.MetadataResource;
 import org.hl7.fhir.r4.model.NamingSystem;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r4.model.StructureDefinition.StructureDefinitionKind;
@@ -30,14 +37,30 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.annotation.ResourceDef;
 
+/**
+ * Validation package with entries from the package <code>.tgz</code> archive. After
+ * {@link #parseResources(FhirContext)} only the entries <code>package/package.json</code> and
+ * <code>package/.index.json</code> are kept as {@link #getEntries()}, the content of indexed resources is released when
+ * the resource is parsed, all other entries like examples and unsupported resource types are released immediately.
+ * Parsed resources are stored without narrative, canonical urls, systems and codes are deduplicated.
+ */
 public class ValidationPackage
 {
 	private static final Logger logger = LoggerFactory.getLogger(ValidationPackage.class);
 
-	private static final String PACKAGE_JSON_FILENAME = "package/package.json";
+	private static final String PACKAGE_FOLDER = "package/";
+	private static final String PACKAGE_JSON_FILENAME = PACKAGE_FOLDER + "package.json";
+	private static final String PACKAGE_INDEX_FILENAME = PACKAGE_FOLDER + ".index.json";
+
+	private static final Set<String> SUPPORTED_RESOURCE_TYPES = Set.of("CodeSystem", "NamingSystem",
+			"StructureDefinition", "ValueSet");
+	private static final Pattern INVALID_HTML_PATTERN = Pattern.compile("<h2>[\\s\\w\\[\\]]*</tt>");
+	private static final ObjectReader INDEX_READER = new ObjectMapper().readerFor(ValidationPackageIndex.class);
 
 	public static ValidationPackage from(String name, String version, InputStream in) throws IOException
 	{
@@ -59,13 +82,31 @@ public class ValidationPackage
 		}
 	}
 
-	private final String name;
-	private final String version;
-	private final List<ValidationPackageEntry> entries = new ArrayList<>();
+	/**
+	 * Entries and parse state, shared with packages created by
+	 * {@link ValidationPackage#ValidationPackage(ValidationPackage)}.
+	 */
+	private static final class State
+	{
+		volatile List<ValidationPackageEntry> entries;
+		volatile Map<String, ValidationPackageEntry> entriesByFileName;
 
-	private Map<String, ValidationPackageEntry> entriesByFileName;
+		FhirContext context;
+		volatile List<ValidationPackageIndexFile> index;
+		Map<String, List<ValidationPackageIndexFile>> filesByUrl;
+		final Map<String, byte[]> unparsedContentByFileName = new ConcurrentHashMap<>();
+		final Map<String, Optional<MetadataResource>> resourcesByFileName = new ConcurrentHashMap<>();
+		volatile ValidationSupportResources resources;
+
+		State(List<ValidationPackageEntry> entries)
+		{
+			this.entries = entries;
+		}
+	}
 
-	private ValidationSupportResources resources;
+	private final String name;
+	private final String version;
+	private final State state;
 
 	/**
 	 * @param name
@@ -84,9 +125,22 @@ public class ValidationPackage
 
 		this.name = name;
 		this.version = version;
+		this.state = new State(entries == null ? List.of() : List.copyOf(entries));
+	}
+
+	/**
+	 * Creates a package sharing entries, index and parsed resources with the given package.
+	 *
+	 * @param validationPackage
+	 *            not <code>null</code>
+	 */
+	protected ValidationPackage(ValidationPackage validationPackage)
+	{
+		Objects.requireNonNull(validationPackage, "validationPackage");
 
-		if (entries != null)
-			this.entries.addAll(entries);
+		this.name = validationPackage.name;
+		this.version = validationPackage.version;
+		this.state = validationPackage.state;
 	}
 
 	@JsonProperty("name")
@@ -107,17 +161,22 @@ public class ValidationPackage
 		return new ValidationPackageIdentifier(name, version);
 	}
 
+	/**
+	 * @return all entries, only <code>package/package.json</code> and <code>package/.index.json</code> after
+	 *         {@link #parseResources(FhirContext)}
+	 */
 	@JsonProperty("entries")
 	public List<ValidationPackageEntry> getEntries()
 	{
-		return Collections.unmodifiableList(entries);
+		return state.entries;
 	}
 
 	@JsonIgnore
 	public Map<String, ValidationPackageEntry> getEntriesByFileName()
 	{
+		Map<String, ValidationPackageEntry> entriesByFileName = state.entriesByFileName;
 		if (entriesByFileName == null)
-			entriesByFileName = getEntries().stream().collect(Collectors
+			state.entriesByFileName = entriesByFileName = getEntries().stream().collect(Collectors
 					.toUnmodifiableMap(ValidationPackageEntry::getFileName, Function.identity(), (e0, e1) -> e1));
 
 		return entriesByFileName;
@@ -130,75 +189,287 @@ public class ValidationPackage
 		return mapper.readValue(packageJson.getContent(), ValidationPackageDescriptor.class);
 	}
 
+	/**
+	 * Reads the package index from the <code>package/.index.json</code> file, files not listed in the index are indexed
+	 * by reading their top level JSON properties. Resources are parsed on first access.
+	 *
+	 * @param context
+	 *            not <code>null</code>
+	 * @see #getResource(ValidationPackageIndexFile)
+	 */
 	public void parseResources(FhirContext context)
 	{
-		if (resources == null)
+		Objects.requireNonNull(context, "context");
+
+		synchronized (state)
 		{
-			List<CodeSystem> codeSystems = new ArrayList<>();
-			List<NamingSystem> namingSystems = new ArrayList<>();
-			List<StructureDefinition> structureDefinitions = new ArrayList<>();
-			List<ValueSet> valueSets = new ArrayList<>();
+			if (state.index == null)
+			{
+				state.context = context;
+
+				List<ValidationPackageIndexFile> files = readIndex().filter(this::isSupportedResource)
+						.collect(Collectors.toList());
+
+				state.filesByUrl = files.stream().filter(f -> f.getUrl() != null)
+						.flatMap(f -> f.getVersion() == null ? Stream.of(Map.entry(f.getUrl(), f))
+								: Stream.of(Map.entry(f.getUrl(), f), Map.entry(f.getUrlAndVersion(), f)))
+						.collect(Collectors.groupingBy(Entry::getKey,
+								Collectors.mapping(Entry::getValue, Collectors.toUnmodifiableList())));
 
-			getEntries()
-					.forEach(doParseResources(context, codeSystems, namingSystems, structureDefinitions, valueSets));
+				releaseEntries(files);
 
-			resources = new ValidationSupportResources(codeSystems, namingSystems, structureDefinitions, valueSets);
+				state.index = Collections.unmodifiableList(files);
+			}
 		}
 	}
 
-	private Consumer<ValidationPackageEntry> doParseResources(FhirContext context, List<CodeSystem> codeSystems,
-			List<NamingSystem> namingSystems, List<StructureDefinition> structureDefinitions, List<ValueSet> valueSets)
+	private void releaseEntries(List<ValidationPackageIndexFile> files)
 	{
-		return entry ->
+		Set<String> indexedFileNames = files.stream().map(ValidationPackageIndexFile::getFileName)
+				.collect(Collectors.toSet());
+
+		getEntries().stream().filter(e -> indexedFileNames.contains(e.getFileName()))
+				.forEach(e -> state.unparsedContentByFileName.put(e.getFileName(), e.getContent()));
+
+		List<ValidationPackageEntry> retained = getEntries().stream().filter(
+				e -> PACKAGE_JSON_FILENAME.equals(e.getFileName()) || PACKAGE_INDEX_FILENAME.equals(e.getFileName()))
+				.collect(Collectors.toUnmodifiableList());
+
+		logger.debug("Package {}|{}: {} resource entries indexed, {} entries released", name, version,
+				indexedFileNames.size(), getEntries().size() - retained.size() - indexedFileNames.size());
+
+		state.entries = retained;
+		state.entriesByFileName = null;
+	}
+
+	private Stream<ValidationPackageIndexFile> readIndex()
+	{
+		Map<String, ValidationPackageIndexFile> indexFilesByFileName = new HashMap<>();
+
+		ValidationPackageEntry indexJson = getEntriesByFileName().get(PACKAGE_INDEX_FILENAME);
+		if (indexJson != null)
 		{
-			if ("package/package.json".equals(entry.getFileName())
-					|| (entry.getFileName() != null && (entry.getFileName().startsWith("package/example")
-							|| entry.getFileName().endsWith(".index.json") || !entry.getFileName().endsWith(".json"))))
+			try
+			{
+				INDEX_READER.<ValidationPackageIndex> readValue(indexJson.getContent()).getFiles().stream()
+						.filter(f -> f.getFileName() != null).map(f -> f.withFolder(PACKAGE_FOLDER))
+						.forEach(f -> indexFilesByFileName.put(f.getFileName(), f));
+			}
+			catch (IOException e)
 			{
-				logger.debug("Ignoring {}", entry.getFileName());
-				return;
+				logger.warn("Unable to read {} of package {}|{}, {}: {}", PACKAGE_INDEX_FILENAME, name, version,
+						e.getClass().getName(), e.getMessage());
 			}
+		}
 
-			logger.debug("Reading {}", entry.getFileName());
+		return getEntries().stream().filter(this::isResourceEntry).map(entry ->
+		{
+			ValidationPackageIndexFile indexFile = indexFilesByFileName.get(entry.getFileName());
+			return indexFile != null ? indexFile : readIndexFile(entry);
+		}).filter(Objects::nonNull);
+	}
 
-			try
+	private boolean isResourceEntry(ValidationPackageEntry entry)
+	{
+		if (PACKAGE_JSON_FILENAME.equals(entry.getFileName())
+				|| (entry.getFileName() != null && (entry.getFileName().startsWith("package/example")
+						|| entry.getFileName().endsWith(".index.json") || !entry.getFileName().endsWith(".json"))))
+		{
+			logger.debug("Ignoring {}", entry.getFileName());
+			return false;
+		}
+		else
+			return true;
+	}
+
+	private ValidationPackageIndexFile readIndexFile(ValidationPackageEntry entry)
+	{
+		try
+		{
+			logger.debug("Indexing {}, not listed in {}", entry.getFileName(), PACKAGE_INDEX_FILENAME);
+			return ValidationPackageIndexFile.from(entry.getFileName(), entry.getContent());
+		}
+		catch (Exception e)
+		{
+			logger.warn("Ignoring resource with error while indexing, {}: {}", e.getClass().getName(), e.getMessage());
+			return null;
+		}
+	}
+
+	private boolean isSupportedResource(ValidationPackageIndexFile file)
+	{
+		if (SUPPORTED_RESOURCE_TYPES.contains(file.getResourceType()))
+		{
+			if ("StructureDefinition".equals(file.getResourceType())
+					&& StructureDefinitionKind.LOGICAL.toCode().equals(file.getKind()))
 			{
-				String resourceString = new String(entry.getContent(), StandardCharsets.UTF_8);
-				// fix profiles because their text contains invalid html
-				// Issue: https://github.com/medizininformatik-initiative/kerndatensatzmodul-mikrobiologie/issues/18
-				resourceString = resourceString.replaceAll("<h2>[\\s\\w\\[\\]]*</tt>", "");
-				IBaseResource resource = context.newJsonParser().parseResource(resourceString);
-
-				if (resource instanceof CodeSystem)
-					codeSystems.add((CodeSystem) resource);
-				else if (resource instanceof NamingSystem)
-					namingSystems.add((NamingSystem) resource);
-				else if (resource instanceof StructureDefinition)
-				{
-					if (!StructureDefinitionKind.LOGICAL.equals(((StructureDefinition) resource).getKind()))
-						structureDefinitions.add((StructureDefinition) resource);
-					else
-						logger.debug("Ignoring StructureDefinition with kind = logical");
-				}
-				else if (resource instanceof ValueSet)
-					valueSets.add((ValueSet) resource);
-				else
-					logger.debug("Ignoring resource of type {}", resource.getClass().getName());
+				logger.debug("Ignoring StructureDefinition with kind = logical");
+				return false;
 			}
-			catch (Exception e)
+			else
+				return true;
+		}
+		else
+		{
+			logger.debug("Ignoring resource of type {}", file.getResourceType());
+			return false;
+		}
+	}
+
+	/**
+	 * @return unmodifiable list of indexed {@link CodeSystem}, {@link NamingSystem}, {@link StructureDefinition} and
+	 *         {@link ValueSet} files
+	 * @throws IllegalStateException
+	 *             if {@link #parseResources(FhirContext)} was not called
+	 */
+	@JsonIgnore
+	public List<ValidationPackageIndexFile> getIndex()
+	{
+		List<ValidationPackageIndexFile> index = state.index;
+		if (index == null)
+			throw new IllegalStateException("Resources not parsed");
+
+		return index;
+	}
+
+	/**
+	 * Parses the resource for the given index file on first access.
+	 *
+	 * @param file
+	 *            not <code>null</code>, from {@link #getIndex()}
+	 * @return parsed resource, <code>null</code> if the resource could not be parsed
+	 * @throws IllegalStateException
+	 *             if {@link #parseResources(FhirContext)} was not called
+	 */
+	public MetadataResource getResource(ValidationPackageIndexFile file)
+	{
+		Objects.requireNonNull(file, "file");
+
+		if (state.index == null)
+			throw new IllegalStateException("Resources not parsed");
+
+		return state.resourcesByFileName.computeIfAbsent(file.getFileName(), this::parseResource).orElse(null);
+	}
+
+	private Optional<MetadataResource> parseResource(String fileName)
+	{
+		logger.debug("Reading {}", fileName);
+
+		// content no longer needed after parsing
+		byte[] content = state.unparsedContentByFileName.remove(fileName);
+		if (content == null)
+		{
+			logger.warn("Ignoring resource {}, content not found", fileName);
+			return Optional.empty();
+		}
+
+		try
+		{
+			String resourceString = new String(content, StandardCharsets.UTF_8);
+
+			// fix profiles because their text contains invalid html, only resources with narrative affected
+			// Issue: https://github.com/medizininformatik-initiative/kerndatensatzmodul-mikrobiologie/issues/18
+			if (resourceString.contains("\"div\""))
+				resourceString = INVALID_HTML_PATTERN.matcher(resourceString).replaceAll("");
+
+			IBaseResource resource = state.context.newJsonParser().parseResource(resourceString);
+
+			if (resource instanceof CodeSystem || resource instanceof NamingSystem || resource instanceof ValueSet)
+				return Optional.of(compact((MetadataResource) resource));
+			else if (resource instanceof StructureDefinition)
 			{
-				logger.warn("Ignoring resource with error while parsing, {}: {}", e.getClass().getName(),
-						e.getMessage());
+				if (!StructureDefinitionKind.LOGICAL.equals(((StructureDefinition) resource).getKind()))
+					return Optional.of(compact((StructureDefinition) resource));
+				else
+					logger.debug("Ignoring StructureDefinition with kind = logical");
 			}
-		};
+			else
+				logger.debug("Ignoring resource of type {}", resource.getClass().getName());
+		}
+		catch (Exception e)
+		{
+			logger.warn("Ignoring resource with error while parsing, {}: {}", e.getClass().getName(), e.getMessage());
+		}
+
+		return Optional.empty();
 	}
 
+	/**
+	 * Removes the narrative, not used for validation, and deduplicates canonical urls, systems and codes.
+	 */
+	private <R extends MetadataResource> R compact(R resource)
+	{
+		resource.setText(null);
+		return StringDeduplicator.deduplicate(state.context, resource);
+	}
+
+	/**
+	 * Parses all resources of the given type on first access.
+	 *
+	 * @param <R>
+	 * @param type
+	 *            not <code>null</code>
+	 * @return parsed resources of the given type
+	 */
+	public <R extends MetadataResource> List<R> getResources(Class<R> type)
+	{
+		String resourceType = type.getAnnotation(ResourceDef.class).name();
+
+		return getIndex().stream().filter(f -> resourceType.equals(f.getResourceType())).map(this::getResource)
+				.filter(type::isInstance).map(type::cast).collect(Collectors.toList());
+	}
+
+	/**
+	 * Parses the resources of the given type matching the given <code>url</code> or <code>url|version</code> on first
+	 * access.
+	 *
+	 * @param <R>
+	 * @param type
+	 *            not <code>null</code>
+	 * @param urlOrUrlAndVersion
+	 *            may be <code>null</code>
+	 * @return parsed resources of the given type with matching canonical url
+	 */
+	public <R extends MetadataResource> List<R> getResources(Class<R> type, String urlOrUrlAndVersion)
+	{
+		getIndex();
+
+		String resourceType = type.getAnnotation(ResourceDef.class).name();
+
+		return state.filesByUrl.getOrDefault(urlOrUrlAndVersion, Collections.emptyList()).stream()
+				.filter(f -> resourceType.equals(f.getResourceType())).map(this::getResource).filter(type::isInstance)
+				.map(type::cast).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return number of resources parsed
+	 */
+	@JsonIgnore
+	public int getParsedResourceCount()
+	{
+		return (int) state.resourcesByFileName.values().stream().filter(Optional::isPresent).count();
+	}
+
+	/**
+	 * Parses all indexed resources on first access.
+	 *
+	 * @return all {@link CodeSystem}, {@link NamingSystem}, {@link StructureDefinition} and {@link ValueSet} resources
+	 *         of this package
+	 * @throws IllegalStateException
+	 *             if {@link #parseResources(FhirContext)} was not called
+	 */
 	@JsonIgnore
 	public ValidationSupportResources getValidationSupportResources()
 	{
-		if (resources == null)
+		if (state.index == null)
 			throw new IllegalStateException("Resources not parsed");
 
+		ValidationSupportResources resources = state.resources;
+		if (resources == null)
+			state.resources = resources = new ValidationSupportResources(getResources(CodeSystem.class),
+					getResources(NamingSystem.class), getResources(StructureDefinition.class),
+					getResources(ValueSet.class));
+
 		return resources;
 	}
 }
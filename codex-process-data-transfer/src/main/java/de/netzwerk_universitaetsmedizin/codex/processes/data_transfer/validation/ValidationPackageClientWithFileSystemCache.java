@@ -45,7 +45,14 @@ public class ValidationPackageClientWithFileSystemCache extends AbstractFileSyst
 			FunctionWithIoException<InputStream, InputStream> inCompressorFactory, ObjectMapper mapper,
 			ValidationPackageClient delegate)
 	{
-		super(cacheFolder, fileNameSuffix, outCompressorFactory, inCompressorFactory);
+		this(cacheFolder, new CacheCodec("custom", fileNameSuffix, outCompressorFactory, inCompressorFactory),
+				new InMemoryCache(), mapper, delegate);
+	}
+
+	public ValidationPackageClientWithFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache,
+			ObjectMapper mapper, ValidationPackageClient delegate)
+	{
+		super(cacheFolder, codec, memoryCache);
 
 		this.mapper = mapper;
 		this.delegate = delegate;
@@ -60,19 +67,25 @@ public class ValidationPackageClientWithFileSystemCache extends AbstractFileSyst
 		Objects.requireNonNull(delegate, "delegate");
 	}
 
+	/**
+	 * Validation packages are parsed and modified after download, they are therefore not kept in the in-memory tier.
+	 */
+	@Override
+	protected boolean isMemoryTierEnabled()
+	{
+		return false;
+	}
+
 	@Override
 	public ValidationPackage download(ValidationPackageIdentifier identifier)
 			throws IOException, WebApplicationException
 	{
 		Objects.requireNonNull(identifier, "identifier");
 
-		ValidationPackage read = readFromCache(identifier.toString(), "validation package",
-				r -> mapper.readValue(r, ValidationPackage.class));
-
-		if (read != null)
-			return read;
-		else
-			return writeToCache(delegate.download(identifier), p -> p.getIdentifier().toString(),
-					p -> "validation package", mapper::writeValue);
+		return readFromCacheOrLoad(identifier.toString(),
+				() -> readFromCache(identifier.toString(), "validation package",
+						r -> mapper.readValue(r, ValidationPackage.class)),
+				() -> writeToCache(delegate.download(identifier), p -> p.getIdentifier().toString(),
+						p -> "validation package", mapper::writeValue));
 	}
 }
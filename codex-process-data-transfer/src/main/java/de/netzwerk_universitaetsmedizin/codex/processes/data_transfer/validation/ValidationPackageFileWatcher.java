@@ -0,0 +1,141 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Periodically checks a file with validation package identifiers (<code>name|version</code>, one per line, lines
+ * starting with <code>#</code> ignored) and triggers {@link BundleValidatorFactory#reload(java.util.Collection)} if the
+ * file was modified and lists other packages than currently used. Without a file nothing is checked.
+ */
+public class ValidationPackageFileWatcher implements InitializingBean, DisposableBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(ValidationPackageFileWatcher.class);
+
+	/**
+	 * @param file
+	 *            not <code>null</code>
+	 * @return validation package identifiers listed in the given file
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if a line is not a valid <code>name|version</code> identifier
+	 */
+	public static List<ValidationPackageIdentifier> read(Path file) throws IOException
+	{
+		Objects.requireNonNull(file, "file");
+
+		return Files.readAllLines(file).stream().map(String::trim).filter(l -> !l.isEmpty() && !l.startsWith("#"))
+				.map(ValidationPackageIdentifier::fromString).collect(Collectors.toList());
+	}
+
+	private final BundleValidatorFactory bundleValidatorFactory;
+	private final Path file;
+	private final long intervalMillis;
+
+	private ScheduledExecutorService executor;
+	private FileTime lastModified;
+
+	/**
+	 * @param bundleValidatorFactory
+	 *            not <code>null</code>
+	 * @param file
+	 *            may be <code>null</code>, nothing is checked without a file
+	 * @param intervalMillis
+	 *            &gt; 0
+	 */
+	public ValidationPackageFileWatcher(BundleValidatorFactory bundleValidatorFactory, Path file, long intervalMillis)
+	{
+		this.bundleValidatorFactory = bundleValidatorFactory;
+		this.file = file;
+		this.intervalMillis = intervalMillis;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(bundleValidatorFactory, "bundleValidatorFactory");
+
+		if (intervalMillis <= 0)
+			throw new IllegalArgumentException("intervalMillis <= 0");
+
+		if (file == null)
+		{
+			logger.debug("No validation package file configured, not checking for changed validation packages");
+			return;
+		}
+
+		lastModified = lastModified();
+
+		executor = Executors.newSingleThreadScheduledExecutor(r ->
+		{
+			Thread thread = new Thread(r, "validation-package-file-watcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+		logger.info("Checking {} for changed validation packages every {} ms", file.toString(), intervalMillis);
+	}
+
+	@Override
+	public void destroy() throws Exception
+	{
+		if (executor != null)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * @return <code>true</code> if a reload was triggered
+	 */
+	boolean check()
+	{
+		if (file == null)
+			return false;
+
+		try
+		{
+			FileTime modified = lastModified();
+			if (modified == null || modified.equals(lastModified))
+				return false;
+
+			lastModified = modified;
+
+			List<ValidationPackageIdentifier> identifiers = read(file);
+			if (identifiers.isEmpty())
+			{
+				logger.warn("No validation packages listed in {}, not reloading", file.toString());
+				return false;
+			}
+			else if (identifiers.equals(bundleValidatorFactory.getValidationPackageIdentifiers()))
+				return false;
+
+			logger.info("Validation packages in {} changed, reloading {}", file.toString(), identifiers.toString());
+			bundleValidatorFactory.reload(identifiers);
+			return true;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			logger.warn("Unable to read validation packages from {}: {} - {}", file.toString(), e.getClass().getName(),
+					e.getMessage());
+			return false;
+		}
+	}
+
+	private FileTime lastModified() throws IOException
+	{
+		return Files.exists(file) ? Files.getLastModifiedTime(file) : null;
+	}
+}
@@ -0,0 +1,43 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Content of the <code>.index.json</code> file included in FHIR packages.
+ *
+ * @see <a href="https://hl7.org/fhir/packages.html#2.1.10.4">FHIR NPM Package Spec - .index.json</a>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ValidationPackageIndex
+{
+	private final Integer indexVersion;
+	private final List<ValidationPackageIndexFile> files = new ArrayList<>();
+
+	@JsonCreator
+	public ValidationPackageIndex(@JsonProperty("index-version") Integer indexVersion,
+			@JsonProperty("files") List<ValidationPackageIndexFile> files)
+	{
+		this.indexVersion = indexVersion;
+
+		if (files != null)
+			this.files.addAll(files);
+	}
+
+	@JsonProperty("index-version")
+	public Integer getIndexVersion()
+	{
+		return indexVersion;
+	}
+
+	@JsonProperty("files")
+	public List<ValidationPackageIndexFile> getFiles()
+	{
+		return Collections.unmodifiableList(files);
+	}
+}
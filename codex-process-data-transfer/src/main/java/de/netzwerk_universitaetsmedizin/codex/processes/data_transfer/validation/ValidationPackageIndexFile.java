@@ -0,0 +1,163 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ValidationPackageIndexFile
+{
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * Reads the top level <code>resourceType</code>, <code>id</code>, <code>url</code>, <code>version</code>,
+	 * <code>kind</code> and <code>type</code> properties of the given FHIR JSON resource without parsing the whole
+	 * resource. Used for packages without a <code>.index.json</code> file or for files not listed in the index.
+	 *
+	 * @param fileName
+	 *            not <code>null</code>
+	 * @param content
+	 *            not <code>null</code>
+	 * @return {@link ValidationPackageIndexFile} for the given entry, <code>null</code> if the content is not a JSON
+	 *         object with a <code>resourceType</code> property
+	 * @throws IOException
+	 *             if the content is not valid JSON
+	 */
+	public static ValidationPackageIndexFile from(String fileName, byte[] content) throws IOException
+	{
+		Objects.requireNonNull(fileName, "fileName");
+		Objects.requireNonNull(content, "content");
+
+		try (JsonParser parser = JSON_FACTORY.createParser(content))
+		{
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				return null;
+
+			String resourceType = null, id = null, url = null, version = null, kind = null, type = null;
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+
+				if (value == JsonToken.VALUE_STRING)
+				{
+					switch (field)
+					{
+						case "resourceType":
+							resourceType = parser.getText();
+							break;
+						case "id":
+							id = parser.getText();
+							break;
+						case "url":
+							url = parser.getText();
+							break;
+						case "version":
+							version = parser.getText();
+							break;
+						case "kind":
+							kind = parser.getText();
+							break;
+						case "type":
+							type = parser.getText();
+							break;
+					}
+				}
+				else
+					parser.skipChildren();
+			}
+
+			return resourceType == null ? null
+					: new ValidationPackageIndexFile(fileName, resourceType, id, url, version, kind, type);
+		}
+	}
+
+	private final String fileName;
+	private final String resourceType;
+	private final String id;
+	private final String url;
+	private final String version;
+	private final String kind;
+	private final String type;
+
+	@JsonCreator
+	public ValidationPackageIndexFile(@JsonProperty("filename") String fileName,
+			@JsonProperty("resourceType") String resourceType, @JsonProperty("id") String id,
+			@JsonProperty("url") String url, @JsonProperty("version") String version, @JsonProperty("kind") String kind,
+			@JsonProperty("type") String type)
+	{
+		this.fileName = fileName;
+		this.resourceType = resourceType;
+		this.id = id;
+		this.url = url;
+		this.version = version;
+		this.kind = kind;
+		this.type = type;
+	}
+
+	@JsonProperty("filename")
+	public String getFileName()
+	{
+		return fileName;
+	}
+
+	@JsonProperty("resourceType")
+	public String getResourceType()
+	{
+		return resourceType;
+	}
+
+	@JsonProperty("id")
+	public String getId()
+	{
+		return id;
+	}
+
+	@JsonProperty("url")
+	public String getUrl()
+	{
+		return url;
+	}
+
+	@JsonProperty("version")
+	public String getVersion()
+	{
+		return version;
+	}
+
+	@JsonProperty("kind")
+	public String getKind()
+	{
+		return kind;
+	}
+
+	@JsonProperty("type")
+	public String getType()
+	{
+		return type;
+	}
+
+	@JsonIgnore
+	public String getUrlAndVersion()
+	{
+		return url + "|" + version;
+	}
+
+	/**
+	 * @param folder
+	 *            not <code>null</code>
+	 * @return copy of this {@link ValidationPackageIndexFile} with the file name prefixed by the given folder
+	 */
+	public ValidationPackageIndexFile withFolder(String folder)
+	{
+		return new ValidationPackageIndexFile(folder + fileName, resourceType, id, url, version, kind, type);
+	}
+}
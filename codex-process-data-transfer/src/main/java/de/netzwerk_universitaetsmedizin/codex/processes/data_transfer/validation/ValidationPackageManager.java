@@ -52,8 +52,24 @@ public interface ValidationPackageManager
 	 * @param identifiers
 	 * @return unmodifiable list of {@link ValidationPackageWithDepedencies}
 	 */
+	default List<ValidationPackageWithDepedencies> downloadPackagesWithDependencies(
+			Collection<? extends ValidationPackageIdentifier> identifiers)
+	{
+		return downloadPackagesWithDependencies(identifiers, new ValidationProgress());
+	}
+
+	/**
+	 * Downloads the given FHIR packages and all its dependencies.
+	 *
+	 * @param identifiers
+	 *            not <code>null</code>
+	 * @param progress
+	 *            not <code>null</code>, starts phase {@link ValidationProgress.Phase#DOWNLOADING_PACKAGES} and counts
+	 *            loaded packages
+	 * @return unmodifiable list of {@link ValidationPackageWithDepedencies}
+	 */
 	List<ValidationPackageWithDepedencies> downloadPackagesWithDependencies(
-			Collection<? extends ValidationPackageIdentifier> identifiers);
+			Collection<? extends ValidationPackageIdentifier> identifiers, ValidationProgress progress);
 
 	/**
 	 * Will try to generate snapshots for all {@link StructureDefinition}s of the root package and its dependencies,
@@ -80,8 +96,30 @@ public interface ValidationPackageManager
 	 *            not <code>null</code>
 	 * @return validation support for the validator
 	 */
+	default IValidationSupport expandValueSetsAndGenerateStructureDefinitionSnapshots(
+			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies)
+	{
+		return expandValueSetsAndGenerateStructureDefinitionSnapshots(packagesWithDependencies,
+				new ValidationProgress());
+	}
+
+	/**
+	 * Will try to generate snapshots for all {@link StructureDefinition}s of the root package and its dependencies,
+	 * will try to expand all {@link ValueSet}s with binding strength {@link BindingStrength#EXTENSIBLE},
+	 * {@link BindingStrength#PREFERRED} or {@link BindingStrength#REQUIRED} used by the {@link StructureDefinition} of
+	 * the root package or their dependencies, before returning a {@link IValidationSupport}.
+	 *
+	 * @param packagesWithDependencies
+	 *            not <code>null</code>
+	 * @param progress
+	 *            not <code>null</code>, starts phases {@link ValidationProgress.Phase#EXPANDING_VALUE_SETS} and
+	 *            {@link ValidationProgress.Phase#GENERATING_SNAPSHOTS}, counts expanded ValueSets and generated
+	 *            snapshots
+	 * @return validation support for the validator
+	 */
 	IValidationSupport expandValueSetsAndGenerateStructureDefinitionSnapshots(
-			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies);
+			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies,
+			ValidationProgress progress);
 
 	/**
 	 * @param validationSupport
@@ -113,7 +151,8 @@ public interface ValidationPackageManager
 	 * @param packagesWithDependencies
 	 *            not <code>null</code>
 	 * @return {@link BundleValidator} for the given {@link IValidationSupport} and
-	 *         {@link ValidationPackageWithDepedencies}
+	 *         {@link ValidationPackageWithDepedencies}, thread safe, resolves the supported profiles on creation and
+	 *         should be reused
 	 */
 	BundleValidator createBundleValidator(IValidationSupport validationSupport,
 			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies);
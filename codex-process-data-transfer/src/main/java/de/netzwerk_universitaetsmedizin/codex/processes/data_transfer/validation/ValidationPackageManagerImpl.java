@@ -6,13 +6,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.BiFunction;
-import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
@@ -32,11 +38,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
 import ca.uhn.fhir.context.support.IValidationSupport;
-import dev.dsf.fhir.validation.ResourceValidatorImpl;
 import dev.dsf.fhir.validation.SnapshotGenerator;
 import dev.dsf.fhir.validation.SnapshotGenerator.SnapshotWithValidationMessages;
 import dev.dsf.fhir.validation.ValidationSupportWithCustomResources;
 import dev.dsf.fhir.validation.ValueSetExpander;
+import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.WebApplicationException;
 
 public class ValidationPackageManagerImpl implements InitializingBean, ValidationPackageManager
@@ -49,6 +55,10 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 	public static final EnumSet<BindingStrength> DEFAULT_VALUE_SET_BINDING_STRENGTHS = EnumSet
 			.allOf(BindingStrength.class);
 
+	public static final int DEFAULT_DOWNLOAD_THREADS = 4;
+	public static final int DEFAULT_DOWNLOAD_RETRIES = 3;
+	public static final long DEFAULT_DOWNLOAD_RETRY_DELAY_MILLIS = 1_000L;
+
 	private final ValidationPackageClient validationPackageClient;
 	private final ValueSetExpansionClient valueSetExpansionClient;
 
@@ -61,6 +71,10 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 	private final List<ValidationPackageIdentifier> noDownloadPackages = new ArrayList<>();
 	private final EnumSet<BindingStrength> valueSetBindingStrengths;
 
+	private final int downloadThreads;
+	private final int downloadRetries;
+	private final long downloadRetryDelayMillis;
+
 	public ValidationPackageManagerImpl(ValidationPackageClient validationPackageClient,
 			ValueSetExpansionClient valueSetExpansionClient, ObjectMapper mapper, FhirContext fhirContext,
 			BiFunction<FhirContext, IValidationSupport, SnapshotGenerator> internalSnapshotGeneratorFactory,
@@ -76,6 +90,44 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 			BiFunction<FhirContext, IValidationSupport, ValueSetExpander> internalValueSetExpanderFactory,
 			Collection<ValidationPackageIdentifier> noDownloadPackages,
 			EnumSet<BindingStrength> valueSetBindingStrengths)
+	{
+		this(validationPackageClient, valueSetExpansionClient, mapper, fhirContext, internalSnapshotGeneratorFactory,
+				internalValueSetExpanderFactory, noDownloadPackages, valueSetBindingStrengths, DEFAULT_DOWNLOAD_THREADS,
+				DEFAULT_DOWNLOAD_RETRIES, DEFAULT_DOWNLOAD_RETRY_DELAY_MILLIS);
+	}
+
+	/**
+	 * @param validationPackageClient
+	 *            not <code>null</code>
+	 * @param valueSetExpansionClient
+	 *            not <code>null</code>
+	 * @param mapper
+	 *            not <code>null</code>
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param internalSnapshotGeneratorFactory
+	 *            not <code>null</code>
+	 * @param internalValueSetExpanderFactory
+	 *            not <code>null</code>
+	 * @param noDownloadPackages
+	 *            may be <code>null</code>
+	 * @param valueSetBindingStrengths
+	 *            not <code>null</code>
+	 * @param downloadThreads
+	 *            &gt; 0, number of packages downloaded concurrently
+	 * @param downloadRetries
+	 *            &gt;= 0, number of retries for downloads failing with connection errors or HTTP status codes 429 and
+	 *            5xx
+	 * @param downloadRetryDelayMillis
+	 *            &gt;= 0, delay before the first retry, doubled for every further retry
+	 */
+	public ValidationPackageManagerImpl(ValidationPackageClient validationPackageClient,
+			ValueSetExpansionClient valueSetExpansionClient, ObjectMapper mapper, FhirContext fhirContext,
+			BiFunction<FhirContext, IValidationSupport, SnapshotGenerator> internalSnapshotGeneratorFactory,
+			BiFunction<FhirContext, IValidationSupport, ValueSetExpander> internalValueSetExpanderFactory,
+			Collection<ValidationPackageIdentifier> noDownloadPackages,
+			EnumSet<BindingStrength> valueSetBindingStrengths, int downloadThreads, int downloadRetries,
+			long downloadRetryDelayMillis)
 	{
 		this.validationPackageClient = validationPackageClient;
 		this.valueSetExpansionClient = valueSetExpansionClient;
@@ -88,6 +140,10 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 			this.noDownloadPackages.addAll(noDownloadPackages);
 
 		this.valueSetBindingStrengths = valueSetBindingStrengths;
+
+		this.downloadThreads = downloadThreads;
+		this.downloadRetries = downloadRetries;
+		this.downloadRetryDelayMillis = downloadRetryDelayMillis;
 	}
 
 	@Override
@@ -101,19 +157,32 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 
 		Objects.requireNonNull(internalSnapshotGeneratorFactory, "internalSnapshotGeneratorFactory");
 		Objects.requireNonNull(internalValueSetExpanderFactory, "internalValueSetExpanderFactory");
+
+		if (downloadThreads <= 0)
+			throw new IllegalArgumentException("downloadThreads <= 0");
+		if (downloadRetries < 0)
+			throw new IllegalArgumentException("downloadRetries < 0");
+		if (downloadRetryDelayMillis < 0)
+			throw new IllegalArgumentException("downloadRetryDelayMillis < 0");
 	}
 
 	@Override
 	public List<ValidationPackageWithDepedencies> downloadPackagesWithDependencies(
-			Collection<? extends ValidationPackageIdentifier> identifiers)
+			Collection<? extends ValidationPackageIdentifier> identifiers, ValidationProgress progress)
 	{
+		Objects.requireNonNull(identifiers, "identifiers");
+		Objects.requireNonNull(progress, "progress");
+
+		progress.startPhase(ValidationProgress.Phase.DOWNLOADING_PACKAGES);
+		Map<ValidationPackageIdentifier, ValidationPackage> downloaded = downloadAll(identifiers, progress);
 		Map<ValidationPackageIdentifier, ValidationPackage> allPackagesByNameAndVersion = new HashMap<>();
 
 		List<ValidationPackageWithDepedencies> packages = new ArrayList<>();
 		for (ValidationPackageIdentifier identifier : identifiers)
 		{
 			Map<ValidationPackageIdentifier, ValidationPackage> packagesByNameAndVersion = new HashMap<>();
-			downloadPackageWithDependencies(identifier, packagesByNameAndVersion, allPackagesByNameAndVersion);
+			collectPackageWithDependencies(identifier, downloaded, packagesByNameAndVersion,
+					allPackagesByNameAndVersion);
 			packages.add(ValidationPackageWithDepedencies.from(packagesByNameAndVersion, identifier));
 		}
 
@@ -126,23 +195,39 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 		Objects.requireNonNull(identifier, "identifier");
 
 		Map<ValidationPackageIdentifier, ValidationPackage> packagesByNameAndVersion = new HashMap<>();
-		downloadPackageWithDependencies(identifier, packagesByNameAndVersion, new HashMap<>());
+		collectPackageWithDependencies(identifier, downloadAll(List.of(identifier), new ValidationProgress()),
+				packagesByNameAndVersion, new HashMap<>());
 
 		return ValidationPackageWithDepedencies.from(packagesByNameAndVersion, identifier);
 	}
 
 	@Override
 	public IValidationSupport expandValueSetsAndGenerateStructureDefinitionSnapshots(
-			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies)
+			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies,
+			ValidationProgress progress)
 	{
+		Objects.requireNonNull(packagesWithDependencies, "packagesWithDependencies");
+		Objects.requireNonNull(progress, "progress");
+
+		progress.startPhase(ValidationProgress.Phase.EXPANDING_VALUE_SETS);
+
+		long start = System.currentTimeMillis();
+		packagesWithDependencies.forEach(p -> p.parseResources(fhirContext));
+		logger.debug("Validation packages indexed in {} ms", System.currentTimeMillis() - start);
+
 		List<ValueSet> expandedValueSets = new ArrayList<>();
 		for (ValidationPackageWithDepedencies packageWithDependencies : packagesWithDependencies)
-		{
-			packageWithDependencies.parseResources(fhirContext);
-			expandedValueSets.addAll(withExpandedValueSets(packageWithDependencies));
-		}
+			expandedValueSets.addAll(withExpandedValueSets(packageWithDependencies, progress));
+
+		progress.startPhase(ValidationProgress.Phase.GENERATING_SNAPSHOTS);
+		IValidationSupport validationSupport = withSnapshots(expandedValueSets, packagesWithDependencies, progress);
+
+		if (logger.isDebugEnabled())
+			getAllPackages(packagesWithDependencies).stream().distinct()
+					.forEach(p -> logger.debug("Validation package {}|{}: {} of {} indexed resources parsed",
+							p.getName(), p.getVersion(), p.getParsedResourceCount(), p.getIndex().size()));
 
-		return withSnapshots(expandedValueSets, packagesWithDependencies);
+		return validationSupport;
 	}
 
 	@Override
@@ -152,11 +237,7 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 		Objects.requireNonNull(validationSupport, "validationSupport");
 		Objects.requireNonNull(packageWithDependencies, "packageWithDependencies");
 
-		BundleValidatorImpl validator = new BundleValidatorImpl(
-				new ResourceValidatorImpl(fhirContext, validationSupport), fhirContext,
-				Collections.singletonList(packageWithDependencies));
-
-		return validator;
+		return createBundleValidator(validationSupport, Collections.singletonList(packageWithDependencies));
 	}
 
 	@Override
@@ -165,10 +246,17 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 	{
 		Objects.requireNonNull(validationSupport, "validationSupport");
 
-		BundleValidatorImpl validator = new BundleValidatorImpl(
-				new ResourceValidatorImpl(fhirContext, validationSupport), fhirContext, packagesWithDependencies);
+		Objects.requireNonNull(packagesWithDependencies, "packagesWithDependencies");
+
+		PinnedProfilesResourceValidator delegate = new PinnedProfilesResourceValidator(fhirContext, validationSupport,
+				BundleValidatorImpl.resourceProfiles(packagesWithDependencies));
 
-		return validator;
+		logger.info("Validator created, {}", delegate.toString());
+
+		// cache files written while downloading packages, expanding ValueSets and generating snapshots
+		CacheManifest.flushAll();
+
+		return new BundleValidatorImpl(delegate, fhirContext, packagesWithDependencies);
 	}
 
 	@Override
@@ -193,39 +281,146 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 		return createBundleValidator(validationSupport, packageWithDependencies);
 	}
 
-	private void downloadPackageWithDependencies(ValidationPackageIdentifier identifier,
+	/**
+	 * Downloads the given packages and their dependencies breadth-first, packages of the same dependency level are
+	 * downloaded concurrently. Every package is only downloaded once.
+	 */
+	private Map<ValidationPackageIdentifier, ValidationPackage> downloadAll(
+			Collection<? extends ValidationPackageIdentifier> identifiers, ValidationProgress progress)
+	{
+		Map<ValidationPackageIdentifier, ValidationPackage> downloaded = new HashMap<>();
+		Set<ValidationPackageIdentifier> requested = new HashSet<>();
+
+		List<ValidationPackageIdentifier> level = identifiers.stream().<ValidationPackageIdentifier> map(i -> i)
+				.filter(i -> isToBeDownloaded(i, requested)).toList();
+
+		ExecutorService executor = Executors.newFixedThreadPool(downloadThreads);
+		try
+		{
+			while (!level.isEmpty())
+			{
+				List<CompletableFuture<ValidationPackage>> downloads = level.stream()
+						.map(i -> CompletableFuture.supplyAsync(() -> downloadAndHandleException(i), executor))
+						.toList();
+
+				List<ValidationPackageIdentifier> nextLevel = new ArrayList<>();
+				for (int i = 0; i < level.size(); i++)
+				{
+					ValidationPackage vPackage = join(downloads.get(i));
+					downloaded.put(level.get(i), vPackage);
+					progress.packageLoaded();
+
+					getDescriptorAndHandleException(vPackage).getDependencyIdentifiers().stream()
+							.filter(d -> isToBeDownloaded(d, requested)).forEach(nextLevel::add);
+				}
+
+				level = nextLevel;
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		return downloaded;
+	}
+
+	private boolean isToBeDownloaded(ValidationPackageIdentifier identifier, Set<ValidationPackageIdentifier> requested)
+	{
+		if (noDownloadPackages.contains(identifier))
+		{
+			logger.debug("Not downloading package {}", identifier.toString());
+			return false;
+		}
+		else
+			return requested.add(identifier);
+	}
+
+	private ValidationPackage join(CompletableFuture<ValidationPackage> download)
+	{
+		try
+		{
+			return download.join();
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw e;
+		}
+	}
+
+	private void collectPackageWithDependencies(ValidationPackageIdentifier identifier,
+			Map<ValidationPackageIdentifier, ValidationPackage> downloaded,
 			Map<ValidationPackageIdentifier, ValidationPackage> packagesByNameAndVersion,
 			Map<ValidationPackageIdentifier, ValidationPackage> allPackagesByNameAndVersion)
 	{
 		if (allPackagesByNameAndVersion.containsKey(identifier))
 		{
-			// already downloaded
+			// already collected
 			return;
 		}
-		else if (noDownloadPackages.contains(identifier))
+		else if (!downloaded.containsKey(identifier))
 		{
-			logger.debug("Not downloading package {}", identifier.toString());
+			// not downloaded
 			return;
 		}
 
-		ValidationPackage vPackage = downloadAndHandleException(identifier);
+		ValidationPackage vPackage = downloaded.get(identifier);
 		packagesByNameAndVersion.put(identifier, vPackage);
 		allPackagesByNameAndVersion.put(identifier, vPackage);
 
 		ValidationPackageDescriptor descriptor = getDescriptorAndHandleException(vPackage);
-		descriptor.getDependencyIdentifiers().forEach(
-				i -> downloadPackageWithDependencies(i, packagesByNameAndVersion, allPackagesByNameAndVersion));
+		descriptor.getDependencyIdentifiers().forEach(i -> collectPackageWithDependencies(i, downloaded,
+				packagesByNameAndVersion, allPackagesByNameAndVersion));
 	}
 
 	private ValidationPackage downloadAndHandleException(ValidationPackageIdentifier identifier)
+	{
+		for (int retry = 0;; retry++)
+		{
+			try
+			{
+				logger.debug("Downloading validation package {}", identifier);
+				return validationPackageClient.download(identifier);
+			}
+			catch (WebApplicationException | ProcessingException | IOException e)
+			{
+				if (retry < downloadRetries && isTransient(e))
+				{
+					long delay = downloadRetryDelayMillis << retry;
+					logger.warn("Error while downloading validation package {}: {} - {}, retrying in {} ms", identifier,
+							e.getClass().getName(), e.getMessage(), delay);
+
+					sleep(delay);
+				}
+				else
+					throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private boolean isTransient(Exception e)
+	{
+		if (e instanceof WebApplicationException)
+		{
+			int status = ((WebApplicationException) e).getResponse().getStatus();
+			return status == 429 || status >= 500;
+		}
+		else
+			return true;
+	}
+
+	private void sleep(long millis)
 	{
 		try
 		{
-			logger.debug("Downloading validation package {}", identifier);
-			return validationPackageClient.download(identifier);
+			Thread.sleep(millis);
 		}
-		catch (WebApplicationException | IOException e)
+		catch (InterruptedException e)
 		{
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
 		}
 	}
@@ -242,12 +437,17 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 		}
 	}
 
-	private List<ValueSet> withExpandedValueSets(ValidationPackageWithDepedencies packageWithDependencies)
+	private List<ValueSet> withExpandedValueSets(ValidationPackageWithDepedencies packageWithDependencies,
+			ValidationProgress progress)
 	{
 		List<ValueSet> expandedValueSets = new ArrayList<>();
-		ValueSetExpander expander = internalValueSetExpanderFactory.apply(fhirContext,
-				createSupportChain(fhirContext, new ValidationSupportWithCustomResources(fhirContext, null, null, null),
-						Collections.singletonList(packageWithDependencies)));
+		ValidationSupportChain supportChain = createSupportChain(fhirContext,
+				new ValidationSupportWithCustomResources(fhirContext, null, null, null),
+				Collections.singletonList(packageWithDependencies));
+		ValueSetExpander expander = internalValueSetExpanderFactory.apply(fhirContext, supportChain);
+
+		// ValueSets expanded by the terminology server, collected to allow batch requests
+		List<ValueSet> externalValueSets = new ArrayList<>();
 
 		packageWithDependencies.getValueSetsIncludingDependencies(valueSetBindingStrengths, fhirContext).forEach(v ->
 		{
@@ -258,45 +458,59 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 					&& (v.getCompose().getInclude().stream().anyMatch(ConceptSetComponent::hasFilter)
 							|| v.getCompose().getExclude().stream().anyMatch(ConceptSetComponent::hasFilter)))
 			{
-				expandExternal(expandedValueSets, v);
+				externalValueSets.add(v);
 			}
-			else
+			else if (expandInternal(expandedValueSets, expander, v, progress))
 			{
-				// will try external expansion if internal not successful
-				expandInternal(expandedValueSets, expander, v);
+				// try external expansion if internal not successful
+				externalValueSets.add(v);
 			}
 		});
 
+		expandExternal(expandedValueSets, externalValueSets, supportChain, progress);
+
 		return expandedValueSets;
 	}
 
-	private void expandExternal(List<ValueSet> expandedValueSets, ValueSet v)
+	private void expandExternal(List<ValueSet> expandedValueSets, List<ValueSet> valueSets,
+			IValidationSupport validationSupport, ValidationProgress progress)
 	{
-		try
-		{
-			ValueSet expansion = valueSetExpansionClient.expand(v);
-			expandedValueSets.add(expansion);
-		}
-		catch (WebApplicationException e)
-		{
-			logger.warn(
-					"Error while expanding ValueSet {}|{} externally, this may result in incomplete validation: {} - {}",
-					v.getUrl(), v.getVersion(), e.getClass().getName(), e.getMessage());
-			getOutcome(e).ifPresent(m -> logger.debug("Expansion error response: {}", m));
-			logger.debug("ValueSet with error while expanding: {}",
-					fhirContext.newJsonParser().encodeResourceToString(v));
-		}
-		catch (Exception e)
+		if (valueSets.isEmpty())
+			return;
+
+		logger.debug("Expanding {} ValueSet{} externally", valueSets.size(), valueSets.size() == 1 ? "" : "s");
+
+		List<ValueSetExpansionResult> results = valueSetExpansionClient.expandAll(valueSets, validationSupport);
+		for (ValueSetExpansionResult result : results)
 		{
-			logger.warn(
-					"Error while expanding ValueSet {}|{} externally, this may result in incomplete validation: {} - {}",
-					v.getUrl(), v.getVersion(), e.getClass().getName(), e.getMessage());
-			logger.debug("ValueSet with error while expanding: {}",
-					fhirContext.newJsonParser().encodeResourceToString(v));
+			if (result.isSuccess())
+			{
+				expandedValueSets.add(result.getExpansion());
+				progress.valueSetExpanded();
+			}
+			else
+			{
+				ValueSet v = result.getValueSet();
+				Exception e = result.getError();
+
+				logger.warn(
+						"Error while expanding ValueSet {}|{} externally, this may result in incomplete validation: {} - {}",
+						v.getUrl(), v.getVersion(), e.getClass().getName(), e.getMessage());
+				if (e instanceof WebApplicationException)
+					getOutcome((WebApplicationException) e)
+							.ifPresent(m -> logger.debug("Expansion error response: {}", m));
+				logger.debug("ValueSet with error while expanding: {}",
+						fhirContext.newJsonParser().encodeResourceToString(v));
+			}
 		}
 	}
 
-	private void expandInternal(List<ValueSet> expandedValueSets, ValueSetExpander expander, ValueSet v)
+	/**
+	 * @return <code>true</code> if the internal expansion failed with an exception and the ValueSet should be expanded
+	 *         externally
+	 */
+	private boolean expandInternal(List<ValueSet> expandedValueSets, ValueSetExpander expander, ValueSet v,
+			ValidationProgress progress)
 	{
 		try
 		{
@@ -306,7 +520,12 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 				logger.warn("Error while expanding ValueSet {}|{} internally: {}", v.getUrl(), v.getVersion(),
 						expansion.getError());
 			else
+			{
 				expandedValueSets.add(expansion.getValueset());
+				progress.valueSetExpanded();
+			}
+
+			return false;
 		}
 		catch (Exception e)
 		{
@@ -314,7 +533,7 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 					"Error while expanding ValueSet {}|{} internally: {} - {}, trying to expand via external terminology server next",
 					v.getUrl(), v.getVersion(), e.getClass().getName(), e.getMessage());
 
-			expandExternal(expandedValueSets, v);
+			return true;
 		}
 	}
 
@@ -330,7 +549,8 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 	}
 
 	private IValidationSupport withSnapshots(List<ValueSet> expandedValueSets,
-			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies)
+			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies,
+			ValidationProgress progress)
 	{
 		Map<String, StructureDefinition> snapshots = new HashMap<>();
 
@@ -343,10 +563,10 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 
 		for (ValidationPackageWithDepedencies packageWithDependencies : packagesWithDependencies)
 		{
-			packageWithDependencies.getValidationSupportResources().getStructureDefinitions().stream()
+			packageWithDependencies.getResources(StructureDefinition.class).stream()
 					.filter(s -> s.hasDifferential() && !s.hasSnapshot())
 					.forEach(diff -> createSnapshot(packageWithDependencies, snapshotsAndExpandedValueSets, snapshots,
-							generator, diff));
+							generator, diff, progress));
 		}
 
 		return supportChain;
@@ -354,7 +574,8 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 
 	private void createSnapshot(ValidationPackageWithDepedencies packageWithDependencies,
 			ValidationSupportWithCustomResources snapshotsAndExpandedValueSets,
-			Map<String, StructureDefinition> snapshots, SnapshotGenerator generator, StructureDefinition diff)
+			Map<String, StructureDefinition> snapshots, SnapshotGenerator generator, StructureDefinition diff,
+			ValidationProgress progress)
 	{
 		if (snapshots.containsKey(diff.getUrl() + "|" + diff.getVersion()))
 			return;
@@ -397,6 +618,7 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 							snapshots.put(snapshot.getSnapshot().getUrl() + "|" + snapshot.getSnapshot().getVersion(),
 									snapshot.getSnapshot());
 							snapshotsAndExpandedValueSets.addOrReplace(snapshot.getSnapshot());
+							progress.snapshotGenerated();
 						}
 						else
 							logger.error(
@@ -430,10 +652,7 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 	{
 		return new ValidationSupportChain(new CodeValidatorForExpandedValueSets(context),
 				new InMemoryTerminologyServerValidationSupport(context), snapshotsAndExpandedValueSets,
-				new ValidationSupportWithCustomResources(context,
-						getAll(ValidationPackageWithDepedencies::getAllStructureDefinitions, packagesWithDependencies),
-						getAll(ValidationPackageWithDepedencies::getAllCodeSystems, packagesWithDependencies),
-						getAll(ValidationPackageWithDepedencies::getAllValueSets, packagesWithDependencies)),
+				new ValidationPackageValidationSupport(context, getAllPackages(packagesWithDependencies)),
 				new DefaultProfileValidationSupport(context), new QuietCommonCodeSystemsTerminologyService(context),
 				// TODO remove NonValidatingValidationSupport
 				new NonValidatingValidationSupport(context, "http://fhir.de/CodeSystem/bfarm/icd-10-gm",
@@ -441,9 +660,10 @@ public class ValidationPackageManagerImpl implements InitializingBean, Validatio
 						"http://fhir.de/CodeSystem/dimdi/ops", "http://fhir.de/CodeSystem/ifa/pzn"));
 	}
 
-	private <V> List<V> getAll(Function<ValidationPackageWithDepedencies, List<V>> mapper,
+	private List<ValidationPackage> getAllPackages(
 			Collection<? extends ValidationPackageWithDepedencies> packagesWithDependencies)
 	{
-		return packagesWithDependencies.stream().map(mapper).flatMap(List::stream).toList();
+		return packagesWithDependencies.stream().flatMap(p -> Stream.concat(Stream.of(p), p.getDependencies().stream()))
+				.toList();
 	}
 }
@@ -0,0 +1,152 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.MetadataResource;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+
+/**
+ * {@link IValidationSupport} for {@link StructureDefinition}, {@link CodeSystem} and {@link ValueSet} resources of
+ * {@link ValidationPackage}s. Resources are looked up via the package index by <code>url</code> and
+ * <code>url|version</code> and parsed on first access. If multiple packages contain a resource with the same canonical
+ * url, the resource from the package given last is used.
+ */
+public class ValidationPackageValidationSupport implements IValidationSupport
+{
+	private static final class PackageAndFile
+	{
+		final ValidationPackage validationPackage;
+		final ValidationPackageIndexFile file;
+
+		PackageAndFile(ValidationPackage validationPackage, ValidationPackageIndexFile file)
+		{
+			this.validationPackage = validationPackage;
+			this.file = file;
+		}
+
+		MetadataResource getResource()
+		{
+			return validationPackage.getResource(file);
+		}
+	}
+
+	private final FhirContext context;
+
+	private final Map<String, PackageAndFile> structureDefinitionsByUrl = new HashMap<>();
+	private final Map<String, PackageAndFile> codeSystemsByUrl = new HashMap<>();
+	private final Map<String, PackageAndFile> valueSetsByUrl = new HashMap<>();
+
+	/**
+	 * @param context
+	 *            not <code>null</code>
+	 * @param packages
+	 *            not <code>null</code>, resources need to be indexed via
+	 *            {@link ValidationPackage#parseResources(FhirContext)}
+	 */
+	public ValidationPackageValidationSupport(FhirContext context, Collection<? extends ValidationPackage> packages)
+	{
+		this.context = Objects.requireNonNull(context, "context");
+		Objects.requireNonNull(packages, "packages");
+
+		packages.forEach(p -> p.getIndex().stream().filter(f -> f.getUrl() != null).forEach(f ->
+		{
+			switch (f.getResourceType())
+			{
+				case "StructureDefinition":
+					add(structureDefinitionsByUrl, p, f);
+					break;
+				case "CodeSystem":
+					add(codeSystemsByUrl, p, f);
+					break;
+				case "ValueSet":
+					add(valueSetsByUrl, p, f);
+					break;
+			}
+		}));
+	}
+
+	private void add(Map<String, PackageAndFile> byUrl, ValidationPackage validationPackage,
+			ValidationPackageIndexFile file)
+	{
+		PackageAndFile packageAndFile = new PackageAndFile(validationPackage, file);
+
+		byUrl.put(file.getUrl(), packageAndFile);
+		byUrl.put(file.getUrlAndVersion(), packageAndFile);
+	}
+
+	@Override
+	public FhirContext getFhirContext()
+	{
+		return context;
+	}
+
+	@Override
+	public List<IBaseResource> fetchAllConformanceResources()
+	{
+		return Stream.of(codeSystemsByUrl, structureDefinitionsByUrl, valueSetsByUrl).map(Map::values)
+				.flatMap(Collection::stream).map(PackageAndFile::getResource).filter(Objects::nonNull)
+				.collect(Collectors.toList());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T extends IBaseResource> List<T> fetchAllStructureDefinitions()
+	{
+		return (List<T>) new ArrayList<>(structureDefinitionsByUrl.values().stream().map(PackageAndFile::getResource)
+				.filter(Objects::nonNull).collect(Collectors.toList()));
+	}
+
+	@Override
+	public StructureDefinition fetchStructureDefinition(String url)
+	{
+		return fetch(structureDefinitionsByUrl, url, StructureDefinition.class);
+	}
+
+	@Override
+	public CodeSystem fetchCodeSystem(String system)
+	{
+		return fetch(codeSystemsByUrl, system, CodeSystem.class);
+	}
+
+	@Override
+	public boolean isCodeSystemSupported(ValidationSupportContext validationSupportContext, String system)
+	{
+		return codeSystemsByUrl.containsKey(system);
+	}
+
+	@Override
+	public ValueSet fetchValueSet(String url)
+	{
+		return fetch(valueSetsByUrl, url, ValueSet.class);
+	}
+
+	@Override
+	public boolean isValueSetSupported(ValidationSupportContext validationSupportContext, String url)
+	{
+		return valueSetsByUrl.containsKey(url);
+	}
+
+	private <R extends MetadataResource> R fetch(Map<String, PackageAndFile> byUrl, String url, Class<R> type)
+	{
+		PackageAndFile packageAndFile = byUrl.get(url);
+		if (packageAndFile == null)
+			return null;
+
+		MetadataResource resource = packageAndFile.getResource();
+		return type.isInstance(resource) ? type.cast(resource) : null;
+	}
+}
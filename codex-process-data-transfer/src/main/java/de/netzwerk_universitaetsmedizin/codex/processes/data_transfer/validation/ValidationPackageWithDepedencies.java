@@ -53,12 +53,9 @@ public class ValidationPackageWithDepedencies extends ValidationPackage
 
 	private final List<ValidationPackage> dependencies = new ArrayList<>();
 
-	private Map<String, List<StructureDefinition>> structureDefinitionsByUrl;
-	private Map<String, StructureDefinition> structureDefinitionsByUrlAndVersion;
-
 	public ValidationPackageWithDepedencies(ValidationPackage validationPackage, List<ValidationPackage> dependencies)
 	{
-		super(validationPackage.getName(), validationPackage.getVersion(), validationPackage.getEntries());
+		super(validationPackage);
 
 		if (dependencies != null)
 			this.dependencies.addAll(dependencies);
@@ -79,8 +76,7 @@ public class ValidationPackageWithDepedencies extends ValidationPackage
 
 	private <R extends MetadataResource> List<R> getAll(Function<ValidationSupportResources, List<R>> accessor)
 	{
-		return Stream.concat(Stream.of(this), getDependencies().stream())
-				.map(ValidationPackage::getValidationSupportResources).map(accessor).flatMap(List::stream)
+		return getPackages().map(ValidationPackage::getValidationSupportResources).map(accessor).flatMap(List::stream)
 				.collect(Collectors.toList());
 	}
 
@@ -110,31 +106,6 @@ public class ValidationPackageWithDepedencies extends ValidationPackage
 				getAllValueSets());
 	}
 
-	private Map<String, List<StructureDefinition>> getStructureDefinitionsByUrl()
-	{
-		if (structureDefinitionsByUrl == null)
-			structureDefinitionsByUrl = getAllStructureDefinitions().stream().filter(StructureDefinition::hasUrl)
-					.collect(Collectors.toMap(StructureDefinition::getUrl, Collections::singletonList, (sd1, sd2) ->
-					{
-						List<StructureDefinition> sds = new ArrayList<>();
-						sds.addAll(sd1);
-						sds.addAll(sd2);
-						return sds;
-					}));
-
-		return structureDefinitionsByUrl;
-	}
-
-	private Map<String, StructureDefinition> getStructureDefinitionsByUrlAndVersion()
-	{
-		if (structureDefinitionsByUrlAndVersion == null)
-			structureDefinitionsByUrlAndVersion = getAllStructureDefinitions().stream()
-					.filter(StructureDefinition::hasUrl).filter(StructureDefinition::hasVersion)
-					.collect(Collectors.toMap(s -> s.getUrl() + "|" + s.getVersion(), Function.identity()));
-
-		return structureDefinitionsByUrlAndVersion;
-	}
-
 	public List<StructureDefinition> getStructureDefinitionDependencies(StructureDefinition structureDefinition)
 	{
 		return doGetDependencies(structureDefinition, new HashSet<>());
@@ -200,17 +171,13 @@ public class ValidationPackageWithDepedencies extends ValidationPackage
 
 	private Set<StructureDefinition> getStructureDefinitionsByUrl(String sdUrl)
 	{
-		Set<StructureDefinition> sds = new HashSet<>();
-
-		List<StructureDefinition> byUrl = getStructureDefinitionsByUrl().get(sdUrl);
-		if (byUrl != null)
-			sds.addAll(byUrl);
-
-		StructureDefinition byUrlAndVersion = getStructureDefinitionsByUrlAndVersion().get(sdUrl);
-		if (byUrlAndVersion != null)
-			sds.add(byUrlAndVersion);
+		return getPackages().flatMap(p -> p.getResources(StructureDefinition.class, sdUrl).stream())
+				.collect(Collectors.toSet());
+	}
 
-		return sds;
+	private Stream<ValidationPackage> getPackages()
+	{
+		return Stream.concat(Stream.of(this), getDependencies().stream());
 	}
 
 	private Set<String> findValueSetsWithBindingStrength(Stream<StructureDefinition> sds,
@@ -228,13 +195,17 @@ public class ValidationPackageWithDepedencies extends ValidationPackage
 	public List<ValueSet> getValueSetsIncludingDependencies(EnumSet<BindingStrength> bindingStrengths,
 			FhirContext fhirContext)
 	{
-		Stream<StructureDefinition> sds = getValidationSupportResources().getStructureDefinitions().stream()
+		Stream<StructureDefinition> sds = getResources(StructureDefinition.class).stream()
 				.flatMap(sd -> Stream.concat(Stream.of(sd), getStructureDefinitionDependencies(sd).stream()))
 				.distinct();
 
 		Set<String> neededValueSets = findValueSetsWithBindingStrength(sds, bindingStrengths);
-		List<ValueSet> foundValueSets = getAllValueSets().stream().filter(vs -> neededValueSets.contains(vs.getUrl())
-				|| neededValueSets.contains(vs.getUrl() + "|" + vs.getVersion())).collect(Collectors.toList());
+		List<ValueSet> foundValueSets = getPackages()
+				.flatMap(p -> p.getIndex().stream().filter(f -> "ValueSet".equals(f.getResourceType()))
+						.filter(f -> neededValueSets.contains(f.getUrl())
+								|| neededValueSets.contains(f.getUrlAndVersion()))
+						.map(p::getResource))
+				.filter(r -> r instanceof ValueSet).map(r -> (ValueSet) r).collect(Collectors.toList());
 
 		logMissingValueSets(neededValueSets, foundValueSets, fhirContext);
 
@@ -0,0 +1,114 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Progress of the {@link BundleValidatorFactory} initialization or reload: current phase, number of packages loaded,
+ * ValueSets expanded and StructureDefinition snapshots generated, as well as the duration of every finished phase.
+ * Finished phases are logged at info level.
+ */
+public class ValidationProgress
+{
+	private static final Logger logger = LoggerFactory.getLogger(ValidationProgress.class);
+
+	public enum Phase
+	{
+		NOT_STARTED, DOWNLOADING_PACKAGES, EXPANDING_VALUE_SETS, GENERATING_SNAPSHOTS, WARMING_UP, READY, FAILED;
+
+		boolean isRunning()
+		{
+			return !NOT_STARTED.equals(this) && !READY.equals(this) && !FAILED.equals(this);
+		}
+	}
+
+	private final AtomicInteger packagesLoaded = new AtomicInteger();
+	private final AtomicInteger valueSetsExpanded = new AtomicInteger();
+	private final AtomicInteger snapshotsGenerated = new AtomicInteger();
+	private final Map<Phase, Long> phaseMillis = new EnumMap<>(Phase.class);
+
+	private Phase phase = Phase.NOT_STARTED;
+	private long phaseStart;
+
+	/**
+	 * Finishes the current phase and starts the given <b>next</b> phase.
+	 *
+	 * @param next
+	 *            not <code>null</code>
+	 */
+	public synchronized void startPhase(Phase next)
+	{
+		long now = System.currentTimeMillis();
+
+		if (phase.isRunning())
+		{
+			phaseMillis.put(phase, now - phaseStart);
+			logger.info(
+					"Validator initialization phase {} finished in {} ms: {} packages loaded, {} ValueSets "
+							+ "expanded, {} snapshots generated",
+					phase, now - phaseStart, getPackagesLoaded(), getValueSetsExpanded(), getSnapshotsGenerated());
+		}
+
+		phase = next;
+		phaseStart = now;
+	}
+
+	void packageLoaded()
+	{
+		packagesLoaded.incrementAndGet();
+	}
+
+	void valueSetExpanded()
+	{
+		valueSetsExpanded.incrementAndGet();
+	}
+
+	void snapshotGenerated()
+	{
+		snapshotsGenerated.incrementAndGet();
+	}
+
+	public synchronized Phase getPhase()
+	{
+		return phase;
+	}
+
+	/**
+	 * @param phase
+	 *            not <code>null</code>
+	 * @return duration of the given phase in milliseconds, <code>-1</code> if the phase did not finish yet
+	 */
+	public synchronized long getPhaseMillis(Phase phase)
+	{
+		return phaseMillis.getOrDefault(phase, -1L);
+	}
+
+	public int getPackagesLoaded()
+	{
+		return packagesLoaded.get();
+	}
+
+	public int getValueSetsExpanded()
+	{
+		return valueSetsExpanded.get();
+	}
+
+	public int getSnapshotsGenerated()
+	{
+		return snapshotsGenerated.get();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "phase: " + phase + ", packages loaded: " + getPackagesLoaded() + ", ValueSets expanded: "
+				+ getValueSetsExpanded() + ", snapshots generated: " + getSnapshotsGenerated() + ", phase timings: "
+				+ phaseMillis.entrySet().stream().map(e -> e.getKey() + " " + e.getValue() + " ms")
+						.collect(Collectors.joining(", ", "[", "]"));
+	}
+}
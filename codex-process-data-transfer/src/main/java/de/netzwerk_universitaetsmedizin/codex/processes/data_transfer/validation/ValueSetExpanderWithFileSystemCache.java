@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
 import dev.dsf.fhir.validation.ValueSetExpander;
 
 public class ValueSetExpanderWithFileSystemCache
@@ -23,6 +24,7 @@ public class ValueSetExpanderWithFileSystemCache
 	private static final Logger logger = LoggerFactory.getLogger(ValidationPackageClientWithFileSystemCache.class);
 
 	private final ValueSetExpander delegate;
+	private final IValidationSupport validationSupport;
 
 	/**
 	 * For JSON content with gzip compression using the <code>.json.xz</code> file name suffix.
@@ -44,6 +46,7 @@ public class ValueSetExpanderWithFileSystemCache
 		super(cacheFolder, ValueSet.class, fhirContext);
 
 		this.delegate = delegate;
+		this.validationSupport = null;
 	}
 
 	public ValueSetExpanderWithFileSystemCache(Path cacheFolder, String fileNameSuffix,
@@ -51,9 +54,38 @@ public class ValueSetExpanderWithFileSystemCache
 			FunctionWithIoException<InputStream, InputStream> inCompressorFactory, FhirContext fhirContext,
 			ValueSetExpander delegate)
 	{
-		super(cacheFolder, fileNameSuffix, outCompressorFactory, inCompressorFactory, ValueSet.class, fhirContext);
+		this(cacheFolder, new CacheCodec("custom", fileNameSuffix, outCompressorFactory, inCompressorFactory),
+				new InMemoryCache(), fhirContext, delegate);
+	}
+
+	public ValueSetExpanderWithFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache,
+			FhirContext fhirContext, ValueSetExpander delegate)
+	{
+		this(cacheFolder, codec, memoryCache, fhirContext, delegate, null);
+	}
+
+	/**
+	 * @param cacheFolder
+	 *            not <code>null</code>
+	 * @param codec
+	 *            not <code>null</code>
+	 * @param memoryCache
+	 *            not <code>null</code>
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @param delegate
+	 *            not <code>null</code>
+	 * @param validationSupport
+	 *            may be <code>null</code>, used to resolve ValueSets and CodeSystems included by draft ValueSets, if
+	 *            <code>null</code> changes of included draft resources are not detected
+	 */
+	public ValueSetExpanderWithFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache,
+			FhirContext fhirContext, ValueSetExpander delegate, IValidationSupport validationSupport)
+	{
+		super(cacheFolder, codec, memoryCache, ValueSet.class, fhirContext);
 
 		this.delegate = delegate;
+		this.validationSupport = validationSupport;
 	}
 
 	@Override
@@ -78,17 +110,12 @@ public class ValueSetExpanderWithFileSystemCache
 		Objects.requireNonNull(valueSet.getUrl(), "valueSet.url");
 		Objects.requireNonNull(valueSet.getVersion(), "valueSet.version");
 
+		String cacheEntryId = cacheEntryId(valueSet);
+
 		try
 		{
-			// ValueSetExpansionOutcome read = readFromCache(valueSet.getUrl(), valueSet.getVersion(), ValueSet.class,
-			// ValueSetExpansionOutcome::new);
-			ValueSetExpansionOutcome read = readResourceFromCache(valueSet.getUrl(), valueSet.getVersion(),
-					ValueSetExpansionOutcome::new);
-
-			if (read != null)
-				return read;
-			else
-				return downloadAndWriteToCache(valueSet);
+			return readResourceFromCacheOrLoad(cacheEntryId, ValueSetExpansionOutcome::new,
+					() -> downloadAndWriteToCache(valueSet, cacheEntryId));
 		}
 		catch (IOException e)
 		{
@@ -96,20 +123,29 @@ public class ValueSetExpanderWithFileSystemCache
 		}
 	}
 
-	private ValueSetExpansionOutcome downloadAndWriteToCache(ValueSet valueSet) throws IOException
+	/**
+	 * Expansions of draft ValueSets are identified by a digest of the compose element and the included draft ValueSets
+	 * and CodeSystems in addition to url and version.
+	 *
+	 * @see DraftValueSetDefinition#withDraftDependencies(ValueSet, IValidationSupport)
+	 */
+	private String cacheEntryId(ValueSet valueSet)
+	{
+		if (PublicationStatus.DRAFT.equals(valueSet.getStatus()))
+			return draftCacheEntryId(valueSet.getUrl(), valueSet.getVersion(),
+					DraftValueSetDefinition.withDraftDependencies(valueSet, validationSupport));
+		else
+			return cacheEntryId(valueSet.getUrl(), valueSet.getVersion());
+	}
+
+	private ValueSetExpansionOutcome downloadAndWriteToCache(ValueSet valueSet, String cacheEntryId) throws IOException
 	{
 		ValueSetExpansionOutcome expanded = delegate.expand(valueSet);
 
-		if (PublicationStatus.DRAFT.equals(expanded.getValueset().getStatus()))
-		{
-			logger.info("Not writing expanded ValueSet {}|{} with status {} to cache", expanded.getValueset().getUrl(),
-					expanded.getValueset().getVersion(), expanded.getValueset().getStatus());
-			return expanded;
-		}
-		else
-			// return writeToCache(expanded, ValueSetExpansionOutcome::getValueset, ValueSet::getUrl,
-			// ValueSet::getVersion);
-			return writeRsourceToCache(expanded, ValueSetExpansionOutcome::getValueset, ValueSet::getUrl,
-					ValueSet::getVersion);
+		if (PublicationStatus.DRAFT.equals(valueSet.getStatus()))
+			logger.debug("Writing expanded ValueSet {}|{} with status {} to cache as {}", valueSet.getUrl(),
+					valueSet.getVersion(), valueSet.getStatus(), cacheEntryId);
+
+		return writeRsourceToCache(expanded, ValueSetExpansionOutcome::getValueset, cacheEntryId);
 	}
 }
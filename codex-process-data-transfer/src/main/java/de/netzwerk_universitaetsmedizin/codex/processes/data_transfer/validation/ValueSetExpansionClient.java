@@ -1,10 +1,13 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.hl7.fhir.r4.model.CapabilityStatement;
 import org.hl7.fhir.r4.model.ValueSet;
 
+import ca.uhn.fhir.context.support.IValidationSupport;
 import jakarta.ws.rs.WebApplicationException;
 
 public interface ValueSetExpansionClient
@@ -18,5 +21,45 @@ public interface ValueSetExpansionClient
 	 */
 	ValueSet expand(ValueSet valueSet) throws IOException, WebApplicationException;
 
+	/**
+	 * Expands the given ValueSets, implementations may combine multiple expansions into a single request. Exceptions
+	 * are returned as failed {@link ValueSetExpansionResult}s, the default implementation calls
+	 * {@link #expand(ValueSet)} for every ValueSet.
+	 *
+	 * @param valueSets
+	 *            not <code>null</code>
+	 * @return results in the order of the given ValueSets
+	 */
+	default List<ValueSetExpansionResult> expandAll(List<ValueSet> valueSets)
+	{
+		return valueSets.stream().map(v ->
+		{
+			try
+			{
+				return ValueSetExpansionResult.success(v, expand(v));
+			}
+			catch (IOException | RuntimeException e)
+			{
+				return ValueSetExpansionResult.failure(v, e);
+			}
+		}).collect(Collectors.toList());
+	}
+
+	/**
+	 * Expands the given ValueSets like {@link #expandAll(List)}, implementations may use the given validation support
+	 * to resolve ValueSets and CodeSystems included by the given ValueSets. The default implementation ignores the
+	 * validation support and calls {@link #expandAll(List)}.
+	 *
+	 * @param valueSets
+	 *            not <code>null</code>
+	 * @param validationSupport
+	 *            may be <code>null</code>
+	 * @return results in the order of the given ValueSets
+	 */
+	default List<ValueSetExpansionResult> expandAll(List<ValueSet> valueSets, IValidationSupport validationSupport)
+	{
+		return expandAll(valueSets);
+	}
+
 	CapabilityStatement getMetadata() throws WebApplicationException;
 }
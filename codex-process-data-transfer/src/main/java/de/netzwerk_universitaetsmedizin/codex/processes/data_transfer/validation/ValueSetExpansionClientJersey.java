@@ -1,8 +1,13 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
 
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 import javax.net.ssl.SSLContext;
@@ -16,6 +21,10 @@ import org.glassfish.jersey.jackson.internal.jackson.jaxrs.json.JacksonJaxbJsonP
 import org.glassfish.jersey.jackson.internal.jackson.jaxrs.json.JacksonJsonProvider;
 import org.glassfish.jersey.logging.LoggingFeature;
 import org.glassfish.jersey.logging.LoggingFeature.Verbosity;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
 import org.hl7.fhir.r4.model.CapabilityStatement;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.ValueSet;
@@ -27,6 +36,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.api.Constants;
 import dev.dsf.fhir.adapter.FhirAdapter;
+import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
@@ -43,8 +53,17 @@ public class ValueSetExpansionClientJersey implements ValueSetExpansionClient
 		requestDebugLogger.setLevel(Level.INFO);
 	}
 
+	public static final int DEFAULT_BATCH_SIZE = 1;
+
+	// HTTP status codes of servers not supporting batch bundles, other errors like 400 or 422 may be caused by the
+	// content of a single batch and only result in single requests for that batch
+	private static final Set<Integer> BATCH_NOT_SUPPORTED_STATUS = Set.of(404, 405, 415, 501);
+
 	private final Client client;
 	private final String baseUrl;
+	private final int batchSize;
+
+	private final AtomicBoolean batchSupported = new AtomicBoolean(true);
 
 	public ValueSetExpansionClientJersey(String baseUrl, ObjectMapper objectMapper, FhirContext fhirContext)
 	{
@@ -55,6 +74,35 @@ public class ValueSetExpansionClientJersey implements ValueSetExpansionClient
 			char[] keyStorePassword, String basicAuthUsername, char[] basicAuthPassword, String proxySchemeHostPort,
 			String proxyUsername, char[] proxyPassword, int connectTimeout, int readTimeout, boolean logRequests,
 			ObjectMapper objectMapper, FhirContext fhirContext)
+	{
+		this(baseUrl, trustStore, keyStore, keyStorePassword, basicAuthUsername, basicAuthPassword, proxySchemeHostPort,
+				proxyUsername, proxyPassword, connectTimeout, readTimeout, logRequests, objectMapper, fhirContext,
+				DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param baseUrl
+	 * @param trustStore
+	 * @param keyStore
+	 * @param keyStorePassword
+	 * @param basicAuthUsername
+	 * @param basicAuthPassword
+	 * @param proxySchemeHostPort
+	 * @param proxyUsername
+	 * @param proxyPassword
+	 * @param connectTimeout
+	 * @param readTimeout
+	 * @param logRequests
+	 * @param objectMapper
+	 * @param fhirContext
+	 * @param batchSize
+	 *            maximum number of <code>$expand</code> operations combined into one batch Bundle by
+	 *            {@link #expandAll(List)}, <code>&lt;= 1</code> for single requests
+	 */
+	public ValueSetExpansionClientJersey(String baseUrl, KeyStore trustStore, KeyStore keyStore,
+			char[] keyStorePassword, String basicAuthUsername, char[] basicAuthPassword, String proxySchemeHostPort,
+			String proxyUsername, char[] proxyPassword, int connectTimeout, int readTimeout, boolean logRequests,
+			ObjectMapper objectMapper, FhirContext fhirContext, int batchSize)
 	{
 		SSLContext sslContext = null;
 		if (trustStore != null && keyStore == null && keyStorePassword == null)
@@ -106,6 +154,7 @@ public class ValueSetExpansionClientJersey implements ValueSetExpansionClient
 		client = builder.build();
 
 		this.baseUrl = baseUrl;
+		this.batchSize = Math.max(1, batchSize);
 	}
 
 	private WebTarget getResource()
@@ -131,6 +180,123 @@ public class ValueSetExpansionClientJersey implements ValueSetExpansionClient
 				.post(Entity.entity(parameters, Constants.CT_FHIR_JSON_NEW), ValueSet.class);
 	}
 
+	/**
+	 * Combines up to <b>batchSize</b> expansions into one FHIR batch Bundle. Batch entries not successful are retried
+	 * with single requests. Failed batch requests are retried with single requests; if the server does not support
+	 * batch Bundles (status 404, 405, 415 or 501 or a response other than a batch-response Bundle), all further
+	 * expansions use single requests.
+	 */
+	@Override
+	public List<ValueSetExpansionResult> expandAll(List<ValueSet> valueSets)
+	{
+		Objects.requireNonNull(valueSets, "valueSets");
+
+		ValueSetExpansionResult[] results = new ValueSetExpansionResult[valueSets.size()];
+		List<Integer> pending = new ArrayList<>();
+
+		for (int i = 0; i < valueSets.size(); i++)
+		{
+			if (valueSets.get(i).hasExpansion())
+				results[i] = ValueSetExpansionResult.success(valueSets.get(i), valueSets.get(i));
+			else
+				pending.add(i);
+		}
+
+		for (int from = 0; from < pending.size(); from += batchSize)
+		{
+			List<Integer> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+
+			if (batch.size() > 1 && batchSupported.get())
+				expandBatch(valueSets, batch, results);
+
+			batch.stream().filter(i -> results[i] == null).forEach(i -> results[i] = expandSingle(valueSets.get(i)));
+		}
+
+		return Arrays.asList(results);
+	}
+
+	private void expandBatch(List<ValueSet> valueSets, List<Integer> batch, ValueSetExpansionResult[] results)
+	{
+		Bundle request = new Bundle().setType(BundleType.BATCH);
+		batch.forEach(i ->
+		{
+			Parameters parameters = new Parameters();
+			parameters.addParameter().setName("valueSet").setResource(valueSets.get(i));
+
+			request.addEntry().setResource(parameters).getRequest().setMethod(HTTPVerb.POST).setUrl("ValueSet/$expand");
+		});
+
+		logger.debug("Expanding {} ValueSets with batch request", batch.size());
+
+		Bundle response;
+		try
+		{
+			response = getResource().request(Constants.CT_FHIR_JSON_NEW)
+					.post(Entity.entity(request, Constants.CT_FHIR_JSON_NEW), Bundle.class);
+		}
+		catch (WebApplicationException e)
+		{
+			int status = e.getResponse().getStatus();
+			if (BATCH_NOT_SUPPORTED_STATUS.contains(status))
+				batchNotSupported("status " + status);
+			else
+				logger.warn("Error while expanding {} ValueSets with batch request: {} - {}, using single requests",
+						batch.size(), e.getClass().getName(), e.getMessage());
+			return;
+		}
+		catch (ProcessingException e)
+		{
+			logger.warn("Error while expanding {} ValueSets with batch request: {} - {}, using single requests",
+					batch.size(), e.getClass().getName(), e.getMessage());
+			return;
+		}
+
+		if (!BundleType.BATCHRESPONSE.equals(response.getType()))
+		{
+			batchNotSupported("unexpected response, Bundle of type " + response.getType());
+			return;
+		}
+		else if (response.getEntry().size() != batch.size())
+		{
+			logger.warn("Unexpected batch response with {} entries for {} requests, using single requests",
+					response.getEntry().size(), batch.size());
+			return;
+		}
+
+		for (int j = 0; j < batch.size(); j++)
+		{
+			int i = batch.get(j);
+			BundleEntryComponent entry = response.getEntry().get(j);
+
+			if (entry.getResponse().hasStatus() && entry.getResponse().getStatus().startsWith("2")
+					&& entry.getResource() instanceof ValueSet)
+				results[i] = ValueSetExpansionResult.success(valueSets.get(i), (ValueSet) entry.getResource());
+			else
+				logger.debug(
+						"Expansion of ValueSet {}|{} with batch request failed with status {}, using single request",
+						valueSets.get(i).getUrl(), valueSets.get(i).getVersion(), entry.getResponse().getStatus());
+		}
+	}
+
+	private void batchNotSupported(String reason)
+	{
+		if (batchSupported.getAndSet(false))
+			logger.info("Terminology server does not support batch requests ({}), using single $expand requests",
+					reason);
+	}
+
+	private ValueSetExpansionResult expandSingle(ValueSet valueSet)
+	{
+		try
+		{
+			return ValueSetExpansionResult.success(valueSet, expand(valueSet));
+		}
+		catch (RuntimeException e)
+		{
+			return ValueSetExpansionResult.failure(valueSet, e);
+		}
+	}
+
 	@Override
 	public CapabilityStatement getMetadata() throws WebApplicationException
 	{
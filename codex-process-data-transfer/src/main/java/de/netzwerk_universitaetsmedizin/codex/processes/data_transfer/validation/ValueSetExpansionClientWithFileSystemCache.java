@@ -4,8 +4,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.hl7.fhir.r4.model.CapabilityStatement;
 import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
@@ -15,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
 import jakarta.ws.rs.WebApplicationException;
 
 public class ValueSetExpansionClientWithFileSystemCache extends AbstractFhirResourceFileSystemCache<ValueSet, ValueSet>
@@ -50,7 +55,14 @@ public class ValueSetExpansionClientWithFileSystemCache extends AbstractFhirReso
 			FunctionWithIoException<InputStream, InputStream> inCompressorFactory, FhirContext fhirContext,
 			ValueSetExpansionClient delegate)
 	{
-		super(cacheFolder, fileNameSuffix, outCompressorFactory, inCompressorFactory, ValueSet.class, fhirContext);
+		this(cacheFolder, new CacheCodec("custom", fileNameSuffix, outCompressorFactory, inCompressorFactory),
+				new InMemoryCache(), fhirContext, delegate);
+	}
+
+	public ValueSetExpansionClientWithFileSystemCache(Path cacheFolder, CacheCodec codec, InMemoryCache memoryCache,
+			FhirContext fhirContext, ValueSetExpansionClient delegate)
+	{
+		super(cacheFolder, codec, memoryCache, ValueSet.class, fhirContext);
 
 		this.delegate = delegate;
 	}
@@ -77,26 +89,121 @@ public class ValueSetExpansionClientWithFileSystemCache extends AbstractFhirReso
 		Objects.requireNonNull(valueSet.getUrl(), "valueSet.url");
 		Objects.requireNonNull(valueSet.getVersion(), "valueSet.version");
 
-		ValueSet read = readResourceFromCache(valueSet.getUrl(), valueSet.getVersion(), Function.identity());
+		String cacheEntryId = cacheEntryId(valueSet, null);
+
+		return readResourceFromCacheOrLoad(cacheEntryId, Function.identity(),
+				() -> expandAndWriteToCache(valueSet, cacheEntryId));
+	}
 
-		if (read != null)
-			return read;
+	/**
+	 * Expansions of draft ValueSets are identified by a digest of the compose element and the included draft ValueSets
+	 * and CodeSystems in addition to url and version.
+	 *
+	 * @see DraftValueSetDefinition#withDraftDependencies(ValueSet, IValidationSupport)
+	 */
+	private String cacheEntryId(ValueSet valueSet, IValidationSupport validationSupport)
+	{
+		if (PublicationStatus.DRAFT.equals(valueSet.getStatus()))
+			return draftCacheEntryId(valueSet.getUrl(), valueSet.getVersion(),
+					DraftValueSetDefinition.withDraftDependencies(valueSet, validationSupport));
 		else
-			return expandAndWriteToCache(valueSet);
+			return cacheEntryId(valueSet.getUrl(), valueSet.getVersion());
 	}
 
-	private ValueSet expandAndWriteToCache(ValueSet valueSet) throws IOException
+	private ValueSet expandAndWriteToCache(ValueSet valueSet, String cacheEntryId) throws IOException
 	{
 		ValueSet expanded = delegate.expand(valueSet);
 
-		if (PublicationStatus.DRAFT.equals(expanded.getStatus()))
+		if (PublicationStatus.DRAFT.equals(valueSet.getStatus()))
+			logger.debug("Writing expanded ValueSet {}|{} with status {} to cache as {}", valueSet.getUrl(),
+					valueSet.getVersion(), valueSet.getStatus(), cacheEntryId);
+
+		return writeRsourceToCache(expanded, Function.identity(), cacheEntryId);
+	}
+
+	@Override
+	public List<ValueSetExpansionResult> expandAll(List<ValueSet> valueSets)
+	{
+		return expandAll(valueSets, null);
+	}
+
+	/**
+	 * Reads cached expansions, ValueSets not cached are expanded with one call to
+	 * {@link ValueSetExpansionClient#expandAll(List)} of the delegate and written to the cache. The validation support
+	 * is used to resolve ValueSets and CodeSystems included by draft ValueSets, if <code>null</code> changes of
+	 * included draft resources are not detected.
+	 */
+	@Override
+	public List<ValueSetExpansionResult> expandAll(List<ValueSet> valueSets, IValidationSupport validationSupport)
+	{
+		Objects.requireNonNull(valueSets, "valueSets");
+
+		ValueSetExpansionResult[] results = new ValueSetExpansionResult[valueSets.size()];
+		String[] cacheEntryIds = new String[valueSets.size()];
+		List<Integer> misses = new ArrayList<>();
+
+		for (int i = 0; i < valueSets.size(); i++)
 		{
-			logger.info("Not writing expanded ValueSet {}|{} with status {} to cache", expanded.getUrl(),
-					expanded.getVersion(), expanded.getStatus());
-			return expanded;
+			ValueSet valueSet = valueSets.get(i);
+
+			try
+			{
+				if (valueSet.hasExpansion())
+				{
+					logger.debug("ValueSet {}|{} already expanded", valueSet.getUrl(), valueSet.getVersion());
+					results[i] = ValueSetExpansionResult.success(valueSet, valueSet);
+					continue;
+				}
+
+				Objects.requireNonNull(valueSet.getUrl(), "valueSet.url");
+				Objects.requireNonNull(valueSet.getVersion(), "valueSet.version");
+
+				cacheEntryIds[i] = cacheEntryId(valueSet, validationSupport);
+
+				ValueSet cached = readResourceFromCache(cacheEntryIds[i], Function.identity());
+				if (cached != null)
+					results[i] = ValueSetExpansionResult.success(valueSet, cached);
+				else
+					misses.add(i);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				results[i] = ValueSetExpansionResult.failure(valueSet, e);
+			}
+		}
+
+		if (!misses.isEmpty())
+		{
+			long start = System.nanoTime();
+			List<ValueSetExpansionResult> loaded = delegate
+					.expandAll(misses.stream().map(valueSets::get).collect(Collectors.toList()));
+			long nanosPerMiss = (System.nanoTime() - start) / misses.size();
+
+			for (int j = 0; j < misses.size(); j++)
+			{
+				int i = misses.get(j);
+				results[i] = writeToCache(loaded.get(j), cacheEntryIds[i]);
+				getStatistics().miss(nanosPerMiss);
+			}
+		}
+
+		return Arrays.asList(results);
+	}
+
+	private ValueSetExpansionResult writeToCache(ValueSetExpansionResult result, String cacheEntryId)
+	{
+		if (!result.isSuccess())
+			return result;
+
+		try
+		{
+			return ValueSetExpansionResult.success(result.getValueSet(),
+					writeRsourceToCache(result.getExpansion(), Function.identity(), cacheEntryId));
+		}
+		catch (IOException e)
+		{
+			return ValueSetExpansionResult.failure(result.getValueSet(), e);
 		}
-		else
-			return writeRsourceToCache(expanded, Function.identity(), ValueSet::getUrl, ValueSet::getVersion);
 	}
 
 	@Override
@@ -61,6 +61,42 @@ public class ValueSetExpansionClientWithModifiers implements ValueSetExpansionCl
 		return expandedValueSet;
 	}
 
+	@Override
+	public List<ValueSetExpansionResult> expandAll(List<ValueSet> valueSets)
+	{
+		Objects.requireNonNull(valueSets, "valueSets");
+
+		List<ValueSet> modifiedValueSets = new ArrayList<>(valueSets.size());
+		for (ValueSet valueSet : valueSets)
+		{
+			for (ValueSetModifier modifier : valueSetModifiers)
+				valueSet = modifier.modifyPreExpansion(valueSet);
+
+			modifiedValueSets.add(valueSet);
+		}
+
+		List<ValueSetExpansionResult> delegateResults = delegate.expandAll(modifiedValueSets);
+
+		List<ValueSetExpansionResult> results = new ArrayList<>(valueSets.size());
+		for (int i = 0; i < valueSets.size(); i++)
+		{
+			ValueSetExpansionResult result = delegateResults.get(i);
+
+			if (result.isSuccess())
+			{
+				ValueSet expandedValueSet = result.getExpansion();
+				for (ValueSetModifier modifier : valueSetModifiers)
+					expandedValueSet = modifier.modifyPostExpansion(modifiedValueSets.get(i), expandedValueSet);
+
+				results.add(ValueSetExpansionResult.success(valueSets.get(i), expandedValueSet));
+			}
+			else
+				results.add(ValueSetExpansionResult.failure(valueSets.get(i), result.getError()));
+		}
+
+		return results;
+	}
+
 	@Override
 	public CapabilityStatement getMetadata() throws WebApplicationException
 	{
@@ -0,0 +1,76 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import java.util.Objects;
+
+import org.hl7.fhir.r4.model.ValueSet;
+
+/**
+ * Result of a single expansion from {@link ValueSetExpansionClient#expandAll(java.util.List)}, either the expanded
+ * ValueSet or the exception that occurred while expanding.
+ */
+public class ValueSetExpansionResult
+{
+	/**
+	 * @param valueSet
+	 *            not <code>null</code>
+	 * @param expansion
+	 *            not <code>null</code>
+	 * @return successful result
+	 */
+	public static ValueSetExpansionResult success(ValueSet valueSet, ValueSet expansion)
+	{
+		return new ValueSetExpansionResult(valueSet, Objects.requireNonNull(expansion, "expansion"), null);
+	}
+
+	/**
+	 * @param valueSet
+	 *            not <code>null</code>
+	 * @param error
+	 *            not <code>null</code>
+	 * @return failed result
+	 */
+	public static ValueSetExpansionResult failure(ValueSet valueSet, Exception error)
+	{
+		return new ValueSetExpansionResult(valueSet, null, Objects.requireNonNull(error, "error"));
+	}
+
+	private final ValueSet valueSet;
+	private final ValueSet expansion;
+	private final Exception error;
+
+	private ValueSetExpansionResult(ValueSet valueSet, ValueSet expansion, Exception error)
+	{
+		this.valueSet = Objects.requireNonNull(valueSet, "valueSet");
+		this.expansion = expansion;
+		this.error = error;
+	}
+
+	/**
+	 * @return the ValueSet to be expanded
+	 */
+	public ValueSet getValueSet()
+	{
+		return valueSet;
+	}
+
+	public boolean isSuccess()
+	{
+		return expansion != null;
+	}
+
+	/**
+	 * @return <code>null</code> if not {@link #isSuccess()}
+	 */
+	public ValueSet getExpansion()
+	{
+		return expansion;
+	}
+
+	/**
+	 * @return <code>null</code> if {@link #isSuccess()}
+	 */
+	public Exception getError()
+	{
+		return error;
+	}
+}
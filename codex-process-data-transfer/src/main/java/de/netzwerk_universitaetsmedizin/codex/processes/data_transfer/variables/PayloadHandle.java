@@ -0,0 +1,79 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Reference to a payload stored in a
+ * {@link de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadSpool}, stored as process variable
+ * instead of the payload itself.
+ */
+public class PayloadHandle
+{
+	@JsonProperty("sha256")
+	private final String sha256;
+
+	@JsonProperty("size")
+	private final long size;
+
+	@JsonProperty("path")
+	private final String path;
+
+	/**
+	 * @param sha256
+	 *            not <code>null</code>, hex encoded SHA-256 digest of the payload
+	 * @param size
+	 *            payload size in bytes
+	 * @param path
+	 *            not <code>null</code>, path of the payload file relative to the spool folder
+	 */
+	@JsonCreator
+	public PayloadHandle(@JsonProperty("sha256") String sha256, @JsonProperty("size") long size,
+			@JsonProperty("path") String path)
+	{
+		this.sha256 = Objects.requireNonNull(sha256, "sha256");
+		this.size = size;
+		this.path = Objects.requireNonNull(path, "path");
+	}
+
+	public String getSha256()
+	{
+		return sha256;
+	}
+
+	public long getSize()
+	{
+		return size;
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o)
+			return true;
+		if (o == null || getClass() != o.getClass())
+			return false;
+
+		PayloadHandle that = (PayloadHandle) o;
+		return size == that.size && sha256.equals(that.sha256) && path.equals(that.path);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(sha256, size, path);
+	}
+
+	@Override
+	public String toString()
+	{
+		return path + " (" + size + " bytes)";
+	}
+}
@@ -0,0 +1,74 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import org.camunda.bpm.engine.impl.variable.serializer.PrimitiveValueSerializer;
+import org.camunda.bpm.engine.impl.variable.serializer.ValueFields;
+import org.camunda.bpm.engine.variable.impl.value.UntypedValueImpl;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandleValues.PayloadHandleValue;
+
+/**
+ * Stores {@link PayloadHandle}s as JSON in the text column of the variable instance, without an entry in the byte array
+ * table of the engine.
+ */
+public class PayloadHandleSerializer extends PrimitiveValueSerializer<PayloadHandleValue> implements InitializingBean
+{
+	private final ObjectMapper objectMapper;
+
+	public PayloadHandleSerializer(ObjectMapper objectMapper)
+	{
+		super(PayloadHandleValues.VALUE_TYPE);
+
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(objectMapper, "objectMapper");
+	}
+
+	@Override
+	public void writeValue(PayloadHandleValue value, ValueFields valueFields)
+	{
+		PayloadHandle payloadHandle = value.getValue();
+		try
+		{
+			if (payloadHandle != null)
+				valueFields.setTextValue(objectMapper.writeValueAsString(payloadHandle));
+		}
+		catch (JsonProcessingException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public PayloadHandleValue convertToTypedValue(UntypedValueImpl untypedValue)
+	{
+		return PayloadHandleValues.create((PayloadHandle) untypedValue.getValue());
+	}
+
+	@Override
+	public PayloadHandleValue readValue(ValueFields valueFields, boolean asTransientValue)
+	{
+		String text = valueFields.getTextValue();
+
+		try
+		{
+			PayloadHandle payloadHandle = (text == null || text.isEmpty()) ? null
+					: objectMapper.readValue(text, PayloadHandle.class);
+			return PayloadHandleValues.create(payloadHandle);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
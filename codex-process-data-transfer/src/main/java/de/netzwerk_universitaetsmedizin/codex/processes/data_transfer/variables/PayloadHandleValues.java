@@ -0,0 +1,54 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables;
+
+import java.util.Map;
+
+import org.camunda.bpm.engine.variable.impl.type.PrimitiveValueTypeImpl;
+import org.camunda.bpm.engine.variable.impl.value.PrimitiveTypeValueImpl;
+import org.camunda.bpm.engine.variable.type.PrimitiveValueType;
+import org.camunda.bpm.engine.variable.value.PrimitiveValue;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+
+public class PayloadHandleValues
+{
+	public static interface PayloadHandleValue extends PrimitiveValue<PayloadHandle>
+	{
+	}
+
+	private static class PayloadHandleValueImpl extends PrimitiveTypeValueImpl<PayloadHandle>
+			implements PayloadHandleValue
+	{
+		private static final long serialVersionUID = 1L;
+
+		public PayloadHandleValueImpl(PayloadHandle value, PrimitiveValueType type)
+		{
+			super(value, type);
+		}
+	}
+
+	public static class PayloadHandleValueTypeImpl extends PrimitiveValueTypeImpl
+	{
+		private static final long serialVersionUID = 1L;
+
+		private PayloadHandleValueTypeImpl()
+		{
+			super(PayloadHandle.class);
+		}
+
+		@Override
+		public TypedValue createValue(Object value, Map<String, Object> valueInfo)
+		{
+			return new PayloadHandleValueImpl((PayloadHandle) value, VALUE_TYPE);
+		}
+	}
+
+	public static final PrimitiveValueType VALUE_TYPE = new PayloadHandleValueTypeImpl();
+
+	private PayloadHandleValues()
+	{
+	}
+
+	public static PayloadHandleValue create(PayloadHandle value)
+	{
+		return new PayloadHandleValueImpl(value, VALUE_TYPE);
+	}
+}
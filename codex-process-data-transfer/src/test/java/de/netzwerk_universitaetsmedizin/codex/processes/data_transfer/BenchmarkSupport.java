@@ -0,0 +1,193 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Warm-up and measurement loops as well as heap helpers shared by the <code>*Benchmark</code> classes. Time, CPU time
+ * and allocated bytes are measured for the calling thread, CPU time and allocations of other threads are not included.
+ */
+public final class BenchmarkSupport
+{
+	private static final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	@FunctionalInterface
+	public interface Operation
+	{
+		void run() throws Exception;
+	}
+
+	public static final class Measurement
+	{
+		private final long operations;
+		private final long nanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+
+		private Measurement(long operations, long nanos, long cpuNanos, long allocatedBytes)
+		{
+			this.operations = operations;
+			this.nanos = nanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		public long getOperations()
+		{
+			return operations;
+		}
+
+		public long getNanos()
+		{
+			return nanos;
+		}
+
+		public double getOperationsPerSecond()
+		{
+			return operations / (nanos / 1e9);
+		}
+
+		public double getMicrosPerOperation()
+		{
+			return nanos / 1e3 / operations;
+		}
+
+		public double getMillisPerOperation()
+		{
+			return nanos / 1e6 / operations;
+		}
+
+		public double getCpuMillisPerOperation()
+		{
+			return cpuNanos / 1e6 / operations;
+		}
+
+		public long getAllocatedBytesPerOperation()
+		{
+			return allocatedBytes / operations;
+		}
+
+		/**
+		 * @param bytesPerOperation
+		 *            processed bytes per operation
+		 * @return throughput in MiB per second
+		 */
+		public double getMegabytesPerSecond(long bytesPerOperation)
+		{
+			return megabytesPerSecond(bytesPerOperation * operations, nanos);
+		}
+	}
+
+	private BenchmarkSupport()
+	{
+	}
+
+	/**
+	 * Runs the operation for <b>warmupMillis</b>, then measures it for at least <b>measurementMillis</b> and
+	 * <b>minOperations</b> operations.
+	 *
+	 * @param warmupMillis
+	 *            <code>&gt;= 0</code>
+	 * @param measurementMillis
+	 *            <code>&gt;= 0</code>
+	 * @param minOperations
+	 *            <code>&gt; 0</code>
+	 * @param operation
+	 *            not <code>null</code>
+	 * @return measurement of the operations after the warm-up
+	 * @throws Exception
+	 *             if the operation fails
+	 */
+	public static Measurement measureForMillis(long warmupMillis, long measurementMillis, int minOperations,
+			Operation operation) throws Exception
+	{
+		for (long start = System.currentTimeMillis(); System.currentTimeMillis() - start < warmupMillis;)
+			operation.run();
+
+		long operations = 0;
+		long allocatedStart = threadMXBean.getCurrentThreadAllocatedBytes();
+		long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+		long start = System.nanoTime();
+		long nanos;
+		do
+		{
+			operation.run();
+			operations++;
+			nanos = System.nanoTime() - start;
+		}
+		while (nanos < measurementMillis * 1_000_000 || operations < minOperations);
+
+		return new Measurement(operations, nanos, threadMXBean.getCurrentThreadCpuTime() - cpuStart,
+				threadMXBean.getCurrentThreadAllocatedBytes() - allocatedStart);
+	}
+
+	/**
+	 * Runs the operation <b>warmupIterations</b> times, then measures <b>measurementIterations</b> operations.
+	 *
+	 * @param warmupIterations
+	 *            <code>&gt;= 0</code>
+	 * @param measurementIterations
+	 *            <code>&gt; 0</code>
+	 * @param operation
+	 *            not <code>null</code>
+	 * @return measurement of the operations after the warm-up
+	 * @throws Exception
+	 *             if the operation fails
+	 */
+	public static Measurement measureIterations(int warmupIterations, int measurementIterations, Operation operation)
+			throws Exception
+	{
+		for (int i = 0; i < warmupIterations; i++)
+			operation.run();
+
+		long allocatedStart = threadMXBean.getCurrentThreadAllocatedBytes();
+		long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < measurementIterations; i++)
+			operation.run();
+
+		long nanos = System.nanoTime() - start;
+		return new Measurement(measurementIterations, nanos, threadMXBean.getCurrentThreadCpuTime() - cpuStart,
+				threadMXBean.getCurrentThreadAllocatedBytes() - allocatedStart);
+	}
+
+	/**
+	 * @param bytes
+	 *            processed bytes
+	 * @param nanos
+	 *            <code>&gt; 0</code>
+	 * @return throughput in MiB per second
+	 */
+	public static double megabytesPerSecond(long bytes, long nanos)
+	{
+		return bytes / (1024d * 1024d) / (nanos / 1e9);
+	}
+
+	private static List<MemoryPoolMXBean> heapPools()
+	{
+		return ManagementFactory.getMemoryPoolMXBeans().stream().filter(p -> MemoryType.HEAP.equals(p.getType()))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Runs a full GC and resets the peak usage of all heap memory pools.
+	 */
+	public static void resetPeakHeapUsage()
+	{
+		System.gc();
+		heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+	}
+
+	/**
+	 * @return sum of the peak usage of all heap memory pools since JVM start or the last {@link #resetPeakHeapUsage()}
+	 */
+	public static long peakHeapUsed()
+	{
+		return heapPools().stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+	}
+}
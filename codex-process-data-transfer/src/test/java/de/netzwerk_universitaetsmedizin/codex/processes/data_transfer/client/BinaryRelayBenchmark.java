@@ -0,0 +1,247 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import dev.dsf.bpe.v1.ProcessPluginApi;
+import dev.dsf.bpe.v1.service.FhirWebserviceClientProvider;
+import dev.dsf.fhir.client.FhirWebserviceClient;
+import dev.dsf.fhir.client.FhirWebserviceClientJersey;
+import dev.dsf.fhir.service.ReferenceCleanerImpl;
+import dev.dsf.fhir.service.ReferenceExtractorImpl;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Relays Binary resources like the DTS translate process, downloading from an emulated DIC and uploading to an emulated
+ * local DSF FHIR server, with concurrent transfers. Compares
+ * {@link BinaryResourceClient#createStreaming(InputStream, String)} with the download read into a byte array before the
+ * upload, reporting wall time, aggregate throughput and peak heap usage. The emulated servers generate and discard the
+ * data without buffering it.
+ * <p>
+ * Excluded from the default test run, executed with all benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=BinaryRelayBenchmark</code>. Use a small heap to emulate a DTS, for example
+ * <code>-DargLine=-Xmx256m</code>; the payload size per transfer can be set with <code>-DpayloadSizeMiB</code> (default
+ * 128), the number of concurrent transfers with <code>-Dconcurrency</code> (default 8).
+ */
+public class BinaryRelayBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(BinaryRelayBenchmark.class);
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final String SECURITY_CONTEXT = "Organization/1";
+
+	private final FhirContext fhirContext = FhirContext.forR4();
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+
+	private volatile long payloadSize;
+
+	@FunctionalInterface
+	private interface Relay
+	{
+		long relay(BinaryResourceClient client, IdType source) throws Exception;
+	}
+
+	private void discard(HttpExchange exchange, AtomicLong received) throws IOException
+	{
+		try (InputStream in = exchange.getRequestBody())
+		{
+			byte[] buffer = new byte[CHUNK_SIZE];
+			for (int read; (read = in.read(buffer)) >= 0;)
+				received.addAndGet(read);
+		}
+	}
+
+	private void generate(HttpExchange exchange) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", MediaType.APPLICATION_OCTET_STREAM);
+		exchange.sendResponseHeaders(200, payloadSize);
+
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			for (long written = 0; written < payloadSize; written += CHUNK_SIZE)
+				out.write(chunk, 0, (int) Math.min(CHUNK_SIZE, payloadSize - written));
+		}
+	}
+
+	private void measure(String name, int concurrency, BinaryResourceClient client, IdType source, Relay relay)
+			throws Exception
+	{
+		BenchmarkSupport.resetPeakHeapUsage();
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try
+		{
+			long start = System.nanoTime();
+
+			List<Future<Long>> results = new ArrayList<>();
+			for (int i = 0; i < concurrency; i++)
+				results.add(executor.submit(() -> relay.relay(client, source)));
+
+			long relayed = 0;
+			String error = null;
+			for (Future<Long> result : results)
+			{
+				try
+				{
+					relayed += result.get();
+				}
+				catch (Exception e)
+				{
+					error = e.getCause() == null ? e.toString() : e.getCause().toString();
+				}
+			}
+
+			long nanos = System.nanoTime() - start;
+			double seconds = nanos / 1e9;
+			long peakHeap = BenchmarkSupport.peakHeapUsed();
+
+			if (error != null)
+				logger.info("{}: {} x {} MiB failed after {} s, peak heap {} MiB: {}", String.format("%-9s", name),
+						concurrency, payloadSize / 1024 / 1024, String.format("%.1f", seconds), peakHeap / 1024 / 1024,
+						error);
+			else
+				logger.info("{}: {} x {} MiB in {} s, {} MiB/s, peak heap {} MiB", String.format("%-9s", name),
+						concurrency, payloadSize / 1024 / 1024, String.format("%6.1f", seconds),
+						String.format("%7.1f", BenchmarkSupport.megabytesPerSecond(relayed, nanos)),
+						peakHeap / 1024 / 1024);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		int payloadSizeMib = Integer.getInteger("payloadSizeMiB", 128);
+		int concurrency = Integer.getInteger("concurrency", 8);
+
+		payloadSize = (long) payloadSizeMib * 1024 * 1024;
+		new Random(0).nextBytes(chunk);
+
+		AtomicLong received = new AtomicLong();
+
+		// DIC and local DSF FHIR server, separate hosts with separate connection pools in a real setup
+		HttpServer dicServer = startServer(exchange -> generate(exchange));
+		String dicBaseUrl = "http://localhost:" + dicServer.getAddress().getPort() + "/fhir";
+		HttpServer localServer = startServer(null);
+		String localBaseUrl = "http://localhost:" + localServer.getAddress().getPort() + "/fhir";
+		localServer.createContext("/fhir/Binary", exchange ->
+		{
+			try
+			{
+				discard(exchange, received);
+				exchange.getResponseHeaders().set("Location", localBaseUrl + "/Binary/2/_history/1");
+				exchange.sendResponseHeaders(201, -1);
+			}
+			finally
+			{
+				exchange.close();
+			}
+		});
+
+		try
+		{
+			ProcessPluginApi api = mock(ProcessPluginApi.class);
+			FhirWebserviceClientProvider clientProvider = mock(FhirWebserviceClientProvider.class);
+			when(api.getFhirWebserviceClientProvider()).thenReturn(clientProvider);
+			when(clientProvider.getLocalWebserviceClient()).thenReturn(createClient(localBaseUrl));
+			when(clientProvider.getWebserviceClient(dicBaseUrl)).thenReturn(createClient(dicBaseUrl));
+
+			BinaryResourceClient binaryClient = new BinaryResourceClient(api);
+			IdType source = new IdType(dicBaseUrl, "Binary", "1", "1");
+
+			logger.info("Max heap {} MiB", Runtime.getRuntime().maxMemory() / 1024 / 1024);
+
+			// warm-up
+			payloadSize = CHUNK_SIZE;
+			measure("warm-up", 1, binaryClient, source, this::relayStreaming);
+			payloadSize = (long) payloadSizeMib * 1024 * 1024;
+
+			received.set(0);
+			measure("streaming", concurrency, binaryClient, source, this::relayStreaming);
+			assertEquals(concurrency * payloadSize, received.get());
+
+			measure("buffered", concurrency, binaryClient, source, this::relayBuffered);
+		}
+		finally
+		{
+			dicServer.stop(0);
+			localServer.stop(0);
+		}
+	}
+
+	private static HttpServer startServer(HttpHandler binaryHandler) throws IOException
+	{
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+
+		if (binaryHandler != null)
+			server.createContext("/fhir/Binary", exchange ->
+			{
+				try
+				{
+					binaryHandler.handle(exchange);
+				}
+				finally
+				{
+					exchange.close();
+				}
+			});
+
+		server.start();
+		return server;
+	}
+
+	private FhirWebserviceClient createClient(String baseUrl)
+	{
+		return new FhirWebserviceClientJersey(baseUrl, null, null, null, null, null, null, null, 5000, 0, false, "test",
+				fhirContext, new ReferenceCleanerImpl(new ReferenceExtractorImpl()));
+	}
+
+	private long relayStreaming(BinaryResourceClient client, IdType source) throws Exception
+	{
+		try (InputStream in = client.read(source))
+		{
+			return client.createStreaming(in, SECURITY_CONTEXT).getSize();
+		}
+	}
+
+	private long relayBuffered(BinaryResourceClient client, IdType source) throws Exception
+	{
+		try (InputStream in = client.read(source))
+		{
+			Binary binary = new Binary().setContentType(MediaType.APPLICATION_OCTET_STREAM).setData(in.readAllBytes());
+			binary.getSecurityContext().setReference(SECURITY_CONTEXT);
+
+			client.create(binary);
+			return binary.getData().length;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+
+import dev.dsf.bpe.v1.ProcessPluginApi;
+import dev.dsf.bpe.v1.service.FhirWebserviceClientProvider;
+import dev.dsf.bpe.v1.service.OrganizationProvider;
+import dev.dsf.fhir.client.FhirWebserviceClient;
+import dev.dsf.fhir.client.PreferReturnMinimalWithRetry;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response.Status;
+
+public class BinaryResourceClientTest
+{
+	private static final String BASE_URL = "https://dts.test/fhir";
+	private static final byte[] DATA = "encrypted".getBytes(StandardCharsets.UTF_8);
+
+	private final ProcessPluginApi api = mock(ProcessPluginApi.class);
+	private final FhirWebserviceClientProvider clientProvider = mock(FhirWebserviceClientProvider.class);
+	private final OrganizationProvider organizationProvider = mock(OrganizationProvider.class);
+	private final FhirWebserviceClient client = mock(FhirWebserviceClient.class);
+	private final PreferReturnMinimalWithRetry minimalReturn = mock(PreferReturnMinimalWithRetry.class);
+
+	private final Identifier organizationIdentifier = new Identifier()
+			.setSystem("http://dsf.dev/sid/organization-identifier").setValue("crr.test");
+
+	@Before
+	public void before()
+	{
+		when(api.getFhirWebserviceClientProvider()).thenReturn(clientProvider);
+		when(api.getOrganizationProvider()).thenReturn(organizationProvider);
+		when(clientProvider.getLocalWebserviceClient()).thenReturn(client);
+		when(clientProvider.getWebserviceClient(BASE_URL)).thenReturn(client);
+		when(client.getBaseUrl()).thenReturn(BASE_URL);
+		when(client.withMinimalReturn()).thenReturn(minimalReturn);
+		when(organizationProvider.getOrganization(organizationIdentifier))
+				.thenReturn(Optional.of((Organization) new Organization().setId("4711")));
+	}
+
+	private Binary createBinary()
+	{
+		Binary binary = new Binary().setContentType(MediaType.APPLICATION_OCTET_STREAM).setData(DATA);
+		binary.getSecurityContext().setIdentifier(organizationIdentifier);
+		return binary;
+	}
+
+	private static WebApplicationException exception(Status status)
+	{
+		return new WebApplicationException(status);
+	}
+
+	@Test
+	public void testCreateRaw() throws Exception
+	{
+		when(minimalReturn.createBinary(any(InputStream.class), eq(MediaType.APPLICATION_OCTET_STREAM_TYPE),
+				eq("Organization/4711"))).thenAnswer(invocation ->
+				{
+					assertArrayEquals(DATA, invocation.getArgument(0, InputStream.class).readAllBytes());
+					return new IdType(BASE_URL, "Binary", "1", "1");
+				});
+
+		IdType id = new BinaryResourceClient(api).create(createBinary());
+
+		assertEquals("1", id.getIdPart());
+		verify(minimalReturn, never()).create(any());
+	}
+
+	@Test
+	public void testCreateFallback() throws Exception
+	{
+		when(minimalReturn.createBinary(any(), any(), any())).thenThrow(exception(Status.UNSUPPORTED_MEDIA_TYPE));
+		when(minimalReturn.create(any())).thenReturn(new IdType(BASE_URL, "Binary", "1", "1"));
+
+		BinaryResourceClient binaryClient = new BinaryResourceClient(api);
+		assertEquals("1", binaryClient.create(createBinary()).getIdPart());
+		assertEquals("1", binaryClient.create(createBinary()).getIdPart());
+
+		// raw upload not tried again
+		verify(minimalReturn, times(1)).createBinary(any(), any(), any());
+		verify(minimalReturn, times(2)).create(any());
+
+		// raw upload tried again by new instance
+		assertEquals("1", new BinaryResourceClient(api).create(createBinary()).getIdPart());
+		verify(minimalReturn, times(2)).createBinary(any(), any(), any());
+		verify(minimalReturn, times(3)).create(any());
+	}
+
+	@Test
+	public void testCreateError() throws Exception
+	{
+		when(minimalReturn.createBinary(any(), any(), any())).thenThrow(exception(Status.FORBIDDEN));
+
+		try
+		{
+			new BinaryResourceClient(api).create(createBinary());
+			fail("WebApplicationException expected");
+		}
+		catch (WebApplicationException e)
+		{
+			assertEquals(Status.FORBIDDEN.getStatusCode(), e.getResponse().getStatus());
+		}
+
+		verify(minimalReturn, never()).create(any());
+	}
+
+	@Test
+	public void testCreateStreaming() throws Exception
+	{
+		when(minimalReturn.createBinary(any(InputStream.class), eq(MediaType.APPLICATION_OCTET_STREAM_TYPE),
+				eq("Organization/4711"))).thenAnswer(invocation ->
+				{
+					assertArrayEquals(DATA, invocation.getArgument(0, InputStream.class).readAllBytes());
+					return new IdType(BASE_URL, "Binary", "1", "1");
+				});
+
+		StreamedBinary created = new BinaryResourceClient(api).createStreaming(new ByteArrayInputStream(DATA),
+				"Organization/4711");
+
+		assertEquals("1", created.getId().getIdPart());
+		assertEquals(DATA.length, created.getSize());
+		assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(DATA)),
+				created.getSha256());
+	}
+
+	@Test
+	public void testCreateStreamingMaxSizeExceeded() throws Exception
+	{
+		AtomicReference<IOException> uploadException = new AtomicReference<>();
+		when(minimalReturn.createBinary(any(InputStream.class), eq(MediaType.APPLICATION_OCTET_STREAM_TYPE),
+				eq("Organization/4711"))).thenAnswer(invocation ->
+				{
+					try
+					{
+						invocation.getArgument(0, InputStream.class).readAllBytes();
+						return new IdType(BASE_URL, "Binary", "1", "1");
+					}
+					catch (IOException e)
+					{
+						// request aborted by the HTTP client, not completed
+						uploadException.set(e);
+						throw new ProcessingException(e);
+					}
+				});
+
+		try
+		{
+			new BinaryResourceClient(api).createStreaming(new ByteArrayInputStream(DATA), "Organization/4711",
+					DATA.length - 1);
+			fail("ProcessingException expected");
+		}
+		catch (ProcessingException e)
+		{
+		}
+
+		assertNotNull(uploadException.get());
+	}
+
+	@Test
+	public void testReadRaw() throws Exception
+	{
+		when(client.readBinary("1", "2", MediaType.APPLICATION_OCTET_STREAM_TYPE))
+				.thenReturn(new ByteArrayInputStream(DATA));
+
+		try (InputStream in = new BinaryResourceClient(api).read(new IdType(BASE_URL, "Binary", "1", "2")))
+		{
+			assertArrayEquals(DATA, in.readAllBytes());
+		}
+
+		verify(client, never()).read(eq(Binary.class), any(), any());
+	}
+
+	@Test
+	public void testReadFallback() throws Exception
+	{
+		when(client.readBinary("1", MediaType.APPLICATION_OCTET_STREAM_TYPE))
+				.thenThrow(exception(Status.NOT_ACCEPTABLE));
+		when(client.read(Binary.class, "1")).thenReturn(new Binary().setData(DATA));
+
+		try (InputStream in = new BinaryResourceClient(api).read(new IdType(BASE_URL, "Binary", "1", null)))
+		{
+			assertArrayEquals(DATA, in.readAllBytes());
+		}
+	}
+}
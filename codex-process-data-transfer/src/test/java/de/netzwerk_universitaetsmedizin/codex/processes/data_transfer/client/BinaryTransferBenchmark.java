@@ -0,0 +1,197 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Operation;
+import dev.dsf.bpe.v1.ProcessPluginApi;
+import dev.dsf.bpe.v1.service.FhirWebserviceClientProvider;
+import dev.dsf.fhir.client.FhirWebserviceClient;
+import dev.dsf.fhir.client.FhirWebserviceClientJersey;
+import dev.dsf.fhir.service.ReferenceCleanerImpl;
+import dev.dsf.fhir.service.ReferenceExtractorImpl;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Compares Binary uploads and downloads with raw <code>application/octet-stream</code> bodies via
+ * {@link BinaryResourceClient} against Binary resources with base64 encoded data as FHIR JSON, using the DSF webservice
+ * client and a local HTTP server emulating the DSF FHIR server. Wall time and CPU time of the client thread are
+ * measured, the emulated server discards uploads and sends pre-encoded responses.
+ * <p>
+ * Excluded from the default test run, executed with all benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=BinaryTransferBenchmark</code>. Payload sizes from 10 MiB up to
+ * <code>-DmaxPayloadSizeMiB</code> (default 1024 MiB), FHIR JSON transfers are skipped if the payload exceeds an eighth
+ * of the max heap, use for example <code>-DargLine=-Xmx4g</code>.
+ */
+public class BinaryTransferBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(BinaryTransferBenchmark.class);
+
+	private static final int[] PAYLOAD_SIZES_MIB = { 10, 100, 1024 };
+	private static final int ITERATIONS = 3;
+
+	private static final String SECURITY_CONTEXT = "Organization/1";
+
+	private final FhirContext fhirContext = FhirContext.forR4();
+
+	private volatile byte[] rawResponse;
+	private volatile byte[] jsonResponse;
+
+	private void measure(String name, int sizeMib, Operation operation) throws Exception
+	{
+		// first run as warm-up
+		Measurement measurement = BenchmarkSupport.measureIterations(1, ITERATIONS, operation);
+
+		logger.info("{}: {} MiB, {} ms, {} ms client CPU, {} MiB/s", String.format("%-20s", name),
+				String.format("%5d", sizeMib), String.format("%8.1f", measurement.getMillisPerOperation()),
+				String.format("%8.1f", measurement.getCpuMillisPerOperation()),
+				String.format("%7.1f", measurement.getMegabytesPerSecond((long) sizeMib * 1024 * 1024)));
+	}
+
+	private static void discard(HttpExchange exchange) throws IOException
+	{
+		try (InputStream in = exchange.getRequestBody())
+		{
+			byte[] buffer = new byte[64 * 1024];
+			while (in.read(buffer) >= 0)
+				;
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException
+	{
+		if (contentType != null)
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+
+		if (body != null)
+		{
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				// the JDK HTTP server allocates a buffer of the size of each write
+				for (int offset = 0; offset < body.length; offset += 64 * 1024)
+					out.write(body, offset, Math.min(64 * 1024, body.length - offset));
+			}
+		}
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		int maxSizeMib = Integer.getInteger("maxPayloadSizeMiB", 1024);
+		long maxHeap = Runtime.getRuntime().maxMemory();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/fhir";
+		server.createContext("/fhir/Binary", exchange ->
+		{
+			try
+			{
+				if ("POST".equals(exchange.getRequestMethod()))
+				{
+					discard(exchange);
+					exchange.getResponseHeaders().set("Location", baseUrl + "/Binary/1/_history/1");
+					respond(exchange, 201, null, null);
+				}
+				else if (exchange.getRequestHeaders().getFirst("Accept").contains(MediaType.APPLICATION_OCTET_STREAM))
+					respond(exchange, 200, MediaType.APPLICATION_OCTET_STREAM, rawResponse);
+				else
+					respond(exchange, 200, "application/fhir+json", jsonResponse);
+			}
+			finally
+			{
+				exchange.close();
+			}
+		});
+		server.start();
+
+		try
+		{
+			FhirWebserviceClient client = new FhirWebserviceClientJersey(baseUrl, null, null, null, null, null, null,
+					null, 5000, 0, false, "test", fhirContext, new ReferenceCleanerImpl(new ReferenceExtractorImpl()));
+
+			ProcessPluginApi api = mock(ProcessPluginApi.class);
+			FhirWebserviceClientProvider clientProvider = mock(FhirWebserviceClientProvider.class);
+			when(api.getFhirWebserviceClientProvider()).thenReturn(clientProvider);
+			when(clientProvider.getLocalWebserviceClient()).thenReturn(client);
+			when(clientProvider.getWebserviceClient(baseUrl)).thenReturn(client);
+
+			BinaryResourceClient binaryClient = new BinaryResourceClient(api);
+			IdType id = new IdType(baseUrl, "Binary", "1", "1");
+
+			for (int sizeMib : PAYLOAD_SIZES_MIB)
+			{
+				if (sizeMib > maxSizeMib)
+					break;
+
+				long size = (long) sizeMib * 1024 * 1024;
+				boolean json = size <= maxHeap / 8;
+
+				byte[] data = new byte[(int) Math.min(size, Integer.MAX_VALUE - 8)];
+				new Random(sizeMib).nextBytes(data);
+
+				Binary binary = new Binary().setContentType(MediaType.APPLICATION_OCTET_STREAM).setData(data);
+				binary.getSecurityContext().setReference(SECURITY_CONTEXT);
+
+				measure("upload raw", sizeMib, () -> binaryClient.create(binary));
+				if (json)
+					measure("upload FHIR JSON", sizeMib, () -> client.withMinimalReturn().create(binary));
+
+				rawResponse = data;
+				measure("download raw", sizeMib, () ->
+				{
+					try (InputStream in = binaryClient.read(id))
+					{
+						assertEquals(data.length, in.transferTo(OutputStream.nullOutputStream()));
+					}
+				});
+				rawResponse = null;
+
+				if (json)
+				{
+					jsonResponse = fhirContext.newJsonParser().encodeResourceToString(binary)
+							.getBytes(StandardCharsets.UTF_8);
+					try
+					{
+						measure("download FHIR JSON", sizeMib, () -> assertEquals(data.length,
+								client.read(Binary.class, id.getIdPart(), id.getVersionIdPart()).getData().length));
+					}
+					catch (DataFormatException e)
+					{
+						// base64 string exceeds the max string length of the JSON parser
+						logger.info("FHIR JSON download of {} MiB failed: {}", sizeMib, e.getMessage());
+					}
+					jsonResponse = null;
+				}
+				else
+					logger.info("FHIR JSON transfers of {} MiB skipped, max heap {} MiB", sizeMib,
+							maxHeap / 1024 / 1024);
+			}
+		}
+		finally
+		{
+			server.stop(0);
+		}
+	}
+}
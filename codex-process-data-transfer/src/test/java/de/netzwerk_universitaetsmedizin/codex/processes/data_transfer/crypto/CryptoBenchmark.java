@@ -0,0 +1,221 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.Provider;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Operation;
+import de.rwh.utils.crypto.io.PemIo;
+
+/**
+ * Measures throughput and allocated bytes per operation of the crypto operations used in the transfer path:
+ * {@link CrrKeyProviderImpl} key loading, RSA-4096 PKCS#1 key wrapping, {@link Cipher#getInstance(String)} compared to
+ * reused cipher instances and AES-GCM as well as {@link RsaAesGcmUtil} encryption and decryption for payloads from 1
+ * KiB up to <code>-DmaxPayloadSize</code> MiB (default 64). JCA operations are measured with the JDK providers and
+ * Bouncy Castle. Excluded from the default test run, executed with all benchmarks by <code>mvn test -P benchmark</code>
+ * or alone with <code>mvn test -Dtest=CryptoBenchmark</code>, for 512 MiB payloads e.g. with
+ * <code>-DmaxPayloadSize=512 -DargLine=-Xmx4g</code>.
+ * <p>
+ * Allocations are measured for the benchmark thread by {@link BenchmarkSupport}, comparable to the normalized
+ * allocation rate of a GC profiler. Allocations of parallel worker threads are not included.
+ */
+public class CryptoBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(CryptoBenchmark.class);
+
+	private static final long WARMUP_MILLIS = 2000;
+	private static final long MEASUREMENT_MILLIS = 1000;
+	private static final int MIN_MEASUREMENT_ITERATIONS = 3;
+
+	private static final String AES_GCM = "AES/GCM/NoPadding";
+	private static final String RSA = "RSA/ECB/PKCS1Padding";
+	private static final byte[] AAD = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+	private static void measure(String name, long bytesPerOperation, Operation operation) throws Exception
+	{
+		Measurement measurement = BenchmarkSupport.measureForMillis(WARMUP_MILLIS, MEASUREMENT_MILLIS,
+				MIN_MEASUREMENT_ITERATIONS, operation);
+
+		logger.info("{}: {} ops/s, {} us/op, {} bytes allocated/op{}", String.format("%-52s", name),
+				String.format("%10.1f", measurement.getOperationsPerSecond()),
+				String.format("%12.1f", measurement.getMicrosPerOperation()),
+				String.format("%12d", measurement.getAllocatedBytesPerOperation()),
+				bytesPerOperation > 0
+						? String.format(", %.0f MB/s", measurement.getMegabytesPerSecond(bytesPerOperation))
+						: "");
+	}
+
+	private static List<Integer> payloadSizes()
+	{
+		int maxPayloadSize = Integer.getInteger("maxPayloadSize", 64) * 1024 * 1024;
+
+		List<Integer> sizes = new ArrayList<>();
+		for (long size = 1024; size <= maxPayloadSize; size *= 8)
+			sizes.add((int) size);
+
+		if (sizes.get(sizes.size() - 1) != maxPayloadSize)
+			sizes.add(maxPayloadSize);
+
+		return sizes;
+	}
+
+	private static String sizeName(int size)
+	{
+		return size >= 1024 * 1024 ? (size / 1024 / 1024) + " MiB" : (size / 1024) + " KiB";
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		KeyPair keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+		SecretKey aesKey = AesGcmUtil.generateAES256Key();
+		BouncyCastleProvider bouncyCastle = new BouncyCastleProvider();
+
+		benchmarkCrrKeyProvider(keyPair, bouncyCastle);
+		benchmarkRsaKeyWrapping(keyPair, aesKey, bouncyCastle);
+		benchmarkCipherInstances(aesKey);
+		benchmarkAesGcm(aesKey, bouncyCastle);
+		benchmarkRsaAesGcmUtil(keyPair);
+	}
+
+	private void benchmarkCrrKeyProvider(KeyPair keyPair, BouncyCastleProvider bouncyCastle) throws Exception
+	{
+		Path privateKey = Files.createTempFile("crr_private-key", ".pem");
+		Path publicKey = Files.createTempFile("crr_public-key", ".pem");
+
+		try
+		{
+			PemIo.writeNotEncryptedPrivateKeyToPkcs8(bouncyCastle, privateKey, keyPair.getPrivate());
+			PemIo.writePublicKeyToPem((RSAPublicKey) keyPair.getPublic(), publicKey);
+
+			measure("CrrKeyProviderImpl.fromFiles private-key", 0,
+					() -> assertNotNull(CrrKeyProviderImpl.fromFiles(privateKey.toString(), null).getPrivateKey()));
+			measure("CrrKeyProviderImpl.fromFiles public-key", 0,
+					() -> assertNotNull(CrrKeyProviderImpl.fromFiles(null, publicKey.toString()).getPublicKey()));
+		}
+		finally
+		{
+			Files.deleteIfExists(privateKey);
+			Files.deleteIfExists(publicKey);
+		}
+	}
+
+	private void benchmarkRsaKeyWrapping(KeyPair keyPair, SecretKey aesKey, Provider bouncyCastle) throws Exception
+	{
+		for (Provider provider : new Provider[] { Cipher.getInstance(RSA).getProvider(), bouncyCastle })
+		{
+			Cipher encrypt = Cipher.getInstance(RSA, provider);
+			Cipher decrypt = Cipher.getInstance(RSA, provider);
+
+			encrypt.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+			byte[] wrapped = encrypt.doFinal(aesKey.getEncoded());
+
+			measure("RSA-4096 wrap AES key (" + provider.getName() + ")", 0, () ->
+			{
+				encrypt.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+				encrypt.doFinal(aesKey.getEncoded());
+			});
+			measure("RSA-4096 unwrap AES key (" + provider.getName() + ")", 0, () ->
+			{
+				decrypt.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+				decrypt.doFinal(wrapped);
+			});
+		}
+	}
+
+	private void benchmarkCipherInstances(SecretKey aesKey) throws Exception
+	{
+		byte[] payload = new byte[1024];
+		Cipher reused = Cipher.getInstance(AES_GCM);
+
+		measure("AES-GCM encrypt 1 KiB, Cipher.getInstance per op", payload.length, () ->
+		{
+			Cipher cipher = Cipher.getInstance(AES_GCM);
+			cipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, AesGcmUtil.generateIv(12)));
+			cipher.updateAAD(AAD);
+			cipher.doFinal(payload);
+		});
+		measure("AES-GCM encrypt 1 KiB, reused Cipher instance", payload.length, () ->
+		{
+			reused.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, AesGcmUtil.generateIv(12)));
+			reused.updateAAD(AAD);
+			reused.doFinal(payload);
+		});
+	}
+
+	private void benchmarkAesGcm(SecretKey aesKey, Provider bouncyCastle) throws Exception
+	{
+		for (Provider provider : new Provider[] { Cipher.getInstance(AES_GCM).getProvider(), bouncyCastle })
+		{
+			for (int size : payloadSizes())
+			{
+				byte[] payload = new byte[size];
+				new Random(42).nextBytes(payload);
+				byte[] iv = AesGcmUtil.generateIv(12);
+
+				Cipher encrypt = Cipher.getInstance(AES_GCM, provider);
+				Cipher decrypt = Cipher.getInstance(AES_GCM, provider);
+
+				encrypt.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, iv));
+				encrypt.updateAAD(AAD);
+				byte[] encrypted = encrypt.doFinal(payload);
+
+				measure("AES-GCM encrypt " + sizeName(size) + " (" + provider.getName() + ")", size, () ->
+				{
+					encrypt.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, AesGcmUtil.generateIv(12)));
+					encrypt.updateAAD(AAD);
+					encrypt.doFinal(payload);
+				});
+				measure("AES-GCM decrypt " + sizeName(size) + " (" + provider.getName() + ")", size, () ->
+				{
+					decrypt.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(128, iv));
+					decrypt.updateAAD(AAD);
+					decrypt.doFinal(encrypted);
+				});
+			}
+		}
+	}
+
+	private void benchmarkRsaAesGcmUtil(KeyPair keyPair) throws Exception
+	{
+		for (int size : payloadSizes())
+		{
+			byte[] payload = new byte[size];
+			new Random(42).nextBytes(payload);
+
+			byte[] encrypted = RsaAesGcmUtil.encrypt(keyPair.getPublic(), payload);
+			assertArrayEquals(payload, RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted));
+
+			byte[] segmented = RsaAesGcmUtil.encrypt(keyPair.getPublic(), payload, PayloadCompression.NONE, 65536);
+
+			measure("RsaAesGcmUtil.encrypt " + sizeName(size), size,
+					() -> RsaAesGcmUtil.encrypt(keyPair.getPublic(), payload));
+			measure("RsaAesGcmUtil.decrypt " + sizeName(size), size,
+					() -> RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted));
+			measure("RsaAesGcmUtil.encrypt " + sizeName(size) + ", 64 KiB segments", size,
+					() -> RsaAesGcmUtil.encrypt(keyPair.getPublic(), payload, PayloadCompression.NONE, 65536));
+			measure("RsaAesGcmUtil.decrypt " + sizeName(size) + ", 64 KiB segments", size,
+					() -> RsaAesGcmUtil.decrypt(keyPair.getPrivate(), segmented));
+		}
+	}
+}
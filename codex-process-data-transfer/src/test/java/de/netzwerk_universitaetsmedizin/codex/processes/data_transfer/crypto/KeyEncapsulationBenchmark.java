@@ -0,0 +1,103 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Operation;
+
+/**
+ * Compares the per payload key encapsulation cost of RSA-4096 PKCS#1 ({@link RsaAesGcmUtil}) and X25519 with
+ * HKDF-SHA256 ({@link X25519AesGcmUtil}) on a single thread, i.e. operations per second per core, as well as the
+ * decryption of small payloads dominated by the key encapsulation. Excluded from the default test run, executed with
+ * all benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=KeyEncapsulationBenchmark</code>.
+ */
+public class KeyEncapsulationBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(KeyEncapsulationBenchmark.class);
+
+	private static final long WARMUP_MILLIS = 3000;
+	private static final long MEASUREMENT_MILLIS = 3000;
+
+	private static final String RSA = "RSA/ECB/PKCS1Padding";
+
+	private static double measure(String name, Operation operation) throws Exception
+	{
+		Measurement measurement = BenchmarkSupport.measureForMillis(WARMUP_MILLIS, MEASUREMENT_MILLIS, 1, operation);
+
+		logger.info("{}: {} ops/s, {} us/op", String.format("%-40s", name),
+				String.format("%10.1f", measurement.getOperationsPerSecond()),
+				String.format("%10.1f", measurement.getMicrosPerOperation()));
+
+		return measurement.getOperationsPerSecond();
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		logger.info("{} available processors, measuring on a single thread",
+				Runtime.getRuntime().availableProcessors());
+
+		KeyPair rsa = RsaAesGcmUtil.generateRsa4096KeyPair();
+		KeyPair x25519 = X25519AesGcmUtil.generateX25519KeyPair();
+		SecretKey aesKey = AesGcmUtil.generateAES256Key();
+
+		Cipher rsaEncrypt = Cipher.getInstance(RSA);
+		rsaEncrypt.init(Cipher.ENCRYPT_MODE, rsa.getPublic());
+		byte[] wrapped = rsaEncrypt.doFinal(aesKey.getEncoded());
+
+		byte[] x25519Payload = X25519AesGcmUtil.encrypt(x25519.getPublic(), new byte[0], PayloadCompression.NONE, 0);
+		byte[] header = Arrays.copyOf(x25519Payload, PayloadEnvelope.HEADER_LENGTH_V3);
+		byte[] encapsulatedKey = Arrays.copyOfRange(x25519Payload, PayloadEnvelope.HEADER_LENGTH_V3,
+				PayloadEnvelope.HEADER_LENGTH_V3 + X25519AesGcmUtil.PUBLIC_KEY_LENGTH);
+
+		double rsaDecapsulations = measure("RSA-4096 decapsulation (CRR)", () ->
+		{
+			Cipher cipher = Cipher.getInstance(RSA);
+			cipher.init(Cipher.DECRYPT_MODE, rsa.getPrivate());
+			cipher.doFinal(wrapped);
+		});
+		double x25519Decapsulations = measure("X25519-HKDF-SHA256 decapsulation (CRR)",
+				() -> X25519AesGcmUtil.decapsulate(x25519.getPrivate(), encapsulatedKey, header));
+
+		measure("RSA-4096 encapsulation (DIC)", () ->
+		{
+			Cipher cipher = Cipher.getInstance(RSA);
+			cipher.init(Cipher.ENCRYPT_MODE, rsa.getPublic());
+			cipher.doFinal(AesGcmUtil.generateAES256Key().getEncoded());
+		});
+		measure("X25519-HKDF-SHA256 encapsulation (DIC)",
+				() -> X25519AesGcmUtil.encrypt(x25519.getPublic(), new byte[0], PayloadCompression.NONE, 0));
+
+		for (int size : new int[] { 1024, 64 * 1024 })
+		{
+			byte[] payload = new byte[size];
+			new Random(42).nextBytes(payload);
+
+			byte[] rsaEncrypted = RsaAesGcmUtil.encrypt(rsa.getPublic(), payload, PayloadCompression.NONE);
+			byte[] x25519Encrypted = X25519AesGcmUtil.encrypt(x25519.getPublic(), payload, PayloadCompression.NONE, 0);
+			assertArrayEquals(payload, RsaAesGcmUtil.decrypt(rsa.getPrivate(), rsaEncrypted));
+			assertArrayEquals(payload, X25519AesGcmUtil.decrypt(x25519.getPrivate(), x25519Encrypted));
+
+			measure("RsaAesGcmUtil.decrypt " + size / 1024 + " KiB",
+					() -> RsaAesGcmUtil.decrypt(rsa.getPrivate(), rsaEncrypted));
+			measure("X25519AesGcmUtil.decrypt " + size / 1024 + " KiB",
+					() -> X25519AesGcmUtil.decrypt(x25519.getPrivate(), x25519Encrypted));
+		}
+
+		logger.info("X25519-HKDF-SHA256 decapsulation {}x faster than RSA-4096",
+				String.format("%.1f", x25519Decapsulations / rsaDecapsulations));
+	}
+}
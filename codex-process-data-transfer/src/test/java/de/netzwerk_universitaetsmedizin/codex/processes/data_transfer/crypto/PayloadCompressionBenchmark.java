@@ -0,0 +1,113 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+
+/**
+ * Compares encrypted size as well as encrypt and decrypt throughput of the {@link PayloadCompression}s for the demo
+ * Bundles in <code>src/test/resources/fhir/Bundle</code>. Excluded from the default test run, executed with all
+ * benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=PayloadCompressionBenchmark</code>.
+ * <p>
+ * Uses AES-GCM only, the RSA key encryption has a constant cost independent of the compression.
+ */
+public class PayloadCompressionBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(PayloadCompressionBenchmark.class);
+
+	private static final int WARMUP_ITERATIONS = 20;
+	private static final int MEASUREMENT_ITERATIONS = 50;
+
+	private static final byte[] AAD = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+	private static List<Path> bundles() throws Exception
+	{
+		try (Stream<Path> files = Files.list(Paths.get("src/test/resources/fhir/Bundle")))
+		{
+			return files.filter(f -> f.getFileName().toString().endsWith(".json")).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		List<Path> files = bundles();
+		assertFalse(files.isEmpty());
+
+		SecretKey key = AesGcmUtil.generateAES256Key();
+
+		List<byte[]> bundles = new ArrayList<>();
+		for (Path file : files)
+		{
+			byte[] bundle = Files.readAllBytes(file);
+			bundles.add(bundle);
+
+			logger.info("{}: {}", String.format("%-40s", file.getFileName()),
+					Stream.of(PayloadCompression.values())
+							.map(c -> c.getConfigValue() + " " + encryptedSize(bundle, key, c) + " bytes")
+							.collect(Collectors.joining(", ")));
+		}
+
+		long plaintextSize = bundles.stream().mapToLong(b -> b.length).sum();
+		logger.info("{} Bundles, {} bytes", bundles.size(), plaintextSize);
+
+		for (PayloadCompression compression : PayloadCompression.values())
+		{
+			List<byte[]> encrypted = new ArrayList<>(bundles.size());
+
+			Measurement encrypt = BenchmarkSupport.measureIterations(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, () ->
+			{
+				encrypted.clear();
+				for (byte[] bundle : bundles)
+					encrypted.add(AesGcmUtil.encryptPayload(bundle, AAD, key, compression));
+			});
+			Measurement decrypt = BenchmarkSupport.measureIterations(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, () ->
+			{
+				for (byte[] e : encrypted)
+					AesGcmUtil.decryptPayload(e, AAD, key);
+			});
+
+			for (int i = 0; i < bundles.size(); i++)
+				assertArrayEquals(bundles.get(i), AesGcmUtil.decryptPayload(encrypted.get(i), AAD, key));
+
+			long encryptedSize = encrypted.stream().mapToLong(e -> e.length).sum();
+
+			logger.info("{}: size {} bytes ({}%), encrypt {} MB/s, decrypt {} MB/s",
+					String.format("%-18s", compression.getConfigValue()), encryptedSize,
+					String.format("%.1f", 100d * encryptedSize / plaintextSize),
+					String.format("%.0f", encrypt.getMegabytesPerSecond(plaintextSize)),
+					String.format("%.0f", decrypt.getMegabytesPerSecond(plaintextSize)));
+		}
+	}
+
+	private static int encryptedSize(byte[] bundle, SecretKey key, PayloadCompression compression)
+	{
+		try
+		{
+			return AesGcmUtil.encryptPayload(bundle, AAD, key, compression).length;
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.SecretKey;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PayloadEnvelopeTest
+{
+	private static final byte[] AAD = "test-aad".getBytes(StandardCharsets.UTF_8);
+
+	private static KeyPair keyPair;
+	private static byte[] bundle;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception
+	{
+		keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+		bundle = Files.readAllBytes(Paths.get("src/test/resources/fhir/Bundle/dic_fhir_store_demo_psn.json"));
+	}
+
+	@Test
+	public void testRsaAesGcmEncryptDecrypt() throws Exception
+	{
+		int uncompressedSize = RsaAesGcmUtil.encrypt(keyPair.getPublic(), bundle).length;
+
+		for (PayloadCompression compression : PayloadCompression.values())
+		{
+			byte[] encrypted = RsaAesGcmUtil.encrypt(keyPair.getPublic(), bundle, compression);
+
+			assertEquals(compression, PayloadEnvelope.read(encrypted).get().getCompression());
+			assertArrayEquals(bundle, RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted));
+
+			if (!PayloadCompression.NONE.equals(compression))
+				assertTrue(compression.name(), encrypted.length < uncompressedSize / 2);
+		}
+	}
+
+	@Test
+	public void testRsaAesGcmDecryptLegacy() throws Exception
+	{
+		byte[] encrypted = RsaAesGcmUtil.encrypt(keyPair.getPublic(), bundle);
+
+		assertFalse(PayloadEnvelope.read(encrypted).isPresent());
+		assertArrayEquals(bundle, RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted));
+	}
+
+	@Test
+	public void testAesGcmEncryptDecrypt() throws Exception
+	{
+		SecretKey key = AesGcmUtil.generateAES256Key();
+
+		for (PayloadCompression compression : PayloadCompression.values())
+		{
+			byte[] encrypted = AesGcmUtil.encryptPayload(bundle, AAD, key, compression);
+
+			assertEquals(compression, PayloadEnvelope.read(encrypted).get().getCompression());
+			assertArrayEquals(bundle, AesGcmUtil.decryptPayload(encrypted, AAD, key));
+		}
+
+		assertArrayEquals(bundle, AesGcmUtil.decryptPayload(AesGcmUtil.encrypt(bundle, AAD, key), AAD, key));
+	}
+
+	@Test
+	public void testAesGcmDecryptLegacyStartingWithMagic() throws Exception
+	{
+		SecretKey key = AesGcmUtil.generateAES256Key();
+		byte[] iv = Arrays.copyOf(PayloadEnvelope.v1(PayloadCompression.DEFLATE).toHeader(), 12);
+
+		byte[] encrypted = AesGcmUtil.encryptWithStaticIv(bundle, AAD, key, iv);
+		byte[] legacy = Arrays.copyOf(iv, iv.length + encrypted.length);
+		System.arraycopy(encrypted, 0, legacy, iv.length, encrypted.length);
+
+		assertTrue(PayloadEnvelope.read(legacy).isPresent());
+		assertArrayEquals(bundle, AesGcmUtil.decryptPayload(legacy, AAD, key));
+	}
+
+	@Test
+	public void testHeaderAuthenticated() throws Exception
+	{
+		byte[] encrypted = RsaAesGcmUtil.encrypt(keyPair.getPublic(), bundle, PayloadCompression.DEFLATE);
+		encrypted[PayloadEnvelope.HEADER_LENGTH - 1] = (byte) PayloadCompression.DEFLATE_DICTIONARY_V1.getId();
+
+		try
+		{
+			RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted);
+			fail("BadPaddingException expected");
+		}
+		catch (BadPaddingException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testDictionaryUnchanged() throws Exception
+	{
+		// payloads compressed with a changed dictionary can not be decompressed, add a new PayloadCompression instead
+		assertEquals("d6e3b052c7a3bb6c5f2cd65ebcd000d48550b27b1825b92ba44cba63f9b9ee1e", HexFormat.of().formatHex(
+				MessageDigest.getInstance("SHA-256").digest(PayloadCompression.DEFLATE_DICTIONARY_V1.getDictionary())));
+	}
+
+	@Test
+	public void testFromConfigValue() throws Exception
+	{
+		assertEquals(PayloadCompression.NONE, PayloadCompression.fromConfigValue("none"));
+		assertEquals(PayloadCompression.DEFLATE, PayloadCompression.fromConfigValue("Deflate"));
+		assertEquals(PayloadCompression.DEFLATE_DICTIONARY_V1,
+				PayloadCompression.fromConfigValue("deflate-dictionary"));
+
+		try
+		{
+			PayloadCompression.fromConfigValue("zstd");
+			fail("IllegalArgumentException expected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testDecompressLimit() throws Exception
+	{
+		// highly compressible, 1 MiB of zeros deflates to about 1 KiB
+		byte[] zeros = new byte[1024 * 1024];
+
+		for (PayloadCompression compression : PayloadCompression.values())
+		{
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream out = compression.compress(compressed))
+			{
+				out.write(zeros);
+			}
+
+			assertArrayEquals(zeros, compression.decompress(compressed.toByteArray()));
+
+			try (InputStream in = compression.decompress(new ByteArrayInputStream(compressed.toByteArray()),
+					zeros.length - 1))
+			{
+				in.readAllBytes();
+				fail("IOException expected");
+			}
+			catch (IOException e)
+			{
+				// expected
+			}
+		}
+	}
+}
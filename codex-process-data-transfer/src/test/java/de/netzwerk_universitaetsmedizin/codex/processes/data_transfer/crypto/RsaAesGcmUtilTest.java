@@ -1,9 +1,13 @@
 package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
+import java.util.Random;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -26,4 +30,23 @@ public class RsaAesGcmUtilTest
 
 		assertEquals(text, new String(decrypted, StandardCharsets.UTF_8));
 	}
+
+	@Test
+	public void testEncryptStreamingDecrypt() throws Exception
+	{
+		KeyPair keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+
+		byte[] data = new byte[100_000];
+		new Random(42).nextBytes(data);
+
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		try (OutputStream out = RsaAesGcmUtil.encrypt(keyPair.getPublic(), encrypted))
+		{
+			for (int i = 0; i < data.length; i += 1000)
+				out.write(data, i, 1000);
+		}
+
+		assertEquals(RsaAesGcmUtil.encrypt(keyPair.getPublic(), data).length, encrypted.size());
+		assertArrayEquals(data, RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted.toByteArray()));
+	}
 }
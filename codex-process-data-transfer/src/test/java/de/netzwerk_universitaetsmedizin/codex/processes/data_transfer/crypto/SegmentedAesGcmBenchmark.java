@@ -0,0 +1,113 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Operation;
+
+/**
+ * Compares decryption of a single AES-GCM invocation with {@link SegmentedAesGcm} decryption of in-memory payloads
+ * (parallel) and streams, including the time until the first plaintext byte is available, measured separately by
+ * opening a stream and reading one byte. Excluded from the default test run, executed with all benchmarks by
+ * <code>mvn test -P benchmark</code> or alone with <code>mvn test -Dtest=SegmentedAesGcmBenchmark</code>, payload size
+ * in MiB configurable with <code>-DpayloadSize=256</code>.
+ */
+public class SegmentedAesGcmBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(SegmentedAesGcmBenchmark.class);
+
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+
+	private static final int[] SEGMENT_SIZES = { 16 * 1024, 64 * 1024, 1024 * 1024 };
+
+	private static final byte[] AAD = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		int payloadSize = Integer.getInteger("payloadSize", 64) * 1024 * 1024;
+
+		byte[] plaintext = new byte[payloadSize];
+		new Random(42).nextBytes(plaintext);
+
+		SecretKey key = AesGcmUtil.generateAES256Key();
+
+		logger.info("{} MiB payload, {} available processors", payloadSize / 1024 / 1024,
+				Runtime.getRuntime().availableProcessors());
+
+		// large payloads are decrypted with few invocations, results of the variants measured first depend on JIT
+		// compilation triggered by the variants measured later without an unreported first pass
+		benchmark(plaintext, key, false);
+		benchmark(plaintext, key, true);
+	}
+
+	private void benchmark(byte[] plaintext, SecretKey key, boolean report) throws Exception
+	{
+		int payloadSize = plaintext.length;
+
+		byte[] single = AesGcmUtil.encrypt(plaintext, AAD, key);
+		assertArrayEquals(plaintext, AesGcmUtil.decrypt(single, AAD, key));
+		Measurement singleDecrypt = measure(() -> AesGcmUtil.decrypt(single, AAD, key));
+		log("single AES-GCM", payloadSize, report, singleDecrypt, singleDecrypt);
+
+		for (int segmentSize : SEGMENT_SIZES)
+		{
+			ByteArrayOutputStream encrypted = new ByteArrayOutputStream(payloadSize + payloadSize / 100);
+			try (OutputStream out = SegmentedAesGcm.encrypt(encrypted, AAD, key, segmentSize))
+			{
+				out.write(plaintext);
+			}
+			byte[] segmented = encrypted.toByteArray();
+			assertArrayEquals(plaintext, SegmentedAesGcm.decrypt(segmented, 0, AAD, key, segmentSize));
+
+			Measurement inMemory = measure(() -> SegmentedAesGcm.decrypt(segmented, 0, AAD, key, segmentSize));
+			log("segmented " + segmentSize / 1024 + " KiB, in-memory", payloadSize, report, inMemory, inMemory);
+
+			Measurement stream = measure(() ->
+			{
+				try (InputStream in = SegmentedAesGcm.decrypt(new ByteArrayInputStream(segmented), AAD, key,
+						segmentSize))
+				{
+					in.transferTo(OutputStream.nullOutputStream());
+				}
+			});
+			Measurement firstByte = measure(() ->
+			{
+				try (InputStream in = SegmentedAesGcm.decrypt(new ByteArrayInputStream(segmented), AAD, key,
+						segmentSize))
+				{
+					in.read();
+				}
+			});
+			log("segmented " + segmentSize / 1024 + " KiB, stream", payloadSize, report, stream, firstByte);
+		}
+	}
+
+	private static Measurement measure(Operation decryption) throws Exception
+	{
+		return BenchmarkSupport.measureIterations(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, decryption);
+	}
+
+	private static void log(String name, int payloadSize, boolean report, Measurement decryption, Measurement firstByte)
+	{
+		if (report)
+			logger.info("{}: decrypt {} MB/s, first plaintext byte after {} ms", String.format("%-29s", name),
+					String.format("%.0f", decryption.getMegabytesPerSecond(payloadSize)),
+					String.format("%.1f", firstByte.getMillisPerOperation()));
+	}
+}
@@ -0,0 +1,231 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.util.HexFormat;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SegmentedAesGcmTest
+{
+	private static final HexFormat HEX = HexFormat.of();
+
+	private static JsonNode testVectors;
+	private static SecretKey key;
+	private static byte[] aad;
+	private static byte[] noncePrefix;
+
+	private static KeyPair keyPair;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception
+	{
+		try (InputStream in = SegmentedAesGcmTest.class.getResourceAsStream("/crypto/segmented-aes-gcm-vectors.json"))
+		{
+			testVectors = new ObjectMapper().readTree(in);
+		}
+
+		key = new SecretKeySpec(HEX.parseHex(testVectors.get("key").asText()), "AES");
+		aad = HEX.parseHex(testVectors.get("aad").asText());
+		noncePrefix = HEX.parseHex(testVectors.get("noncePrefix").asText());
+
+		keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+	}
+
+	private static byte[] encrypt(byte[] plaintext, int segmentSize, int chunkSize) throws Exception
+	{
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		try (OutputStream out = SegmentedAesGcm.encrypt(encrypted, aad, key, segmentSize, noncePrefix))
+		{
+			for (int i = 0; i < plaintext.length; i += chunkSize)
+				out.write(plaintext, i, Math.min(chunkSize, plaintext.length - i));
+		}
+
+		return encrypted.toByteArray();
+	}
+
+	private static byte[] decryptStream(byte[] encrypted, int segmentSize) throws Exception
+	{
+		try (InputStream in = SegmentedAesGcm.decrypt(new ByteArrayInputStream(encrypted), aad, key, segmentSize))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+	@Test
+	public void testVectorsEncrypt() throws Exception
+	{
+		for (JsonNode vector : testVectors.get("vectors"))
+		{
+			if (!vector.get("valid").asBoolean())
+				continue;
+
+			byte[] plaintext = HEX.parseHex(vector.get("plaintext").asText());
+			int segmentSize = vector.get("segmentSize").asInt();
+
+			for (int chunkSize : new int[] { 1, 7, segmentSize, plaintext.length + 1 })
+				assertEquals(vector.get("name").asText(), vector.get("ciphertext").asText(),
+						HEX.formatHex(encrypt(plaintext, segmentSize, chunkSize)));
+		}
+	}
+
+	@Test
+	public void testVectorsDecrypt() throws Exception
+	{
+		for (JsonNode vector : testVectors.get("vectors"))
+		{
+			String name = vector.get("name").asText();
+			byte[] ciphertext = HEX.parseHex(vector.get("ciphertext").asText());
+			int segmentSize = vector.get("segmentSize").asInt();
+
+			if (vector.get("valid").asBoolean())
+			{
+				byte[] plaintext = HEX.parseHex(vector.get("plaintext").asText());
+
+				assertArrayEquals(name, plaintext, SegmentedAesGcm.decrypt(ciphertext, 0, aad, key, segmentSize));
+				assertArrayEquals(name, plaintext, decryptStream(ciphertext, segmentSize));
+			}
+			else
+			{
+				try
+				{
+					SegmentedAesGcm.decrypt(ciphertext, 0, aad, key, segmentSize);
+					fail(name + ": BadPaddingException expected");
+				}
+				catch (BadPaddingException e)
+				{
+					// expected
+				}
+
+				try
+				{
+					decryptStream(ciphertext, segmentSize);
+					fail(name + ": IOException expected");
+				}
+				catch (IOException e)
+				{
+					// expected
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testStreamingDecryptFailsAtModifiedSegment() throws Exception
+	{
+		int segmentSize = 1024;
+		byte[] plaintext = new byte[10 * segmentSize];
+		new Random(42).nextBytes(plaintext);
+
+		byte[] encrypted = encrypt(plaintext, segmentSize, 100);
+		encrypted[SegmentedAesGcm.NONCE_PREFIX_LENGTH + 3 * (segmentSize + SegmentedAesGcm.TAG_LENGTH) + 10] ^= 1;
+
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		try (InputStream in = SegmentedAesGcm.decrypt(new ByteArrayInputStream(encrypted), aad, key, segmentSize))
+		{
+			in.transferTo(decrypted);
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getCause() instanceof AEADBadTagException);
+		}
+
+		// plaintext of the first three segments released before the modified segment
+		assertEquals(3 * segmentSize, decrypted.size());
+	}
+
+	@Test
+	public void testRsaAesGcmSegmented() throws Exception
+	{
+		byte[] data = new byte[100_000];
+		new Random(42).nextBytes(data);
+
+		for (PayloadCompression compression : PayloadCompression.values())
+		{
+			byte[] encrypted = RsaAesGcmUtil.encrypt(keyPair.getPublic(), data, compression, 4096);
+
+			PayloadEnvelope envelope = PayloadEnvelope.read(encrypted).get();
+			assertEquals(PayloadEnvelope.VERSION_2, envelope.getVersion());
+			assertEquals(compression, envelope.getCompression());
+			assertEquals(4096, envelope.getSegmentSize());
+
+			assertArrayEquals(data, RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted));
+
+			try (InputStream in = RsaAesGcmUtil.decrypt(keyPair.getPrivate(), new ByteArrayInputStream(encrypted)))
+			{
+				assertArrayEquals(data, in.readAllBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testRsaAesGcmStreamingDecryptSingleInvocation() throws Exception
+	{
+		byte[] data = "legacy".getBytes();
+
+		for (byte[] encrypted : new byte[][] { RsaAesGcmUtil.encrypt(keyPair.getPublic(), data),
+				RsaAesGcmUtil.encrypt(keyPair.getPublic(), data, PayloadCompression.DEFLATE) })
+		{
+			try (InputStream in = RsaAesGcmUtil.decrypt(keyPair.getPrivate(), new ByteArrayInputStream(encrypted)))
+			{
+				assertArrayEquals(data, in.readAllBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testSegmentSizeAuthenticated() throws Exception
+	{
+		byte[] encrypted = RsaAesGcmUtil.encrypt(keyPair.getPublic(), new byte[10_000], PayloadCompression.NONE, 2048);
+
+		// segment size 2048 -> 4096
+		encrypted[PayloadEnvelope.HEADER_LENGTH_V2 - 2] = 0x10;
+		assertEquals(4096, PayloadEnvelope.read(encrypted).get().getSegmentSize());
+
+		try
+		{
+			RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted);
+			fail("BadPaddingException expected");
+		}
+		catch (BadPaddingException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testEnvelopeSegmentSize() throws Exception
+	{
+		assertFalse(PayloadEnvelope.isSupportedSegmentSize(PayloadEnvelope.MIN_SEGMENT_SIZE - 1));
+		assertTrue(PayloadEnvelope.isSupportedSegmentSize(PayloadEnvelope.MIN_SEGMENT_SIZE));
+		assertTrue(PayloadEnvelope.isSupportedSegmentSize(PayloadEnvelope.MAX_SEGMENT_SIZE));
+		assertFalse(PayloadEnvelope.isSupportedSegmentSize(PayloadEnvelope.MAX_SEGMENT_SIZE + 1));
+
+		byte[] header = PayloadEnvelope.v2(PayloadCompression.DEFLATE, 65536).toHeader();
+		assertEquals("ff4e554d020100010000", HEX.formatHex(header));
+
+		header[PayloadEnvelope.HEADER_LENGTH] = 0x7F;
+		assertFalse(PayloadEnvelope.read(header).isPresent());
+	}
+}
@@ -0,0 +1,188 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.XECPublicKey;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import javax.crypto.BadPaddingException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class X25519AesGcmUtilTest
+{
+	private static final HexFormat HEX = HexFormat.of();
+
+	private static final String PRIVATE_KEY_FILE = "src/test/resources/crypto/x25519-private-key.pem";
+	private static final String PUBLIC_KEY_FILE = "src/test/resources/crypto/x25519-public-key.pem";
+
+	private static PrivateKey privateKey;
+	private static PublicKey publicKey;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception
+	{
+		// created with openssl genpkey -algorithm X25519 and openssl pkey -pubout
+		privateKey = CrrKeyProviderImpl.fromFiles(null, null, PRIVATE_KEY_FILE, null).getX25519PrivateKey();
+		publicKey = CrrKeyProviderImpl.fromFiles(null, null, null, PUBLIC_KEY_FILE).getX25519PublicKey();
+	}
+
+	@Test
+	public void testKeyProviderFromFiles() throws Exception
+	{
+		assertTrue(X25519AesGcmUtil.isX25519Key(privateKey));
+		assertTrue(X25519AesGcmUtil.isX25519Key(publicKey));
+		assertEquals("3a323db42156cb79693d1d93d3f8b703394de42ee55b242db5f70ffc0d40d31c",
+				HEX.formatHex(X25519AesGcmUtil.encode((XECPublicKey) publicKey)));
+
+		CrrKeyProvider crr = CrrKeyProviderImpl.fromFiles(null, null, PRIVATE_KEY_FILE, null);
+		assertNull(crr.getPrivateKey());
+		assertNull(crr.getX25519PublicKey());
+
+		CrrKeyProvider dic = CrrKeyProviderImpl.fromFiles(null, null, null, PUBLIC_KEY_FILE);
+		assertNull(dic.getPublicKey());
+		assertEquals(dic.getX25519PublicKey(), dic.getEncryptionPublicKey());
+
+		try
+		{
+			CrrKeyProviderImpl.fromFiles(null, null, PRIVATE_KEY_FILE, PUBLIC_KEY_FILE);
+			fail("RuntimeException expected");
+		}
+		catch (RuntimeException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testDecapsulateKnownAnswer() throws Exception
+	{
+		// RFC 7748 section 6.1 public-key of Alice as ephemeral public-key, expected key computed independently with
+		// the python cryptography library
+		byte[] encapsulatedKey = HEX.parseHex("8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a");
+		byte[] header = PayloadEnvelope
+				.v3(PayloadCompression.DEFLATE_DICTIONARY_V1, PayloadKeyEncapsulation.X25519_HKDF_SHA256, 65536)
+				.toHeader();
+
+		assertEquals("ff4e554d03020100010000", HEX.formatHex(header));
+		assertEquals("6c839a6ef14b78ffc5a6561ba393c060a1b52ef6bf331426da67512a0820d0a1",
+				HEX.formatHex(X25519AesGcmUtil.decapsulate(privateKey, encapsulatedKey, header).getEncoded()));
+	}
+
+	@Test
+	public void testEncodeDecode() throws Exception
+	{
+		for (int i = 0; i < 10; i++)
+		{
+			XECPublicKey key = (XECPublicKey) X25519AesGcmUtil.generateX25519KeyPair().getPublic();
+			byte[] encoded = X25519AesGcmUtil.encode(key);
+
+			assertEquals(X25519AesGcmUtil.PUBLIC_KEY_LENGTH, encoded.length);
+			assertEquals(key.getU(), ((XECPublicKey) X25519AesGcmUtil.decode(encoded)).getU());
+		}
+	}
+
+	@Test
+	public void testEncryptDecrypt() throws Exception
+	{
+		byte[] data = new byte[100_000];
+		new Random(42).nextBytes(data);
+
+		for (PayloadCompression compression : PayloadCompression.values())
+		{
+			for (int segmentSize : new int[] { 0, 4096 })
+			{
+				byte[] encrypted = X25519AesGcmUtil.encrypt(publicKey, data, compression, segmentSize);
+
+				PayloadEnvelope envelope = PayloadEnvelope.read(encrypted).get();
+				assertEquals(PayloadEnvelope.VERSION_3, envelope.getVersion());
+				assertEquals(PayloadKeyEncapsulation.X25519_HKDF_SHA256, envelope.getKeyEncapsulation());
+				assertEquals(compression, envelope.getCompression());
+				assertEquals(segmentSize, envelope.getSegmentSize());
+				assertTrue(X25519AesGcmUtil.isX25519Payload(encrypted));
+
+				assertArrayEquals(data, X25519AesGcmUtil.decrypt(privateKey, encrypted));
+
+				try (InputStream in = X25519AesGcmUtil.decrypt(privateKey, new ByteArrayInputStream(encrypted)))
+				{
+					assertArrayEquals(data, in.readAllBytes());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRsaPayloadsNotX25519() throws Exception
+	{
+		KeyPair rsa = RsaAesGcmUtil.generateRsa4096KeyPair();
+		byte[] data = "rsa".getBytes();
+
+		for (byte[] encrypted : new byte[][] { RsaAesGcmUtil.encrypt(rsa.getPublic(), data),
+				RsaAesGcmUtil.encrypt(rsa.getPublic(), data, PayloadCompression.DEFLATE),
+				RsaAesGcmUtil.encrypt(rsa.getPublic(), data, PayloadCompression.NONE, 1024) })
+		{
+			assertFalse(X25519AesGcmUtil.isX25519Payload(encrypted));
+			assertArrayEquals(data, RsaAesGcmUtil.decrypt(rsa.getPrivate(), encrypted));
+		}
+
+		assertFalse(X25519AesGcmUtil.isX25519Key(rsa.getPublic()));
+	}
+
+	@Test
+	public void testModifiedPayloadFails() throws Exception
+	{
+		byte[] encrypted = X25519AesGcmUtil.encrypt(publicKey, new byte[10_000], PayloadCompression.NONE, 1024);
+		int keyOffset = PayloadEnvelope.HEADER_LENGTH_V3;
+
+		// compression, segment size, ephemeral public-key and data
+		for (int index : new int[] { PayloadEnvelope.HEADER_LENGTH - 1, keyOffset - 1, keyOffset + 5,
+				keyOffset + X25519AesGcmUtil.PUBLIC_KEY_LENGTH + 100 })
+		{
+			byte[] modified = Arrays.copyOf(encrypted, encrypted.length);
+			modified[index] ^= 1;
+
+			try
+			{
+				X25519AesGcmUtil.decrypt(privateKey, modified);
+				fail("BadPaddingException expected for modified byte " + index);
+			}
+			catch (BadPaddingException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testLowOrderEphemeralKeyRejected() throws Exception
+	{
+		byte[] encrypted = X25519AesGcmUtil.encrypt(publicKey, new byte[100], PayloadCompression.NONE, 0);
+		Arrays.fill(encrypted, PayloadEnvelope.HEADER_LENGTH_V3,
+				PayloadEnvelope.HEADER_LENGTH_V3 + X25519AesGcmUtil.PUBLIC_KEY_LENGTH, (byte) 0);
+
+		try
+		{
+			X25519AesGcmUtil.decrypt(privateKey, encrypted);
+			fail("InvalidKeyException expected");
+		}
+		catch (InvalidKeyException e)
+		{
+			assertNotNull(e.getMessage());
+		}
+	}
+}
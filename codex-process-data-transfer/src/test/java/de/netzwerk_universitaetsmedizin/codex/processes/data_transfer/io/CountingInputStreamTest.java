@@ -0,0 +1,75 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class CountingInputStreamTest
+{
+	private static final class EndlessInputStream extends InputStream
+	{
+		@Override
+		public int read()
+		{
+			return 0;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			return len;
+		}
+	}
+
+	@Test
+	public void testCount() throws Exception
+	{
+		byte[] data = new byte[100];
+		try (CountingInputStream counting = new CountingInputStream(new ByteArrayInputStream(data)))
+		{
+			assertEquals(0, counting.read());
+			assertEquals(9, counting.skip(9));
+			assertArrayEquals(new byte[90], counting.readAllBytes());
+
+			assertEquals(100, counting.getCount());
+		}
+	}
+
+	@Test
+	public void testLimit() throws Exception
+	{
+		try (CountingInputStream counting = new CountingInputStream(new ByteArrayInputStream(new byte[10]), 10))
+		{
+			assertEquals(10, counting.readAllBytes().length);
+		}
+
+		try (CountingInputStream counting = new CountingInputStream(new ByteArrayInputStream(new byte[11]), 10))
+		{
+			counting.readAllBytes();
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+		}
+	}
+
+	@Test
+	public void testLimitAboveIntegerMaxValue() throws Exception
+	{
+		try (CountingInputStream counting = new CountingInputStream(new EndlessInputStream(), Integer.MAX_VALUE))
+		{
+			counting.transferTo(OutputStream.nullOutputStream());
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+		}
+	}
+}
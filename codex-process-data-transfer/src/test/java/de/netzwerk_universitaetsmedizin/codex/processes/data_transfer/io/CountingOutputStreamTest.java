@@ -0,0 +1,71 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class CountingOutputStreamTest
+{
+	@Test
+	public void testCount() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (CountingOutputStream counting = new CountingOutputStream(out))
+		{
+			counting.write(1);
+			counting.write(new byte[100], 10, 50);
+
+			assertEquals(51, counting.getCount());
+		}
+
+		assertEquals(51, out.size());
+	}
+
+	@Test
+	public void testLimit() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CountingOutputStream counting = new CountingOutputStream(out, 10);
+		counting.write(new byte[9]);
+		counting.write(1);
+
+		try
+		{
+			counting.write(1);
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+		}
+
+		assertEquals(10, counting.getCount());
+		assertEquals(10, out.size());
+	}
+
+	@Test
+	public void testLimitAboveIntegerMaxValue() throws Exception
+	{
+		CountingOutputStream counting = new CountingOutputStream(OutputStream.nullOutputStream(), Integer.MAX_VALUE);
+		byte[] chunk = new byte[64 * 1024 * 1024];
+
+		try
+		{
+			// 2^31 bytes, one more than Integer.MAX_VALUE
+			for (int i = 0; i < 32; i++)
+				counting.write(chunk);
+
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+		}
+
+		// last chunk rejected completely
+		assertEquals(31L * chunk.length, counting.getCount());
+	}
+}
@@ -0,0 +1,148 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class PipedTransferTest
+{
+	@Test
+	public void testTransfer() throws Exception
+	{
+		long read = PipedTransfer.transfer("test-producer", out ->
+		{
+			byte[] chunk = new byte[1000];
+			for (int i = 0; i < 10_000; i++)
+				out.write(chunk);
+		}, PipedTransferTest::count, 1024);
+
+		assertEquals(10_000_000L, read);
+	}
+
+	@Test
+	public void testProducerFails() throws Exception
+	{
+		IOException producerException = new IOException("test");
+		AtomicReference<Exception> consumerException = new AtomicReference<>();
+
+		try
+		{
+			PipedTransfer.transfer("test-producer", out ->
+			{
+				out.write(new byte[10_000]);
+				throw producerException;
+			}, in ->
+			{
+				try
+				{
+					return count(in);
+				}
+				catch (IOException e)
+				{
+					consumerException.set(e);
+					throw e;
+				}
+			}, 1024);
+
+			fail("Exception expected");
+		}
+		catch (IOException e)
+		{
+			assertSame(producerException, e);
+		}
+
+		// consumer must not see a regular end of stream
+		assertTrue(consumerException.get() instanceof IOException);
+		assertSame(producerException, consumerException.get().getCause());
+	}
+
+	@Test
+	public void testProducerFailsWithError() throws Exception
+	{
+		Error producerError = new OutOfMemoryError("test");
+		AtomicReference<Exception> consumerException = new AtomicReference<>();
+
+		try
+		{
+			PipedTransfer.transfer("test-producer", out ->
+			{
+				out.write(new byte[10_000]);
+				throw producerError;
+			}, in ->
+			{
+				try
+				{
+					return count(in);
+				}
+				catch (IOException e)
+				{
+					consumerException.set(e);
+					throw e;
+				}
+			}, 1024);
+
+			fail("Error expected");
+		}
+		catch (OutOfMemoryError e)
+		{
+			assertSame(producerError, e);
+		}
+
+		// consumer must not see a regular end of stream
+		assertTrue(consumerException.get() instanceof IOException);
+		assertSame(producerError, consumerException.get().getCause());
+	}
+
+	@Test
+	public void testConsumerFails() throws Exception
+	{
+		IllegalStateException consumerException = new IllegalStateException("test");
+		AtomicReference<Exception> producerException = new AtomicReference<>();
+
+		try
+		{
+			PipedTransfer.transfer("test-producer", out ->
+			{
+				try
+				{
+					// larger than the pipe buffer, blocks until the consumer closes the pipe
+					for (int i = 0; i < 100; i++)
+						out.write(new byte[1024]);
+				}
+				catch (IOException e)
+				{
+					producerException.set(e);
+				}
+			}, in ->
+			{
+				in.read(new byte[10]);
+				throw consumerException;
+			}, 1024);
+
+			fail("Exception expected");
+		}
+		catch (IllegalStateException e)
+		{
+			assertSame(consumerException, e);
+		}
+
+		assertTrue(producerException.get() instanceof IOException);
+	}
+
+	private static long count(InputStream in) throws IOException
+	{
+		byte[] buffer = new byte[4096];
+		long count = 0;
+		for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+			count += read;
+
+		return count;
+	}
+}
@@ -0,0 +1,85 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReplacingWriterTest
+{
+	private static String replace(String text, String search, String replacement, int chunkSize) throws Exception
+	{
+		StringWriter result = new StringWriter();
+		try (ReplacingWriter writer = new ReplacingWriter(result, search, replacement))
+		{
+			for (int i = 0; i < text.length(); i += chunkSize)
+				writer.write(text, i, Math.min(chunkSize, text.length() - i));
+		}
+
+		return result.toString();
+	}
+
+	private static void assertReplaced(String text, String search, String replacement) throws Exception
+	{
+		for (int chunkSize : new int[] { 1, 2, 3, 7, text.length() + 1 })
+			assertEquals("chunk size " + chunkSize, text.replace(search, replacement),
+					replace(text, search, replacement, chunkSize));
+	}
+
+	@Test
+	public void testReplace() throws Exception
+	{
+		assertReplaced("{\"value\":\"dic-123\"}", "dic-123", "${pseudonym}");
+		assertReplaced("dic-123dic-123 dic-12 dic-1234", "dic-123", "x");
+		assertReplaced("no match", "dic-123", "x");
+		assertReplaced("", "dic-123", "x");
+	}
+
+	@Test
+	public void testPartialMatchAtEnd() throws Exception
+	{
+		assertReplaced("text dic-12", "dic-123", "x");
+		assertReplaced("aaa", "aab", "x");
+	}
+
+	@Test
+	public void testSelfOverlappingSearch() throws Exception
+	{
+		assertReplaced("aaab aab ab", "aab", "X");
+		assertReplaced("abababa abab", "aba", "X");
+		assertReplaced("aaaaa", "aa", "b");
+		assertReplaced("abcabcabd abcabd", "abcabd", "X");
+	}
+
+	@Test
+	public void testReplacementContainsSearch() throws Exception
+	{
+		assertReplaced("a-b-a", "a", "aa");
+	}
+
+	@Test
+	public void testRandom() throws Exception
+	{
+		Random random = new Random(42);
+
+		for (int i = 0; i < 1000; i++)
+		{
+			String text = randomString(random, random.nextInt(200));
+			String search = randomString(random, 1 + random.nextInt(5));
+			String replacement = randomString(random, random.nextInt(4));
+
+			assertEquals(text.replace(search, replacement), replace(text, search, replacement, 1 + random.nextInt(10)));
+		}
+	}
+
+	private static String randomString(Random random, int length)
+	{
+		StringBuilder b = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+			b.append((char) ('a' + random.nextInt(3)));
+
+		return b.toString();
+	}
+}
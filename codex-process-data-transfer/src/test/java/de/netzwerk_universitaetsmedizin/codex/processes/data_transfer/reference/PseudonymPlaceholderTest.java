@@ -0,0 +1,98 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.Consent;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.Test;
+
+public class PseudonymPlaceholderTest
+{
+	private static final String PSEUDONYM = "dic-test-123";
+
+	private static Identifier identifier(String system, String value)
+	{
+		return new Identifier().setSystem(system).setValue(value);
+	}
+
+	private static Bundle createBundle(String system, String value)
+	{
+		Bundle bundle = new Bundle();
+
+		Patient patient = new Patient();
+		patient.addIdentifier(identifier(system, value));
+		patient.addIdentifier(identifier("http://example.org/sid/other", PSEUDONYM));
+		bundle.addEntry().setResource(patient);
+
+		Observation observation = new Observation();
+		observation.setSubject(new Reference().setIdentifier(identifier(system, value)));
+		observation.setValue(new StringType("text containing " + value + " and " + system));
+		observation.addNote().setText(value);
+		bundle.addEntry().setResource(observation);
+
+		Condition contained = new Condition();
+		contained.setSubject(new Reference().setIdentifier(identifier(system, value)));
+		Condition condition = new Condition();
+		condition.setSubject(new Reference().setIdentifier(identifier(system, value)));
+		condition.addContained(contained);
+		bundle.addEntry().setResource(condition);
+
+		Consent consent = new Consent();
+		consent.setPatient(new Reference().setIdentifier(identifier(system, value)));
+		bundle.addEntry().setResource(consent);
+
+		return bundle;
+	}
+
+	@Test
+	public void testReplacePseudonym() throws Exception
+	{
+		Bundle bundle = createBundle(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, PSEUDONYM);
+		Bundle expected = createBundle(NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM, PSEUDONYM_PLACEHOLDER);
+
+		// text and identifiers with other naming systems not modified
+		Observation observation = (Observation) expected.getEntry().get(1).getResource();
+		observation.setValue(((Observation) bundle.getEntry().get(1).getResource()).getValue().copy());
+		observation.getNoteFirstRep().setText(PSEUDONYM);
+
+		try (PseudonymPlaceholder.Substitution substitution = PseudonymPlaceholder.replacePseudonym(bundle, PSEUDONYM))
+		{
+			assertEquals(5, substitution.size());
+			assertTrue(expected.equalsDeep(bundle));
+		}
+
+		assertTrue(createBundle(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, PSEUDONYM).equalsDeep(bundle));
+	}
+
+	@Test
+	public void testReplacePlaceholder() throws Exception
+	{
+		Bundle bundle = createBundle(NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM, PSEUDONYM_PLACEHOLDER);
+		Bundle expected = createBundle(NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM, "crr-test-456");
+
+		Observation observation = (Observation) expected.getEntry().get(1).getResource();
+		observation.setValue(((Observation) bundle.getEntry().get(1).getResource()).getValue().copy());
+		observation.getNoteFirstRep().setText(PSEUDONYM_PLACEHOLDER);
+
+		assertEquals(5, PseudonymPlaceholder.replacePlaceholder(bundle, "crr-test-456"));
+		assertTrue(expected.equalsDeep(bundle));
+	}
+
+	@Test
+	public void testReplacePlaceholderOtherNamingSystem() throws Exception
+	{
+		Bundle bundle = createBundle(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, PSEUDONYM_PLACEHOLDER);
+
+		assertEquals(0, PseudonymPlaceholder.replacePlaceholder(bundle, "crr-test-456"));
+	}
+}
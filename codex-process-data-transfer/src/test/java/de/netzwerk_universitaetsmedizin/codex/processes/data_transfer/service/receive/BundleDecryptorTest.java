@@ -0,0 +1,200 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.receive;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProvider;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProviderImpl;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.X25519AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference.PseudonymPlaceholder;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send.BundleEncryptor;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send.DemoTransferBundles;
+
+public class BundleDecryptorTest
+{
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	private static final String DIC_PSEUDONYM = "dic-test-123";
+	private static final String CRR_PSEUDONYM = "crr-test-456";
+
+	private static KeyPair rsa;
+	private static KeyPair x25519;
+	private static CrrKeyProvider crrKeyProvider;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception
+	{
+		rsa = RsaAesGcmUtil.generateRsa4096KeyPair();
+		x25519 = X25519AesGcmUtil.generateX25519KeyPair();
+		crrKeyProvider = new CrrKeyProviderImpl(rsa.getPrivate(), null, x25519.getPrivate(), null);
+	}
+
+	private static List<BundleEncryptor> encryptors()
+	{
+		return List.of(new BundleEncryptor(fhirContext, rsa.getPublic()),
+				new BundleEncryptor(fhirContext, rsa.getPublic(), PayloadCompression.DEFLATE),
+				new BundleEncryptor(fhirContext, rsa.getPublic(), PayloadCompression.DEFLATE_DICTIONARY_V1, 1024),
+				new BundleEncryptor(fhirContext, x25519.getPublic(), PayloadCompression.NONE, 0),
+				new BundleEncryptor(fhirContext, x25519.getPublic(), PayloadCompression.NONE, 1024));
+	}
+
+	private static byte[] encrypt(BundleEncryptor encryptor, Bundle bundle, String pseudonym, byte[] returnKey)
+			throws Exception
+	{
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		encryptor.encrypt(bundle, pseudonym, returnKey, encrypted);
+		return encrypted.toByteArray();
+	}
+
+	private static Bundle createBundle()
+	{
+		Bundle bundle = new Bundle().setType(BundleType.TRANSACTION);
+		bundle.getMeta().addTag("http://example.org/tag", "test", null);
+
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM).setValue(DIC_PSEUDONYM);
+		bundle.addEntry().setFullUrl("urn:uuid:1").setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.PUT)
+				.setUrl("Patient?identifier=" + NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM + "|" + DIC_PSEUDONYM);
+
+		Observation observation = new Observation();
+		observation.getSubject().setReference("urn:uuid:1").getIdentifier()
+				.setSystem(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM).setValue(DIC_PSEUDONYM);
+		observation.getValueQuantity().setValue(new BigDecimal("36.60")).setUnit("Cel");
+		observation.addNote().setText("Bundle with \"escaped\" text äöü 😀");
+		bundle.addEntry().setFullUrl("urn:uuid:2").setResource(observation);
+
+		return bundle;
+	}
+
+	private static Bundle expected(byte[] encrypted, byte[] returnKey) throws Exception
+	{
+		// receive side without streaming: decrypt, parse complete Bundle, replace placeholders
+		byte[] decrypted = X25519AesGcmUtil.isX25519Payload(encrypted)
+				? X25519AesGcmUtil.decrypt(x25519.getPrivate(), encrypted)
+				: RsaAesGcmUtil.decrypt(rsa.getPrivate(), encrypted);
+		assertArrayEquals(returnKey, Arrays.copyOf(decrypted, BundleDecryptor.RETURN_KEY_LENGTH));
+
+		Bundle expected = fhirContext.newJsonParser().parseResource(Bundle.class, new ByteArrayInputStream(decrypted,
+				BundleDecryptor.RETURN_KEY_LENGTH, decrypted.length - BundleDecryptor.RETURN_KEY_LENGTH));
+		PseudonymPlaceholder.replacePlaceholder(expected, CRR_PSEUDONYM);
+		return expected;
+	}
+
+	@Test
+	public void testDecrypt() throws Exception
+	{
+		Bundle bundle = createBundle();
+		BundleDecryptor decryptor = new BundleDecryptor(fhirContext, crrKeyProvider);
+		IParser parser = fhirContext.newJsonParser();
+
+		for (BundleEncryptor encryptor : encryptors())
+		{
+			byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+			byte[] encrypted = encrypt(encryptor, bundle, DIC_PSEUDONYM, returnKey);
+
+			BundleDecryptor.DecryptedBundle decrypted = decryptor.decrypt(new ByteArrayInputStream(encrypted),
+					CRR_PSEUDONYM);
+
+			assertArrayEquals(returnKey, decrypted.getReturnKey());
+			assertEquals(2, decrypted.getBundle().getEntry().size());
+			assertEquals(CRR_PSEUDONYM, ((Patient) decrypted.getBundle().getEntry().get(0).getResource())
+					.getIdentifierFirstRep().getValue());
+			assertEquals("36.60", ((Observation) decrypted.getBundle().getEntry().get(1).getResource())
+					.getValueQuantity().getValueElement().getValueAsString());
+
+			assertEquals(parser.encodeResourceToString(expected(encrypted, returnKey)),
+					parser.encodeResourceToString(decrypted.getBundle()));
+		}
+	}
+
+	@Test
+	public void testDecryptDemoBundles() throws Exception
+	{
+		BundleDecryptor decryptor = new BundleDecryptor(fhirContext, crrKeyProvider);
+		BundleEncryptor encryptor = new BundleEncryptor(fhirContext, rsa.getPublic(), PayloadCompression.NONE, 4096);
+		IParser parser = fhirContext.newJsonParser();
+
+		for (Map.Entry<String, Bundle> demo : DemoTransferBundles.read(fhirContext).entrySet())
+		{
+			byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+			byte[] encrypted = encrypt(encryptor, demo.getValue(), DemoTransferBundles.PSEUDONYM, returnKey);
+
+			List<BundleEntryComponent> entries = new ArrayList<>();
+			BundleDecryptor.DecryptedBundle decrypted = decryptor.decrypt(new ByteArrayInputStream(encrypted),
+					CRR_PSEUDONYM, entries::add);
+			assertFalse(decrypted.getBundle().hasEntry());
+			decrypted.getBundle().setEntry(entries);
+
+			assertEquals(demo.getKey(), parser.encodeResourceToString(expected(encrypted, returnKey)),
+					parser.encodeResourceToString(decrypted.getBundle()));
+			assertTrue(decrypted.getEnvelope().get().isSegmented());
+		}
+	}
+
+	@Test
+	public void testModifiedPayloadFails() throws Exception
+	{
+		Bundle bundle = createBundle();
+		for (int i = 0; i < 100; i++)
+			bundle.addEntry().setFullUrl("urn:uuid:p" + i).setResource(new Patient().setActive(true));
+
+		BundleDecryptor decryptor = new BundleDecryptor(fhirContext, crrKeyProvider);
+
+		for (BundleEncryptor encryptor : encryptors())
+		{
+			byte[] encrypted = encrypt(encryptor, bundle, DIC_PSEUDONYM, AesGcmUtil.generateAES256Key().getEncoded());
+
+			for (int index : new int[] { encrypted.length - 1, encrypted.length / 2 })
+			{
+				byte[] modified = Arrays.copyOf(encrypted, encrypted.length);
+				modified[index] ^= 1;
+
+				assertDecryptFails(decryptor, modified);
+			}
+
+			// truncated
+			assertDecryptFails(decryptor, Arrays.copyOf(encrypted, encrypted.length - 100));
+		}
+	}
+
+	private static void assertDecryptFails(BundleDecryptor decryptor, byte[] encrypted) throws Exception
+	{
+		try
+		{
+			decryptor.decrypt(new ByteArrayInputStream(encrypted), CRR_PSEUDONYM);
+			fail("Exception expected");
+		}
+		catch (IOException | GeneralSecurityException e)
+		{
+			// expected
+		}
+	}
+}
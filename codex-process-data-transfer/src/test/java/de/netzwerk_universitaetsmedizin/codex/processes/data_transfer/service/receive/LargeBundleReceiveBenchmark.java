@@ -0,0 +1,183 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.receive;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.CrrKeyProviderImpl;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send.BundleEncryptor;
+import dev.dsf.fhir.client.FhirWebserviceClientJersey;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Downloads, decrypts and parses a synthetic {@value #BUNDLE_SIZE_MIB} MiB segmented encrypted Bundle with the DSF
+ * webservice client and {@link BundleDecryptor} in a JVM with a {@value #MAX_HEAP} heap. The Bundle contains one
+ * {@value #LARGE_ENTRY_SIZE_MIB} MiB entry, all other entries are about 1 KiB. Parsed entries are checked and
+ * discarded, peak heap usage is bounded by the largest entry and not by the Bundle size. Excluded from the default test
+ * run, executed with all benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=LargeBundleReceiveBenchmark</code>.
+ */
+public class LargeBundleReceiveBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(LargeBundleReceiveBenchmark.class);
+
+	private static final String MAX_HEAP = "64m";
+	private static final int BUNDLE_SIZE_MIB = 256;
+	private static final int LARGE_ENTRY_SIZE_MIB = 2;
+
+	private static final String DIC_PSEUDONYM = "dic-test-4711";
+	private static final String CRR_PSEUDONYM = "crr-test-0815";
+	private static final String FILLER = "x".repeat(512);
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+				"-Xmx" + MAX_HEAP, "-cp", System.getProperty("java.class.path"),
+				LargeBundleReceiveBenchmark.class.getName()).redirectErrorStream(true).start();
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+		{
+			reader.lines().forEach(line -> logger.info("[-Xmx{}] {}", MAX_HEAP, line));
+		}
+
+		assertEquals(0, process.waitFor());
+	}
+
+	private static String entry(int index, String note)
+	{
+		return "{\"fullUrl\":\"urn:uuid:" + String.format("%08d", index)
+				+ "\",\"resource\":{\"resourceType\":\"Observation\",\"status\":\"final\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"8310-5\"}]},\"subject\":{\"identifier\":{\"system\":\""
+				+ NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM + "\",\"value\":\"" + DIC_PSEUDONYM
+				+ "\"}},\"valueQuantity\":{\"value\":36.6,\"unit\":\"Cel\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"Cel\"},\"note\":[{\"text\":\""
+				+ note + "\"}]},\"request\":{\"method\":\"POST\",\"url\":\"Observation\"}}";
+	}
+
+	private static void writeBundle(Writer writer, int entries) throws IOException
+	{
+		writer.write("{\"resourceType\":\"Bundle\",\"type\":\"transaction\",\"entry\":[");
+		for (int i = 0; i < entries; i++)
+		{
+			if (i > 0)
+				writer.write(',');
+
+			writer.write(entry(i, i == entries / 2 ? "y".repeat(LARGE_ENTRY_SIZE_MIB * 1024 * 1024) : FILLER));
+		}
+		writer.write("]}");
+	}
+
+	public static void main(String[] args)
+	{
+		try
+		{
+			System.exit(receive() ? 0 : 1);
+		}
+		catch (Throwable e)
+		{
+			// exit even if the HTTP server threads are still running, e.g. after an OutOfMemoryError
+			logger.error("Receive failed", e);
+			System.exit(1);
+		}
+	}
+
+	private static boolean receive() throws Exception
+	{
+		int entries = (int) ((long) BUNDLE_SIZE_MIB * 1024 * 1024 / entry(0, FILLER).length());
+
+		KeyPair keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+		byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+
+		FhirContext fhirContext = FhirContext.forR4();
+		BundleEncryptor encryptor = new BundleEncryptor(fhirContext, keyPair.getPublic(), PayloadCompression.NONE,
+				64 * 1024);
+		AtomicLong encryptedSize = new AtomicLong();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/fhir";
+		server.createContext("/fhir/Binary", exchange ->
+		{
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				exchange.getResponseHeaders().set("Content-Type", MediaType.APPLICATION_OCTET_STREAM);
+				exchange.sendResponseHeaders(200, 0);
+
+				encryptedSize
+						.set(encryptor.encrypt(writer -> writeBundle(writer, entries), DIC_PSEUDONYM, returnKey, out));
+			}
+			catch (Exception e)
+			{
+				logger.error("Unable to send encrypted payload", e);
+			}
+			finally
+			{
+				exchange.close();
+			}
+		});
+		server.start();
+
+		FhirWebserviceClientJersey client = new FhirWebserviceClientJersey(baseUrl, null, null, null, null, null, null,
+				null, 5000, 0, false, "test", fhirContext, null);
+		BundleDecryptor decryptor = new BundleDecryptor(fhirContext,
+				new CrrKeyProviderImpl(keyPair.getPrivate(), null));
+
+		long start = System.currentTimeMillis();
+
+		AtomicLong received = new AtomicLong();
+		AtomicLong invalid = new AtomicLong();
+		BundleDecryptor.DecryptedBundle decrypted;
+		try (InputStream binary = client.readBinary("1", MediaType.APPLICATION_OCTET_STREAM_TYPE))
+		{
+			decrypted = decryptor.decrypt(binary, CRR_PSEUDONYM, entry ->
+			{
+				received.incrementAndGet();
+
+				Observation observation = (Observation) entry.getResource();
+				if (!NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM.equals(observation.getSubject().getIdentifier().getSystem())
+						|| !CRR_PSEUDONYM.equals(observation.getSubject().getIdentifier().getValue()))
+					invalid.incrementAndGet();
+			});
+		}
+
+		long millis = System.currentTimeMillis() - start;
+		server.stop(0);
+
+		boolean returnKeyMatches = Arrays.equals(returnKey, decrypted.getReturnKey());
+
+		logger.info("encrypted {} bytes, {} of {} entries received, {} invalid, {} Bundle, return key matches {}",
+				encryptedSize.get(), received.get(), entries, invalid.get(), decrypted.getBundle().getType(),
+				returnKeyMatches);
+		logger.info("{} ms, {} MiB/s, max heap {} MiB, peak heap used {} MiB, largest entry {} MiB", millis,
+				String.format("%.1f", encryptedSize.get() / 1024d / 1024d / (millis / 1000d)),
+				Runtime.getRuntime().maxMemory() / 1024 / 1024, BenchmarkSupport.peakHeapUsed() / 1024 / 1024,
+				LARGE_ENTRY_SIZE_MIB);
+
+		return returnKeyMatches && received.get() == entries && invalid.get() == 0;
+	}
+
+}
@@ -0,0 +1,262 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.PayloadCompression;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.X25519AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.PipedTransfer;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference.PseudonymPlaceholder;
+
+public class BundleEncryptorTest
+{
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	private static final String PSEUDONYM = "dic-test-123";
+
+	private static KeyPair keyPair;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception
+	{
+		keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+	}
+
+	private static Bundle createBundle()
+	{
+		Bundle bundle = new Bundle().setType(BundleType.TRANSACTION);
+
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM).setValue(PSEUDONYM);
+		bundle.addEntry().setFullUrl("urn:uuid:1").setResource(patient);
+
+		for (int i = 0; i < 100; i++)
+		{
+			Observation observation = new Observation();
+			observation.getSubject().setReference("urn:uuid:1").getIdentifier()
+					.setSystem(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM).setValue(PSEUDONYM);
+			observation.getCode().getCodingFirstRep().setSystem("http://loinc.org").setCode("8310-5");
+			bundle.addEntry().setResource(observation);
+		}
+
+		return bundle;
+	}
+
+	private static String expectedJson(Bundle bundle)
+	{
+		return fhirContext.newJsonParser().encodeResourceToString(bundle).replace(PSEUDONYM, PSEUDONYM_PLACEHOLDER)
+				.replace(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM);
+	}
+
+	private static void assertDecrypted(byte[] encrypted, byte[] returnKey, String expectedJson) throws Exception
+	{
+		assertPlaintext(RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted), returnKey, expectedJson);
+	}
+
+	private static void assertPlaintext(byte[] decrypted, byte[] returnKey, String expectedJson)
+	{
+		assertArrayEquals(returnKey, Arrays.copyOf(decrypted, returnKey.length));
+		String json = new String(decrypted, returnKey.length, decrypted.length - returnKey.length,
+				StandardCharsets.UTF_8);
+		assertEquals(expectedJson, json);
+		assertFalse(json.contains(PSEUDONYM));
+	}
+
+	@Test
+	public void testEncrypt() throws Exception
+	{
+		Bundle bundle = createBundle();
+		byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		long size = new BundleEncryptor(fhirContext, keyPair.getPublic()).encrypt(bundle, PSEUDONYM, returnKey,
+				encrypted);
+
+		assertEquals(encrypted.size(), size);
+		assertDecrypted(encrypted.toByteArray(), returnKey, expectedJson(bundle));
+	}
+
+	@Test
+	public void testEncryptPiped() throws Exception
+	{
+		Bundle bundle = createBundle();
+		byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+		BundleEncryptor encryptor = new BundleEncryptor(fhirContext, keyPair.getPublic());
+
+		byte[] encrypted = PipedTransfer.transfer("test-encrypt",
+				out -> encryptor.encrypt(bundle, PSEUDONYM, returnKey, out), in -> in.readAllBytes(), 1024);
+
+		assertDecrypted(encrypted, returnKey, expectedJson(bundle));
+	}
+
+	@Test
+	public void testEncryptPipedEncoderFails() throws Exception
+	{
+		IOException encoderException = new IOException("test");
+		byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+
+		for (BundleEncryptor encryptor : Arrays.asList(new BundleEncryptor(fhirContext, keyPair.getPublic()),
+				new BundleEncryptor(fhirContext, X25519AesGcmUtil.generateX25519KeyPair().getPublic(),
+						PayloadCompression.DEFLATE, 4096)))
+		{
+			AtomicReference<Exception> consumerException = new AtomicReference<>();
+
+			try
+			{
+				PipedTransfer.transfer("test-encrypt", out -> encryptor.encrypt(writer ->
+				{
+					// larger than the pipe buffer and the segment size
+					for (int i = 0; i < 1000; i++)
+						writer.write("{\"resourceType\":\"Bundle\"}");
+
+					throw encoderException;
+				}, PSEUDONYM, returnKey, out), in ->
+				{
+					try
+					{
+						return in.readAllBytes();
+					}
+					catch (IOException e)
+					{
+						consumerException.set(e);
+						throw e;
+					}
+				}, 1024);
+
+				fail("Exception expected");
+			}
+			catch (IOException e)
+			{
+				assertSame(encoderException, e);
+			}
+
+			// consumer, e.g. the HTTP client uploading the payload, must not see a regular end of stream
+			assertTrue(consumerException.get() instanceof IOException);
+			assertSame(encoderException, consumerException.get().getCause());
+		}
+	}
+
+	@Test
+	public void testEncryptEncoderFailsNotFinalized() throws Exception
+	{
+		IOException encoderException = new IOException("test");
+		byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+		AtomicBoolean closed = new AtomicBoolean();
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream()
+		{
+			@Override
+			public void close()
+			{
+				closed.set(true);
+			}
+		};
+
+		try
+		{
+			new BundleEncryptor(fhirContext, keyPair.getPublic()).encrypt(writer ->
+			{
+				writer.write("{\"resourceType\":\"Bundle\"");
+				throw encoderException;
+			}, PSEUDONYM, returnKey, encrypted);
+
+			fail("Exception expected");
+		}
+		catch (IOException e)
+		{
+			assertSame(encoderException, e);
+		}
+
+		assertFalse(closed.get());
+
+		try
+		{
+			RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted.toByteArray());
+			fail("Exception expected, truncated payload without authentication tag");
+		}
+		catch (GeneralSecurityException e)
+		{
+		}
+	}
+
+	@Test
+	public void testEncryptX25519() throws Exception
+	{
+		KeyPair x25519KeyPair = X25519AesGcmUtil.generateX25519KeyPair();
+		Bundle bundle = createBundle();
+		byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		new BundleEncryptor(fhirContext, x25519KeyPair.getPublic(), PayloadCompression.DEFLATE, 0).encrypt(bundle,
+				PSEUDONYM, returnKey, encrypted);
+
+		assertTrue(X25519AesGcmUtil.isX25519Payload(encrypted.toByteArray()));
+		assertPlaintext(X25519AesGcmUtil.decrypt(x25519KeyPair.getPrivate(), encrypted.toByteArray()), returnKey,
+				expectedJson(bundle));
+	}
+
+	@Test
+	public void testDemoBundlesIdenticalToTextReplacement() throws Exception
+	{
+		String crrPseudonym = "crr-test-456";
+		IParser parser = fhirContext.newJsonParser();
+
+		for (Map.Entry<String, Bundle> demo : DemoTransferBundles.read(fhirContext).entrySet())
+		{
+			Bundle bundle = demo.getValue();
+			String encoded = parser.encodeResourceToString(bundle);
+			byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+
+			ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+			new BundleEncryptor(fhirContext, keyPair.getPublic()).encrypt(bundle, DemoTransferBundles.PSEUDONYM,
+					returnKey, encrypted);
+
+			// DIC: identical to String#replace on the encoded Bundle, Bundle restored after encryption
+			String expected = encoded.replace(DemoTransferBundles.PSEUDONYM, PSEUDONYM_PLACEHOLDER)
+					.replace(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM);
+			byte[] decrypted = RsaAesGcmUtil.decrypt(keyPair.getPrivate(), encrypted.toByteArray());
+			assertEquals(demo.getKey(), expected, new String(decrypted, returnKey.length,
+					decrypted.length - returnKey.length, StandardCharsets.UTF_8));
+			assertEquals(demo.getKey(), encoded, parser.encodeResourceToString(bundle));
+
+			// CRR: identical to String#replace before parsing
+			Bundle replacedText = parser.parseResource(Bundle.class,
+					expected.replace(PSEUDONYM_PLACEHOLDER, crrPseudonym));
+			Bundle replacedIdentifiers = parser.parseResource(Bundle.class,
+					new ByteArrayInputStream(decrypted, returnKey.length, decrypted.length - returnKey.length));
+			assertEquals(demo.getKey(), expected.split(Pattern.quote(PSEUDONYM_PLACEHOLDER), -1).length - 1,
+					PseudonymPlaceholder.replacePlaceholder(replacedIdentifiers, crrPseudonym));
+			assertEquals(demo.getKey(), parser.encodeResourceToString(replacedText),
+					parser.encodeResourceToString(replacedIdentifiers));
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.mockito.Mockito;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.client.DataStoreClientFactory;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.DataLogger;
+import dev.dsf.bpe.v1.ProcessPluginApi;
+
+/**
+ * Transfer Bundles created by {@link ReadData} from the demo Bundles in <code>src/test/resources/fhir/Bundle</code>.
+ */
+public final class DemoTransferBundles
+{
+	public static final String PSEUDONYM = "source/original";
+
+	private DemoTransferBundles()
+	{
+	}
+
+	/**
+	 * @param fhirContext
+	 *            not <code>null</code>
+	 * @return transfer Bundles by demo Bundle file name
+	 * @throws IOException
+	 */
+	public static Map<String, Bundle> read(FhirContext fhirContext) throws IOException
+	{
+		ReadData readData = new ReadData(Mockito.mock(ProcessPluginApi.class),
+				Mockito.mock(DataStoreClientFactory.class), Mockito.mock(DataLogger.class));
+
+		List<Path> files;
+		try (Stream<Path> list = Files.list(Paths.get("src/test/resources/fhir/Bundle")))
+		{
+			files = list.filter(f -> f.getFileName().toString().endsWith(".json")).sorted()
+					.collect(Collectors.toList());
+		}
+
+		Map<String, Bundle> bundles = new LinkedHashMap<>();
+		for (Path file : files)
+		{
+			try (InputStream in = Files.newInputStream(file))
+			{
+				Bundle demo = fhirContext.newJsonParser().parseResource(Bundle.class, in);
+				List<DomainResource> resources = new ArrayList<>();
+				for (BundleEntryComponent entry : demo.getEntry())
+					if (entry.getResource() instanceof DomainResource r)
+						resources.add(r);
+
+				bundles.put(file.getFileName().toString(), readData.toBundle(PSEUDONYM, resources.stream()));
+			}
+		}
+
+		return bundles;
+	}
+}
@@ -0,0 +1,42 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.ENCRYPTED_BUNDLE_SIZE_MAX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.hl7.fhir.r4.model.Task;
+import org.hl7.fhir.r4.model.UnsignedIntType;
+import org.junit.Test;
+
+public class EncryptDataTest
+{
+	@Test
+	public void testAddEncryptedBundleSizeToTaskMax() throws Exception
+	{
+		Task task = EncryptData.addEncryptedBundleSizeToTask(new Task(), ENCRYPTED_BUNDLE_SIZE_MAX);
+
+		assertEquals(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_VALUE_ENCRYPTED_BUNDLE_SIZE,
+				task.getOutputFirstRep().getType().getCodingFirstRep().getCode());
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE),
+				((UnsignedIntType) task.getOutputFirstRep().getValue()).getValue());
+	}
+
+	@Test
+	public void testAddEncryptedBundleSizeToTaskAboveIntegerMaxValue() throws Exception
+	{
+		Task task = new Task();
+
+		try
+		{
+			EncryptData.addEncryptedBundleSizeToTask(task, Integer.MAX_VALUE + 1L);
+			fail("IllegalArgumentException expected");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+
+		assertTrue(task.getOutput().isEmpty());
+	}
+}
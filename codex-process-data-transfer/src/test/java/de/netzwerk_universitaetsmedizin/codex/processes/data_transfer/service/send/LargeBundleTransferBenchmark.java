@@ -0,0 +1,234 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.AesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.PipedTransfer;
+import dev.dsf.fhir.client.FhirWebserviceClientJersey;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Encrypts and uploads a synthetic 1 GiB Bundle with the DSF webservice client in a JVM with a {@value #MAX_HEAP} heap.
+ * The receiving HTTP server decrypts the AES-GCM payload as AES-CTR (GCM encryption is CTR starting with counter 2, the
+ * authentication tag is not verified) and compares a SHA-256 digest of the plaintext with the expected return key and
+ * Bundle JSON after pseudonym replacement. Excluded from the default test run, executed with all benchmarks by
+ * <code>mvn test -P benchmark</code> or alone with <code>mvn test -Dtest=LargeBundleTransferBenchmark</code>.
+ */
+public class LargeBundleTransferBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(LargeBundleTransferBenchmark.class);
+
+	private static final String MAX_HEAP = "64m";
+	private static final long BUNDLE_SIZE = 1L << 30;
+
+	private static final String PSEUDONYM = "dic-test-4711";
+	private static final String FILLER = "x".repeat(512);
+
+	private static final int ENCRYPTED_AES_KEY_LENGTH = 512;
+	private static final int GCM_IV_LENGTH = 12;
+	private static final int GCM_TAG_LENGTH = 16;
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+				"-Xmx" + MAX_HEAP, "-cp", System.getProperty("java.class.path"),
+				LargeBundleTransferBenchmark.class.getName(), String.valueOf(BUNDLE_SIZE)).redirectErrorStream(true)
+				.start();
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+		{
+			reader.lines().forEach(line -> logger.info("[-Xmx{}] {}", MAX_HEAP, line));
+		}
+
+		assertEquals(0, process.waitFor());
+	}
+
+	private static String entry(int index, String pseudonymSystem, String pseudonym)
+	{
+		return "{\"fullUrl\":\"urn:uuid:" + String.format("%08d", index)
+				+ "\",\"resource\":{\"resourceType\":\"Observation\",\"status\":\"final\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"8310-5\"}]},\"subject\":{\"identifier\":{\"system\":\""
+				+ pseudonymSystem + "\",\"value\":\"" + pseudonym
+				+ "\"}},\"valueQuantity\":{\"value\":36.6,\"unit\":\"Cel\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"Cel\"},\"note\":[{\"text\":\""
+				+ FILLER + "\"}]},\"request\":{\"method\":\"POST\",\"url\":\"Observation\"}}";
+	}
+
+	private static void writeBundle(Writer writer, int entries, String pseudonymSystem, String pseudonym)
+			throws IOException
+	{
+		writer.write("{\"resourceType\":\"Bundle\",\"type\":\"transaction\",\"entry\":[");
+		for (int i = 0; i < entries; i++)
+		{
+			if (i > 0)
+				writer.write(',');
+
+			writer.write(entry(i, pseudonymSystem, pseudonym));
+		}
+		writer.write("]}");
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		long bundleSize = Long.parseLong(args[0]);
+		int entries = (int) (bundleSize / entry(0, NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, PSEUDONYM).length());
+
+		KeyPair keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+		byte[] returnKey = AesGcmUtil.generateAES256Key().getEncoded();
+
+		MessageDigest expectedDigest = MessageDigest.getInstance("SHA-256");
+		expectedDigest.update(returnKey);
+		try (Writer writer = new OutputStreamWriter(new DigestingOutputStream(expectedDigest), StandardCharsets.UTF_8))
+		{
+			writeBundle(writer, entries, NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM, PSEUDONYM_PLACEHOLDER);
+		}
+
+		AtomicLong received = new AtomicLong();
+		AtomicReference<byte[]> receivedDigest = new AtomicReference<>();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/fhir";
+		server.createContext("/fhir/Binary", exchange ->
+		{
+			try (InputStream in = exchange.getRequestBody())
+			{
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				received.set(decrypt(in, keyPair, digest));
+				receivedDigest.set(digest.digest());
+
+				exchange.getResponseHeaders().set("Location", baseUrl + "/Binary/1/_history/1");
+				exchange.sendResponseHeaders(201, -1);
+			}
+			catch (Exception e)
+			{
+				logger.error("Unable to decrypt received payload", e);
+				exchange.sendResponseHeaders(500, -1);
+			}
+			finally
+			{
+				exchange.close();
+			}
+		});
+		server.start();
+
+		FhirContext fhirContext = FhirContext.forR4();
+		FhirWebserviceClientJersey client = new FhirWebserviceClientJersey(baseUrl, null, null, null, null, null, null,
+				null, 5000, 0, false, "test", fhirContext, null);
+		BundleEncryptor encryptor = new BundleEncryptor(fhirContext, keyPair.getPublic());
+
+		long start = System.currentTimeMillis();
+
+		AtomicLong encryptedSize = new AtomicLong();
+		IdType created = PipedTransfer.transfer("encrypt",
+				out -> encryptedSize.set(encryptor.encrypt(
+						writer -> writeBundle(writer, entries, NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, PSEUDONYM),
+						PSEUDONYM, returnKey, out)),
+				in -> client.withMinimalReturn().createBinary(in, MediaType.APPLICATION_OCTET_STREAM_TYPE,
+						"Organization/test"));
+
+		long millis = System.currentTimeMillis() - start;
+		server.stop(0);
+
+		boolean digestMatches = Arrays.equals(expectedDigest.digest(), receivedDigest.get());
+		long plaintext = received.get() - ENCRYPTED_AES_KEY_LENGTH - GCM_IV_LENGTH - GCM_TAG_LENGTH;
+
+		logger.info(
+				"created {}, {} entries, encrypted {} bytes, received {} bytes, plaintext {} bytes, digest matches {}",
+				created.getValue(), entries, encryptedSize.get(), received.get(), plaintext, digestMatches);
+		logger.info("{} ms, {} MiB/s, max heap {} MiB, peak heap used {} MiB", millis,
+				String.format("%.1f", encryptedSize.get() / 1024d / 1024d / (millis / 1000d)),
+				Runtime.getRuntime().maxMemory() / 1024 / 1024, BenchmarkSupport.peakHeapUsed() / 1024 / 1024);
+
+		System.exit(digestMatches && encryptedSize.get() == received.get() ? 0 : 1);
+	}
+
+	private static long decrypt(InputStream in, KeyPair keyPair, MessageDigest digest) throws Exception
+	{
+		Cipher rsa = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+		rsa.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+		byte[] aesKey = rsa.doFinal(in.readNBytes(ENCRYPTED_AES_KEY_LENGTH));
+
+		byte[] counter = Arrays.copyOf(in.readNBytes(GCM_IV_LENGTH), 16);
+		counter[15] = 2;
+
+		Cipher ctr = Cipher.getInstance("AES/CTR/NoPadding");
+		ctr.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(counter));
+
+		long received = ENCRYPTED_AES_KEY_LENGTH + GCM_IV_LENGTH;
+
+		// holds back the authentication tag at the end of the stream
+		byte[] buffer = new byte[64 * 1024 + GCM_TAG_LENGTH];
+		int held = 0;
+		for (int read = in.read(buffer, held, buffer.length - held); read >= 0; read = in.read(buffer, held,
+				buffer.length - held))
+		{
+			held += read;
+			received += read;
+
+			if (held > GCM_TAG_LENGTH)
+			{
+				int process = held - GCM_TAG_LENGTH;
+				digest.update(ctr.update(buffer, 0, process));
+				System.arraycopy(buffer, process, buffer, 0, GCM_TAG_LENGTH);
+				held = GCM_TAG_LENGTH;
+			}
+		}
+
+		return received;
+	}
+
+	private static final class DigestingOutputStream extends OutputStream
+	{
+		private final MessageDigest digest;
+
+		DigestingOutputStream(MessageDigest digest)
+		{
+			this.digest = digest;
+		}
+
+		@Override
+		public void write(int b)
+		{
+			digest.update((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			digest.update(b, off, len);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.PSEUDONYM_PLACEHOLDER;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Operation;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.io.ReplacingWriter;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.reference.PseudonymPlaceholder;
+
+/**
+ * Compares text replacement of the pseudonym on the encoded Bundle with the structure-aware replacement of
+ * {@link PseudonymPlaceholder} for all demo Bundles in <code>src/test/resources/fhir/Bundle</code>, on the DIC while
+ * encoding and on the CRR while parsing. Excluded from the default test run, executed with all benchmarks by
+ * <code>mvn test -P benchmark</code> or alone with <code>mvn test -Dtest=PseudonymPlaceholderBenchmark</code>.
+ * <p>
+ * Allocations are measured for the benchmark thread by {@link BenchmarkSupport}.
+ */
+public class PseudonymPlaceholderBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(PseudonymPlaceholderBenchmark.class);
+
+	private static final long WARMUP_MILLIS = 3000;
+	private static final long MEASUREMENT_MILLIS = 3000;
+
+	private static final String CRR_PSEUDONYM = "crr-test-456";
+
+	private static void measure(String name, Operation operation) throws Exception
+	{
+		Measurement measurement = BenchmarkSupport.measureForMillis(WARMUP_MILLIS, MEASUREMENT_MILLIS, 1, operation);
+
+		logger.info("{}: {} ops/s, {} us/op, {} bytes allocated/op", String.format("%-40s", name),
+				String.format("%10.1f", measurement.getOperationsPerSecond()),
+				String.format("%10.1f", measurement.getMicrosPerOperation()),
+				String.format("%12d", measurement.getAllocatedBytesPerOperation()));
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		FhirContext fhirContext = FhirContext.forR4();
+		List<Bundle> bundles = new ArrayList<>(DemoTransferBundles.read(fhirContext).values());
+		String pseudonym = DemoTransferBundles.PSEUDONYM;
+
+		List<byte[]> encoded = new ArrayList<>();
+		for (Bundle bundle : bundles)
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (PseudonymPlaceholder.Substitution substitution = PseudonymPlaceholder.replacePseudonym(bundle,
+					pseudonym); Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8))
+			{
+				fhirContext.newJsonParser().encodeResourceToWriter(bundle, writer);
+			}
+			encoded.add(out.toByteArray());
+		}
+
+		logger.info("{} demo Bundles, {} bytes encoded", bundles.size(),
+				encoded.stream().mapToInt(b -> b.length).sum());
+
+		// DIC
+		measure("String#replace (DIC)", () ->
+		{
+			for (Bundle bundle : bundles)
+			{
+				String replaced = fhirContext.newJsonParser().encodeResourceToString(bundle)
+						.replace(pseudonym, PSEUDONYM_PLACEHOLDER)
+						.replace(NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM);
+				replaced.getBytes(StandardCharsets.UTF_8);
+			}
+		});
+		measure("ReplacingWriter (DIC)", () ->
+		{
+			for (Bundle bundle : bundles)
+			{
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try (Writer writer = new ReplacingWriter(
+						new ReplacingWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+								NAMING_SYSTEM_NUM_CODEX_DIC_PSEUDONYM, NAMING_SYSTEM_NUM_CODEX_CRR_PSEUDONYM),
+						pseudonym, PSEUDONYM_PLACEHOLDER))
+				{
+					fhirContext.newJsonParser().encodeResourceToWriter(bundle, writer);
+				}
+			}
+		});
+		measure("PseudonymPlaceholder (DIC)", () ->
+		{
+			for (Bundle bundle : bundles)
+			{
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try (PseudonymPlaceholder.Substitution substitution = PseudonymPlaceholder.replacePseudonym(bundle,
+						pseudonym); Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8))
+				{
+					fhirContext.newJsonParser().encodeResourceToWriter(bundle, writer);
+				}
+			}
+		});
+
+		// CRR
+		measure("String#replace (CRR)", () ->
+		{
+			for (byte[] data : encoded)
+			{
+				String replaced = new String(data, StandardCharsets.UTF_8).replace(PSEUDONYM_PLACEHOLDER,
+						CRR_PSEUDONYM);
+				fhirContext.newJsonParser().parseResource(Bundle.class, replaced);
+			}
+		});
+		measure("PseudonymPlaceholder (CRR)", () ->
+		{
+			for (byte[] data : encoded)
+			{
+				Bundle bundle = fhirContext.newJsonParser().parseResource(Bundle.class, new ByteArrayInputStream(data));
+				PseudonymPlaceholder.replacePlaceholder(bundle, CRR_PSEUDONYM);
+			}
+		});
+	}
+}
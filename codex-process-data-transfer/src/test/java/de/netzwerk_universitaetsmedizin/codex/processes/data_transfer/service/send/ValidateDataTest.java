@@ -0,0 +1,138 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.BPMN_EXECUTION_VARIABLE_BUNDLE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_VALIDATION_FAILED;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.EXTENSION_ERROR_METADATA;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.EXTENSION_ERROR_METADATA_REFERENCE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.EXTENSION_ERROR_METADATA_TYPE;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.HAPI_USER_DATA_SOURCE_ID_ELEMENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.camunda.bpm.engine.delegate.BpmnError;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Task;
+import org.hl7.fhir.r4.model.Task.TaskOutputComponent;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.error.ErrorOutputParameterGenerator;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.ErrorLogger;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.BundleValidator;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.BundleValidatorFactory;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.BundleValidatorImplTest;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.ValidationBudget;
+import dev.dsf.bpe.v1.ProcessPluginApi;
+import dev.dsf.bpe.v1.variables.Variables;
+
+public class ValidateDataTest
+{
+	private static final String[] IDS = { "ok1", "error1", "noprofile1", "ok2", "error2", "ok3", "error3" };
+
+	/**
+	 * @return error outputs as <code>type|reference|value</code>
+	 */
+	private static List<String> execute(ValidationBudget budget, String... ids) throws Exception
+	{
+		ProcessPluginApi api = Mockito.mock(ProcessPluginApi.class, Mockito.RETURNS_DEEP_STUBS);
+		Mockito.when(api.getFhirWebserviceClientProvider().getLocalWebserviceClient().getBaseUrl())
+				.thenReturn("https://dic/fhir");
+
+		BundleValidator validator = BundleValidatorImplTest
+				.createBundleValidator(new BundleValidatorImplTest.StubResourceValidator());
+
+		BundleValidatorFactory factory = Mockito.mock(BundleValidatorFactory.class);
+		Mockito.when(factory.isEnabled()).thenReturn(true);
+		Mockito.when(factory.create(Mockito.any(Duration.class))).thenReturn(Optional.of(validator));
+
+		Bundle bundle = BundleValidatorImplTest.createBundle(ids);
+		bundle.getEntry().forEach(e -> e.setUserData(HAPI_USER_DATA_SOURCE_ID_ELEMENT,
+				new IdType("Observation", "source-" + e.getResource().getIdElement().getIdPart())));
+
+		DelegateExecution execution = Mockito.mock(DelegateExecution.class);
+		Variables variables = Mockito.mock(Variables.class);
+		Mockito.when(api.getVariables(execution)).thenReturn(variables);
+		Mockito.when(variables.getResource(BPMN_EXECUTION_VARIABLE_BUNDLE)).thenReturn(bundle);
+
+		Task task = new Task();
+		task.setId("Task/1");
+		Mockito.when(variables.getStartTask()).thenReturn(task);
+
+		ValidateData validateData = new ValidateData(api, factory, new ErrorOutputParameterGenerator(),
+				Mockito.mock(ErrorLogger.class), Duration.ofSeconds(1), budget);
+		validateData.afterPropertiesSet();
+
+		try
+		{
+			validateData.execute(execution);
+			fail("BpmnError expected");
+		}
+		catch (BpmnError e)
+		{
+			assertEquals(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_VALIDATION_FAILED, e.getErrorCode());
+		}
+
+		return task.getOutput().stream().filter(o -> o.hasExtension(EXTENSION_ERROR_METADATA))
+				.map(ValidateDataTest::toString).collect(Collectors.toList());
+	}
+
+	private static String toString(TaskOutputComponent output)
+	{
+		Extension metaData = output.getExtensionByUrl(EXTENSION_ERROR_METADATA);
+		Extension reference = metaData.getExtensionByUrl(EXTENSION_ERROR_METADATA_REFERENCE);
+
+		return ((Coding) metaData.getExtensionByUrl(EXTENSION_ERROR_METADATA_TYPE).getValue()).getCode() + "|"
+				+ (reference == null ? "" : ((Reference) reference.getValue()).getReference()) + "|"
+				+ output.getValue().primitiveValue();
+	}
+
+	@Test
+	public void testValidateAll() throws Exception
+	{
+		assertEquals(
+				List.of("validation-failed|Observation/source-error1|Validation faild at Observation.value",
+						"validation-failed|Observation/source-noprofile1|Validation faild at Observation.meta.profile",
+						"validation-failed|Observation/source-error2|Validation faild at Observation.value",
+						"validation-failed|Observation/source-error3|Validation faild at Observation.value"),
+				execute(ValidationBudget.UNLIMITED, IDS));
+	}
+
+	@Test
+	public void testErrorBudget() throws Exception
+	{
+		List<String> expected = List.of(
+				"validation-failed|Observation/source-error1|Validation faild at Observation.value",
+				"validation-failed|Observation/source-noprofile1|Validation faild at Observation.meta.profile",
+				CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED
+						+ "|Observation/source-ok2|Not validated, validation stopped after 2 resources with error",
+				CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED
+						+ "|Observation/source-error2|Not validated, validation stopped after 2 resources with error",
+				CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED
+						+ "|Observation/source-ok3|Not validated, validation stopped after 2 resources with error",
+				CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED
+						+ "|Observation/source-error3|Not validated, validation stopped after 2 resources with error");
+
+		for (int i = 0; i < 3; i++)
+			assertEquals(expected, execute(ValidationBudget.of(2, null), IDS));
+	}
+
+	@Test
+	public void testFailFast() throws Exception
+	{
+		assertEquals(List.of("validation-failed|Observation/source-error1|Validation faild at Observation.value",
+				CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_NOT_VALIDATED
+						+ "|Observation/source-ok2|Not validated, validation stopped after 1 resource with error"),
+				execute(ValidationBudget.of(1, null), "ok1", "error1", "ok2"));
+	}
+}
@@ -0,0 +1,39 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.translate;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.ENCRYPTED_BUNDLE_SIZE_MAX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.hl7.fhir.r4.model.Task;
+import org.hl7.fhir.r4.model.UnsignedIntType;
+import org.junit.Test;
+
+public class DownloadDataFromDicTest
+{
+	@Test
+	public void testAddEncryptedBundleSizeToTaskMax() throws Exception
+	{
+		Task task = DownloadDataFromDic.addEncryptedBundleSizeToTask(new Task(), ENCRYPTED_BUNDLE_SIZE_MAX);
+
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE),
+				((UnsignedIntType) task.getOutputFirstRep().getValue()).getValue());
+	}
+
+	@Test
+	public void testAddEncryptedBundleSizeToTaskAboveIntegerMaxValue() throws Exception
+	{
+		Task task = new Task();
+
+		try
+		{
+			DownloadDataFromDic.addEncryptedBundleSizeToTask(task, Integer.MAX_VALUE + 1L);
+			fail("IllegalArgumentException expected");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+
+		assertTrue(task.getOutput().isEmpty());
+	}
+}
@@ -0,0 +1,129 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.translate;
+
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DIC_FAILED;
+import static de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.ConstantsDataTransfer.CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Optional;
+
+import org.camunda.bpm.engine.delegate.BpmnError;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.logging.DataLogger;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool.PayloadVariables;
+import dev.dsf.bpe.v1.ProcessPluginApi;
+import dev.dsf.bpe.v1.service.FhirWebserviceClientProvider;
+import dev.dsf.bpe.v1.service.OrganizationProvider;
+import dev.dsf.fhir.client.FhirWebserviceClient;
+import dev.dsf.fhir.client.PreferReturnMinimalWithRetry;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.core.MediaType;
+
+public class StoreDataForCrrTest
+{
+	private static final String DIC_BASE_URL = "https://dic.test/fhir";
+	private static final String LOCAL_BASE_URL = "https://dts.test/fhir";
+	private static final String CRR_IDENTIFIER = "crr.test";
+
+	private final ProcessPluginApi api = mock(ProcessPluginApi.class);
+	private final FhirWebserviceClientProvider clientProvider = mock(FhirWebserviceClientProvider.class);
+	private final OrganizationProvider organizationProvider = mock(OrganizationProvider.class);
+	private final FhirWebserviceClient dicClient = mock(FhirWebserviceClient.class);
+	private final FhirWebserviceClient localClient = mock(FhirWebserviceClient.class);
+	private final PreferReturnMinimalWithRetry minimalReturn = mock(PreferReturnMinimalWithRetry.class);
+
+	private final StoreDataForCrr storeDataForCrr = new StoreDataForCrr(api, CRR_IDENTIFIER, mock(DataLogger.class),
+			true, new PayloadVariables(null));
+	private final IdType dicBinaryId = new IdType(DIC_BASE_URL, "Binary", "1", "1");
+
+	@Before
+	public void before()
+	{
+		when(api.getFhirWebserviceClientProvider()).thenReturn(clientProvider);
+		when(api.getOrganizationProvider()).thenReturn(organizationProvider);
+		when(clientProvider.getWebserviceClient(DIC_BASE_URL)).thenReturn(dicClient);
+		when(clientProvider.getLocalWebserviceClient()).thenReturn(localClient);
+		when(dicClient.getBaseUrl()).thenReturn(DIC_BASE_URL);
+		when(localClient.getBaseUrl()).thenReturn(LOCAL_BASE_URL);
+		when(localClient.withMinimalReturn()).thenReturn(minimalReturn);
+		when(organizationProvider.getOrganization(any(Identifier.class))).thenReturn(Optional.of((Organization) new Organization().setId("4711")));
+
+		// request body read to the end, exceptions wrapped by the HTTP client
+		when(minimalReturn.createBinary(any(InputStream.class), eq(MediaType.APPLICATION_OCTET_STREAM_TYPE),
+				eq("Organization/4711"))).thenAnswer(invocation ->
+				{
+					try
+					{
+						invocation.getArgument(0, InputStream.class).readAllBytes();
+						return new IdType(LOCAL_BASE_URL, "Binary", "2", "1");
+					}
+					catch (IOException e)
+					{
+						throw new ProcessingException(e);
+					}
+				});
+	}
+
+	private void assertRelayError(String expectedErrorCode)
+	{
+		try
+		{
+			storeDataForCrr.relayBinary(dicBinaryId);
+			fail("BpmnError expected");
+		}
+		catch (BpmnError e)
+		{
+			assertEquals(expectedErrorCode, e.getErrorCode());
+		}
+	}
+
+	@Test
+	public void testRelay() throws Exception
+	{
+		when(dicClient.readBinary("1", "1", MediaType.APPLICATION_OCTET_STREAM_TYPE))
+				.thenReturn(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+
+		assertEquals(3, storeDataForCrr.relayBinary(dicBinaryId).getSize());
+	}
+
+	@Test
+	public void testRelayDicReadFailure() throws Exception
+	{
+		InputStream failing = new InputStream()
+		{
+			@Override
+			public int read() throws IOException
+			{
+				throw new IOException("Connection reset");
+			}
+		};
+		when(dicClient.readBinary("1", "1", MediaType.APPLICATION_OCTET_STREAM_TYPE))
+				.thenReturn(new SequenceInputStream(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), failing));
+
+		assertRelayError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_DOWNLOAD_OF_ENCRYPTED_DATA_FROM_DIC_FAILED);
+	}
+
+	@Test
+	public void testRelayUploadFailure() throws Exception
+	{
+		when(dicClient.readBinary("1", "1", MediaType.APPLICATION_OCTET_STREAM_TYPE))
+				.thenReturn(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+		when(minimalReturn.createBinary(any(InputStream.class), eq(MediaType.APPLICATION_OCTET_STREAM_TYPE),
+				eq("Organization/4711"))).thenThrow(new ProcessingException("Connection refused"));
+
+		assertRelayError(CODESYSTEM_NUM_CODEX_DATA_TRANSFER_ERROR_VALUE_UNABLE_TO_STORE_ECRYPTED_DATA);
+	}
+}
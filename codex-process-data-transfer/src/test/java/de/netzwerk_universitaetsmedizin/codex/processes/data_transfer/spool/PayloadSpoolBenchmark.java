@@ -0,0 +1,131 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.camunda.bpm.engine.impl.variable.serializer.ValueFields;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.crypto.RsaAesGcmUtil;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send.BundleEncryptor;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.service.send.DemoTransferBundles;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandle;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandleSerializer;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandleValues;
+
+/**
+ * Compares the data written to the engine database for the encrypted bundle process variable, stored as byte array or
+ * as {@link PayloadHandle} in a {@link PayloadSpoolImpl}, and measures the time to store and read payloads in the
+ * spool. Each transfer stores the encrypted bundle once at the DIC, the DTS and the CRR; sizes per 10,000 transfers are
+ * extrapolated from the serialized variable of a single transfer, not measured in an engine database.
+ * <p>
+ * Excluded from the default test run, executed with all benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=PayloadSpoolBenchmark</code>.
+ */
+public class PayloadSpoolBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(PayloadSpoolBenchmark.class);
+
+	private static final int TRANSFERS = 10_000;
+	private static final int ITERATIONS = 5;
+	private static final String PROCESS_INSTANCE_ID = "benchmark";
+	private static final int[] SYNTHETIC_SIZES_MIB = { 1, 10, 100 };
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final FhirContext fhirContext = FhirContext.forR4();
+	private final PayloadHandleSerializer serializer = new PayloadHandleSerializer(new ObjectMapper());
+
+	private Map<String, byte[]> payloads() throws Exception
+	{
+		Map<String, byte[]> payloads = new LinkedHashMap<>();
+
+		KeyPair keyPair = RsaAesGcmUtil.generateRsa4096KeyPair();
+		for (Map.Entry<String, Bundle> bundle : DemoTransferBundles.read(fhirContext).entrySet())
+		{
+			ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+			new BundleEncryptor(fhirContext, keyPair.getPublic()).encrypt(bundle.getValue(),
+					DemoTransferBundles.PSEUDONYM, new byte[32], encrypted);
+			payloads.put(bundle.getKey(), encrypted.toByteArray());
+		}
+
+		Random random = new Random(0);
+		for (int sizeMib : SYNTHETIC_SIZES_MIB)
+		{
+			byte[] payload = new byte[sizeMib * 1024 * 1024];
+			random.nextBytes(payload);
+			payloads.put("random " + sizeMib + " MiB", payload);
+		}
+
+		return payloads;
+	}
+
+	private int serializedHandleLength(PayloadHandle handle)
+	{
+		ValueFields valueFields = mock(ValueFields.class);
+		serializer.writeValue(PayloadHandleValues.create(handle), valueFields);
+
+		ArgumentCaptor<String> text = ArgumentCaptor.forClass(String.class);
+		verify(valueFields).setTextValue(text.capture());
+		return text.getValue().length();
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		Path spoolFolder = temporaryFolder.newFolder("spool").toPath();
+		PayloadSpool spool = new PayloadSpoolImpl(spoolFolder, Duration.ofHours(24));
+
+		for (Map.Entry<String, byte[]> payload : payloads().entrySet())
+		{
+			byte[] data = payload.getValue();
+
+			AtomicReference<PayloadHandle> handle = new AtomicReference<>();
+			Measurement store = BenchmarkSupport.measureIterations(1, ITERATIONS,
+					() -> handle.set(spool.store(PROCESS_INSTANCE_ID, new ByteArrayInputStream(data))));
+			Measurement read = BenchmarkSupport.measureIterations(1, ITERATIONS, () ->
+			{
+				try (InputStream in = spool.read(handle.get()))
+				{
+					assertEquals(data.length, in.transferTo(OutputStream.nullOutputStream()));
+				}
+			});
+			spool.deleteAll(PROCESS_INSTANCE_ID);
+
+			int handleLength = serializedHandleLength(handle.get());
+
+			logger.info(
+					"{}: byte array variable {} bytes ({} MiB per {} transfers and site), payload handle variable {} chars ({} KiB per {} transfers and site), spool store {} ms, read {} ms",
+					payload.getKey(), data.length,
+					String.format("%.1f", data.length * (double) TRANSFERS / 1024 / 1024), TRANSFERS, handleLength,
+					String.format("%.1f", handleLength * (double) TRANSFERS / 1024), TRANSFERS,
+					String.format("%.2f", store.getMillisPerOperation()),
+					String.format("%.2f", read.getMillisPerOperation()));
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandle;
+
+public class PayloadSpoolImplTest
+{
+	private static final String PROCESS_INSTANCE_ID = "8d0e6b5c-3b1a-11ef-9e2b-0242ac120002";
+	private static final byte[] PAYLOAD = "encrypted bundle".getBytes(StandardCharsets.UTF_8);
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path spoolFolder;
+	private PayloadSpoolImpl spool;
+
+	@Before
+	public void before() throws Exception
+	{
+		spoolFolder = temporaryFolder.newFolder("spool").toPath();
+		spool = new PayloadSpoolImpl(spoolFolder, Duration.ofHours(24));
+	}
+
+	private PayloadHandle store(PayloadSpool spool, String processInstanceId, byte[] payload) throws IOException
+	{
+		return spool.store(processInstanceId, new ByteArrayInputStream(payload));
+	}
+
+	private byte[] read(PayloadSpool spool, PayloadHandle handle) throws IOException
+	{
+		try (InputStream in = spool.read(handle))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+	private long countFiles(Path folder) throws IOException
+	{
+		try (Stream<Path> files = Files.list(folder))
+		{
+			return files.count();
+		}
+	}
+
+	private static void setLastModified(Path path, Duration age) throws IOException
+	{
+		Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+	}
+
+	@Test
+	public void testStoreRead() throws Exception
+	{
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		assertEquals(PAYLOAD.length, handle.getSize());
+		assertEquals(PROCESS_INSTANCE_ID + "/" + handle.getSha256(), handle.getPath());
+		assertArrayEquals(PAYLOAD, read(spool, handle));
+
+		// no temporary files left
+		assertEquals(1, countFiles(spoolFolder.resolve(PROCESS_INSTANCE_ID)));
+	}
+
+	@Test
+	public void testStoreSameContent() throws Exception
+	{
+		PayloadHandle handle1 = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+		PayloadHandle handle2 = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		assertEquals(handle1, handle2);
+		assertEquals(1, countFiles(spoolFolder.resolve(PROCESS_INSTANCE_ID)));
+	}
+
+	@Test
+	public void testReadAfterRestart() throws Exception
+	{
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		// handle as read from the engine database after a restart
+		PayloadHandle restored = new PayloadHandle(handle.getSha256(), handle.getSize(), handle.getPath());
+		PayloadSpool restarted = new PayloadSpoolImpl(spoolFolder, Duration.ofHours(24));
+
+		assertEquals(0, restarted.deleteExpired());
+		assertArrayEquals(PAYLOAD, read(restarted, restored));
+	}
+
+	@Test
+	public void testDeleteExpiredRemovesIncompleteWrite() throws Exception
+	{
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		// temporary file of a write interrupted by a crash
+		Path oldTempFile = Files.write(spoolFolder.resolve(PROCESS_INSTANCE_ID).resolve("interrupted.tmp"),
+				new byte[] { 1, 2, 3 });
+		setLastModified(oldTempFile, Duration.ofHours(2));
+		Path currentTempFile = Files.write(spoolFolder.resolve(PROCESS_INSTANCE_ID).resolve("current.tmp"),
+				new byte[] { 1, 2, 3 });
+
+		assertEquals(0, spool.deleteExpired());
+
+		assertFalse(Files.exists(oldTempFile));
+		assertTrue(Files.exists(currentTempFile));
+		assertArrayEquals(PAYLOAD, read(spool, handle));
+	}
+
+	@Test
+	public void testDeleteExpired() throws Exception
+	{
+		store(spool, "expired", PAYLOAD);
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		setLastModified(spoolFolder.resolve("expired"), Duration.ofHours(25));
+
+		assertEquals(1, spool.deleteExpired());
+
+		assertFalse(Files.exists(spoolFolder.resolve("expired")));
+		assertArrayEquals(PAYLOAD, read(spool, handle));
+	}
+
+	@Test
+	public void testDeleteAll() throws Exception
+	{
+		store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+		store(spool, PROCESS_INSTANCE_ID, "validation error".getBytes(StandardCharsets.UTF_8));
+		PayloadHandle other = store(spool, "other", PAYLOAD);
+
+		spool.deleteAll(PROCESS_INSTANCE_ID);
+		spool.deleteAll(PROCESS_INSTANCE_ID);
+
+		assertFalse(Files.exists(spoolFolder.resolve(PROCESS_INSTANCE_ID)));
+		assertArrayEquals(PAYLOAD, read(spool, other));
+	}
+
+	@Test
+	public void testDelete() throws Exception
+	{
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		spool.delete(handle);
+
+		try
+		{
+			spool.read(handle);
+			fail("NoSuchFileException expected");
+		}
+		catch (NoSuchFileException e)
+		{
+			// expected
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadTruncated() throws Exception
+	{
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+		Files.write(spoolFolder.resolve(handle.getPath()), new byte[] { 1, 2, 3 });
+
+		spool.read(handle);
+	}
+
+	@Test
+	public void testReadCorrupted() throws Exception
+	{
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		byte[] corrupted = PAYLOAD.clone();
+		corrupted[0] ^= 1;
+		Files.write(spoolFolder.resolve(handle.getPath()), corrupted);
+
+		try (InputStream in = spool.read(handle))
+		{
+			in.readAllBytes();
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage().contains("does not match digest or size"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadPathOutsideSpool() throws Exception
+	{
+		PayloadHandle handle = store(spool, PROCESS_INSTANCE_ID, PAYLOAD);
+
+		spool.read(new PayloadHandle(handle.getSha256(), handle.getSize(), "../" + handle.getSha256()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStoreInvalidProcessInstanceId() throws Exception
+	{
+		store(spool, "../other", PAYLOAD);
+	}
+}
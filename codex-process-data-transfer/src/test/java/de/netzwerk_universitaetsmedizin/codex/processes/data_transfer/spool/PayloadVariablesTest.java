@@ -0,0 +1,114 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.spool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.variables.PayloadHandle;
+import dev.dsf.bpe.v1.variables.Variables;
+
+public class PayloadVariablesTest
+{
+	private static final String PROCESS_INSTANCE_ID = "4711";
+	private static final String NAME = "bundle";
+	private static final byte[] PAYLOAD = "encrypted bundle".getBytes(StandardCharsets.UTF_8);
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final DelegateExecution execution = mock(DelegateExecution.class);
+	private final Variables variables = mock(Variables.class);
+
+	private Path spoolFolder;
+	private PayloadVariables payloadVariables;
+
+	@Before
+	public void before() throws Exception
+	{
+		when(execution.getProcessInstanceId()).thenReturn(PROCESS_INSTANCE_ID);
+
+		spoolFolder = temporaryFolder.newFolder("spool").toPath();
+		payloadVariables = new PayloadVariables(new PayloadSpoolImpl(spoolFolder, Duration.ofHours(24)));
+	}
+
+	@Test
+	public void testSetGetSpooled() throws Exception
+	{
+		long size = payloadVariables.setPayload(execution, variables, NAME, new ByteArrayInputStream(PAYLOAD));
+		assertEquals(PAYLOAD.length, size);
+
+		ArgumentCaptor<TypedValue> value = ArgumentCaptor.forClass(TypedValue.class);
+		verify(variables).setVariable(eq(NAME), value.capture());
+		assertTrue(value.getValue().getValue() instanceof PayloadHandle);
+
+		when(variables.getVariable(NAME)).thenReturn(value.getValue().getValue());
+		assertArrayEquals(PAYLOAD, payloadVariables.getPayloadBytes(variables, NAME));
+	}
+
+	@Test
+	public void testGetByteArrayVariable() throws Exception
+	{
+		// variable set by a process instance started before the spool was configured
+		when(variables.getVariable(NAME)).thenReturn(PAYLOAD);
+
+		assertArrayEquals(PAYLOAD, payloadVariables.getPayloadBytes(variables, NAME));
+	}
+
+	@Test
+	public void testSetGetWithoutSpool() throws Exception
+	{
+		PayloadVariables withoutSpool = new PayloadVariables(null);
+
+		assertEquals(PAYLOAD.length,
+				withoutSpool.setPayload(execution, variables, NAME, new ByteArrayInputStream(PAYLOAD)));
+		verify(variables).setByteArray(NAME, PAYLOAD);
+
+		when(variables.getVariable(NAME)).thenReturn(PAYLOAD);
+		assertArrayEquals(PAYLOAD, withoutSpool.getPayloadBytes(variables, NAME));
+	}
+
+	@Test(expected = IOException.class)
+	public void testGetSpooledWithoutSpool() throws Exception
+	{
+		payloadVariables.setPayload(execution, variables, NAME, PAYLOAD);
+
+		ArgumentCaptor<TypedValue> value = ArgumentCaptor.forClass(TypedValue.class);
+		verify(variables).setVariable(eq(NAME), value.capture());
+		when(variables.getVariable(NAME)).thenReturn(value.getValue().getValue());
+
+		new PayloadVariables(null).getPayload(variables, NAME);
+	}
+
+	@Test
+	public void testDeletePayloads() throws Exception
+	{
+		payloadVariables.setPayload(execution, variables, NAME, PAYLOAD);
+		verify(variables).setVariable(eq(NAME), any());
+		assertTrue(Files.isDirectory(spoolFolder.resolve(PROCESS_INSTANCE_ID)));
+
+		payloadVariables.deletePayloads(execution);
+
+		assertFalse(Files.exists(spoolFolder.resolve(PROCESS_INSTANCE_ID)));
+	}
+}
@@ -0,0 +1,124 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class BatchValidationTest
+{
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static Observation observation(String id)
+	{
+		return (Observation) BundleValidatorImplTest.createBundle(id).getEntryFirstRep().getResource();
+	}
+
+	private Path createInputs() throws Exception
+	{
+		Path root = temporaryFolder.getRoot().toPath();
+		Path export = Files.createDirectories(root.resolve("export/a"));
+
+		Bundle bundle = BundleValidatorImplTest.createBundle("ok1", "error1", "noprofile1");
+		// keep resource ids when parsing, urn:uuid full urls would replace them
+		bundle.getEntry().forEach(e -> e.setFullUrl("Observation/" + e.getResource().getIdElement().getIdPart()));
+		Files.writeString(export.resolve("bundle.json"), fhirContext.newJsonParser().encodeResourceToString(bundle));
+		Files.writeString(export.resolve("observation.xml"),
+				fhirContext.newXmlParser().encodeResourceToString(observation("ok2")));
+		Files.writeString(root.resolve("export/observations.ndjson"),
+				List.of("ok3", "ok4", "error2").stream().map(BatchValidationTest::observation)
+						.map(o -> fhirContext.newJsonParser().encodeResourceToString(o))
+						.collect(Collectors.joining("\n", "", "\n\n")) + "not json\n");
+		Files.writeString(export.resolve("readme.txt"), "not a resource");
+
+		return root;
+	}
+
+	@Test
+	public void testResolveInputs() throws Exception
+	{
+		Path root = createInputs();
+		String export = root.resolve("export").toString();
+
+		assertEquals(List.of(root.resolve("export/a/bundle.json"), root.resolve("export/a/observation.xml"),
+				root.resolve("export/observations.ndjson")), BatchValidation.resolveInputs(export));
+
+		assertEquals(List.of(root.resolve("export/a/bundle.json"), root.resolve("export/a/observation.xml")),
+				BatchValidation.resolveInputs(export + "/*/*"));
+
+		assertEquals(List.of(root.resolve("export/a/bundle.json"), root.resolve("export/a/readme.txt")), BatchValidation
+				.resolveInputs(export + "/**/*.json", export + "/a/readme.txt", export + "/missing.json"));
+	}
+
+	@Test
+	public void testValidate() throws Exception
+	{
+		Path root = createInputs();
+		List<Path> files = BatchValidation.resolveInputs(root.resolve("export").toString(),
+				root.resolve("export/a/readme.txt").toString());
+
+		BatchValidationSummary summary = new BatchValidation(fhirContext,
+				BundleValidatorImplTest.createBundleValidator(new BundleValidatorImplTest.StubResourceValidator()), 4)
+				.validate(files);
+
+		assertEquals(4, summary.getThreads());
+		assertEquals(5, summary.getInputs());
+		assertEquals(7, summary.getResources());
+		assertEquals(3, summary.getResourcesWithError());
+		assertEquals(3, summary.getErrors());
+
+		assertEquals(
+				List.of(root.resolve("export/a/readme.txt").toString(),
+						root.resolve("export/observations.ndjson") + ":5"),
+				List.copyOf(summary.getInputsFailed().keySet()));
+		assertEquals(List.of(root.resolve("export/a/bundle.json").toString(),
+				root.resolve("export/observations.ndjson") + ":3"), summary.getInputsWithError());
+
+		BatchValidationSummary.ProfileSummary profile = summary.getProfiles().get(BundleValidatorImplTest.PROFILE);
+		assertEquals(6, profile.getResources());
+		assertEquals(2, profile.getResourcesWithError());
+		assertEquals(1, summary.getProfiles().get(BatchValidationSummary.NO_PROFILE).getResourcesWithError());
+
+		BatchValidationSummary.Latency latency = summary.getLatencyMillis();
+		assertTrue(latency.getP50() <= latency.getP95());
+		assertTrue(latency.getP95() <= latency.getP99());
+		assertTrue(latency.getP99() <= latency.getMax());
+
+		JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(summary));
+		assertEquals(7, json.get("resources").asInt());
+		assertTrue(json.get("latencyMillis").has("p99"));
+		assertTrue(json.has("resourcesPerSecond"));
+	}
+
+	@Test
+	public void testPercentile() throws Exception
+	{
+		long[] values = new long[100];
+		for (int i = 0; i < values.length; i++)
+			values[i] = i + 1;
+
+		assertEquals(50, BatchValidationSummary.percentile(values, 50));
+		assertEquals(95, BatchValidationSummary.percentile(values, 95));
+		assertEquals(99, BatchValidationSummary.percentile(values, 99));
+		assertEquals(100, BatchValidationSummary.percentile(values, 100));
+		assertEquals(7, BatchValidationSummary.percentile(new long[] { 7 }, 99));
+		assertEquals(0, BatchValidationSummary.percentile(new long[0], 50));
+	}
+}
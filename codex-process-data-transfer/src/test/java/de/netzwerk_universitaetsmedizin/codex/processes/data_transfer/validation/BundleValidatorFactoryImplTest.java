@@ -0,0 +1,198 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import ca.uhn.fhir.context.support.IValidationSupport;
+
+public class BundleValidatorFactoryImplTest
+{
+	private static final List<ValidationPackageIdentifier> IDENTIFIERS = List
+			.of(ValidationPackageIdentifier.fromString("test|1.0.0"));
+
+	private final CountDownLatch downloadStarted = new CountDownLatch(1);
+	private final CountDownLatch downloadFinish = new CountDownLatch(1);
+
+	private final ValidationPackageManager manager = mock(ValidationPackageManager.class);
+	private final IValidationSupport validationSupport = mock(IValidationSupport.class);
+	private final BundleValidator validator = mock(BundleValidator.class);
+
+	private BundleValidatorFactoryImpl createFactory(boolean warmUp, RuntimeException downloadError)
+			throws Exception
+	{
+		when(manager.downloadPackagesWithDependencies(anyCollection(), any(ValidationProgress.class)))
+				.thenAnswer(invocation ->
+				{
+					ValidationProgress progress = invocation.getArgument(1);
+					progress.startPhase(ValidationProgress.Phase.DOWNLOADING_PACKAGES);
+
+					downloadStarted.countDown();
+					downloadFinish.await();
+
+					if (downloadError != null)
+						throw downloadError;
+
+					progress.packageLoaded();
+					return List.of();
+				});
+		when(manager.expandValueSetsAndGenerateStructureDefinitionSnapshots(anyCollection(),
+				any(ValidationProgress.class))).thenReturn(validationSupport);
+		when(manager.createBundleValidator(any(IValidationSupport.class), anyList())).thenReturn(validator);
+
+		BundleValidatorFactoryImpl factory = new BundleValidatorFactoryImpl(true, manager, IDENTIFIERS, warmUp);
+		factory.afterPropertiesSet();
+		return factory;
+	}
+
+	@Test
+	public void testCreateWaitsForReadiness() throws Exception
+	{
+		BundleValidatorFactoryImpl factory = createFactory(true, null);
+
+		assertFalse(factory.create(Duration.ofMillis(10)).isPresent());
+		assertEquals(ValidationProgress.Phase.NOT_STARTED, factory.getProgress().getPhase());
+
+		factory.initAsync();
+		assertTrue(downloadStarted.await(5, TimeUnit.SECONDS));
+		assertFalse(factory.initAsync().isDone());
+
+		assertFalse(factory.create(Duration.ofMillis(50)).isPresent());
+		assertEquals(ValidationProgress.Phase.DOWNLOADING_PACKAGES, factory.getProgress().getPhase());
+
+		downloadFinish.countDown();
+		assertSame(validator, factory.create(Duration.ofSeconds(5)).get());
+
+		ValidationProgress progress = factory.getProgress();
+		assertEquals(ValidationProgress.Phase.READY, progress.getPhase());
+		assertEquals(1, progress.getPackagesLoaded());
+		assertTrue(progress.getPhaseMillis(ValidationProgress.Phase.DOWNLOADING_PACKAGES) >= 0);
+		assertTrue(progress.getPhaseMillis(ValidationProgress.Phase.WARMING_UP) >= 0);
+
+		// warm-up validation
+		ArgumentCaptor<Bundle> warmUpBundle = ArgumentCaptor.forClass(Bundle.class);
+		verify(validator).validate(warmUpBundle.capture());
+		assertEquals(Bundle.BundleType.TRANSACTION, warmUpBundle.getValue().getType());
+	}
+
+	@Test
+	public void testInitWithoutWarmUp() throws Exception
+	{
+		BundleValidatorFactoryImpl factory = createFactory(false, null);
+		downloadFinish.countDown();
+
+		factory.init();
+		factory.init();
+
+		assertSame(validator, factory.create().get());
+		assertEquals(-1, factory.getProgress().getPhaseMillis(ValidationProgress.Phase.WARMING_UP));
+		verify(validator, never()).validate(any(Bundle.class));
+	}
+
+	@Test
+	public void testInitFailed() throws Exception
+	{
+		BundleValidatorFactoryImpl factory = createFactory(true, new IllegalStateException("test"));
+		downloadFinish.countDown();
+
+		try
+		{
+			factory.init();
+			fail("IllegalStateException expected");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("test", e.getMessage());
+		}
+
+		assertTrue(factory.initAsync().isCompletedExceptionally());
+		assertEquals(ValidationProgress.Phase.FAILED, factory.getProgress().getPhase());
+		assertFalse(factory.create(Duration.ofSeconds(5)).isPresent());
+	}
+
+	@Test
+	public void testReload() throws Exception
+	{
+		BundleValidatorFactoryImpl factory = createFactory(false, null);
+		downloadFinish.countDown();
+		factory.init();
+
+		List<ValidationPackageIdentifier> reloadIdentifiers = List
+				.of(ValidationPackageIdentifier.fromString("test|2.0.0"));
+		IValidationSupport reloadValidationSupport = mock(IValidationSupport.class);
+		BundleValidator reloadValidator = mock(BundleValidator.class);
+
+		doReturn(List.of()).when(manager).downloadPackagesWithDependencies(eq(reloadIdentifiers),
+				any(ValidationProgress.class));
+		doReturn(reloadValidationSupport).when(manager)
+				.expandValueSetsAndGenerateStructureDefinitionSnapshots(anyCollection(), any(ValidationProgress.class));
+		doReturn(reloadValidator).when(manager).createBundleValidator(eq(reloadValidationSupport), anyList());
+
+		// created before reload, keeps using the previous validation support
+		assertSame(validator, factory.create().get());
+
+		factory.reload(reloadIdentifiers).get(5, TimeUnit.SECONDS);
+
+		assertEquals(reloadIdentifiers, factory.getValidationPackageIdentifiers());
+		assertSame(reloadValidator, factory.create().get());
+		assertSame(reloadValidator, factory.create(Duration.ofMillis(10)).get());
+		assertEquals(ValidationProgress.Phase.READY, factory.getProgress().getPhase());
+
+		// unchanged packages, no download
+		factory.reload(reloadIdentifiers).get(5, TimeUnit.SECONDS);
+		verify(manager, times(1)).downloadPackagesWithDependencies(eq(reloadIdentifiers),
+				any(ValidationProgress.class));
+	}
+
+	@Test
+	public void testReloadFailed() throws Exception
+	{
+		BundleValidatorFactoryImpl factory = createFactory(false, null);
+		downloadFinish.countDown();
+		factory.init();
+
+		List<ValidationPackageIdentifier> reloadIdentifiers = List
+				.of(ValidationPackageIdentifier.fromString("test|2.0.0"));
+		doThrow(new IllegalStateException("test")).when(manager).downloadPackagesWithDependencies(eq(reloadIdentifiers),
+				any(ValidationProgress.class));
+
+		CompletableFuture<Void> reload = factory.reload(reloadIdentifiers);
+		try
+		{
+			reload.get(5, TimeUnit.SECONDS);
+			fail("ExecutionException expected");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		assertEquals(ValidationProgress.Phase.FAILED, factory.getProgress().getPhase());
+		assertEquals(IDENTIFIERS, factory.getValidationPackageIdentifiers());
+		assertSame(validator, factory.create(Duration.ofMillis(10)).get());
+	}
+}
@@ -0,0 +1,175 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition.StructureDefinitionKind;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import dev.dsf.fhir.validation.ResourceValidator;
+
+public class BundleValidatorImplTest
+{
+	static final String PROFILE = "http://example.org/fhir/StructureDefinition/test-observation";
+
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	/**
+	 * Resources with an id starting with <code>error</code> are invalid
+	 */
+	public static final class StubResourceValidator implements ResourceValidator
+	{
+		final AtomicInteger validations = new AtomicInteger();
+
+		@Override
+		public ValidationResult validate(org.hl7.fhir.r4.model.Resource resource)
+		{
+			validations.incrementAndGet();
+
+			if (resource.getIdElement().getIdPart().startsWith("error"))
+			{
+				SingleValidationMessage message = new SingleValidationMessage();
+				message.setLocationString("Observation.value");
+				message.setMessage("Invalid value in " + resource.getIdElement().getIdPart());
+				message.setSeverity(ResultSeverityEnum.ERROR);
+
+				return new ValidationResult(fhirContext, List.of(message));
+			}
+			else
+				return new ValidationResult(fhirContext, List.of());
+		}
+	}
+
+	public static BundleValidatorImpl createBundleValidator(ResourceValidator delegate)
+	{
+		StructureDefinition profile = new StructureDefinition().setUrl(PROFILE)
+				.setKind(StructureDefinitionKind.RESOURCE).setAbstract(false);
+
+		ValidationPackageWithDepedencies packageWithDependencies = mock(ValidationPackageWithDepedencies.class);
+		when(packageWithDependencies.getResources(StructureDefinition.class)).thenReturn(List.of(profile));
+		when(packageWithDependencies.getStructureDefinitionDependencies(profile)).thenReturn(List.of());
+
+		return new BundleValidatorImpl(delegate, fhirContext, List.of(packageWithDependencies));
+	}
+
+	/**
+	 * @param ids
+	 *            Observation ids, <code>error</code> prefix for invalid resources, <code>noprofile</code> prefix for
+	 *            resources without supported profile
+	 */
+	public static Bundle createBundle(String... ids)
+	{
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+		for (String id : ids)
+		{
+			Observation observation = new Observation();
+			observation.setId(id);
+			if (!id.startsWith("noprofile"))
+				observation.getMeta().addProfile(PROFILE);
+
+			bundle.addEntry().setFullUrl("urn:uuid:" + id).setResource(observation);
+		}
+		return bundle;
+	}
+
+	private static List<String> outcomes(Bundle bundle)
+	{
+		return bundle.getEntry().stream().map(BundleEntryComponent::getResponse)
+				.map(r -> (OperationOutcome) r.getOutcome())
+				.map(o -> fhirContext.newJsonParser().encodeResourceToString(o)).collect(Collectors.toList());
+	}
+
+	private static List<Boolean> notValidated(Bundle bundle)
+	{
+		return bundle.getEntry().stream()
+				.map(e -> ValidationBudget.isNotValidated((OperationOutcome) e.getResponse().getOutcome()))
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void testUnlimited() throws Exception
+	{
+		StubResourceValidator delegate = new StubResourceValidator();
+		Bundle bundle = createBundleValidator(delegate)
+				.validate(createBundle("ok1", "error1", "noprofile1", "error2", "ok2"));
+
+		assertEquals(4, delegate.validations.get());
+		assertEquals(List.of(false, false, false, false, false), notValidated(bundle));
+	}
+
+	@Test
+	public void testFailFast() throws Exception
+	{
+		StubResourceValidator delegate = new StubResourceValidator();
+		Bundle bundle = createBundleValidator(delegate).validate(createBundle("ok1", "error1", "ok2", "error2"),
+				ValidationBudget.of(1, null));
+
+		assertEquals(2, delegate.validations.get());
+		assertEquals(List.of(false, false, true, true), notValidated(bundle));
+		assertTrue(((OperationOutcome) bundle.getEntry().get(2).getResponse().getOutcome()).getIssueFirstRep()
+				.getDiagnostics().contains("after 1 resource with error"));
+	}
+
+	@Test
+	public void testErrorBudgetCountsMissingProfile() throws Exception
+	{
+		StubResourceValidator delegate = new StubResourceValidator();
+		Bundle bundle = createBundleValidator(delegate).validate(
+				createBundle("noprofile1", "ok1", "error1", "ok2", "error2", "ok3"), ValidationBudget.of(2, null));
+
+		// noprofile1 is rejected without calling the delegate
+		assertEquals(2, delegate.validations.get());
+		assertEquals(List.of(false, false, false, true, true, true), notValidated(bundle));
+	}
+
+	@Test
+	public void testTimeBudget() throws Exception
+	{
+		StubResourceValidator delegate = new StubResourceValidator();
+		Bundle bundle = createBundleValidator(delegate).validate(createBundle("ok1", "ok2", "ok3"),
+				ValidationBudget.of(0, Duration.ofNanos(1)));
+
+		assertEquals(1, delegate.validations.get());
+		assertEquals(List.of(false, true, true), notValidated(bundle));
+	}
+
+	@Test
+	public void testDeterministicOutcomes() throws Exception
+	{
+		ValidationBudget budget = ValidationBudget.of(2, null);
+		String[] ids = { "ok1", "error1", "noprofile1", "ok2", "error2", "ok3", "error3" };
+
+		List<String> first = outcomes(
+				createBundleValidator(new StubResourceValidator()).validate(createBundle(ids), budget));
+
+		for (int i = 0; i < 5; i++)
+			assertEquals(first,
+					outcomes(createBundleValidator(new StubResourceValidator()).validate(createBundle(ids), budget)));
+	}
+
+	@Test
+	public void testValidationBudgetOf() throws Exception
+	{
+		assertTrue(ValidationBudget.of(0, null).isUnlimited());
+		assertTrue(ValidationBudget.of(-1, Duration.ZERO).isUnlimited());
+		assertFalse(ValidationBudget.of(0, Duration.ofSeconds(1)).isUnlimited());
+		assertFalse(ValidationBudget.of(3, null).isUnlimited());
+	}
+}
@@ -0,0 +1,143 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+
+/**
+ * Compares write and read throughput as well as on-disk size of the {@link CacheCodec}s. Excluded from the default test
+ * run, executed with all benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=CacheCodecBenchmark</code>.
+ * <p>
+ * Uses the cache files found in the folder given by the system property <code>cacheFolder</code>, e.g.
+ * <code>-DcacheFolder=/tmp/rdp_validation_cache</code> after the validation packages were downloaded and
+ * StructureDefinition snapshots generated. If the system property is not set, the FHIR R4 core StructureDefinitions
+ * with snapshots are used.
+ */
+public class CacheCodecBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(CacheCodecBenchmark.class);
+
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+
+	private static final List<CacheCodec> CODECS = List.of(CacheCodec.NONE, CacheCodec.GZIP, CacheCodec.deflate(1),
+			CacheCodec.DEFLATE, CacheCodec.deflate(9), CacheCodec.LZ4);
+
+	private static List<byte[]> readCacheFolder(Path cacheFolder) throws IOException
+	{
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(cacheFolder))
+		{
+			files = walk.filter(Files::isRegularFile).filter(f -> f.getFileName().toString().contains(".json"))
+					.filter(f -> !f.getFileName().toString().equals(CacheManifest.FILENAME))
+					.collect(Collectors.toList());
+		}
+
+		List<byte[]> entries = new ArrayList<>();
+		for (Path file : files)
+		{
+			byte[] content = Files.readAllBytes(file);
+			Optional<CacheCodec> codec = CacheCodec.detect(content);
+
+			if (codec.isPresent())
+				entries.add(decode(codec.get(), content));
+		}
+
+		logger.info("{} cache files read from {}", entries.size(), cacheFolder.toAbsolutePath().toString());
+		return entries;
+	}
+
+	private static List<byte[]> coreStructureDefinitions()
+	{
+		FhirContext fhirContext = FhirContext.forR4();
+		List<StructureDefinition> structureDefinitions = new DefaultProfileValidationSupport(fhirContext)
+				.fetchAllStructureDefinitions();
+
+		logger.info("{} FHIR R4 core StructureDefinitions used", structureDefinitions.size());
+		return structureDefinitions.stream()
+				.map(sd -> fhirContext.newJsonParser().encodeResourceToString(sd).getBytes(StandardCharsets.UTF_8))
+				.collect(Collectors.toList());
+	}
+
+	private static byte[] encode(CacheCodec codec, byte[] content) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length);
+		try (OutputStream out = codec.getOutCompressorFactory().apply(bytes))
+		{
+			out.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] decode(CacheCodec codec, byte[] content) throws IOException
+	{
+		try (InputStream in = codec.getInCompressorFactory().apply(new ByteArrayInputStream(content)))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		String cacheFolder = System.getProperty("cacheFolder");
+		List<byte[]> entries = cacheFolder == null ? coreStructureDefinitions()
+				: readCacheFolder(Paths.get(cacheFolder));
+		assertFalse(entries.isEmpty());
+
+		long uncompressedSize = entries.stream().mapToLong(e -> e.length).sum();
+		logger.info("{} entries, {} bytes uncompressed", entries.size(), uncompressedSize);
+
+		for (CacheCodec codec : CODECS)
+		{
+			List<byte[]> encoded = new ArrayList<>(entries.size());
+
+			Measurement write = BenchmarkSupport.measureIterations(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, () ->
+			{
+				encoded.clear();
+				for (byte[] entry : entries)
+					encoded.add(encode(codec, entry));
+			});
+			Measurement read = BenchmarkSupport.measureIterations(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, () ->
+			{
+				for (byte[] entry : encoded)
+					decode(codec, entry);
+			});
+
+			for (int i = 0; i < entries.size(); i++)
+				assertArrayEquals(entries.get(i), decode(codec, encoded.get(i)));
+
+			long compressedSize = encoded.stream().mapToLong(e -> e.length).sum();
+
+			logger.info("{}: size {} bytes ({}%), write {} MB/s, read {} MB/s", String.format("%-9s", codec.getName()),
+					compressedSize, String.format("%.1f", 100d * compressedSize / uncompressedSize),
+					String.format("%.0f", write.getMegabytesPerSecond(uncompressedSize)),
+					String.format("%.0f", read.getMegabytesPerSecond(uncompressedSize)));
+		}
+	}
+}
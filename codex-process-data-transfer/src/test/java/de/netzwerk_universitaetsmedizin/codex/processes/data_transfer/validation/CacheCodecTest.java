@@ -0,0 +1,99 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class CacheCodecTest
+{
+	private static final byte[] CONTENT = "{\"resourceType\":\"ValueSet\",\"url\":\"http://test/vs\",\"version\":\"1.0.0\"}"
+			.repeat(100).getBytes(StandardCharsets.UTF_8);
+
+	private static byte[] encode(CacheCodec codec, byte[] content) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = codec.getOutCompressorFactory().apply(bytes))
+		{
+			out.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] decode(CacheCodec codec, byte[] content) throws IOException
+	{
+		try (InputStream in = codec.getInCompressorFactory().apply(new ByteArrayInputStream(content)))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+	@Test
+	public void testRoundTripAndDetect() throws Exception
+	{
+		for (CacheCodec codec : List.of(CacheCodec.NONE, CacheCodec.GZIP, CacheCodec.DEFLATE, CacheCodec.deflate(1),
+				CacheCodec.deflate(9), CacheCodec.LZ4))
+		{
+			byte[] encoded = encode(codec, CONTENT);
+
+			assertArrayEquals(codec.getName(), CONTENT, decode(codec, encoded));
+			assertEquals(codec.getName(), codec.getFilenameSuffix(),
+					CacheCodec.detect(encoded).get().getFilenameSuffix());
+
+			if (codec != CacheCodec.NONE)
+				assertTrue(codec.getName(), encoded.length < CONTENT.length);
+		}
+	}
+
+	@Test
+	public void testDetectUnknown() throws Exception
+	{
+		assertEquals(Optional.empty(), CacheCodec.detect(new byte[0]));
+		assertEquals(Optional.empty(), CacheCodec.detect("xyz".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(CacheCodec.NONE, CacheCodec.detect(" \n[]".getBytes(StandardCharsets.UTF_8)).get());
+	}
+
+	@Test
+	public void testFromString() throws Exception
+	{
+		assertEquals(CacheCodec.NONE, CacheCodec.fromString("none"));
+		assertEquals(CacheCodec.GZIP, CacheCodec.fromString("GZIP"));
+		assertEquals(CacheCodec.LZ4, CacheCodec.fromString(" lz4 "));
+		assertEquals("deflate", CacheCodec.fromString("deflate").getName());
+		assertEquals("deflate:3", CacheCodec.fromString("deflate:3").getName());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFromStringInvalidLevel() throws Exception
+	{
+		CacheCodec.fromString("deflate:10");
+	}
+
+	@Test
+	public void testFromStringUnsupported() throws Exception
+	{
+		for (String codec : List.of("xz", "deflate:x", ""))
+		{
+			try
+			{
+				CacheCodec.fromString(codec);
+				assertFalse(codec, true);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class CacheManifestTest
+{
+	private static final List<String> PACKAGES = List.of("a|1.0.0", "b|1.0.0", "c|1.0.0");
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path source;
+
+	@Before
+	public void before() throws Exception
+	{
+		source = temporaryFolder.newFolder("source").toPath();
+
+		ValidationPackageClientWithFileSystemCache cache = new ValidationPackageClientWithFileSystemCache(source,
+				CacheCodec.GZIP, new InMemoryCache(), new ObjectMapper(),
+				identifier -> new ValidationPackage(identifier.getName(), identifier.getVersion(),
+						List.of(new ValidationPackageEntry("package/package.json", new Date(),
+								("{\"name\":\"" + identifier.getName() + "\"}").getBytes(StandardCharsets.UTF_8)))));
+		cache.afterPropertiesSet();
+
+		for (String identifier : PACKAGES)
+			cache.download(ValidationPackageIdentifier.fromString(identifier));
+
+		CacheManifest.forFolder(source).flush();
+	}
+
+	/**
+	 * Copies the source cache folder, the manifest of the copy is read on first access, like after a restart
+	 */
+	private Path copySource(String name) throws IOException
+	{
+		Path copy = temporaryFolder.newFolder(name).toPath();
+		for (String file : list(source))
+			Files.copy(source.resolve(file), copy.resolve(file));
+
+		return copy;
+	}
+
+	private List<String> list(Path folder) throws IOException
+	{
+		try (Stream<Path> files = Files.list(folder))
+		{
+			return files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void testManifestWritten() throws Exception
+	{
+		CacheManifest manifest = CacheManifest.forFolder(source);
+
+		assertEquals(List.of("a_1.0.0.json.gz", "b_1.0.0.json.gz", "c_1.0.0.json.gz", CacheManifest.FILENAME),
+				list(source));
+		assertEquals(3, manifest.getEntryCount());
+
+		CacheManifest.Entry entry = manifest.get(source.resolve("a_1.0.0.json.gz")).get();
+		assertEquals("a|1.0.0", entry.getCacheEntryId());
+		assertEquals("gzip", entry.getCodec());
+		assertEquals(Files.size(source.resolve("a_1.0.0.json.gz")), entry.getSize());
+		assertEquals(64, entry.getSha256().length());
+
+		Path copy = copySource("copy");
+		assertEquals(3, CacheManifest.forFolder(copy).getEntryCount());
+		assertEquals(manifest.getSize(), CacheManifest.forFolder(copy).getSize());
+	}
+
+	@Test
+	public void testWritesBatched() throws Exception
+	{
+		CacheManifest manifest = CacheManifest.forFolder(source);
+		byte[] written = Files.readAllBytes(source.resolve(CacheManifest.FILENAME));
+
+		// written at most once per WRITE_INTERVAL, last write by flush in before()
+		for (int i = 0; i < 1000; i++)
+			manifest.put(source.resolve("x" + i), new CacheManifest.Entry("x|" + i, "gzip", 1, "0", new Date(), null));
+
+		assertEquals(1003, manifest.getEntryCount());
+		assertArrayEquals(written, Files.readAllBytes(source.resolve(CacheManifest.FILENAME)));
+
+		manifest.flush();
+		assertEquals(1003, new JsonEntries(source).filenames().size());
+	}
+
+	@Test
+	public void testVerifyStaleAndPartialEntries() throws Exception
+	{
+		Path copy = copySource("copy");
+
+		byte[] content = Files.readAllBytes(copy.resolve("a_1.0.0.json.gz"));
+		Files.write(copy.resolve("a_1.0.0.json.gz"), content, StandardOpenOption.APPEND);
+		Files.delete(copy.resolve("b_1.0.0.json.gz"));
+
+		Path oldTempFile = copy.resolve("d_1.0.0.json.gz.1234.tmp");
+		Files.write(oldTempFile, new byte[] { 1 });
+		Files.setLastModifiedTime(oldTempFile, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+		Files.write(copy.resolve("e_1.0.0.json.gz.5678.tmp"), new byte[] { 1 });
+
+		CacheManifest manifest = CacheManifest.forFolder(copy);
+
+		assertEquals(1, manifest.getEntryCount());
+		assertTrue(manifest.get(copy.resolve("c_1.0.0.json.gz")).isPresent());
+		assertEquals(List.of("c_1.0.0.json.gz", CacheManifest.FILENAME, "e_1.0.0.json.gz.5678.tmp"), list(copy));
+
+		assertEquals(List.of("c_1.0.0.json.gz"), new JsonEntries(copy).filenames());
+	}
+
+	@Test
+	public void testGarbageCollect() throws Exception
+	{
+		Path copy = copySource("copy");
+
+		JsonEntries entries = new JsonEntries(copy);
+		entries.setLastUsed("a_1.0.0.json.gz", Instant.now().minus(Duration.ofDays(31)));
+		entries.setLastUsed("b_1.0.0.json.gz", Instant.now().minus(Duration.ofDays(29)));
+		entries.write();
+
+		Files.write(copy.resolve("c_1.0.0.json.gz.sha256"), new byte[] { 1 });
+		Files.write(copy.resolve("README.txt"), new byte[] { 1 });
+		Files.write(copy.resolve("x_1.0.0.json"), new byte[] { 1 });
+
+		CacheManifest manifest = CacheManifest.forFolder(copy);
+		assertEquals(3, manifest.getEntryCount());
+
+		// created after verification of the manifest
+		Path oldTempFile = copy.resolve("d_1.0.0.json.gz.1234.tmp");
+		Files.write(oldTempFile, new byte[] { 1 });
+		Files.setLastModifiedTime(oldTempFile, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+		Files.write(copy.resolve("e_1.0.0.json.gz.5678.tmp"), new byte[] { 1 });
+
+		assertEquals(3, manifest.garbageCollect(Duration.ofDays(30)));
+		assertEquals(2, manifest.getEntryCount());
+		assertEquals(List.of("README.txt", "b_1.0.0.json.gz", "c_1.0.0.json.gz", "c_1.0.0.json.gz.sha256",
+				CacheManifest.FILENAME, "e_1.0.0.json.gz.5678.tmp"), list(copy));
+		assertEquals(List.of("b_1.0.0.json.gz", "c_1.0.0.json.gz"), new JsonEntries(copy).filenames());
+
+		assertEquals(0, manifest.garbageCollect(Duration.ofDays(30)));
+	}
+
+	@Test
+	public void testUnreadableManifestIgnored() throws Exception
+	{
+		Path copy = copySource("copy");
+		Files.write(copy.resolve(CacheManifest.FILENAME), "{\"version\":1,\"entries\":".getBytes());
+
+		CacheManifest manifest = CacheManifest.forFolder(copy);
+		assertEquals(0, manifest.getEntryCount());
+		assertFalse(manifest.get(copy.resolve("a_1.0.0.json.gz")).isPresent());
+
+		assertEquals(3, manifest.garbageCollect(Duration.ofDays(30)));
+		assertEquals(List.of(CacheManifest.FILENAME), list(copy));
+	}
+
+	private static final class JsonEntries
+	{
+		final ObjectMapper mapper = new ObjectMapper();
+		final Path manifestFile;
+		final ObjectNode manifest;
+
+		JsonEntries(Path cacheFolder) throws IOException
+		{
+			manifestFile = cacheFolder.resolve(CacheManifest.FILENAME);
+			manifest = (ObjectNode) mapper.readTree(manifestFile.toFile());
+		}
+
+		List<String> filenames()
+		{
+			List<String> filenames = new ArrayList<>();
+			manifest.get("entries").fieldNames().forEachRemaining(filenames::add);
+			return filenames;
+		}
+
+		void setLastUsed(String filename, Instant lastUsed)
+		{
+			((ObjectNode) manifest.get("entries").get(filename)).put("lastUsed", lastUsed.toEpochMilli());
+		}
+
+		void write() throws IOException
+		{
+			mapper.writeValue(manifestFile.toFile(), manifest);
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import dev.dsf.fhir.validation.SnapshotGenerator;
+import jakarta.ws.rs.WebApplicationException;
+
+public class DraftResourceFileSystemCacheTest
+{
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	private static final String VALUE_SET_URL = "http://test.org/fhir/ValueSet/test";
+	private static final String INCLUDED_VALUE_SET_URL = "http://test.org/fhir/ValueSet/included";
+	private static final String CODE_SYSTEM_URL = "http://test.org/fhir/CodeSystem/test";
+	private static final String PROFILE_URL = "http://test.org/fhir/StructureDefinition/test";
+	private static final String BASE_PROFILE_URL = "http://test.org/fhir/StructureDefinition/base";
+	private static final String VERSION = "1.0.0";
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static final class ValueSetExpansionClientStub implements ValueSetExpansionClient
+	{
+		final AtomicInteger expansions = new AtomicInteger();
+
+		@Override
+		public ValueSet expand(ValueSet valueSet) throws IOException, WebApplicationException
+		{
+			expansions.incrementAndGet();
+
+			ValueSet expanded = valueSet.copy();
+			expanded.getExpansion().setIdentifier("expansion-" + expansions.get());
+			valueSet.getCompose().getIncludeFirstRep().getConcept().forEach(
+					c -> expanded.getExpansion().addContains().setSystem(CODE_SYSTEM_URL).setCode(c.getCode()));
+			return expanded;
+		}
+
+		@Override
+		public CapabilityStatement getMetadata() throws WebApplicationException
+		{
+			return new CapabilityStatement();
+		}
+	}
+
+	private static final class SnapshotGeneratorStub implements SnapshotGenerator
+	{
+		final AtomicInteger snapshots = new AtomicInteger();
+
+		@Override
+		public SnapshotWithValidationMessages generateSnapshot(StructureDefinition differential)
+		{
+			snapshots.incrementAndGet();
+
+			differential.getSnapshot()
+					.addElement(new ElementDefinition().setPath("Observation").setShort("snapshot-" + snapshots.get()));
+			return new SnapshotWithValidationMessages(differential, Collections.emptyList());
+		}
+
+		@Override
+		public SnapshotWithValidationMessages generateSnapshot(StructureDefinition differential,
+				String baseAbsoluteUrlPrefix)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static CodeSystem createCodeSystem(PublicationStatus status, String... codes)
+	{
+		CodeSystem codeSystem = new CodeSystem().setUrl(CODE_SYSTEM_URL).setVersion(VERSION).setStatus(status);
+		codeSystem.setDate(new Date());
+
+		for (String code : codes)
+			codeSystem.addConcept().setCode(code);
+
+		return codeSystem;
+	}
+
+	private ValueSetExpansionClientWithFileSystemCache createValueSetCache(ValueSetExpansionClient delegate)
+			throws Exception
+	{
+		ValueSetExpansionClientWithFileSystemCache cache = new ValueSetExpansionClientWithFileSystemCache(
+				temporaryFolder.getRoot().toPath(), CacheCodec.GZIP, new InMemoryCache(), fhirContext, delegate);
+		cache.afterPropertiesSet();
+		return cache;
+	}
+
+	private PluginSnapshotGeneratorWithFileSystemCache createSnapshotCache(SnapshotGenerator delegate,
+			IValidationSupport validationSupport) throws Exception
+	{
+		PluginSnapshotGeneratorWithFileSystemCache cache = new PluginSnapshotGeneratorWithFileSystemCache(
+				temporaryFolder.getRoot().toPath(), CacheCodec.GZIP, new InMemoryCache(), fhirContext, delegate,
+				validationSupport);
+		cache.afterPropertiesSet();
+		return cache;
+	}
+
+	private static ValueSet createValueSet(PublicationStatus status, String... codes)
+	{
+		ValueSet valueSet = new ValueSet().setUrl(VALUE_SET_URL).setVersion(VERSION).setStatus(status);
+		valueSet.setDate(new Date());
+
+		ConceptSetComponent include = valueSet.getCompose().addInclude().setSystem(CODE_SYSTEM_URL);
+		for (String code : codes)
+			include.addConcept().setCode(code);
+
+		return valueSet;
+	}
+
+	private static StructureDefinition createStructureDefinition(String url, String baseDefinition,
+			PublicationStatus status, String shortDescription)
+	{
+		StructureDefinition structureDefinition = new StructureDefinition().setUrl(url).setVersion(VERSION)
+				.setStatus(status).setType("Observation").setBaseDefinition(baseDefinition);
+		structureDefinition.getDifferential().addElement().setPath("Observation.status").setShort(shortDescription);
+		return structureDefinition;
+	}
+
+	private List<String> cacheFiles() throws IOException
+	{
+		try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath()))
+		{
+			return files.map(p -> p.getFileName().toString()).filter(f -> !CacheManifest.FILENAME.equals(f)).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void testDraftValueSetCachedUntilComposeChanges() throws Exception
+	{
+		ValueSetExpansionClientStub delegate = new ValueSetExpansionClientStub();
+
+		ValueSet expanded = createValueSetCache(delegate).expand(createValueSet(PublicationStatus.DRAFT, "a"));
+		assertEquals(1, delegate.expansions.get());
+		assertEquals(1, expanded.getExpansion().getContains().size());
+		assertEquals(1, cacheFiles().size());
+		assertTrue(cacheFiles().get(0).contains("_draft-"));
+
+		// new in memory tier, same definition with different date read from disk
+		expanded = createValueSetCache(delegate).expand(createValueSet(PublicationStatus.DRAFT, "a"));
+		assertEquals(1, delegate.expansions.get());
+		assertEquals("expansion-1", expanded.getExpansion().getIdentifier());
+
+		// changed definition, same version
+		expanded = createValueSetCache(delegate).expand(createValueSet(PublicationStatus.DRAFT, "a", "b"));
+		assertEquals(2, delegate.expansions.get());
+		assertEquals(2, expanded.getExpansion().getContains().size());
+		assertEquals(2, cacheFiles().size());
+
+		// previous definition still cached
+		expanded = createValueSetCache(delegate).expand(createValueSet(PublicationStatus.DRAFT, "a"));
+		assertEquals(2, delegate.expansions.get());
+		assertEquals("expansion-1", expanded.getExpansion().getIdentifier());
+	}
+
+	@Test
+	public void testDraftValueSetExpandAll() throws Exception
+	{
+		ValueSetExpansionClientStub delegate = new ValueSetExpansionClientStub();
+
+		createValueSetCache(delegate).expandAll(List.of(createValueSet(PublicationStatus.DRAFT, "a")));
+		assertEquals(1, delegate.expansions.get());
+
+		List<ValueSetExpansionResult> results = createValueSetCache(delegate).expandAll(
+				List.of(createValueSet(PublicationStatus.DRAFT, "a"), createValueSet(PublicationStatus.DRAFT, "c")));
+		assertEquals(2, delegate.expansions.get());
+		assertEquals("expansion-1", results.get(0).getExpansion().getExpansion().getIdentifier());
+		assertEquals("expansion-2", results.get(1).getExpansion().getExpansion().getIdentifier());
+
+		// expand and expandAll use the same cache entries
+		createValueSetCache(delegate).expand(createValueSet(PublicationStatus.DRAFT, "c"));
+		assertEquals(2, delegate.expansions.get());
+	}
+
+	@Test
+	public void testDraftValueSetIncludedCodeSystemChanges() throws Exception
+	{
+		ValueSetExpansionClientStub delegate = new ValueSetExpansionClientStub();
+
+		IValidationSupport validationSupport = mock(IValidationSupport.class);
+		when(validationSupport.fetchCodeSystem(CODE_SYSTEM_URL)).thenReturn(
+				createCodeSystem(PublicationStatus.DRAFT, "a"), createCodeSystem(PublicationStatus.DRAFT, "a"),
+				createCodeSystem(PublicationStatus.DRAFT, "a", "b"));
+
+		// ValueSet including all codes of the CodeSystem
+		ValueSet valueSet = new ValueSet().setUrl(VALUE_SET_URL).setVersion(VERSION).setStatus(PublicationStatus.DRAFT);
+		valueSet.getCompose().addInclude().setSystem(CODE_SYSTEM_URL);
+
+		createValueSetCache(delegate).expandAll(List.of(valueSet), validationSupport);
+		createValueSetCache(delegate).expandAll(List.of(valueSet), validationSupport);
+		assertEquals(1, delegate.expansions.get());
+
+		// unchanged definition, changed draft CodeSystem with same version
+		createValueSetCache(delegate).expandAll(List.of(valueSet), validationSupport);
+		assertEquals(2, delegate.expansions.get());
+		assertEquals(2, cacheFiles().size());
+	}
+
+	@Test
+	public void testDraftValueSetIncludedValueSetChanges() throws Exception
+	{
+		ValueSetExpansionClientStub delegate = new ValueSetExpansionClientStub();
+
+		IValidationSupport validationSupport = mock(IValidationSupport.class);
+		when(validationSupport.fetchValueSet(INCLUDED_VALUE_SET_URL)).thenReturn(
+				createValueSet(PublicationStatus.DRAFT, "a").setUrl(INCLUDED_VALUE_SET_URL),
+				createValueSet(PublicationStatus.DRAFT, "a", "b").setUrl(INCLUDED_VALUE_SET_URL));
+
+		ValueSet valueSet = new ValueSet().setUrl(VALUE_SET_URL).setVersion(VERSION).setStatus(PublicationStatus.DRAFT);
+		valueSet.getCompose().addInclude().addValueSet(INCLUDED_VALUE_SET_URL);
+
+		createValueSetCache(delegate).expandAll(List.of(valueSet), validationSupport);
+		assertEquals(1, delegate.expansions.get());
+
+		// unchanged definition, changed included draft ValueSet with same version
+		createValueSetCache(delegate).expandAll(List.of(valueSet), validationSupport);
+		assertEquals(2, delegate.expansions.get());
+	}
+
+	@Test
+	public void testActiveValueSetCachedByVersion() throws Exception
+	{
+		ValueSetExpansionClientStub delegate = new ValueSetExpansionClientStub();
+
+		createValueSetCache(delegate).expand(createValueSet(PublicationStatus.ACTIVE, "a"));
+		ValueSet expanded = createValueSetCache(delegate).expand(createValueSet(PublicationStatus.ACTIVE, "a", "b"));
+
+		assertEquals(1, delegate.expansions.get());
+		assertEquals("expansion-1", expanded.getExpansion().getIdentifier());
+		assertEquals(List.of("http_test.org_fhir_ValueSet_test_1.0.0.json.gz"), cacheFiles());
+	}
+
+	@Test
+	public void testActiveValueSetFromMemoryTier() throws Exception
+	{
+		ValueSetExpansionClientStub delegate = new ValueSetExpansionClientStub();
+		ValueSetExpansionClientWithFileSystemCache cache = createValueSetCache(delegate);
+
+		cache.expand(createValueSet(PublicationStatus.ACTIVE, "a"));
+		cache.expand(createValueSet(PublicationStatus.ACTIVE, "a"));
+
+		assertEquals(1, delegate.expansions.get());
+		assertEquals(1, cache.getStatistics().getMemoryHits());
+		assertEquals(0, cache.getStatistics().getDiskHits());
+	}
+
+	@Test
+	public void testDraftStructureDefinitionCachedUntilDifferentialChanges() throws Exception
+	{
+		SnapshotGeneratorStub delegate = new SnapshotGeneratorStub();
+
+		createSnapshotCache(delegate, null).generateSnapshot(
+				createStructureDefinition(PROFILE_URL, BASE_PROFILE_URL, PublicationStatus.DRAFT, "first"));
+		assertEquals(1, delegate.snapshots.get());
+
+		StructureDefinition read = createSnapshotCache(delegate, null)
+				.generateSnapshot(
+						createStructureDefinition(PROFILE_URL, BASE_PROFILE_URL, PublicationStatus.DRAFT, "first"))
+				.getSnapshot();
+		assertEquals(1, delegate.snapshots.get());
+		assertEquals("snapshot-1", read.getSnapshot().getElementFirstRep().getShort());
+
+		read = createSnapshotCache(delegate, null)
+				.generateSnapshot(
+						createStructureDefinition(PROFILE_URL, BASE_PROFILE_URL, PublicationStatus.DRAFT, "second"))
+				.getSnapshot();
+		assertEquals(2, delegate.snapshots.get());
+		assertEquals("snapshot-2", read.getSnapshot().getElementFirstRep().getShort());
+		assertEquals(2, cacheFiles().size());
+	}
+
+	@Test
+	public void testDraftStructureDefinitionBaseChanges() throws Exception
+	{
+		SnapshotGeneratorStub delegate = new SnapshotGeneratorStub();
+
+		IValidationSupport validationSupport = mock(IValidationSupport.class);
+		when(validationSupport.fetchStructureDefinition(anyString())).thenReturn(
+				createStructureDefinition(BASE_PROFILE_URL, null, PublicationStatus.DRAFT, "base-first"),
+				createStructureDefinition(BASE_PROFILE_URL, null, PublicationStatus.DRAFT, "base-first"),
+				createStructureDefinition(BASE_PROFILE_URL, null, PublicationStatus.DRAFT, "base-second"));
+
+		createSnapshotCache(delegate, validationSupport).generateSnapshot(
+				createStructureDefinition(PROFILE_URL, BASE_PROFILE_URL, PublicationStatus.DRAFT, "first"));
+		createSnapshotCache(delegate, validationSupport).generateSnapshot(
+				createStructureDefinition(PROFILE_URL, BASE_PROFILE_URL, PublicationStatus.DRAFT, "first"));
+		assertEquals(1, delegate.snapshots.get());
+
+		// unchanged definition, changed draft base definition
+		createSnapshotCache(delegate, validationSupport).generateSnapshot(
+				createStructureDefinition(PROFILE_URL, BASE_PROFILE_URL, PublicationStatus.DRAFT, "first"));
+		assertEquals(2, delegate.snapshots.get());
+	}
+}
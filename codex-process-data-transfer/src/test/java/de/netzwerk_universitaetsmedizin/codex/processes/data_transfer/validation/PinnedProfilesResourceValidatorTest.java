@@ -0,0 +1,159 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
+import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
+import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
+import org.hl7.fhir.r4.model.Narrative.NarrativeStatus;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import dev.dsf.fhir.validation.ResourceValidatorImpl;
+
+public class PinnedProfilesResourceValidatorTest
+{
+	static final String BODY_WEIGHT = "http://hl7.org/fhir/StructureDefinition/bodyweight";
+	static final String HEART_RATE = "http://hl7.org/fhir/StructureDefinition/heartrate";
+
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	private static IValidationSupport validationSupport;
+	private static List<StructureDefinition> profiles;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception
+	{
+		validationSupport = createValidationSupport(fhirContext);
+		profiles = List
+				.of(validationSupport.fetchStructureDefinition(BODY_WEIGHT),
+						validationSupport.fetchStructureDefinition(HEART_RATE))
+				.stream().map(StructureDefinition.class::cast).collect(Collectors.toList());
+	}
+
+	static IValidationSupport createValidationSupport(FhirContext fhirContext)
+	{
+		return new ValidationSupportChain(new DefaultProfileValidationSupport(fhirContext),
+				new InMemoryTerminologyServerValidationSupport(fhirContext),
+				new CommonCodeSystemsTerminologyService(fhirContext));
+	}
+
+	static Observation bodyWeight(double kg)
+	{
+		Observation observation = new Observation();
+		observation.getMeta().addProfile(BODY_WEIGHT);
+		observation.setStatus(Observation.ObservationStatus.FINAL);
+		observation.addCategory().addCoding().setSystem("http://terminology.hl7.org/CodeSystem/observation-category")
+				.setCode("vital-signs");
+		observation.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+		observation.getSubject().setReference("Patient/1");
+		observation.getEffectiveDateTimeType().setValueAsString("2021-01-01");
+		observation.getValueQuantity().setValue(kg).setUnit("kg").setSystem("http://unitsofmeasure.org").setCode("kg");
+		return observation;
+	}
+
+	private static List<String> messages(ValidationResult result)
+	{
+		return result.getMessages().stream()
+				.map(m -> m.getSeverity() + " " + m.getLocationString() + " " + m.getMessage()).sorted()
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void testContexts() throws Exception
+	{
+		PinnedProfilesResourceValidator validator = new PinnedProfilesResourceValidator(fhirContext, validationSupport,
+				profiles);
+
+		assertEquals(2, validator.getContexts().size());
+		assertTrue(validator.getProfiles().contains(BODY_WEIGHT));
+		assertTrue(validator.getProfiles().contains(HEART_RATE + "|4.0.1"));
+		assertTrue(validator.getContexts().stream().allMatch(ProfileValidationContext::isResolved));
+		assertTrue(validator.getContexts().stream().allMatch(c -> c.getInvariants() > 0));
+
+		// validators are reused by subsequent validations of the same thread
+		Observation observation = bodyWeight(80);
+		validator.validate(observation);
+		validator.validate(observation);
+		assertEquals(1, validator.getValidatorCount());
+	}
+
+	@Test
+	public void testSameResultAsResourceValidatorImpl() throws Exception
+	{
+		PinnedProfilesResourceValidator validator = new PinnedProfilesResourceValidator(fhirContext, validationSupport,
+				profiles);
+		ResourceValidatorImpl reference = new ResourceValidatorImpl(fhirContext, validationSupport);
+
+		Observation valid = bodyWeight(80);
+		assertEquals(messages(reference.validate(valid)), messages(validator.validate(valid)));
+		assertTrue(validator.validate(valid).getMessages().stream().map(SingleValidationMessage::getSeverity)
+				.noneMatch(ResultSeverityEnum.ERROR::equals));
+
+		Observation invalid = bodyWeight(80);
+		invalid.setStatus(null);
+		invalid.getCode().getCodingFirstRep().setCode("8867-4");
+
+		List<String> expected = messages(reference.validate(invalid));
+		assertTrue(expected.stream().anyMatch(m -> m.startsWith("ERROR")));
+		assertEquals(expected, messages(validator.validate(invalid)));
+		assertEquals(expected, messages(validator.validate(invalid)));
+	}
+
+	@Test
+	public void testConcurrentValidation() throws Exception
+	{
+		ResourceValidatorImpl reference = new ResourceValidatorImpl(fhirContext, validationSupport);
+		List<Observation> observations = new ArrayList<>();
+		List<List<String>> expected = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+		{
+			Observation observation = bodyWeight(80 + i);
+			observation.getText().setStatus(NarrativeStatus.GENERATED).setDivAsString("<div>" + (80 + i) + " kg</div>");
+			if (i % 2 == 1)
+				observation.setStatus(null);
+
+			observations.add(observation);
+			expected.add(messages(reference.validate(observation)));
+		}
+
+		PinnedProfilesResourceValidator validator = new PinnedProfilesResourceValidator(fhirContext, validationSupport,
+				profiles);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int i = 0; i < 100; i++)
+			{
+				Observation observation = observations.get(i % observations.size());
+				results.add(executor.submit(() -> messages(validator.validate(observation))));
+			}
+
+			for (int i = 0; i < results.size(); i++)
+				assertEquals(expected.get(i % observations.size()), results.get(i).get());
+
+			assertTrue(validator.getValidatorCount() <= 4);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.BenchmarkSupport.Measurement;
+import dev.dsf.fhir.validation.ResourceValidator;
+import dev.dsf.fhir.validation.ResourceValidatorImpl;
+
+/**
+ * Compares the per-resource validation cost of Observation bundles validated with a new {@link ResourceValidatorImpl}
+ * per bundle (the previous behavior, one validator per validated bundle) and with a shared
+ * {@link PinnedProfilesResourceValidator}. Excluded from the default test run, executed with all benchmarks by
+ * <code>mvn test -P benchmark</code> or alone with <code>mvn test -Dtest=PinnedProfilesValidationBenchmark</code>.
+ * <p>
+ * Uses the FHIR R4 core vital signs profiles, the number of Observations per bundle can be set with the system property
+ * <code>observations</code>, default {@value #DEFAULT_OBSERVATIONS}.
+ */
+public class PinnedProfilesValidationBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(PinnedProfilesValidationBenchmark.class);
+
+	private static final int DEFAULT_OBSERVATIONS = 50;
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	private static Bundle createBundle(int observations)
+	{
+		Bundle bundle = new Bundle().setType(BundleType.TRANSACTION);
+		for (int i = 0; i < observations; i++)
+		{
+			Observation observation = PinnedProfilesResourceValidatorTest.bodyWeight(50 + i % 50);
+			bundle.addEntry().setResource(observation);
+		}
+		return bundle;
+	}
+
+	private static double millisPerResource(Supplier<ResourceValidator> validatorPerBundle, Bundle bundle)
+			throws Exception
+	{
+		Measurement measurement = BenchmarkSupport.measureIterations(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, () ->
+		{
+			ResourceValidator validator = validatorPerBundle.get();
+			bundle.getEntry().forEach(e -> validator.validate((Observation) e.getResource()));
+		});
+
+		return measurement.getMillisPerOperation() / bundle.getEntry().size();
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		int observations = Integer.getInteger("observations", DEFAULT_OBSERVATIONS);
+		Bundle bundle = createBundle(observations);
+
+		IValidationSupport validationSupport = PinnedProfilesResourceValidatorTest.createValidationSupport(fhirContext);
+		List<StructureDefinition> profiles = List
+				.of(PinnedProfilesResourceValidatorTest.BODY_WEIGHT, PinnedProfilesResourceValidatorTest.HEART_RATE)
+				.stream().map(validationSupport::fetchStructureDefinition).map(StructureDefinition.class::cast)
+				.collect(Collectors.toList());
+
+		long contextStart = System.nanoTime();
+		PinnedProfilesResourceValidator pinned = new PinnedProfilesResourceValidator(fhirContext, validationSupport,
+				profiles);
+		double contextMillis = (System.nanoTime() - contextStart) / 1e6;
+
+		double perBundle = millisPerResource(() -> new ResourceValidatorImpl(fhirContext, validationSupport), bundle);
+		double shared = millisPerResource(() -> pinned, bundle);
+
+		logger.info(
+				"{} Observations per bundle: new validator per bundle {} ms/resource, shared pinned profiles "
+						+ "validator {} ms/resource, contexts created once in {} ms",
+				observations, String.format("%.2f", perBundle), String.format("%.2f", shared),
+				String.format("%.0f", contextMillis));
+
+		assertEquals(1, pinned.getValidatorCount());
+	}
+}
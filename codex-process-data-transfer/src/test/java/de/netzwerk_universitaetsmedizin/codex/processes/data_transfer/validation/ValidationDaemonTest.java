@@ -0,0 +1,161 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.ValidationResult;
+
+public class ValidationDaemonTest
+{
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private ValidationDaemon daemon;
+
+	@After
+	public void after()
+	{
+		if (daemon != null)
+			daemon.close();
+	}
+
+	private String start(BundleValidator validator, int maxConcurrentRequests, int maxQueuedRequests) throws Exception
+	{
+		daemon = new ValidationDaemon(fhirContext, validator,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxConcurrentRequests, maxQueuedRequests);
+		daemon.start();
+
+		return "http://" + daemon.getAddress().getHostString() + ":" + daemon.getAddress().getPort();
+	}
+
+	private static Resource observation(String id)
+	{
+		return BundleValidatorImplTest.createBundle(id).getEntryFirstRep().getResource();
+	}
+
+	private static boolean hasError(OperationOutcome outcome)
+	{
+		return outcome.getIssue().stream().anyMatch(
+				i -> IssueSeverity.ERROR.equals(i.getSeverity()) || IssueSeverity.FATAL.equals(i.getSeverity()));
+	}
+
+	@Test
+	public void testValidate() throws Exception
+	{
+		String url = start(
+				BundleValidatorImplTest.createBundleValidator(new BundleValidatorImplTest.StubResourceValidator()), 2,
+				2);
+		ValidationDaemonClient client = new ValidationDaemonClient(url + "/", Duration.ofSeconds(5));
+
+		Path json = temporaryFolder.newFile("error.json").toPath();
+		Files.writeString(json, fhirContext.newJsonParser().encodeResourceToString(observation("error1")));
+		ValidationDaemonClient.Response jsonResponse = client.validate(json);
+		assertEquals(200, jsonResponse.getStatus());
+		assertTrue(hasError(fhirContext.newJsonParser().parseResource(OperationOutcome.class, jsonResponse.getBody())));
+
+		Path xml = temporaryFolder.newFile("ok.xml").toPath();
+		Files.writeString(xml, fhirContext.newXmlParser().encodeResourceToString(observation("ok1")));
+		ValidationDaemonClient.Response xmlResponse = client.validate(xml);
+		assertEquals(200, xmlResponse.getStatus());
+		assertTrue(xmlResponse.getBody().startsWith("<OperationOutcome"));
+		assertFalse(hasError(fhirContext.newXmlParser().parseResource(OperationOutcome.class, xmlResponse.getBody())));
+
+		Path bundle = temporaryFolder.newFile("bundle.json").toPath();
+		Files.writeString(bundle, fhirContext.newJsonParser()
+				.encodeResourceToString(BundleValidatorImplTest.createBundle("ok1", "noprofile1")));
+		ValidationDaemonClient.Response bundleResponse = client.validate(bundle);
+		assertEquals(200, bundleResponse.getStatus());
+		List<Boolean> bundleErrors = fhirContext.newJsonParser().parseResource(Bundle.class, bundleResponse.getBody())
+				.getEntry().stream().map(e -> hasError((OperationOutcome) e.getResponse().getOutcome()))
+				.collect(Collectors.toList());
+		assertEquals(List.of(false, true), bundleErrors);
+
+		Path ndjson = temporaryFolder.newFile("observations.ndjson").toPath();
+		Files.writeString(ndjson, fhirContext.newJsonParser().encodeResourceToString(observation("ok2")) + "\n\n"
+				+ fhirContext.newJsonParser().encodeResourceToString(observation("error2")) + "\nnot json\n");
+		ValidationDaemonClient.Response ndjsonResponse = client.validate(ndjson);
+		assertEquals(200, ndjsonResponse.getStatus());
+		List<Boolean> ndjsonErrors = ndjsonResponse.getBody().lines()
+				.map(l -> hasError(fhirContext.newJsonParser().parseResource(OperationOutcome.class, l)))
+				.collect(Collectors.toList());
+		assertEquals(List.of(false, true, true), ndjsonErrors);
+
+		HttpResponse<String> health = HttpClient.newHttpClient().send(
+				HttpRequest.newBuilder(URI.create(url + ValidationDaemon.PATH_HEALTH)).build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, health.statusCode());
+
+		HttpResponse<String> invalid = HttpClient.newHttpClient()
+				.send(HttpRequest.newBuilder(URI.create(url + ValidationDaemon.PATH_VALIDATE))
+						.header("Content-Type", ValidationDaemon.MEDIA_TYPE_FHIR_JSON)
+						.POST(HttpRequest.BodyPublishers.ofString("{")).build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(400, invalid.statusCode());
+	}
+
+	@Test
+	public void testRejectWhenBusy() throws Exception
+	{
+		CountDownLatch validating = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		BundleValidator blocking = BundleValidatorImplTest.createBundleValidator(resource ->
+		{
+			validating.countDown();
+			try
+			{
+				release.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return new ValidationResult(fhirContext, List.of());
+		});
+
+		String url = start(blocking, 1, 0);
+		HttpClient client = HttpClient.newHttpClient();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url + ValidationDaemon.PATH_VALIDATE))
+				.header("Content-Type", ValidationDaemon.MEDIA_TYPE_FHIR_JSON).POST(HttpRequest.BodyPublishers
+						.ofString(fhirContext.newJsonParser().encodeResourceToString(observation("ok1"))))
+				.build();
+
+		CompletableFuture<HttpResponse<String>> first = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+		assertTrue(validating.await(10, TimeUnit.SECONDS));
+
+		HttpResponse<String> rejected = client.send(request, HttpResponse.BodyHandlers.ofString());
+		assertEquals(503, rejected.statusCode());
+		assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+		release.countDown();
+		assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+		assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+	}
+}
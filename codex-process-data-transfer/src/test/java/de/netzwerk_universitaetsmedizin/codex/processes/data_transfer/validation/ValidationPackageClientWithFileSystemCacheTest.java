@@ -0,0 +1,248 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.ws.rs.WebApplicationException;
+
+public class ValidationPackageClientWithFileSystemCacheTest
+{
+	private static final ValidationPackageIdentifier IDENTIFIER = ValidationPackageIdentifier.fromString("test|1.0.0");
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static final class DelegateStub implements ValidationPackageClient
+	{
+		final AtomicInteger downloads = new AtomicInteger();
+
+		@Override
+		public ValidationPackage download(ValidationPackageIdentifier identifier)
+				throws IOException, WebApplicationException
+		{
+			downloads.incrementAndGet();
+
+			try
+			{
+				Thread.sleep(100);
+			}
+			catch (InterruptedException e)
+			{
+				throw new IOException(e);
+			}
+
+			return new ValidationPackage(identifier.getName(), identifier.getVersion(),
+					List.of(new ValidationPackageEntry("package/package.json", new Date(),
+							"{\"name\":\"test\",\"version\":\"1.0.0\"}".getBytes(StandardCharsets.UTF_8))));
+		}
+	}
+
+	private ValidationPackageClientWithFileSystemCache createCache(InMemoryCache memoryCache,
+			ValidationPackageClient delegate) throws Exception
+	{
+		return createCache(CacheCodec.GZIP, memoryCache, delegate);
+	}
+
+	private ValidationPackageClientWithFileSystemCache createCache(CacheCodec codec, InMemoryCache memoryCache,
+			ValidationPackageClient delegate) throws Exception
+	{
+		return createCache(temporaryFolder.getRoot().toPath(), codec, memoryCache, delegate);
+	}
+
+	private ValidationPackageClientWithFileSystemCache createCache(Path cacheFolder, CacheCodec codec,
+			InMemoryCache memoryCache, ValidationPackageClient delegate) throws Exception
+	{
+		ValidationPackageClientWithFileSystemCache cache = new ValidationPackageClientWithFileSystemCache(cacheFolder,
+				codec, memoryCache, new ObjectMapper(), delegate);
+		cache.afterPropertiesSet();
+		return cache;
+	}
+
+	private Path cacheFile()
+	{
+		return temporaryFolder.getRoot().toPath().resolve("test_1.0.0" + AbstractFileSystemCache.FILENAME_SUFFIX);
+	}
+
+	private List<String> cacheFolderContent() throws IOException
+	{
+		try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath()))
+		{
+			return files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void testPackagesNotKeptInMemory() throws Exception
+	{
+		DelegateStub delegate = new DelegateStub();
+		InMemoryCache memoryCache = new InMemoryCache();
+		ValidationPackageClientWithFileSystemCache cache = createCache(memoryCache, delegate);
+
+		// packages are modified by parseResources after download, every caller gets its own instance
+		ValidationPackage downloaded = cache.download(IDENTIFIER);
+		assertNotSame(downloaded, cache.download(IDENTIFIER));
+		assertEquals(1, delegate.downloads.get());
+		assertEquals(List.of(CacheManifest.FILENAME, "test_1.0.0.json.gz"), cacheFolderContent());
+
+		CacheStatistics statistics = memoryCache.getStatistics();
+		assertEquals(0, statistics.getMemoryHits());
+		assertEquals(1, statistics.getDiskHits());
+		assertEquals(1, statistics.getMisses());
+		assertEquals(Files.size(cacheFile()), statistics.getBytesWritten());
+		assertEquals(0, memoryCache.getEntryCount());
+		assertEquals(0, memoryCache.getSize());
+	}
+
+	@Test
+	public void testTruncatedCacheFile() throws Exception
+	{
+		DelegateStub delegate = new DelegateStub();
+		createCache(new InMemoryCache(), delegate).download(IDENTIFIER);
+
+		byte[] content = Files.readAllBytes(cacheFile());
+		Files.write(cacheFile(), Arrays.copyOf(content, content.length / 2));
+
+		InMemoryCache memoryCache = new InMemoryCache();
+		assertNotNull(createCache(memoryCache, delegate).download(IDENTIFIER));
+		assertEquals(2, delegate.downloads.get());
+		assertEquals(1, memoryCache.getStatistics().getCorruptEntries());
+
+		InMemoryCache rewrittenMemoryCache = new InMemoryCache();
+		assertNotNull(createCache(rewrittenMemoryCache, delegate).download(IDENTIFIER));
+		assertEquals(2, delegate.downloads.get());
+		assertEquals(1, rewrittenMemoryCache.getStatistics().getDiskHits());
+	}
+
+	@Test
+	public void testTruncatedCacheFileWithoutManifest() throws Exception
+	{
+		DelegateStub delegate = new DelegateStub();
+		createCache(new InMemoryCache(), delegate).download(IDENTIFIER);
+
+		// cache folder written before the manifest was introduced
+		Path legacyFolder = temporaryFolder.newFolder("legacy").toPath();
+		byte[] content = Files.readAllBytes(cacheFile());
+		Files.write(legacyFolder.resolve(cacheFile().getFileName()), Arrays.copyOf(content, content.length / 2));
+
+		InMemoryCache memoryCache = new InMemoryCache();
+		assertNotNull(createCache(legacyFolder, CacheCodec.GZIP, memoryCache, delegate).download(IDENTIFIER));
+		assertEquals(2, delegate.downloads.get());
+		assertEquals(1, memoryCache.getStatistics().getCorruptEntries());
+	}
+
+	@Test
+	public void testCacheFileWithoutManifestAdded() throws Exception
+	{
+		DelegateStub delegate = new DelegateStub();
+		createCache(new InMemoryCache(), delegate).download(IDENTIFIER);
+
+		Path legacyFolder = temporaryFolder.newFolder("legacy").toPath();
+		Files.copy(cacheFile(), legacyFolder.resolve(cacheFile().getFileName()));
+
+		InMemoryCache memoryCache = new InMemoryCache();
+		assertEquals("test",
+				createCache(legacyFolder, CacheCodec.GZIP, memoryCache, delegate).download(IDENTIFIER).getName());
+		assertEquals(1, delegate.downloads.get());
+		assertEquals(1, memoryCache.getStatistics().getDiskHits());
+
+		CacheManifest manifest = CacheManifest.forFolder(legacyFolder);
+		assertEquals(1, manifest.getEntryCount());
+		assertEquals(Files.size(cacheFile()), manifest.getSize());
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception
+	{
+		DelegateStub delegate = new DelegateStub();
+		InMemoryCache memoryCache = new InMemoryCache();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Callable<ValidationPackage>> tasks = IntStream.range(0, 8)
+					.<Callable<ValidationPackage>> mapToObj(
+							i -> () -> createCache(memoryCache, delegate).download(IDENTIFIER))
+					.collect(Collectors.toList());
+
+			for (Future<ValidationPackage> result : executor.invokeAll(tasks))
+				assertEquals("test", result.get().getName());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, delegate.downloads.get());
+		assertEquals(7, memoryCache.getStatistics().getDiskHits());
+		assertFalse(cacheFolderContent().stream().anyMatch(f -> f.endsWith(".tmp")));
+	}
+
+	@Test
+	public void testMixedCodecs() throws Exception
+	{
+		DelegateStub delegate = new DelegateStub();
+		createCache(CacheCodec.GZIP, new InMemoryCache(), delegate).download(IDENTIFIER);
+
+		InMemoryCache memoryCache = new InMemoryCache();
+		assertEquals("test", createCache(CacheCodec.LZ4, memoryCache, delegate).download(IDENTIFIER).getName());
+		assertEquals(1, delegate.downloads.get());
+		assertEquals(1, memoryCache.getStatistics().getDiskHits());
+
+		// written with gzip, but suffix of uncompressed codec
+		Files.move(cacheFile(), temporaryFolder.getRoot().toPath().resolve("test_1.0.0.json"));
+		assertEquals("test", createCache(CacheCodec.LZ4, new InMemoryCache(), delegate).download(IDENTIFIER).getName());
+		assertEquals(1, delegate.downloads.get());
+
+		Files.delete(temporaryFolder.getRoot().toPath().resolve("test_1.0.0.json"));
+		createCache(CacheCodec.deflate(9), new InMemoryCache(), delegate).download(IDENTIFIER);
+		assertEquals(2, delegate.downloads.get());
+		assertEquals(List.of(CacheManifest.FILENAME, "test_1.0.0.json.zz"), cacheFolderContent());
+		assertEquals(1, CacheManifest.forFolder(temporaryFolder.getRoot().toPath()).getEntryCount());
+	}
+
+	@Test
+	public void testLruEviction() throws Exception
+	{
+		InMemoryCache memoryCache = new InMemoryCache(100);
+
+		memoryCache.put("a", "a", 40);
+		memoryCache.put("b", "b", 40);
+		memoryCache.get("a");
+		memoryCache.put("c", "c", 40);
+
+		assertEquals("a", memoryCache.get("a"));
+		assertEquals(null, memoryCache.get("b"));
+		assertEquals("c", memoryCache.get("c"));
+		assertEquals(80, memoryCache.getSize());
+		assertEquals(1, memoryCache.getStatistics().getEvictions());
+
+		memoryCache.put("d", "d", 101);
+		assertEquals(null, memoryCache.get("d"));
+		assertEquals(2, memoryCache.getEntryCount());
+	}
+}
@@ -0,0 +1,90 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ValidationPackageFileWatcherTest
+{
+	private static final List<ValidationPackageIdentifier> IDENTIFIERS = List
+			.of(ValidationPackageIdentifier.fromString("a|1.0.0"), ValidationPackageIdentifier.fromString("b|1.0.0"));
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private void write(Path file, List<String> lines, int modifiedSecondsAgo) throws Exception
+	{
+		Files.write(file, lines);
+		Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(modifiedSecondsAgo)));
+	}
+
+	@Test
+	public void testRead() throws Exception
+	{
+		Path file = temporaryFolder.newFile("packages.txt").toPath();
+		write(file, List.of("# comment", "a|1.0.0", "", "  b|1.0.0  "), 0);
+
+		assertEquals(IDENTIFIERS, ValidationPackageFileWatcher.read(file));
+	}
+
+	@Test
+	public void testCheck() throws Exception
+	{
+		Path file = temporaryFolder.getRoot().toPath().resolve("packages.txt");
+		BundleValidatorFactory factory = mock(BundleValidatorFactory.class);
+		when(factory.getValidationPackageIdentifiers()).thenReturn(IDENTIFIERS);
+
+		ValidationPackageFileWatcher watcher = new ValidationPackageFileWatcher(factory, file, 60_000);
+
+		// not existing
+		assertFalse(watcher.check());
+
+		// same packages as in use
+		write(file, List.of("a|1.0.0", "b|1.0.0"), 20);
+		assertFalse(watcher.check());
+
+		// changed packages
+		List<ValidationPackageIdentifier> changed = List.of(ValidationPackageIdentifier.fromString("a|1.0.0"),
+				ValidationPackageIdentifier.fromString("b|2.0.0"));
+		write(file, List.of("a|1.0.0", "b|2.0.0"), 10);
+		assertTrue(watcher.check());
+		verify(factory).reload(changed);
+
+		// not modified since last check
+		assertFalse(watcher.check());
+
+		// invalid content
+		write(file, List.of("invalid"), 0);
+		assertFalse(watcher.check());
+		verify(factory, never()).reload(IDENTIFIERS);
+	}
+
+	@Test
+	public void testWithoutFile() throws Exception
+	{
+		BundleValidatorFactory factory = mock(BundleValidatorFactory.class);
+
+		ValidationPackageFileWatcher watcher = new ValidationPackageFileWatcher(factory, null, 60_000);
+		watcher.afterPropertiesSet();
+
+		assertFalse(watcher.check());
+		verifyNoInteractions(factory);
+
+		watcher.destroy();
+	}
+}
@@ -0,0 +1,167 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.management.ObjectName;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.MetadataResource;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+
+/**
+ * Compares the retained heap of a parsed {@link ValidationPackage} with keeping all raw package entries next to the
+ * parsed resources, as done before entries were released after parsing. Measured with class histograms of live objects
+ * (<code>GC.class_histogram</code>, triggers a full GC). Excluded from the default test run, executed with all
+ * benchmarks by <code>mvn test -P benchmark</code> or alone with
+ * <code>mvn test -Dtest=ValidationPackageHeapBenchmark</code>.
+ * <p>
+ * The package is created from the FHIR R4 core StructureDefinitions and ValueSets including narrative, every resource
+ * is also added as an example.
+ */
+public class ValidationPackageHeapBenchmark
+{
+	private static final Logger logger = LoggerFactory.getLogger(ValidationPackageHeapBenchmark.class);
+
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	private static final class Histogram
+	{
+		final long totalBytes;
+		final Map<String, Long> bytesByClass;
+
+		Histogram(long totalBytes, Map<String, Long> bytesByClass)
+		{
+			this.totalBytes = totalBytes;
+			this.bytesByClass = bytesByClass;
+		}
+
+		long bytes(String className)
+		{
+			return bytesByClass.getOrDefault(className, 0L);
+		}
+	}
+
+	// keeps measured objects reachable while the histogram is taken
+	private Object retained;
+
+	private static Histogram histogram() throws Exception
+	{
+		String histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+				new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram", new Object[] { null },
+				new String[] { String[].class.getName() });
+
+		// lines: " 1: instances bytes className (module)" and "Total instances bytes"
+		List<String[]> lines = histogram.lines().map(String::trim).map(l -> l.split("\\s+"))
+				.collect(Collectors.toList());
+
+		long total = lines.stream().filter(l -> l.length == 3 && "Total".equals(l[0]))
+				.mapToLong(l -> Long.parseLong(l[2])).findFirst().orElseThrow();
+		Map<String, Long> bytesByClass = lines.stream().filter(l -> l.length >= 4 && l[0].endsWith(":"))
+				.collect(Collectors.toMap(l -> l[3], l -> Long.parseLong(l[2]), Long::sum));
+
+		return new Histogram(total, bytesByClass);
+	}
+
+	private static List<ValidationPackageEntry> createEntries()
+	{
+		DefaultProfileValidationSupport support = new DefaultProfileValidationSupport(fhirContext);
+		// loads code systems and value sets
+		support.fetchValueSet("http://hl7.org/fhir/ValueSet/administrative-gender");
+		List<MetadataResource> resources = Stream
+				.concat(support.fetchAllStructureDefinitions().stream().map(StructureDefinition.class::cast),
+						support.fetchAllConformanceResources().stream().filter(r -> r instanceof ValueSet)
+								.map(ValueSet.class::cast))
+				.collect(Collectors.toList());
+
+		List<ValidationPackageEntry> entries = new ArrayList<>();
+		entries.add(entry("package/package.json", "{\"name\":\"benchmark\",\"version\":\"1.0.0\"}"));
+
+		for (MetadataResource resource : resources)
+		{
+			String fileName = resource.getResourceType().name() + "-" + resource.getIdElement().getIdPart() + ".json";
+			String json = fhirContext.newJsonParser().encodeResourceToString(resource);
+
+			entries.add(entry("package/" + fileName, json));
+			entries.add(entry("package/example/" + fileName, json));
+		}
+
+		return entries;
+	}
+
+	private static ValidationPackageEntry entry(String fileName, String content)
+	{
+		return new ValidationPackageEntry(fileName, new Date(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<IBaseResource> parseWithoutRelease(List<ValidationPackageEntry> entries)
+	{
+		return entries.stream().filter(e -> e.getFileName().matches("package/[^/]+-.+\\.json"))
+				.map(e -> fhirContext.newJsonParser().parseResource(new String(e.getContent(), StandardCharsets.UTF_8)))
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		// initialize FHIR context and parser before the baseline histogram
+		parseWithoutRelease(createEntries().subList(0, 3));
+
+		Histogram baseline = histogram();
+
+		List<ValidationPackageEntry> entries = createEntries();
+		List<IBaseResource> parsed = parseWithoutRelease(entries);
+		retained = List.of(entries, parsed);
+		Histogram withEntries = histogram();
+
+		int resourceCount = parsed.size();
+		entries = null;
+		parsed = null;
+		retained = null;
+
+		ValidationPackage vPackage = new ValidationPackage("benchmark", "1.0.0", createEntries());
+		vPackage.parseResources(fhirContext);
+		ValidationSupportResources resources = vPackage.getValidationSupportResources();
+		retained = vPackage;
+		Histogram released = histogram();
+
+		int packageResourceCount = resources.getStructureDefinitions().size() + resources.getValueSets().size();
+		assertTrue(packageResourceCount > 0);
+		assertEquals(1, vPackage.getEntries().size());
+
+		logger.info("{} resources parsed from raw entries, {} resources in ValidationPackage (without logical models)",
+				resourceCount, packageResourceCount);
+
+		log("raw entries and parsed resources", baseline, withEntries);
+		log("parsed ValidationPackage", baseline, released);
+
+		logger.info("retained heap {}% of raw entries and parsed resources", String.format("%.1f",
+				100d * (released.totalBytes - baseline.totalBytes) / (withEntries.totalBytes - baseline.totalBytes)));
+	}
+
+	private void log(String label, Histogram baseline, Histogram histogram)
+	{
+		Function<String, Long> delta = className -> histogram.bytes(className) - baseline.bytes(className);
+
+		logger.info("{}: retained {} KiB, byte[] {} KiB, String {} KiB", label,
+				(histogram.totalBytes - baseline.totalBytes) / 1024, delta.apply("[B") / 1024,
+				delta.apply("java.lang.String") / 1024);
+	}
+}
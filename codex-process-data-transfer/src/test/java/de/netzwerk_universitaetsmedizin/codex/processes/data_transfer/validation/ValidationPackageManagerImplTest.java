@@ -0,0 +1,148 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Enumerations.BindingStrength;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.WebApplicationException;
+
+public class ValidationPackageManagerImplTest
+{
+	private static final Logger logger = LoggerFactory.getLogger(ValidationPackageManagerImplTest.class);
+
+	private static final FhirContext fhirContext = FhirContext.forR4();
+	private static final long LATENCY_MILLIS = 200;
+
+	/**
+	 * Package registry stub with simulated latency, dependencies: a -&gt; (c, d), b -&gt; (c, d), c -&gt; (d, core), d
+	 * -&gt; core
+	 */
+	private static final class PackageRegistryStub implements ValidationPackageClient
+	{
+		final Map<String, String> dependencies = Map.of("a", "{\"c\":\"1\",\"d\":\"1\"}", "b",
+				"{\"c\":\"1\",\"d\":\"1\"}", "c", "{\"d\":\"1\",\"hl7.fhir.r4.core\":\"4.0.1\"}", "d",
+				"{\"hl7.fhir.r4.core\":\"4.0.1\"}");
+
+		final Map<ValidationPackageIdentifier, AtomicInteger> downloads = new ConcurrentHashMap<>();
+		final Set<ValidationPackageIdentifier> failOnce = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public ValidationPackage download(ValidationPackageIdentifier identifier)
+				throws IOException, WebApplicationException
+		{
+			downloads.computeIfAbsent(identifier, i -> new AtomicInteger()).incrementAndGet();
+
+			try
+			{
+				Thread.sleep(LATENCY_MILLIS);
+			}
+			catch (InterruptedException e)
+			{
+				throw new IOException(e);
+			}
+
+			if (failOnce.remove(identifier))
+				throw new ServiceUnavailableException();
+
+			String packageJson = "{\"name\":\"" + identifier.getName() + "\",\"version\":\"" + identifier.getVersion()
+					+ "\",\"dependencies\":" + dependencies.get(identifier.getName()) + "}";
+
+			return new ValidationPackage(identifier.getName(), identifier.getVersion(),
+					List.of(new ValidationPackageEntry("package/package.json", new Date(),
+							packageJson.getBytes(StandardCharsets.UTF_8))));
+		}
+	}
+
+	private static ValidationPackageManagerImpl createManager(PackageRegistryStub registry, int downloadThreads)
+			throws Exception
+	{
+		ValidationPackageManagerImpl manager = new ValidationPackageManagerImpl(registry,
+				mock(ValueSetExpansionClient.class), new ObjectMapper(), fhirContext, (c, v) -> null, (c, v) -> null,
+				ValidationPackageManagerImpl.DEFAULT_NO_PACKAGE_DOWNLOAD_LIST, EnumSet.allOf(BindingStrength.class),
+				downloadThreads, 1, 10);
+		manager.afterPropertiesSet();
+		return manager;
+	}
+
+	private static List<String> names(List<ValidationPackage> packages)
+	{
+		return packages.stream().map(ValidationPackage::getName).sorted().collect(Collectors.toList());
+	}
+
+	@Test
+	public void testDownloadPackagesWithDependencies() throws Exception
+	{
+		PackageRegistryStub registry = new PackageRegistryStub();
+		ValidationPackageManagerImpl manager = createManager(registry, 4);
+
+		List<ValidationPackageWithDepedencies> packages = manager.downloadPackagesWithDependencies(
+				ValidationPackageIdentifier.fromString("a|1"), ValidationPackageIdentifier.fromString("b|1"));
+
+		assertEquals(2, packages.size());
+		assertEquals("a", packages.get(0).getName());
+		assertEquals(List.of("c", "d"), names(packages.get(0).getDependencies()));
+		assertEquals("b", packages.get(1).getName());
+		assertEquals(List.of(), names(packages.get(1).getDependencies()));
+
+		assertEquals(4, registry.downloads.size());
+		assertTrue(registry.downloads.values().stream().allMatch(c -> c.get() == 1));
+	}
+
+	@Test
+	public void testDownloadRetry() throws Exception
+	{
+		PackageRegistryStub registry = new PackageRegistryStub();
+		registry.failOnce.add(ValidationPackageIdentifier.fromString("c|1"));
+		ValidationPackageManagerImpl manager = createManager(registry, 4);
+
+		ValidationPackageWithDepedencies a = manager.downloadPackageWithDependencies("a", "1");
+
+		assertEquals(List.of("c", "d"), names(a.getDependencies()));
+		assertEquals(2, registry.downloads.get(ValidationPackageIdentifier.fromString("c|1")).get());
+	}
+
+	@Test
+	public void testColdStartSequentialVsParallel() throws Exception
+	{
+		ValidationPackageIdentifier[] roots = { ValidationPackageIdentifier.fromString("a|1"),
+				ValidationPackageIdentifier.fromString("b|1") };
+
+		// warm up
+		createManager(new PackageRegistryStub(), 4).downloadPackagesWithDependencies(roots);
+
+		long sequentialStart = System.currentTimeMillis();
+		createManager(new PackageRegistryStub(), 1).downloadPackagesWithDependencies(roots);
+		long sequential = System.currentTimeMillis() - sequentialStart;
+
+		long parallelStart = System.currentTimeMillis();
+		createManager(new PackageRegistryStub(), 4).downloadPackagesWithDependencies(roots);
+		long parallel = System.currentTimeMillis() - parallelStart;
+
+		logger.info("Cold start with {} ms latency per package: sequential {} ms, parallel {} ms", LATENCY_MILLIS,
+				sequential, parallel);
+
+		// 4 packages in 2 dependency levels
+		assertTrue(sequential >= 4 * LATENCY_MILLIS);
+		assertTrue(parallel < sequential);
+	}
+}
@@ -0,0 +1,147 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class ValidationPackageTest
+{
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	private static ValidationPackageEntry entry(String fileName, String content)
+	{
+		return new ValidationPackageEntry(fileName, new Date(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static ValidationPackage createPackage()
+	{
+		return new ValidationPackage("test", "1.0.0", List.of(
+				entry("package/package.json", "{\"name\":\"test\",\"version\":\"1.0.0\"}"),
+				entry("package/.index.json", "{\"index-version\":1,\"files\":["
+						+ "{\"filename\":\"StructureDefinition-a.json\",\"resourceType\":\"StructureDefinition\",\"url\":\"http://test/sd/a\",\"version\":\"1.0.0\",\"kind\":\"resource\"},"
+						+ "{\"filename\":\"StructureDefinition-logical.json\",\"resourceType\":\"StructureDefinition\",\"url\":\"http://test/sd/logical\",\"version\":\"1.0.0\",\"kind\":\"logical\"},"
+						+ "{\"filename\":\"SearchParameter-a.json\",\"resourceType\":\"SearchParameter\",\"url\":\"http://test/sp/a\",\"version\":\"1.0.0\"}]}"),
+				entry("package/StructureDefinition-a.json",
+						"{\"resourceType\":\"StructureDefinition\",\"url\":\"http://test/sd/a\",\"version\":\"1.0.0\",\"name\":\"A\",\"status\":\"active\",\"kind\":\"resource\",\"abstract\":false,\"type\":\"Patient\","
+								+ "\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\"><h2>Invalid </tt>Test</div>\"}}"),
+				entry("package/StructureDefinition-logical.json",
+						"{\"resourceType\":\"StructureDefinition\",\"url\":\"http://test/sd/logical\",\"version\":\"1.0.0\",\"name\":\"Logical\",\"status\":\"active\",\"kind\":\"logical\",\"abstract\":false,\"type\":\"Logical\"}"),
+				entry("package/SearchParameter-a.json", "{\"resourceType\":\"SearchParameter\"}"),
+				entry("package/ValueSet-b.json",
+						"{\"resourceType\":\"ValueSet\",\"url\":\"http://test/vs/b\",\"version\":\"1.0.0\",\"status\":\"active\"}"),
+				entry("package/example/Patient-example.json", "{\"resourceType\":\"Patient\"}")));
+	}
+
+	@Test
+	public void testIndex() throws Exception
+	{
+		ValidationPackage vPackage = createPackage();
+		vPackage.parseResources(fhirContext);
+
+		List<ValidationPackageIndexFile> index = vPackage.getIndex();
+		assertEquals(2, index.size());
+		assertEquals("package/StructureDefinition-a.json", index.get(0).getFileName());
+		assertEquals("package/ValueSet-b.json", index.get(1).getFileName());
+		assertEquals("http://test/vs/b", index.get(1).getUrl());
+
+		assertEquals(0, vPackage.getParsedResourceCount());
+	}
+
+	@Test
+	public void testParseOnFirstAccess() throws Exception
+	{
+		ValidationPackage vPackage = createPackage();
+		vPackage.parseResources(fhirContext);
+
+		List<StructureDefinition> sds = vPackage.getResources(StructureDefinition.class, "http://test/sd/a|1.0.0");
+		assertEquals(1, sds.size());
+		// parsed despite invalid html, narrative removed
+		assertFalse(sds.get(0).hasText());
+		assertEquals(1, vPackage.getParsedResourceCount());
+
+		assertSame(sds.get(0), vPackage.getResources(StructureDefinition.class, "http://test/sd/a").get(0));
+		assertTrue(vPackage.getResources(ValueSet.class, "http://test/sd/a").isEmpty());
+		assertEquals(1, vPackage.getParsedResourceCount());
+
+		assertEquals(1, vPackage.getValidationSupportResources().getValueSets().size());
+		assertEquals(2, vPackage.getParsedResourceCount());
+	}
+
+	@Test
+	public void testValidationSupport() throws Exception
+	{
+		ValidationPackage vPackage = createPackage();
+		vPackage.parseResources(fhirContext);
+
+		ValidationPackageValidationSupport support = new ValidationPackageValidationSupport(fhirContext,
+				List.of(vPackage));
+
+		assertNotNull(support.fetchValueSet("http://test/vs/b"));
+		assertNotNull(support.fetchValueSet("http://test/vs/b|1.0.0"));
+		assertEquals(1, vPackage.getParsedResourceCount());
+
+		assertNotNull(support.fetchStructureDefinition("http://test/sd/a"));
+		assertEquals(null, support.fetchStructureDefinition("http://test/sd/logical"));
+		assertEquals(null, support.fetchCodeSystem("http://test/vs/b"));
+		assertEquals(null, support.<CodeSystem> fetchResource(CodeSystem.class, "http://test/cs/c"));
+		assertEquals(2, vPackage.getParsedResourceCount());
+	}
+
+	@Test
+	public void testEntriesReleased() throws Exception
+	{
+		ValidationPackage vPackage = createPackage();
+		assertEquals(7, vPackage.getEntries().size());
+
+		ValidationPackageWithDepedencies withDependencies = new ValidationPackageWithDepedencies(vPackage, List.of());
+		withDependencies.parseResources(fhirContext);
+
+		assertEquals(List.of("package/package.json", "package/.index.json"),
+				vPackage.getEntries().stream().map(ValidationPackageEntry::getFileName).collect(Collectors.toList()));
+		assertEquals("test", vPackage.getDescriptor(new ObjectMapper()).getName());
+
+		// index and parsed resources shared
+		assertSame(withDependencies.getIndex(), vPackage.getIndex());
+		assertSame(withDependencies.getResources(ValueSet.class, "http://test/vs/b").get(0),
+				vPackage.getResources(ValueSet.class, "http://test/vs/b").get(0));
+		assertEquals(1, vPackage.getParsedResourceCount());
+	}
+
+	@Test
+	public void testStringsDeduplicated() throws Exception
+	{
+		String valueSet = "{\"resourceType\":\"ValueSet\",\"url\":\"http://test/vs/%s\",\"version\":\"1.0.0\",\"status\":\"active\","
+				+ "\"compose\":{\"include\":[{\"system\":\"http://test/cs/c\",\"concept\":[{\"code\":\"code-a\"}]}]}}";
+
+		ValidationPackage vPackage = new ValidationPackage("test", "1.0.0",
+				List.of(entry("package/ValueSet-a.json", String.format(valueSet, "a")),
+						entry("package/ValueSet-b.json", String.format(valueSet, "b"))));
+		vPackage.parseResources(fhirContext);
+
+		List<ValueSet> valueSets = vPackage.getResources(ValueSet.class);
+		assertEquals(2, valueSets.size());
+
+		ConceptSetComponent includeA = valueSets.get(0).getCompose().getIncludeFirstRep();
+		ConceptSetComponent includeB = valueSets.get(1).getCompose().getIncludeFirstRep();
+		assertSame(includeA.getSystem(), includeB.getSystem());
+		assertSame(includeA.getConceptFirstRep().getCode(), includeB.getConceptFirstRep().getCode());
+		assertEquals("http://test/cs/c", includeA.getSystemElement().getValueAsString());
+	}
+}
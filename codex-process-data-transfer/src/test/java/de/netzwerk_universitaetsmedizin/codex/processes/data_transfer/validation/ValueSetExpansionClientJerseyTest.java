@@ -0,0 +1,262 @@
+package de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.netzwerk_universitaetsmedizin.codex.processes.data_transfer.validation.value_set.ValueSetModifier;
+
+public class ValueSetExpansionClientJerseyTest
+{
+	private static final FhirContext fhirContext = FhirContext.forR4();
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private HttpServer server;
+	private String baseUrl;
+
+	private final AtomicInteger batchRequests = new AtomicInteger();
+	private final AtomicInteger singleRequests = new AtomicInteger();
+	private volatile int rejectBatchStatus;
+	private volatile String failInBatch;
+
+	@Before
+	public void before() throws Exception
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/fhir", this::handle);
+		server.start();
+
+		baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/fhir";
+	}
+
+	@After
+	public void after()
+	{
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		String body;
+		try (InputStream in = exchange.getRequestBody())
+		{
+			body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+
+		String path = exchange.getRequestURI().getPath();
+		if ("/fhir/ValueSet/$expand".equals(path))
+		{
+			singleRequests.incrementAndGet();
+			ValueSet valueSet = (ValueSet) fhirContext.newJsonParser().parseResource(Parameters.class, body)
+					.getParameterFirstRep().getResource();
+			send(exchange, 200, fhirContext.newJsonParser().encodeResourceToString(expand(valueSet)));
+		}
+		else if ("/fhir".equals(path))
+		{
+			batchRequests.incrementAndGet();
+			if (rejectBatchStatus != 0)
+			{
+				send(exchange, rejectBatchStatus, "{\"resourceType\":\"OperationOutcome\"}");
+				return;
+			}
+
+			Bundle request = fhirContext.newJsonParser().parseResource(Bundle.class, body);
+			Bundle response = new Bundle().setType(BundleType.BATCHRESPONSE);
+			for (BundleEntryComponent entry : request.getEntry())
+			{
+				ValueSet valueSet = (ValueSet) ((Parameters) entry.getResource()).getParameterFirstRep().getResource();
+
+				if (valueSet.getUrl().equals(failInBatch))
+					response.addEntry().getResponse().setStatus("422 Unprocessable Entity");
+				else
+					response.addEntry().setResource(expand(valueSet)).getResponse().setStatus("200 OK");
+			}
+
+			send(exchange, 200, fhirContext.newJsonParser().encodeResourceToString(response));
+		}
+		else
+			send(exchange, 404, "");
+	}
+
+	private static ValueSet expand(ValueSet valueSet)
+	{
+		ValueSet expanded = valueSet.copy();
+		expanded.getExpansion().setTotal(1).addContains().setSystem("http://example.org").setCode(valueSet.getName());
+		return expanded;
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/fhir+json");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(bytes);
+		}
+	}
+
+	private static List<ValueSet> valueSets(int count)
+	{
+		return IntStream
+				.range(0, count).mapToObj(i -> new ValueSet().setUrl("http://example.org/ValueSet/vs" + i)
+						.setVersion("1").setName("vs" + i).setStatus(PublicationStatus.ACTIVE))
+				.collect(Collectors.toList());
+	}
+
+	private ValueSetExpansionClientJersey createClient(int batchSize)
+	{
+		return new ValueSetExpansionClientJersey(baseUrl, null, null, null, null, null, null, null, null, 5000, 5000,
+				false, null, fhirContext, batchSize);
+	}
+
+	private static void assertExpanded(List<ValueSet> valueSets, List<ValueSetExpansionResult> results)
+	{
+		assertEquals(valueSets.size(), results.size());
+		for (int i = 0; i < valueSets.size(); i++)
+		{
+			assertTrue(String.valueOf(results.get(i).getError()), results.get(i).isSuccess());
+			assertEquals(valueSets.get(i).getUrl(), results.get(i).getValueSet().getUrl());
+			assertEquals(valueSets.get(i).getName(),
+					results.get(i).getExpansion().getExpansion().getContainsFirstRep().getCode());
+		}
+	}
+
+	@Test
+	public void testExpandAllBatch() throws Exception
+	{
+		List<ValueSet> valueSets = valueSets(7);
+		assertExpanded(valueSets, createClient(3).expandAll(valueSets));
+
+		// 3 + 3 with batch requests, last ValueSet with single request
+		assertEquals(2, batchRequests.get());
+		assertEquals(1, singleRequests.get());
+	}
+
+	@Test
+	public void testExpandAllBatchSizeOne() throws Exception
+	{
+		List<ValueSet> valueSets = valueSets(3);
+		assertExpanded(valueSets, createClient(1).expandAll(valueSets));
+
+		assertEquals(0, batchRequests.get());
+		assertEquals(3, singleRequests.get());
+	}
+
+	@Test
+	public void testExpandAllBatchRejected() throws Exception
+	{
+		rejectBatchStatus = 405;
+		ValueSetExpansionClientJersey client = createClient(3);
+
+		List<ValueSet> valueSets = valueSets(7);
+		assertExpanded(valueSets, client.expandAll(valueSets));
+		assertExpanded(valueSets, client.expandAll(valueSets));
+
+		// batches only tried once
+		assertEquals(1, batchRequests.get());
+		assertEquals(14, singleRequests.get());
+	}
+
+	@Test
+	public void testExpandAllBatchUnprocessable() throws Exception
+	{
+		rejectBatchStatus = 422;
+		ValueSetExpansionClientJersey client = createClient(3);
+
+		List<ValueSet> valueSets = valueSets(7);
+		assertExpanded(valueSets, client.expandAll(valueSets));
+		assertExpanded(valueSets, client.expandAll(valueSets));
+
+		// single requests for rejected batches only, batches still tried on second call
+		assertEquals(4, batchRequests.get());
+		assertEquals(14, singleRequests.get());
+	}
+
+	@Test
+	public void testExpandAllBatchEntryFailed() throws Exception
+	{
+		failInBatch = "http://example.org/ValueSet/vs1";
+
+		List<ValueSet> valueSets = valueSets(4);
+		assertExpanded(valueSets, createClient(4).expandAll(valueSets));
+
+		assertEquals(1, batchRequests.get());
+		assertEquals(1, singleRequests.get());
+	}
+
+	@Test
+	public void testExpandAllWithModifiersAndCache() throws Exception
+	{
+		ValueSetModifier modifier = new ValueSetModifier()
+		{
+			@Override
+			public ValueSet modifyPreExpansion(ValueSet vs)
+			{
+				return vs.copy().setName(vs.getName() + "-pre");
+			}
+
+			@Override
+			public ValueSet modifyPostExpansion(ValueSet vsWithComposition, ValueSet vsWithExpansion)
+			{
+				vsWithExpansion.getExpansion().addContains().setSystem("http://example.org").setCode("post");
+				return vsWithExpansion;
+			}
+		};
+
+		ValueSetExpansionClientWithFileSystemCache client = new ValueSetExpansionClientWithFileSystemCache(
+				temporaryFolder.getRoot().toPath(), fhirContext,
+				new ValueSetExpansionClientWithModifiers(createClient(10), List.of(modifier)));
+		client.afterPropertiesSet();
+
+		List<ValueSet> valueSets = valueSets(5);
+		List<ValueSetExpansionResult> results = client.expandAll(valueSets);
+
+		assertEquals(1, batchRequests.get());
+		assertEquals(0, singleRequests.get());
+		assertEquals(5, client.getStatistics().getMisses());
+
+		for (int i = 0; i < valueSets.size(); i++)
+		{
+			assertEquals(valueSets.get(i).getUrl(), results.get(i).getValueSet().getUrl());
+			assertEquals(Set.of("vs" + i + "-pre", "post"), results.get(i).getExpansion().getExpansion().getContains()
+					.stream().map(c -> c.getCode()).collect(Collectors.toSet()));
+		}
+
+		// 5 read from cache, 1 expanded with single request
+		List<ValueSetExpansionResult> cached = client.expandAll(valueSets(6));
+		assertEquals(1, batchRequests.get());
+		assertEquals(1, singleRequests.get());
+		assertEquals(6, client.getStatistics().getMisses());
+		assertTrue(cached.stream().allMatch(ValueSetExpansionResult::isSuccess));
+	}
+}